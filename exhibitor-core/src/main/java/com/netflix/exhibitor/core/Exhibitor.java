@@ -28,6 +28,7 @@ import com.netflix.exhibitor.core.automanage.RemoteInstanceRequestClient;
 import com.netflix.exhibitor.core.automanage.RemoteInstanceRequestClientImpl;
 import com.netflix.exhibitor.core.backup.BackupManager;
 import com.netflix.exhibitor.core.backup.BackupProvider;
+import com.netflix.exhibitor.core.backup.s3.S3BackupProvider;
 import com.netflix.exhibitor.core.config.ConfigListener;
 import com.netflix.exhibitor.core.config.ConfigManager;
 import com.netflix.exhibitor.core.config.ConfigProvider;
@@ -36,13 +37,16 @@ import com.netflix.exhibitor.core.config.JQueryStyle;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelValues;
 import com.netflix.exhibitor.core.controlpanel.FileBasedPreferences;
 import com.netflix.exhibitor.core.index.IndexCache;
+import com.netflix.exhibitor.core.index.LiveIndex;
 import com.netflix.exhibitor.core.processes.ProcessMonitor;
 import com.netflix.exhibitor.core.processes.ProcessOperations;
 import com.netflix.exhibitor.core.processes.StandardProcessOperations;
 import com.netflix.exhibitor.core.rest.UITab;
 import com.netflix.exhibitor.core.servo.GetMonitorData;
+import com.netflix.exhibitor.core.servo.MetricsHistory;
 import com.netflix.exhibitor.core.servo.ZookeeperMonitoredData;
 import com.netflix.exhibitor.core.state.CleanupManager;
+import com.netflix.exhibitor.core.state.FourLetterWordClient;
 import com.netflix.exhibitor.core.state.ManifestVersion;
 import com.netflix.exhibitor.core.state.MonitorRunningInstance;
 import com.netflix.servo.monitor.CompositeMonitor;
@@ -71,6 +75,7 @@ public class Exhibitor implements Closeable
     private final CleanupManager                cleanupManager;
     private final AtomicReference<State>        state = new AtomicReference<State>(State.LATENT);
     private final IndexCache                    indexCache;
+    private final LiveIndex                     liveIndex;
     private final ControlPanelValues            controlPanelValues;
     private final BackupManager                 backupManager;
     private final ConfigManager                 configManager;
@@ -79,9 +84,13 @@ public class Exhibitor implements Closeable
     private final RepeatingActivity             autoInstanceManagement;
     private final RepeatingActivity             servoMonitoring;
     private final CompositeMonitor<?>           servoCompositeMonitor;
+    private final CompositeMonitor<?>           indexCacheCompositeMonitor;
+    private final CompositeMonitor<?>           throttleCompositeMonitor;
     private final ManifestVersion               manifestVersion = new ManifestVersion();
     private final ForkJoinPool                  forkJoinPool = new ForkJoinPool();
     private final RemoteInstanceRequestClient   remoteInstanceRequestClient;
+    private final FourLetterWordClient          fourLetterWordClient;
+    private final MetricsHistory                metricsHistory = new MetricsHistory();
 
     public static final int        AUTO_INSTANCE_MANAGEMENT_PERIOD_MS = 60000;
 
@@ -131,19 +140,23 @@ public class Exhibitor implements Closeable
         this.processOperations = new StandardProcessOperations(this);
         monitorRunningInstance = new MonitorRunningInstance(this);
         cleanupManager = new CleanupManager(this);
-        indexCache = new IndexCache(log);
+        indexCache = new IndexCache(log, configManager.getConfig().getInt(IntConfigs.INDEX_CACHE_MAX_READERS), getIndexCacheMaxBytes());
         processMonitor = new ProcessMonitor(this);
         autoInstanceManagement = new RepeatingActivityImpl(log, activityQueue, QueueGroups.MAIN, new AutomaticInstanceManagement(this), getAutoInstanceManagementPeriod());
 
         remoteInstanceRequestClient = new RemoteInstanceRequestClientImpl(arguments.remoteConnectionConfiguration);
+        fourLetterWordClient = new FourLetterWordClient();
 
         AtomicReference<CompositeMonitor<?>>    theMonitor = new AtomicReference<CompositeMonitor<?>>();
         servoMonitoring = initServo(this, log, activityQueue, arguments, theMonitor);
         servoCompositeMonitor = theMonitor.get();
+        indexCacheCompositeMonitor = initIndexCacheServo(indexCache, arguments);
+        throttleCompositeMonitor = initThrottleServo(backupProvider, arguments);
 
         controlPanelValues = new ControlPanelValues(getPreferences());
 
         this.backupManager = new BackupManager(this, backupProvider);
+        liveIndex = new LiveIndex(this);
     }
 
     public String   getVersion()
@@ -167,6 +180,14 @@ public class Exhibitor implements Closeable
         return indexCache;
     }
 
+    /**
+     * @return the continuously updated index
+     */
+    public LiveIndex getLiveIndex()
+    {
+        return liveIndex;
+    }
+
     /**
      * Start the app
      *
@@ -181,6 +202,7 @@ public class Exhibitor implements Closeable
         monitorRunningInstance.start();
         cleanupManager.start();
         backupManager.start();
+        liveIndex.start();
         autoInstanceManagement.start();
         if ( servoMonitoring != null )
         {
@@ -194,6 +216,7 @@ public class Exhibitor implements Closeable
                 @Override
                 public void configUpdated()
                 {
+                    indexCache.setLimits(getConfigManager().getConfig().getInt(IntConfigs.INDEX_CACHE_MAX_READERS), getIndexCacheMaxBytes());
                     try
                     {
                         resetLocalConnection();
@@ -221,10 +244,19 @@ public class Exhibitor implements Closeable
         {
             arguments.servoRegistration.getMonitorRegistry().unregister(servoCompositeMonitor);
         }
+        if ( (arguments.servoRegistration != null) && (indexCacheCompositeMonitor != null) )
+        {
+            arguments.servoRegistration.getMonitorRegistry().unregister(indexCacheCompositeMonitor);
+        }
+        if ( (arguments.servoRegistration != null) && (throttleCompositeMonitor != null) )
+        {
+            arguments.servoRegistration.getMonitorRegistry().unregister(throttleCompositeMonitor);
+        }
 
         CloseableUtils.closeQuietly(servoMonitoring);
         CloseableUtils.closeQuietly(autoInstanceManagement);
         CloseableUtils.closeQuietly(processMonitor);
+        CloseableUtils.closeQuietly(liveIndex);
         CloseableUtils.closeQuietly(indexCache);
         CloseableUtils.closeQuietly(backupManager);
         CloseableUtils.closeQuietly(cleanupManager);
@@ -232,6 +264,7 @@ public class Exhibitor implements Closeable
         CloseableUtils.closeQuietly(configManager);
         CloseableUtils.closeQuietly(activityQueue);
         CloseableUtils.closeQuietly(remoteInstanceRequestClient);
+        CloseableUtils.closeQuietly(fourLetterWordClient);
         closeLocalConnection();
     }
 
@@ -365,6 +398,19 @@ public class Exhibitor implements Closeable
         return remoteInstanceRequestClient;
     }
 
+    public FourLetterWordClient getFourLetterWordClient()
+    {
+        return fourLetterWordClient;
+    }
+
+    /**
+     * @return history of the ZooKeeper metrics
+     */
+    public MetricsHistory getMetricsHistory()
+    {
+        return metricsHistory;
+    }
+
     public ExhibitorArguments.LogDirection getLogDirection()
     {
         return arguments.logDirection;
@@ -395,6 +441,11 @@ public class Exhibitor implements Closeable
         return AUTO_INSTANCE_MANAGEMENT_PERIOD_MS + (int)(AUTO_INSTANCE_MANAGEMENT_PERIOD_MS * Math.random());  // add some randomness to avoid overlap with other Exhibitors
     }
 
+    private long getIndexCacheMaxBytes()
+    {
+        return configManager.getConfig().getInt(IntConfigs.INDEX_CACHE_MAX_MB) * 1024L * 1024L;
+    }
+
     private static RepeatingActivity initServo(Exhibitor exhibitor, ActivityLog log, ActivityQueue activityQueue, ExhibitorArguments arguments, AtomicReference<CompositeMonitor<?>> theMonitor)
     {
         theMonitor.set(null);
@@ -403,7 +454,7 @@ public class Exhibitor implements Closeable
         if ( arguments.servoRegistration != null )
         {
             ZookeeperMonitoredData  zookeeperMonitoredData = new ZookeeperMonitoredData();
-            CompositeMonitor<?>     compositeMonitor = Monitors.newObjectMonitor(zookeeperMonitoredData);
+            CompositeMonitor<?>     compositeMonitor = zookeeperMonitoredData.newCompositeMonitor();
 
             GetMonitorData          getMonitorData = new GetMonitorData(exhibitor, zookeeperMonitoredData);
             localServoMonitoring = new RepeatingActivityImpl(log, activityQueue, QueueGroups.IO, getMonitorData, arguments.servoRegistration.getZookeeperPollMs());
@@ -413,4 +464,28 @@ public class Exhibitor implements Closeable
         }
         return localServoMonitoring;
     }
+
+    private static CompositeMonitor<?> initIndexCacheServo(IndexCache indexCache, ExhibitorArguments arguments)
+    {
+        if ( arguments.servoRegistration == null )
+        {
+            return null;
+        }
+
+        CompositeMonitor<?>     compositeMonitor = Monitors.newObjectMonitor(indexCache.getMonitoredData());
+        arguments.servoRegistration.getMonitorRegistry().register(compositeMonitor);
+        return compositeMonitor;
+    }
+
+    private static CompositeMonitor<?> initThrottleServo(BackupProvider backupProvider, ExhibitorArguments arguments)
+    {
+        if ( (arguments.servoRegistration == null) || !(backupProvider instanceof S3BackupProvider) )
+        {
+            return null;
+        }
+
+        CompositeMonitor<?>     compositeMonitor = Monitors.newObjectMonitor(((S3BackupProvider)backupProvider).getThrottle().getMonitoredData());
+        arguments.servoRegistration.getMonitorRegistry().register(compositeMonitor);
+        return compositeMonitor;
+    }
 }
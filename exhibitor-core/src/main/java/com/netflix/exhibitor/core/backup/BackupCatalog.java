@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.Exhibitor;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory view of the backups held by the provider. Listing a large backup store is expensive so
+ * the list is cached for a TTL and kept current by writing through uploads and deletes made by this
+ * instance. Changes made elsewhere (other instances, manual deletes) show up on the next refresh.
+ */
+public class BackupCatalog
+{
+    private final Exhibitor exhibitor;
+    private final BackupProvider provider;
+    private final long ttlMs;
+
+    private List<BackupMetaData> backups = null;
+    private Map<String, String> backupsConfig = null;
+    private long refreshedMs = 0;
+
+    /**
+     * @param exhibitor main instance
+     * @param provider the provider
+     * @param ttlMs max time to use the cached list before listing again
+     */
+    public BackupCatalog(Exhibitor exhibitor, BackupProvider provider, long ttlMs)
+    {
+        this.exhibitor = exhibitor;
+        this.provider = provider;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Return the backups, listing the provider only if the cached list has expired or the config has changed
+     *
+     * @param config provider config
+     * @return backups
+     * @throws Exception errors
+     */
+    public synchronized List<BackupMetaData> getBackups(Map<String, String> config) throws Exception
+    {
+        boolean     isStale = (backups == null) || !config.equals(backupsConfig) || ((System.currentTimeMillis() - refreshedMs) >= ttlMs);
+        return isStale ? refresh(config) : backups;
+    }
+
+    /**
+     * Force a listing of the provider
+     *
+     * @param config provider config
+     * @return backups
+     * @throws Exception errors
+     */
+    public synchronized List<BackupMetaData> refresh(Map<String, String> config) throws Exception
+    {
+        backups = ImmutableList.copyOf(provider.getAvailableBackups(exhibitor, config));
+        backupsConfig = Maps.newHashMap(config);
+        refreshedMs = System.currentTimeMillis();
+        return backups;
+    }
+
+    /**
+     * Record a backup that was uploaded. Older versions of the same log are replaced.
+     *
+     * @param backup the new backup
+     */
+    public synchronized void added(BackupMetaData backup)
+    {
+        if ( backups == null )
+        {
+            return;
+        }
+
+        List<BackupMetaData>        updated = Lists.newArrayList(backups);
+        Iterator<BackupMetaData>    iterator = updated.iterator();
+        while ( iterator.hasNext() )
+        {
+            if ( iterator.next().getName().equals(backup.getName()) )
+            {
+                iterator.remove();
+            }
+        }
+        updated.add(backup);
+        backups = ImmutableList.copyOf(updated);
+    }
+
+    /**
+     * Record a backup that was deleted
+     *
+     * @param backup the deleted backup
+     */
+    public synchronized void removed(BackupMetaData backup)
+    {
+        if ( backups == null )
+        {
+            return;
+        }
+
+        List<BackupMetaData>        updated = Lists.newArrayList(backups);
+        updated.remove(backup);
+        backups = ImmutableList.copyOf(updated);
+    }
+
+    /**
+     * Drop the cached list so that the next {@link #getBackups(Map)} lists the provider
+     */
+    public synchronized void invalidate()
+    {
+        backups = null;
+        backupsConfig = null;
+    }
+}
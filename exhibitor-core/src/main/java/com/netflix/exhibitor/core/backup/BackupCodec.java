@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression formats for backups. Every format starts with a magic header so the codec
+ * of an existing backup is detected from its content - see {@link #newDetectingStream(InputStream)}
+ */
+public enum BackupCodec
+{
+    GZIP()
+    {
+        @Override
+        public OutputStream newCompressingStream(OutputStream out, final int level) throws IOException
+        {
+            return new GZIPOutputStream(out, BUFFER_SIZE)
+            {
+                {
+                    if ( level != DEFAULT_LEVEL )
+                    {
+                        def.setLevel(level);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream newDecompressingStream(InputStream in) throws IOException
+        {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        @Override
+        boolean hasMagic(byte[] header, int length)
+        {
+            return (length >= 2) && ((header[0] & 0xff) == 0x1f) && ((header[1] & 0xff) == 0x8b);
+        }
+    },
+
+    /**
+     * Uses the pure Java LZ4 and xxhash implementations (no native code). Much less CPU than gzip for a lower ratio. The level is ignored.
+     */
+    LZ4()
+    {
+        @Override
+        public OutputStream newCompressingStream(OutputStream out, int level) throws IOException
+        {
+            return new LZ4BlockOutputStream(out, LZ4_BLOCK_SIZE, LZ4Factory.fastestJavaInstance().fastCompressor(), newLz4Checksum(), false);
+        }
+
+        @Override
+        public InputStream newDecompressingStream(InputStream in) throws IOException
+        {
+            return new LZ4BlockInputStream(in, LZ4Factory.fastestJavaInstance().fastDecompressor(), newLz4Checksum());
+        }
+
+        @Override
+        boolean hasMagic(byte[] header, int length)
+        {
+            if ( length < LZ4_MAGIC.length )
+            {
+                return false;
+            }
+            for ( int i = 0; i < LZ4_MAGIC.length; ++i )
+            {
+                if ( header[i] != LZ4_MAGIC[i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    ;
+
+    /**
+     * Level value that means "use the codec's default"
+     */
+    public static final int     DEFAULT_LEVEL = -1;
+
+    private static final int        BUFFER_SIZE = 64 * 1024;
+    private static final int        LZ4_BLOCK_SIZE = 1024 * 1024;
+    private static final byte[]     LZ4_MAGIC = {'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k'};
+    private static final int        MAX_MAGIC_LENGTH = 8;
+    private static final int        LZ4_CHECKSUM_SEED = 0x9747b28c;     // the seed LZ4BlockOutputStream uses by default
+
+    /**
+     * @param out destination for the compressed bytes
+     * @param level compression level or {@link #DEFAULT_LEVEL}
+     * @return compressing stream
+     * @throws IOException errors
+     */
+    public abstract OutputStream    newCompressingStream(OutputStream out, int level) throws IOException;
+
+    /**
+     * @param in compressed bytes
+     * @return decompressing stream
+     * @throws IOException errors
+     */
+    public abstract InputStream     newDecompressingStream(InputStream in) throws IOException;
+
+    abstract boolean                hasMagic(byte[] header, int length);
+
+    /**
+     * Return the codec with the given name (case insensitive). gzip is used for
+     * unknown names and null.
+     *
+     * @param name name
+     * @return codec
+     */
+    public static BackupCodec       fromName(String name)
+    {
+        for ( BackupCodec codec : values() )
+        {
+            if ( codec.name().equalsIgnoreCase((name != null) ? name.trim() : "") )
+            {
+                return codec;
+            }
+        }
+        return GZIP;
+    }
+
+    /**
+     * Return a stream that decompresses a backup written with any codec. Backups
+     * without a known header are treated as gzip (i.e. they'll fail the same way as before).
+     *
+     * @param in backup bytes
+     * @return decompressing stream
+     * @throws IOException errors
+     */
+    public static InputStream       newDetectingStream(InputStream in) throws IOException
+    {
+        BufferedInputStream     bufferedIn = new BufferedInputStream(in, BUFFER_SIZE);
+        byte[]                  header = new byte[MAX_MAGIC_LENGTH];
+        bufferedIn.mark(MAX_MAGIC_LENGTH);
+        int                     length = 0;
+        while ( length < header.length )
+        {
+            int     bytesRead = bufferedIn.read(header, length, header.length - length);
+            if ( bytesRead < 0 )
+            {
+                break;
+            }
+            length += bytesRead;
+        }
+        bufferedIn.reset();
+
+        for ( BackupCodec codec : values() )
+        {
+            if ( codec.hasMagic(header, length) )
+            {
+                return codec.newDecompressingStream(bufferedIn);
+            }
+        }
+        return GZIP.newDecompressingStream(bufferedIn);
+    }
+
+    // the block streams' default checksum comes from XXHashFactory.fastestInstance() which loads the JNI build if it can
+    private static Checksum         newLz4Checksum()
+    {
+        return XXHashFactory.fastestJavaInstance().newStreamingHash32(LZ4_CHECKSUM_SEED).asChecksum();
+    }
+}
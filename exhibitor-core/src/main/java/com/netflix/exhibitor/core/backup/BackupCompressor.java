@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Compresses logs for backup
+ */
+class BackupCompressor
+{
+    private static final int        BUFFER_SIZE = 1024 * 1024;  // 1 MB
+
+    /**
+     * Compress the source into the destination. The destination is closed.
+     *
+     * @param source file to compress
+     * @param destination where to write the compressed bytes
+     * @param codec compression format
+     * @param level compression level or {@link BackupCodec#DEFAULT_LEVEL}
+     * @return CRC32 of the uncompressed source
+     * @throws IOException errors
+     */
+    static long     compress(File source, OutputStream destination, BackupCodec codec, int level) throws IOException
+    {
+        return compress(source, 0, Long.MAX_VALUE, destination, codec, level);
+    }
+
+    /**
+     * Compress a range of the source into the destination. The destination is closed.
+     *
+     * @param source file to compress
+     * @param offset where the range starts
+     * @param length max bytes to compress
+     * @param destination where to write the compressed bytes
+     * @param codec compression format
+     * @param level compression level or {@link BackupCodec#DEFAULT_LEVEL}
+     * @return CRC32 of the uncompressed range
+     * @throws IOException errors
+     */
+    static long     compress(File source, long offset, long length, OutputStream destination, BackupCodec codec, int level) throws IOException
+    {
+        byte[]          buffer = new byte[BUFFER_SIZE];
+
+        CheckedInputStream in = null;
+        OutputStream    out = null;
+        try
+        {
+            FileInputStream     fileIn = new FileInputStream(source);
+            in = new CheckedInputStream(ByteStreams.limit(fileIn, length), new CRC32());
+            ByteStreams.skipFully(fileIn, offset);
+            out = codec.newCompressingStream(destination, level);
+
+            for(;;)
+            {
+                int     bytesRead = in.read(buffer);
+                if ( bytesRead < 0 )
+                {
+                    break;
+                }
+                out.write(buffer, 0, bytesRead);
+            }
+            out.close();
+            out = null;
+
+            return in.getChecksum().getValue();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+            CloseableUtils.closeQuietly((out != null) ? out : destination);
+        }
+    }
+
+    private BackupCompressor()
+    {
+    }
+}
@@ -17,7 +17,12 @@
 package com.netflix.exhibitor.core.backup;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
@@ -26,13 +31,19 @@ import com.netflix.exhibitor.core.activity.QueueGroups;
 import com.netflix.exhibitor.core.activity.RepeatingActivity;
 import com.netflix.exhibitor.core.activity.RepeatingActivityImpl;
 import com.netflix.exhibitor.core.config.ConfigListener;
+import com.netflix.exhibitor.core.config.DefaultProperties;
 import com.netflix.exhibitor.core.config.EncodedConfigParser;
 import com.netflix.exhibitor.core.config.InstanceConfig;
 import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
+import com.netflix.exhibitor.core.index.LogEntryReceiver;
 import com.netflix.exhibitor.core.index.ZooKeeperLogFiles;
+import com.netflix.exhibitor.core.index.ZooKeeperLogParser;
 import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -40,10 +51,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.GZIPInputStream;
 
 public class BackupManager implements Closeable
 {
@@ -51,6 +70,25 @@ public class BackupManager implements Closeable
     private final Optional<BackupProvider> backupProvider;
     private final RepeatingActivity repeatingActivity;
     private final AtomicLong lastRollCheck = new AtomicLong(0);
+    private final AtomicBoolean rollInProgress = new AtomicBoolean(false);
+    private final BackupManifest manifest;
+    private final BackupCatalog catalog;
+
+    private static final String MANIFEST_FILE_NAME = "backup-manifest.properties";
+    private static final int ROLL_BATCH_SIZE = 1000;
+    private static final int CATALOG_TTL_MS = (int)TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
+    private static final int RESTORE_THREAD_QTY = 4;
+    private static final int SNAPSHOT_QUIET_MS = 60 * 1000; // 1 minute
+
+    public static final BackupConfigSpec CONFIG_CODEC = new BackupConfigSpec("codec", "Compression", "Compression for new backups: gzip or lz4. lz4 uses much less CPU on the ZooKeeper host but compresses less. Existing backups are restored whatever their compression.", "gzip", BackupConfigSpec.Type.STRING);
+    public static final BackupConfigSpec CONFIG_GZIP_LEVEL = new BackupConfigSpec("gzip-level", "Gzip Level", "gzip compression level from 1 (fastest) to 9 (smallest) or -1 for the default", Integer.toString(BackupCodec.DEFAULT_LEVEL), BackupConfigSpec.Type.INTEGER);
+    public static final BackupConfigSpec CONFIG_SNAPSHOTS = new BackupConfigSpec("snapshots", "Back Up Snapshots", "1 to back up ZooKeeper snapshots as well as transaction logs, 0 for logs only. A restore starts from the nearest backed up snapshot so it doesn't have to replay the whole history.", "1", BackupConfigSpec.Type.INTEGER);
+    public static final BackupConfigSpec CONFIG_LOG_SEGMENTS = new BackupConfigSpec("log-segments", "Incremental Log Backups", "1 to back up only the transactions appended to a log since its last backup (as numbered segments), 0 to back up the whole log each time it changes", "1", BackupConfigSpec.Type.INTEGER);
+
+    /**
+     * Backup configs that apply to every provider
+     */
+    public static final List<BackupConfigSpec> COMMON_CONFIGS = ImmutableList.of(CONFIG_CODEC, CONFIG_GZIP_LEVEL, CONFIG_SNAPSHOTS, CONFIG_LOG_SEGMENTS);
 
     /**
      * @param exhibitor main instance
@@ -60,6 +98,13 @@ public class BackupManager implements Closeable
     {
         this.exhibitor = exhibitor;
         this.backupProvider = Optional.fromNullable(backupProvider);
+        File    stateDirectory = getStateDirectory(exhibitor);
+        manifest = new BackupManifest((stateDirectory != null) ? new File(stateDirectory, MANIFEST_FILE_NAME) : null);
+        if ( (backupProvider != null) && (stateDirectory == null) )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Neither the backup state directory nor the log index directory is set. The backup manifest is kept in memory only, so unchanged files are checked again after a restart.");
+        }
+        catalog = (backupProvider != null) ? new BackupCatalog(exhibitor, backupProvider, CATALOG_TTL_MS) : null;
 
         final Activity activity = new Activity()
         {
@@ -138,7 +183,8 @@ public class BackupManager implements Closeable
     }
 
     /**
-     * Return list of available backups
+     * Return list of available backups. The list is cached - see {@link #refreshAvailableBackups()}. A log that
+     * was backed up as segments is listed once with the date of its newest segment.
      *
      * @return backups
      * @throws Exception errors
@@ -146,11 +192,24 @@ public class BackupManager implements Closeable
     public List<BackupMetaData> getAvailableBackups() throws Exception
     {
         Map<String, String>       config = getBackupConfig();
-        return backupProvider.get().getAvailableBackups(exhibitor, config);
+        return BackupSegments.collapse(catalog.getBackups(config));
+    }
+
+    /**
+     * List the provider now rather than waiting for the cached list to expire
+     *
+     * @return backups
+     * @throws Exception errors
+     */
+    public List<BackupMetaData> refreshAvailableBackups() throws Exception
+    {
+        Map<String, String>       config = getBackupConfig();
+        return BackupSegments.collapse(catalog.refresh(config));
     }
 
     /**
-     * Return a stream for the specified backup
+     * Return a stream for the specified backup as stored, i.e. compressed. For a log that was backed up
+     * as segments this is the first segment only - use {@link #openBackup(BackupMetaData)} instead.
      *
      * @param metaData the backup to get
      * @return the stream or null if the stream doesn't exist
@@ -158,7 +217,28 @@ public class BackupManager implements Closeable
      */
     public BackupStream getBackupStream(BackupMetaData metaData) throws Exception
     {
-        return backupProvider.get().getBackupStream(exhibitor, metaData, getBackupConfig());
+        Map<String, String>     config = getBackupConfig();
+        return backupProvider.get().getBackupStream(exhibitor, getStoredBackups(metaData, config).get(0), config);
+    }
+
+    /**
+     * Return the uncompressed content of the specified backup. The segments of a log are read
+     * one after the other as if they were a single backup.
+     *
+     * @param metaData the backup to get
+     * @return the stream or null if the backup doesn't exist
+     * @throws Exception errors
+     */
+    public InputStream openBackup(BackupMetaData metaData) throws Exception
+    {
+        Map<String, String>     config = getBackupConfig();
+        List<BackupMetaData>    storedBackups = getStoredBackups(metaData, config);
+        BackupStream            first = backupProvider.get().getBackupStream(exhibitor, storedBackups.get(0), config);
+        if ( first == null )
+        {
+            return null;
+        }
+        return new SegmentsInputStream(exhibitor, backupProvider.get(), first, storedBackups.subList(1, storedBackups.size()), config);
     }
 
     /**
@@ -178,7 +258,7 @@ public class BackupManager implements Closeable
      */
     public List<BackupConfigSpec> getConfigSpecs()
     {
-        return backupProvider.get().getConfigs();
+        return ImmutableList.<BackupConfigSpec>builder().addAll(backupProvider.get().getConfigs()).addAll(COMMON_CONFIGS).build();
     }
 
     /**
@@ -190,31 +270,178 @@ public class BackupManager implements Closeable
      */
     public void restore(BackupMetaData backup, File destinationFile) throws Exception
     {
-        File                    tempFile = File.createTempFile("exhibitor-backup", ".tmp");
-        OutputStream            out = new FileOutputStream(tempFile);
-        InputStream in = null;
+        // decompresses straight from the provider - no temp file
+        InputStream     in = openBackup(backup);
+        if ( in == null )
+        {
+            throw new IOException("Backup not found: " + backup);
+        }
+        try
+        {
+            OutputStream    destination = new FileOutputStream(destinationFile);
+            try
+            {
+                ByteStreams.copy(in, destination);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(destination);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Restore the backups needed to bring ZooKeeper to the given zxid into the given directory: the
+     * nearest snapshot known to have finished before the zxid plus the logs after it. The last log is
+     * truncated so that it ends at the zxid. The directory should be empty - once the restore returns its
+     * contents can replace the version-2 directory of a stopped ZooKeeper. If only a snapshot that may
+     * include later transactions is available, it's used and {@link RestorePlan#isSnapshotFuzzy()} is set.
+     *
+     * @param zxid target zxid
+     * @param destinationDirectory where to put the files
+     * @return the restored backups
+     * @throws Exception errors
+     */
+    public RestorePlan restoreToZxid(long zxid, File destinationDirectory) throws Exception
+    {
+        RestorePlan     plan = RestorePlan.forZxid(refreshAvailableBackups(), zxid);
+        if ( plan.isSnapshotFuzzy() )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Restore to zxid " + Long.toHexString(zxid) + ": no snapshot is known to have finished before it. " + plan.getSnapshot().getName() + " is used and may include later transactions.");
+        }
+        restore(plan, destinationDirectory);
+        return plan;
+    }
+
+    /**
+     * Same as {@link #restoreToZxid(long, File)} but restores to the last transaction at or before the given time
+     *
+     * @param timeMs target time
+     * @param destinationDirectory where to put the files
+     * @return the restored backups
+     * @throws Exception errors
+     */
+    public RestorePlan restoreToTime(long timeMs, File destinationDirectory) throws Exception
+    {
+        RestorePlan     plan = RestorePlan.forTime(refreshAvailableBackups(), timeMs);
+        restore(plan, destinationDirectory);
+        return plan;
+    }
+
+    private void restore(RestorePlan plan, final File destinationDirectory) throws Exception
+    {
+        if ( plan.getLogs().size() == 0 )
+        {
+            throw new Exception("There are no backed up logs for: " + plan);
+        }
+        if ( !destinationDirectory.isDirectory() && !destinationDirectory.mkdirs() )
+        {
+            throw new IOException("Could not make: " + destinationDirectory);
+        }
+
+        exhibitor.getLog().add(ActivityLog.Type.INFO, "Restoring " + plan.getBackups().size() + " backups to: " + destinationDirectory);
+
+        ExecutorService         service = Executors.newFixedThreadPool(RESTORE_THREAD_QTY, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("BackupManager-restore-%d").build());
+        try
+        {
+            List<Future<Void>>  futures = Lists.newArrayList();
+            for ( final BackupMetaData backup : plan.getBackups() )
+            {
+                Callable<Void>  restorer = new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        restore(backup, new File(destinationDirectory, backup.getName()));
+                        return null;
+                    }
+                };
+                futures.add(service.submit(restorer));
+            }
+            for ( Future<Void> future : futures )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            service.shutdownNow();
+        }
+
+        BackupMetaData      lastLog = plan.getLogs().get(plan.getLogs().size() - 1);
+        truncateLog(new File(destinationDirectory, lastLog.getName()), plan.getTargetZxid(), plan.getTargetTimeMs());
+
+        exhibitor.getLog().add(ActivityLog.Type.INFO, "Restore complete: " + plan);
+    }
+
+    // drops the transactions after the target so that ZooKeeper replays up to the target and no further
+    private void truncateLog(File logFile, final long targetZxid, final long targetTimeMs) throws Exception
+    {
+        final AtomicLong            keepLength = new AtomicLong(-1);
+        InputStream                 in = new BufferedInputStream(new FileInputStream(logFile));
         try
         {
-            backupProvider.get().downloadBackup(exhibitor, backup, out, getBackupConfig());
-            CloseableUtils.closeQuietly(out);
-            out = null;
+            final ZooKeeperLogParser    parser = new ZooKeeperLogParser(in);
+            if ( !parser.isValid() )
+            {
+                throw new IOException("Not a transaction log: " + logFile);
+            }
 
-            out = new FileOutputStream(destinationFile);
-            in = new GZIPInputStream(new FileInputStream(tempFile));
+            final long                  headerLength = parser.getLastEntryEndOffset();
+            try
+            {
+                parser.parse
+                (
+                    new LogEntryReceiver()
+                    {
+                        private long    lastEndOffset = headerLength;
 
-            ByteStreams.copy(in, out);
+                        @Override
+                        public void receiveEntry(TxnHeader header, Record record) throws Exception
+                        {
+                            if ( (header.getZxid() > targetZxid) || (header.getTime() > targetTimeMs) )
+                            {
+                                keepLength.set(lastEndOffset);
+                                throw new TargetReachedException();
+                            }
+                            lastEndOffset = parser.getLastEntryEndOffset();
+                        }
+                    }
+                );
+            }
+            catch ( TargetReachedException dummy )
+            {
+                // done
+            }
         }
         finally
         {
             CloseableUtils.closeQuietly(in);
-            CloseableUtils.closeQuietly(out);
-            if ( !tempFile.delete() )
+        }
+
+        if ( keepLength.get() >= 0 )
+        {
+            RandomAccessFile    file = new RandomAccessFile(logFile, "rw");
+            try
+            {
+                file.setLength(keepLength.get());
+            }
+            finally
             {
-                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file (for restore): " + tempFile);
+                CloseableUtils.closeQuietly(file);
             }
         }
     }
 
+    private static class TargetReachedException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
     private void doBackup() throws Exception
     {
         if ( !exhibitor.getControlPanelValues().isSet(ControlPanelTypes.BACKUPS) )
@@ -236,48 +463,313 @@ public class BackupManager implements Closeable
             return;
         }
 
-        for ( File f : zooKeeperLogFiles.getPaths() )
+        List<File>          files = Lists.newArrayList(zooKeeperLogFiles.getPaths());
+        if ( isEnabled(config, CONFIG_SNAPSHOTS) )
         {
-            TempCompressedFile      tempCompressedFile = new TempCompressedFile(f);
-            try
+            for ( File f : zooKeeperLogFiles.getSnapshotPaths() )
             {
-                tempCompressedFile.compress();
-
-                BackupMetaData          metaData = new BackupMetaData(f.getName(), f.lastModified());
-                BackupProvider.UploadResult result = provider.uploadBackup(exhibitor, metaData, tempCompressedFile.getTempFile(), config);
-                switch ( result )
+                // ZooKeeper writes snapshots in place - wait until it has finished with this one
+                if ( (System.currentTimeMillis() - f.lastModified()) >= SNAPSHOT_QUIET_MS )
                 {
-                    case SUCCEEDED:
-                    {
-                        exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Backing up: " + f);
-                        break;
-                    }
+                    files.add(f);
+                }
+            }
+        }
 
-                    case DUPLICATE:
-                    {
-                        // ignore
-                        break;
-                    }
+        boolean             useSegments = isEnabled(config, CONFIG_LOG_SEGMENTS);
+        List<String>        names = Lists.newArrayList();
+        for ( File f : files )
+        {
+            names.add(f.getName());
+            if ( manifest.isBackedUp(f, config) )
+            {
+                continue;
+            }
 
-                    case REPLACED_OLD_VERSION:
-                    {
-                        exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Updated back up for: " + f);
-                        break;
-                    }
+            BackupProvider.UploadResult result;
+            if ( useSegments && ZooKeeperLogFiles.isLogName(f.getName()) )
+            {
+                result = backupLogSegment(provider, f, config);
+            }
+            else
+            {
+                long                    lastModified = f.lastModified();
+                long                    length = f.length();
+                BackupMetaData          metaData = new BackupMetaData(f.getName(), lastModified);
+                result = (provider instanceof StreamingBackupProvider) ? streamBackup((StreamingBackupProvider)provider, f, metaData, length, config) : uploadBackup(provider, f, metaData, length, config);
+                if ( result != BackupProvider.UploadResult.FAILED )
+                {
+                    catalog.added(metaData);
                 }
             }
-            finally
+            switch ( result )
             {
-                if ( !tempCompressedFile.getTempFile().delete() )
+                case SUCCEEDED:
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Backing up: " + f);
+                    break;
+                }
+
+                case DUPLICATE:
                 {
-                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file: " + tempCompressedFile.getTempFile());
+                    // ignore
+                    break;
+                }
+
+                case REPLACED_OLD_VERSION:
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Updated back up for: " + f);
+                    break;
                 }
             }
         }
+        manifest.retainAll(names);
+        saveManifest();
 
         doRoll(config);
     }
 
+    // backs up the transactions appended to the log since its last segment as a new segment
+    private BackupProvider.UploadResult backupLogSegment(BackupProvider provider, File f, Map<String, String> config) throws Exception
+    {
+        long                        lastModified = f.lastModified();
+        BackupManifest.Segments     segments = manifest.getSegments(f, config);
+        if ( (segments != null) && (segments.getLastModified() == lastModified) )
+        {
+            return BackupProvider.UploadResult.DUPLICATE;
+        }
+
+        long        start = (segments != null) ? segments.getOffset() : 0;
+        long        end = findEndOfEntries(f, start);
+        if ( end < 0 )
+        {
+            // the log is shorter than what was backed up - it's not the same log anymore so start again
+            segments = null;
+            start = 0;
+            end = findEndOfEntries(f, start);
+            if ( end < 0 )
+            {
+                return BackupProvider.UploadResult.FAILED;
+            }
+        }
+
+        int         segmentNumber = (segments != null) ? segments.getCount() : 0;
+        if ( end <= start )
+        {
+            // nothing new - just a touch or a partially written transaction
+            if ( segments != null )
+            {
+                manifest.segmentsBackedUp(f, new BackupManifest.Segments(lastModified, segments.getCount(), segments.getOffset(), segments.getNewestDate()));
+            }
+            return BackupProvider.UploadResult.DUPLICATE;
+        }
+
+        // segments must be newer than the segment before them - see BackupSegments.getSegments()
+        long                        date = (segments != null) ? Math.max(lastModified, segments.getNewestDate() + 1) : lastModified;
+        BackupMetaData              metaData = new BackupMetaData(BackupSegments.segmentName(f.getName(), segmentNumber), date);
+        BackupProvider.UploadResult result = uploadSegment(provider, f, start, end - start, metaData, config);
+        if ( result != BackupProvider.UploadResult.FAILED )
+        {
+            manifest.segmentsBackedUp(f, new BackupManifest.Segments(lastModified, segmentNumber + 1, end, date));
+            catalog.added(metaData);
+        }
+        return result;
+    }
+
+    // returns the offset just past the last complete transaction or -1 if the log doesn't reach the given offset
+    private long findEndOfEntries(File f, long offset) throws Exception
+    {
+        InputStream     in = new BufferedInputStream(new FileInputStream(f));
+        try
+        {
+            ZooKeeperLogParser  parser = new ZooKeeperLogParser(in);
+            if ( !parser.isValid() || ((offset > parser.getLastEntryEndOffset()) && !parser.skipTo(offset)) )
+            {
+                return -1;
+            }
+
+            try
+            {
+                parser.parse
+                (
+                    new LogEntryReceiver()
+                    {
+                        @Override
+                        public void receiveEntry(TxnHeader header, Record record) throws Exception
+                        {
+                            // only the offsets are needed
+                        }
+                    }
+                );
+            }
+            catch ( Exception e )
+            {
+                // a transaction that ZooKeeper is still writing - it'll be in the next segment
+            }
+            return Math.max(parser.getLastEntryEndOffset(), offset);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    private BackupProvider.UploadResult uploadSegment(BackupProvider provider, File f, long offset, long length, BackupMetaData metaData, Map<String, String> config) throws Exception
+    {
+        if ( provider instanceof StreamingBackupProvider )
+        {
+            BackupUpload        upload = ((StreamingBackupProvider)provider).startUpload(exhibitor, metaData, catalog.getBackups(config), config);
+            if ( upload == null )
+            {
+                return BackupProvider.UploadResult.DUPLICATE;
+            }
+
+            try
+            {
+                BackupCompressor.compress(f, offset, length, upload.getStream(), getCodec(config), getLevel(config));
+            }
+            catch ( Exception e )
+            {
+                upload.abort();
+                throw e;
+            }
+            return upload.complete();
+        }
+
+        TempCompressedFile      tempCompressedFile = new TempCompressedFile(f, offset, length, getCodec(config), getLevel(config));
+        try
+        {
+            tempCompressedFile.compress();
+            return provider.uploadBackup(exhibitor, metaData, tempCompressedFile.getTempFile(), config);
+        }
+        finally
+        {
+            if ( !tempCompressedFile.getTempFile().delete() )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file: " + tempCompressedFile.getTempFile());
+            }
+        }
+    }
+
+    // the segments of a log or the backup itself
+    private List<BackupMetaData> getStoredBackups(BackupMetaData backup, Map<String, String> config) throws Exception
+    {
+        List<BackupMetaData>    storedBackups = catalog.getBackups(config);
+        if ( !storedBackups.contains(backup) )
+        {
+            List<BackupMetaData>    segments = BackupSegments.getSegments(storedBackups, backup.getName());
+            if ( segments.size() > 0 )
+            {
+                return segments;
+            }
+        }
+        return ImmutableList.of(backup);
+    }
+
+    // compresses straight into the provider - no temp file
+    private BackupProvider.UploadResult streamBackup(StreamingBackupProvider provider, File f, BackupMetaData metaData, long length, Map<String, String> config) throws Exception
+    {
+        BackupUpload        upload = provider.startUpload(exhibitor, metaData, catalog.getBackups(config), config);
+        if ( upload == null )
+        {
+            manifest.backedUp(f, metaData.getModifiedDate(), length, BackupManifest.checksum(f));
+            return BackupProvider.UploadResult.DUPLICATE;
+        }
+
+        long                checksum;
+        try
+        {
+            checksum = BackupCompressor.compress(f, upload.getStream(), getCodec(config), getLevel(config));
+        }
+        catch ( Exception e )
+        {
+            upload.abort();
+            throw e;
+        }
+
+        BackupProvider.UploadResult result = upload.complete();
+
+        if ( result != BackupProvider.UploadResult.FAILED )
+        {
+            manifest.backedUp(f, metaData.getModifiedDate(), length, checksum);
+        }
+        return result;
+    }
+
+    private BackupProvider.UploadResult uploadBackup(BackupProvider provider, File f, BackupMetaData metaData, long length, Map<String, String> config) throws Exception
+    {
+        TempCompressedFile      tempCompressedFile = new TempCompressedFile(f, getCodec(config), getLevel(config));
+        try
+        {
+            tempCompressedFile.compress();
+
+            BackupProvider.UploadResult result = provider.uploadBackup(exhibitor, metaData, tempCompressedFile.getTempFile(), config);
+            if ( result != BackupProvider.UploadResult.FAILED )
+            {
+                manifest.backedUp(f, metaData.getModifiedDate(), length, tempCompressedFile.getChecksum());
+            }
+            return result;
+        }
+        finally
+        {
+            if ( !tempCompressedFile.getTempFile().delete() )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete temp file: " + tempCompressedFile.getTempFile());
+            }
+        }
+    }
+
+    private boolean isEnabled(Map<String, String> config, BackupConfigSpec spec)
+    {
+        String      value = config.get(spec.getKey());
+        return (value == null) || (value.trim().length() == 0) || (DefaultProperties.asInt(value.trim()) != 0);
+    }
+
+    private BackupCodec getCodec(Map<String, String> config)
+    {
+        return BackupCodec.fromName(config.get(CONFIG_CODEC.getKey()));
+    }
+
+    private int getLevel(Map<String, String> config)
+    {
+        String      level = config.get(CONFIG_GZIP_LEVEL.getKey());
+        return ((level != null) && (level.trim().length() > 0)) ? DefaultProperties.asInt(level.trim()) : BackupCodec.DEFAULT_LEVEL;
+    }
+
+    private void saveManifest()
+    {
+        try
+        {
+            manifest.save();
+        }
+        catch ( Exception e )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not save the backup manifest", e);
+        }
+    }
+
+    /**
+     * Return the directory for local backup state (the manifest, upload progress, etc.):
+     * {@link StringConfigs#BACKUP_STATE_DIRECTORY} or, if that isn't set, {@link StringConfigs#LOG_INDEX_DIRECTORY}
+     *
+     * @param exhibitor main instance
+     * @return directory or null if neither is set
+     */
+    public static File getStateDirectory(Exhibitor exhibitor)
+    {
+        InstanceConfig  config = exhibitor.getConfigManager().getConfig();
+        String          path = config.getString(StringConfigs.BACKUP_STATE_DIRECTORY);
+        if ( (path == null) || (path.trim().length() == 0) )
+        {
+            path = config.getString(StringConfigs.LOG_INDEX_DIRECTORY);
+        }
+        if ( (path == null) || (path.trim().length() == 0) )
+        {
+            return null;
+        }
+        return new File(path);
+    }
+
     private Map<String, String> getBackupConfig()
     {
         String              backupExtra = exhibitor.getConfigManager().getConfig().getString(StringConfigs.BACKUP_EXTRA);
@@ -295,17 +787,138 @@ public class BackupManager implements Closeable
 
         exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Checking for elapsed backups");
 
-        List<BackupMetaData>        availableBackups = backupProvider.get().getAvailableBackups(exhibitor, config);
+        // the roll is infrequent - a good time to pick up changes made outside of this instance
+        List<BackupMetaData>        availableBackups = catalog.refresh(config);
+        List<BackupMetaData>        expiredBackups = Lists.newArrayList();
+        Set<String>                 remainingNames = Sets.newHashSet();
+
+        // the segments of a log expire together, when the newest one does
+        Map<String, Long>           newestSegmentDates = Maps.newHashMap();
+        for ( BackupMetaData backup : availableBackups )
+        {
+            if ( BackupSegments.isSegment(backup.getName()) )
+            {
+                String      logName = BackupSegments.getLogName(backup.getName());
+                Long        newest = newestSegmentDates.get(logName);
+                newestSegmentDates.put(logName, (newest != null) ? Math.max(newest, backup.getModifiedDate()) : backup.getModifiedDate());
+            }
+        }
+
         for ( BackupMetaData backup : availableBackups )
         {
-            long        age = System.currentTimeMillis() - backup.getModifiedDate();
+            String      logName = BackupSegments.getLogName(backup.getName());
+            long        modifiedDate = BackupSegments.isSegment(backup.getName()) ? newestSegmentDates.get(logName) : backup.getModifiedDate();
+            long        age = System.currentTimeMillis() - modifiedDate;
             if ( age > exhibitor.getConfigManager().getConfig().getInt(IntConfigs.BACKUP_MAX_STORE_MS) )
             {
-                exhibitor.getLog().add(ActivityLog.Type.DEBUG, "Cleaning backup: " + backup);
-                backupProvider.get().deleteBackup(exhibitor, backup, config);
+                expiredBackups.add(backup);
+            }
+            else
+            {
+                remainingNames.add(logName);
             }
         }
+        keepBaseSnapshot(availableBackups, expiredBackups, remainingNames);
+
+        // reconcile with what's actually stored so that logs whose backups were removed get backed up again
+        manifest.retainAll(remainingNames);
+        saveManifest();
+
+        if ( (expiredBackups.size() > 0) && rollInProgress.compareAndSet(false, true) )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Cleaning " + expiredBackups.size() + " elapsed backups");
+            exhibitor.getActivityQueue().add(QueueGroups.IO, new RollBatchActivity(expiredBackups, 0, config));
+        }
 
         lastRollCheck.set(System.currentTimeMillis());
     }
+
+    // restores that start with the oldest remaining log need the snapshot before it - keep it until that log expires
+    private void keepBaseSnapshot(List<BackupMetaData> availableBackups, List<BackupMetaData> expiredBackups, Set<String> remainingNames)
+    {
+        long        oldestLogZxid = Long.MAX_VALUE;
+        for ( String name : remainingNames )
+        {
+            long        zxid = ZooKeeperLogFiles.getZxid(name);
+            if ( ZooKeeperLogFiles.isLogName(name) && (zxid >= 0) )
+            {
+                oldestLogZxid = Math.min(oldestLogZxid, zxid);
+            }
+        }
+        if ( oldestLogZxid == Long.MAX_VALUE )
+        {
+            return;
+        }
+
+        Set<String>     availableNames = Sets.newHashSet();
+        for ( BackupMetaData backup : availableBackups )
+        {
+            availableNames.add(BackupSegments.getLogName(backup.getName()));
+        }
+        String          snapshotName = RestorePlan.getBaseSnapshotName(availableNames, oldestLogZxid);
+        if ( snapshotName != null )
+        {
+            Iterator<BackupMetaData>    iterator = expiredBackups.iterator();
+            while ( iterator.hasNext() )
+            {
+                if ( iterator.next().getName().equals(snapshotName) )
+                {
+                    iterator.remove();
+                }
+            }
+            remainingNames.add(snapshotName);
+        }
+    }
+
+    // Deletes one batch of elapsed backups and then queues the next. Each batch is a separate activity so that
+    // backups queued on the IO group get to run in between
+    private class RollBatchActivity implements Activity
+    {
+        private final List<BackupMetaData> expiredBackups;
+        private final int offset;
+        private final Map<String, String> config;
+
+        private RollBatchActivity(List<BackupMetaData> expiredBackups, int offset, Map<String, String> config)
+        {
+            this.expiredBackups = expiredBackups;
+            this.offset = offset;
+            this.config = config;
+        }
+
+        @Override
+        public void completed(boolean wasSuccessful)
+        {
+        }
+
+        @Override
+        public Boolean call() throws Exception
+        {
+            int         nextOffset = Math.min(offset + ROLL_BATCH_SIZE, expiredBackups.size());
+            try
+            {
+                List<BackupMetaData>    deleted = backupProvider.get().deleteBackups(exhibitor, expiredBackups.subList(offset, nextOffset), config);
+                for ( BackupMetaData backup : deleted )
+                {
+                    catalog.removed(backup);
+                }
+                exhibitor.getLog().add(ActivityLog.Type.INFO, "Cleaned elapsed backups: " + nextOffset + " of " + expiredBackups.size() + ((deleted.size() < (nextOffset - offset)) ? (" (" + (nextOffset - offset - deleted.size()) + " failed in the last batch)") : ""));
+            }
+            catch ( Exception e )
+            {
+                rollInProgress.set(false);
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Cleaning elapsed backups", e);
+                return false;
+            }
+
+            if ( nextOffset < expiredBackups.size() )
+            {
+                exhibitor.getActivityQueue().add(QueueGroups.IO, new RollBatchActivity(expiredBackups, nextOffset, config));
+            }
+            else
+            {
+                rollInProgress.set(false);
+            }
+            return true;
+        }
+    }
 }
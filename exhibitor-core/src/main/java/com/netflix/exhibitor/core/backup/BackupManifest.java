@@ -0,0 +1,332 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Maps;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Local record of the logs that have already been backed up so that unchanged logs
+ * don't have to be compressed and sent to the backup provider only to be found to be
+ * duplicates. The manifest is cleared if the backup config changes.
+ */
+class BackupManifest
+{
+    private final File                  file;
+    private final Map<String, Entry>    entries = Maps.newHashMap();
+    private final Map<String, Segments> segments = Maps.newHashMap();
+    private String                      configKey = "";
+    private boolean                     isLoaded = false;
+
+    private static final String     PROPERTY_CONFIG = "config";
+    private static final String     PROPERTY_ENTRY_PREFIX = "entry.";
+    private static final String     PROPERTY_SEGMENTS_PREFIX = "segments.";
+    private static final String     SEPARATOR = ",";
+
+    private static final int        BUFFER_SIZE = 64 * 1024;
+
+    private static class Entry
+    {
+        private final long      lastModified;
+        private final long      length;
+        private final long      checksum;
+
+        private Entry(long lastModified, long length, long checksum)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * How much of a log has been backed up as segments - see {@link BackupSegments}
+     */
+    static class Segments
+    {
+        private final long      lastModified;
+        private final int       count;
+        private final long      offset;
+        private final long      newestDate;
+
+        Segments(long lastModified, int count, long offset, long newestDate)
+        {
+            this.lastModified = lastModified;
+            this.count = count;
+            this.offset = offset;
+            this.newestDate = newestDate;
+        }
+
+        /**
+         * @return modified date of the log when the last segment was cut
+         */
+        long getLastModified()
+        {
+            return lastModified;
+        }
+
+        /**
+         * @return number of segments backed up
+         */
+        int getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the offset in the log where the next segment starts
+         */
+        long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * @return modified date of the newest segment's backup
+         */
+        long getNewestDate()
+        {
+            return newestDate;
+        }
+    }
+
+    /**
+     * @param file where to store the manifest or null to only keep it in memory
+     */
+    BackupManifest(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Return true if the given file has already been backed up with the given config. If the
+     * modified date changed but not the length, the file's checksum is compared which is much cheaper
+     * than compressing it.
+     *
+     * @param f log file
+     * @param config backup config
+     * @return true if the file doesn't need to be backed up
+     * @throws Exception errors
+     */
+    synchronized boolean        isBackedUp(File f, Map<String, String> config) throws Exception
+    {
+        load(config);
+
+        Entry       entry = entries.get(f.getName());
+        if ( entry == null )
+        {
+            return false;
+        }
+
+        long        lastModified = f.lastModified();
+        long        length = f.length();
+        if ( entry.length != length )
+        {
+            return false;
+        }
+        if ( entry.lastModified == lastModified )
+        {
+            return true;
+        }
+
+        if ( checksum(f) == entry.checksum )
+        {
+            entries.put(f.getName(), new Entry(lastModified, length, entry.checksum));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record that the file has been backed up
+     *
+     * @param f log file
+     * @param lastModified modified date of the file before it was read
+     * @param length length of the file before it was read
+     * @param checksum CRC32 of the file's content
+     */
+    synchronized void           backedUp(File f, long lastModified, long length, long checksum)
+    {
+        entries.put(f.getName(), new Entry(lastModified, length, checksum));
+    }
+
+    /**
+     * Return how much of the given log has been backed up as segments
+     *
+     * @param f log file
+     * @param config backup config
+     * @return segments or null if none have been backed up
+     * @throws Exception errors
+     */
+    synchronized Segments       getSegments(File f, Map<String, String> config) throws Exception
+    {
+        load(config);
+        return segments.get(f.getName());
+    }
+
+    /**
+     * Record the segments backed up for the given log
+     *
+     * @param f log file
+     * @param newSegments the new state
+     */
+    synchronized void           segmentsBackedUp(File f, Segments newSegments)
+    {
+        segments.put(f.getName(), newSegments);
+    }
+
+    /**
+     * Remove entries for logs that aren't in the given set
+     *
+     * @param names names to keep
+     */
+    synchronized void           retainAll(Collection<String> names)
+    {
+        entries.keySet().retainAll(names);
+        segments.keySet().retainAll(names);
+    }
+
+    synchronized void           save() throws Exception
+    {
+        if ( (file == null) || !isLoaded )
+        {
+            return;
+        }
+
+        Properties      properties = new Properties();
+        properties.setProperty(PROPERTY_CONFIG, configKey);
+        for ( Map.Entry<String, Entry> mapEntry : entries.entrySet() )
+        {
+            Entry       entry = mapEntry.getValue();
+            properties.setProperty(PROPERTY_ENTRY_PREFIX + mapEntry.getKey(), entry.lastModified + SEPARATOR + entry.length + SEPARATOR + entry.checksum);
+        }
+        for ( Map.Entry<String, Segments> mapEntry : segments.entrySet() )
+        {
+            Segments    entry = mapEntry.getValue();
+            properties.setProperty(PROPERTY_SEGMENTS_PREFIX + mapEntry.getKey(), entry.lastModified + SEPARATOR + entry.count + SEPARATOR + entry.offset + SEPARATOR + entry.newestDate);
+        }
+
+
+        PropertiesFile.save(properties, file);
+    }
+
+    /**
+     * Compute the checksum recorded via {@link #backedUp(File, long, long, long)}
+     *
+     * @param f file
+     * @return CRC32
+     * @throws IOException errors
+     */
+    static long     checksum(File f) throws IOException
+    {
+        CheckedInputStream  in = new CheckedInputStream(new FileInputStream(f), new CRC32());
+        try
+        {
+            byte[]      buffer = new byte[BUFFER_SIZE];
+            //noinspection StatementWithEmptyBody
+            while ( in.read(buffer) >= 0 )
+            {
+                // just consuming
+            }
+            return in.getChecksum().getValue();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    private void    load(Map<String, String> config) throws Exception
+    {
+        String      newConfigKey = Integer.toHexString(config.toString().hashCode());
+        if ( !isLoaded )
+        {
+            isLoaded = true;
+            if ( (file != null) && file.exists() )
+            {
+                read();
+            }
+        }
+
+        if ( !configKey.equals(newConfigKey) )
+        {
+            // a different destination - nothing is known to be backed up there
+            entries.clear();
+            segments.clear();
+            configKey = newConfigKey;
+        }
+    }
+
+    private void    read() throws Exception
+    {
+        Properties      properties = new Properties();
+        InputStream     in = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            properties.load(in);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+
+        configKey = properties.getProperty(PROPERTY_CONFIG, "");
+        for ( String name : properties.stringPropertyNames() )
+        {
+            if ( name.startsWith(PROPERTY_ENTRY_PREFIX) )
+            {
+                String[]    parts = properties.getProperty(name).split(SEPARATOR);
+                if ( parts.length == 3 )
+                {
+                    try
+                    {
+                        entries.put(name.substring(PROPERTY_ENTRY_PREFIX.length()), new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                    }
+                    catch ( NumberFormatException ignore )
+                    {
+                        // ignore
+                    }
+                }
+            }
+            else if ( name.startsWith(PROPERTY_SEGMENTS_PREFIX) )
+            {
+                String[]    parts = properties.getProperty(name).split(SEPARATOR);
+                if ( parts.length == 4 )
+                {
+                    try
+                    {
+                        segments.put(name.substring(PROPERTY_SEGMENTS_PREFIX.length()), new Segments(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                    }
+                    catch ( NumberFormatException ignore )
+                    {
+                        // ignore
+                    }
+                }
+            }
+        }
+    }
+}
@@ -82,6 +82,18 @@ public interface BackupProvider
      */
     public void     deleteBackup(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception;
 
+    /**
+     * Delete a group of backups. Providers should delete them in as few round trips as they can.
+     * Failures of individual backups are logged and don't stop the others from being deleted.
+     *
+     * @param exhibitor instance
+     * @param backups backups to delete
+     * @param configValues values for provider-specific config
+     * @return the backups that were deleted
+     * @throws Exception any errors
+     */
+    public List<BackupMetaData> deleteBackups(Exhibitor exhibitor, List<BackupMetaData> backups, Map<String, String> configValues) throws Exception;
+
     /**
      * Download a backed-up object
      *
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     A log that is still being written is backed up as numbered segments: segment 0 holds the
+ *     log from the start up to the last complete transaction and each later segment holds the
+ *     transactions appended since the previous one. Each segment is an ordinary backup
+ *     (compressed on its own) named <code>&lt;log name&gt;.segment-&lt;n&gt;</code>.
+ * </p>
+ *
+ * <p>
+ *     The segments of a log are seen from the outside as a single backup with the log's name and
+ *     the modified date of its newest segment - see {@link #collapse(List)}.
+ * </p>
+ */
+public class BackupSegments
+{
+    private static final String     SEGMENT_SEPARATOR = ".segment-";
+
+    /**
+     * @param logName the log's name
+     * @param segmentNumber segment number (0 based)
+     * @return name of the segment's backup
+     */
+    public static String        segmentName(String logName, int segmentNumber)
+    {
+        return logName + SEGMENT_SEPARATOR + segmentNumber;
+    }
+
+    /**
+     * @param name backup name
+     * @return true if the backup is a segment of a log
+     */
+    public static boolean       isSegment(String name)
+    {
+        return getSegmentNumber(name) >= 0;
+    }
+
+    /**
+     * @param name backup name
+     * @return the name of the log for segments, the name itself otherwise
+     */
+    public static String        getLogName(String name)
+    {
+        return isSegment(name) ? name.substring(0, name.lastIndexOf(SEGMENT_SEPARATOR)) : name;
+    }
+
+    /**
+     * @param name backup name
+     * @return the segment number or -1 if the backup is not a segment
+     */
+    public static int           getSegmentNumber(String name)
+    {
+        int     index = name.lastIndexOf(SEGMENT_SEPARATOR);
+        if ( index < 0 )
+        {
+            return -1;
+        }
+        try
+        {
+            return Integer.parseInt(name.substring(index + SEGMENT_SEPARATOR.length()));
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Replace the segments in the given list with one backup per log. The log's backup has the
+     * modified date of its newest segment.
+     *
+     * @param backups backups as stored
+     * @return backups as seen by users
+     */
+    public static List<BackupMetaData>  collapse(List<BackupMetaData> backups)
+    {
+        ImmutableList.Builder<BackupMetaData>   builder = ImmutableList.builder();
+        Map<String, Long>                       newestSegments = Maps.newLinkedHashMap();
+        for ( BackupMetaData backup : backups )
+        {
+            if ( isSegment(backup.getName()) )
+            {
+                String      logName = getLogName(backup.getName());
+                Long        newest = newestSegments.get(logName);
+                if ( (newest == null) || (newest < backup.getModifiedDate()) )
+                {
+                    newestSegments.put(logName, backup.getModifiedDate());
+                }
+            }
+            else
+            {
+                builder.add(backup);
+            }
+        }
+        for ( Map.Entry<String, Long> entry : newestSegments.entrySet() )
+        {
+            builder.add(new BackupMetaData(entry.getKey(), entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Return the segments to stitch together for the given log, in order. The segments must be
+     * numbered from 0 without gaps and each must be newer than the one before it - a segment that
+     * is older than its predecessor is left over from before the log was backed up again from
+     * the start and ends the usable list.
+     *
+     * @param backups backups as stored
+     * @param logName the log
+     * @return segments or an empty list if the log wasn't backed up as segments
+     */
+    public static List<BackupMetaData>  getSegments(List<BackupMetaData> backups, String logName)
+    {
+        Map<Integer, BackupMetaData>    newestVersions = Maps.newHashMap();
+        for ( BackupMetaData backup : backups )
+        {
+            if ( isSegment(backup.getName()) && getLogName(backup.getName()).equals(logName) )
+            {
+                int             segmentNumber = getSegmentNumber(backup.getName());
+                BackupMetaData  existing = newestVersions.get(segmentNumber);
+                if ( (existing == null) || (existing.getModifiedDate() < backup.getModifiedDate()) )
+                {
+                    newestVersions.put(segmentNumber, backup);
+                }
+            }
+        }
+
+        List<BackupMetaData>    segments = Lists.newArrayList();
+        for ( int i = 0; newestVersions.containsKey(i); ++i )
+        {
+            BackupMetaData      segment = newestVersions.get(i);
+            if ( (segments.size() > 0) && (segment.getModifiedDate() <= segments.get(segments.size() - 1).getModifiedDate()) )
+            {
+                break;
+            }
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private BackupSegments()
+    {
+    }
+}
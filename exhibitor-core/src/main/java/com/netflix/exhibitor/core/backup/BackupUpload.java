@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import java.io.OutputStream;
+
+/**
+ * An in-progress upload. See {@link StreamingBackupProvider}
+ */
+public interface BackupUpload
+{
+    /**
+     * Return the stream to write the backup to. Closing the stream does not complete the upload.
+     *
+     * @return stream
+     */
+    public OutputStream     getStream();
+
+    /**
+     * Wait for everything written to the stream to be stored and make the backup available
+     *
+     * @return the upload result
+     * @throws Exception any errors
+     */
+    public BackupProvider.UploadResult complete() throws Exception;
+
+    /**
+     * Discard the upload
+     */
+    public void             abort();
+}
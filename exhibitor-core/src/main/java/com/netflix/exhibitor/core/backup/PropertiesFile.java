@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Saves the local state files used by backups (the manifest, upload progress, etc.)
+ */
+public class PropertiesFile
+{
+    /**
+     * Write the properties to a temp file next to the given file and then rename it into place
+     * so that a crash never leaves a partially written file. The parent directory is created
+     * if needed.
+     *
+     * @param properties the properties to save
+     * @param file destination
+     * @throws IOException errors
+     */
+    public static void      save(Properties properties, File file) throws IOException
+    {
+        File            parent = file.getParentFile();
+        if ( (parent != null) && !parent.isDirectory() && !parent.mkdirs() )
+        {
+            throw new IOException("Could not make: " + parent);
+        }
+
+        File            tempFile = new File(file.getPath() + ".tmp");
+        OutputStream    out = new BufferedOutputStream(new FileOutputStream(tempFile));
+        try
+        {
+            properties.store(out, "Auto-generated by Exhibitor");
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+        }
+        if ( (file.exists() && !file.delete()) || !tempFile.renameTo(file) )
+        {
+            throw new IOException("Could not write: " + file);
+        }
+    }
+
+    private PropertiesFile()
+    {
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.index.ZooKeeperLogFiles;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The backups needed to restore ZooKeeper to a point in time: the nearest snapshot known to be at or
+ * before the target and the logs that hold the transactions between the snapshot and the target. The
+ * last log is truncated to the target when it's restored. Without a snapshot the logs must go back to
+ * the start of the database.
+ *
+ * <p>
+ *     Snapshots are fuzzy: a snapshot named for zxid N holds every transaction up to N plus any that
+ *     were applied while it was being written. Replaying logs can't undo those, so a snapshot is only
+ *     used if it's known to have finished before the target. See {@link #isSnapshotFuzzy()}.
+ * </p>
+ */
+public class RestorePlan
+{
+    private final BackupMetaData        snapshot;
+    private final List<BackupMetaData>  logs;
+    private final long                  targetZxid;
+    private final long                  targetTimeMs;
+    private final boolean               snapshotIsFuzzy;
+
+    private static final Comparator<BackupMetaData> zxidComparator = new Comparator<BackupMetaData>()
+    {
+        @Override
+        public int compare(BackupMetaData o1, BackupMetaData o2)
+        {
+            long        diff = ZooKeeperLogFiles.getZxid(o1.getName()) - ZooKeeperLogFiles.getZxid(o2.getName());
+            return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+        }
+    };
+
+    /**
+     * Plan a restore up to and including the given zxid. The snapshot used is the newest one that finished
+     * before the log holding the target was started - i.e. no later than the last change to the log before
+     * it. If there isn't one and the logs don't go back to the start of the database, the newest snapshot
+     * at or before the zxid is used and the plan is marked as {@link #isSnapshotFuzzy() fuzzy}.
+     *
+     * @param backups available backups
+     * @param zxid target zxid
+     * @return plan
+     * @throws Exception if there's no snapshot at or before the target and the logs don't go back to the start of the database
+     */
+    public static RestorePlan   forZxid(List<BackupMetaData> backups, long zxid) throws Exception
+    {
+        List<BackupMetaData>    snapshots = sorted(backups, true);
+        List<BackupMetaData>    logs = sorted(backups, false);
+
+        long                    finishedBeforeMs = Long.MIN_VALUE;
+        for ( int i = 1; i < logs.size(); ++i )
+        {
+            if ( ZooKeeperLogFiles.getZxid(logs.get(i).getName()) <= zxid )
+            {
+                finishedBeforeMs = logs.get(i - 1).getModifiedDate();
+            }
+        }
+
+        BackupMetaData          snapshot = null;
+        BackupMetaData          fuzzySnapshot = null;
+        for ( BackupMetaData backup : snapshots )
+        {
+            if ( ZooKeeperLogFiles.getZxid(backup.getName()) <= zxid )
+            {
+                fuzzySnapshot = backup;
+                if ( backup.getModifiedDate() <= finishedBeforeMs )
+                {
+                    snapshot = backup;
+                }
+            }
+        }
+
+        boolean                 snapshotIsFuzzy = false;
+        if ( (snapshot == null) && (fuzzySnapshot != null) && ((logs.size() == 0) || !isFirstLog(logs.get(0))) )
+        {
+            snapshot = fuzzySnapshot;
+            snapshotIsFuzzy = true;
+        }
+
+        ImmutableList.Builder<BackupMetaData>   builder = ImmutableList.builder();
+        for ( BackupMetaData log : neededLogs(logs, snapshot) )
+        {
+            if ( ZooKeeperLogFiles.getZxid(log.getName()) > zxid )
+            {
+                break;
+            }
+            builder.add(log);
+        }
+        return checked(new RestorePlan(snapshot, builder.build(), zxid, Long.MAX_VALUE, snapshotIsFuzzy));
+    }
+
+    /**
+     * Plan a restore up to and including the last transaction at or before the given time
+     *
+     * @param backups available backups
+     * @param timeMs target time
+     * @return plan
+     * @throws Exception if there's no snapshot at or before the target and the logs don't go back to the start of the database
+     */
+    public static RestorePlan   forTime(List<BackupMetaData> backups, long timeMs) throws Exception
+    {
+        List<BackupMetaData>    snapshots = sorted(backups, true);
+        List<BackupMetaData>    logs = sorted(backups, false);
+
+        // a snapshot is fuzzy - it's only known to be before the target if it was finished by then
+        BackupMetaData          snapshot = null;
+        for ( BackupMetaData backup : snapshots )
+        {
+            if ( backup.getModifiedDate() <= timeMs )
+            {
+                snapshot = backup;
+            }
+        }
+
+        ImmutableList.Builder<BackupMetaData>   builder = ImmutableList.builder();
+        for ( BackupMetaData log : neededLogs(logs, snapshot) )
+        {
+            builder.add(log);
+            if ( log.getModifiedDate() >= timeMs )
+            {
+                // this log was still being written at the target time - later logs are all after it
+                break;
+            }
+        }
+        return checked(new RestorePlan(snapshot, builder.build(), Long.MAX_VALUE, timeMs, false));
+    }
+
+    /**
+     * Return the snapshot that restores starting with the given log need: the newest snapshot at or
+     * before the log's first transaction
+     *
+     * @param backupNames names of the available backups
+     * @param logZxid the zxid of the log
+     * @return snapshot name or null if there isn't one
+     */
+    public static String    getBaseSnapshotName(Collection<String> backupNames, long logZxid)
+    {
+        String      snapshotName = null;
+        long        snapshotZxid = -1;
+        for ( String name : backupNames )
+        {
+            long        zxid = ZooKeeperLogFiles.getZxid(name);
+            if ( ZooKeeperLogFiles.isSnapshotName(name) && (zxid <= logZxid) && (zxid > snapshotZxid) )
+            {
+                snapshotName = name;
+                snapshotZxid = zxid;
+            }
+        }
+        return snapshotName;
+    }
+
+    private RestorePlan(BackupMetaData snapshot, List<BackupMetaData> logs, long targetZxid, long targetTimeMs, boolean snapshotIsFuzzy)
+    {
+        this.snapshot = snapshot;
+        this.logs = logs;
+        this.targetZxid = targetZxid;
+        this.targetTimeMs = targetTimeMs;
+        this.snapshotIsFuzzy = snapshotIsFuzzy;
+    }
+
+    /**
+     * @return the snapshot to start from or null if there's no backed up snapshot before the target. In that
+     * case the logs start at the first log of the database.
+     */
+    public BackupMetaData getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * @return the logs to replay on top of the snapshot, oldest first
+     */
+    public List<BackupMetaData> getLogs()
+    {
+        return logs;
+    }
+
+    /**
+     * @return transactions after this zxid are removed from the last log (Long.MAX_VALUE when restoring to a time)
+     */
+    public long getTargetZxid()
+    {
+        return targetZxid;
+    }
+
+    /**
+     * @return transactions after this time are removed from the last log (Long.MAX_VALUE when restoring to a zxid)
+     */
+    public long getTargetTimeMs()
+    {
+        return targetTimeMs;
+    }
+
+    /**
+     * @return true if the snapshot isn't known to have finished before the target. The restored data
+     * may then include transactions after the target that were applied while the snapshot was written.
+     */
+    public boolean isSnapshotFuzzy()
+    {
+        return snapshotIsFuzzy;
+    }
+
+    /**
+     * @return all the backups to fetch
+     */
+    public List<BackupMetaData> getBackups()
+    {
+        ImmutableList.Builder<BackupMetaData>   builder = ImmutableList.builder();
+        if ( snapshot != null )
+        {
+            builder.add(snapshot);
+        }
+        return builder.addAll(logs).build();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RestorePlan{" +
+            "snapshot=" + snapshot +
+            ", logs=" + logs +
+            ", targetZxid=" + targetZxid +
+            ", targetTimeMs=" + targetTimeMs +
+            ", snapshotIsFuzzy=" + snapshotIsFuzzy +
+            '}';
+    }
+
+    private static RestorePlan checked(RestorePlan plan) throws Exception
+    {
+        if ( plan.snapshot == null )
+        {
+            // replaying logs without a snapshot only works if nothing came before them
+            if ( (plan.logs.size() == 0) || !isFirstLog(plan.logs.get(0)) )
+            {
+                throw new Exception("There is no backed up snapshot at or before the target and the backed up logs don't start at the beginning of the database: " + plan);
+            }
+        }
+        return plan;
+    }
+
+    // the first log of a new database - log.1 for a standalone server, log.100000001 for the first epoch of an ensemble
+    private static boolean isFirstLog(BackupMetaData log)
+    {
+        long        zxid = ZooKeeperLogFiles.getZxid(log.getName());
+        long        epoch = zxid >>> 32;
+        long        counter = zxid & 0xffffffffL;
+        return (epoch <= 1) && (counter <= 1);
+    }
+
+    // the log that was current when the snapshot started (it holds the transactions just after the snapshot) and every later log
+    private static List<BackupMetaData> neededLogs(List<BackupMetaData> logs, BackupMetaData snapshot)
+    {
+        if ( snapshot == null )
+        {
+            return logs;
+        }
+
+        long        snapshotZxid = ZooKeeperLogFiles.getZxid(snapshot.getName());
+        int         startIndex = 0;
+        for ( int i = 0; i < logs.size(); ++i )
+        {
+            if ( ZooKeeperLogFiles.getZxid(logs.get(i).getName()) <= snapshotZxid )
+            {
+                startIndex = i;
+            }
+        }
+        return logs.subList(startIndex, logs.size());
+    }
+
+    // by zxid, keeping only the newest version of each name
+    private static List<BackupMetaData> sorted(List<BackupMetaData> backups, boolean snapshots)
+    {
+        Map<String, BackupMetaData>     newest = Maps.newHashMap();
+        for ( BackupMetaData backup : backups )
+        {
+            boolean     isWanted = snapshots ? ZooKeeperLogFiles.isSnapshotName(backup.getName()) : ZooKeeperLogFiles.isLogName(backup.getName());
+            if ( isWanted && (ZooKeeperLogFiles.getZxid(backup.getName()) >= 0) )
+            {
+                BackupMetaData  existing = newest.get(backup.getName());
+                if ( (existing == null) || (existing.getModifiedDate() < backup.getModifiedDate()) )
+                {
+                    newest.put(backup.getName(), backup);
+                }
+            }
+        }
+
+        List<BackupMetaData>    sorted = Lists.newArrayList(newest.values());
+        Collections.sort(sorted, zxidComparator);
+        return sorted;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.netflix.exhibitor.core.Exhibitor;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a list of backups one after the other, decompressing each. Each backup is opened only
+ * when the one before it has been read.
+ */
+class SegmentsInputStream extends InputStream
+{
+    private final Exhibitor exhibitor;
+    private final BackupProvider provider;
+    private final Iterator<BackupMetaData> remaining;
+    private final Map<String, String> config;
+
+    private BackupStream currentBackup;
+    private InputStream current;
+
+    /**
+     * @param exhibitor main instance
+     * @param provider the provider
+     * @param first the already opened first backup
+     * @param remaining the backups to read after it
+     * @param config provider config
+     * @throws IOException errors
+     */
+    SegmentsInputStream(Exhibitor exhibitor, BackupProvider provider, BackupStream first, List<BackupMetaData> remaining, Map<String, String> config) throws IOException
+    {
+        this.exhibitor = exhibitor;
+        this.provider = provider;
+        this.remaining = remaining.iterator();
+        this.config = config;
+        setCurrent(first);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        while ( current != null )
+        {
+            int     b = current.read();
+            if ( b >= 0 )
+            {
+                return b;
+            }
+            next();
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        while ( current != null )
+        {
+            int     bytesRead = current.read(buffer, offset, length);
+            if ( bytesRead >= 0 )
+            {
+                return bytesRead;
+            }
+            next();
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closeCurrent();
+    }
+
+    private void next() throws IOException
+    {
+        closeCurrent();
+        if ( !remaining.hasNext() )
+        {
+            return;
+        }
+
+        BackupMetaData      backup = remaining.next();
+        BackupStream        backupStream;
+        try
+        {
+            backupStream = provider.getBackupStream(exhibitor, backup, config);
+        }
+        catch ( Exception e )
+        {
+            throw new IOException("Could not open backup: " + backup, e);
+        }
+        if ( backupStream == null )
+        {
+            throw new IOException("Missing backup: " + backup);
+        }
+        setCurrent(backupStream);
+    }
+
+    private void setCurrent(BackupStream backupStream) throws IOException
+    {
+        currentBackup = backupStream;
+        try
+        {
+            // backups are always stored compressed - see BackupManager.doBackup()
+            current = BackupCodec.newDetectingStream(backupStream.getStream());
+        }
+        catch ( IOException e )
+        {
+            closeCurrent();
+            throw e;
+        }
+    }
+
+    private void closeCurrent()
+    {
+        CloseableUtils.closeQuietly(current);
+        CloseableUtils.closeQuietly(currentBackup);
+        current = null;
+        currentBackup = null;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.netflix.exhibitor.core.Exhibitor;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional extension for providers that can accept a backup while it's being produced. i.e.
+ * the compressed log is never written to a temp file.
+ */
+public interface StreamingBackupProvider extends BackupProvider
+{
+    /**
+     * Start uploading a backup. Write the backup to {@link BackupUpload#getStream()} and then
+     * call {@link BackupUpload#complete()} (or {@link BackupUpload#abort()} on errors).
+     *
+     * @param exhibitor instance
+     * @param metaData identity of the backup
+     * @param existingBackups the caller's view of the available backups - used to detect duplicates
+     *                        and old versions so that the provider needn't list the store on every upload
+     * @param configValues values for provider-specific config
+     * @return the upload or null if the backup already exists
+     * @throws Exception any errors
+     */
+    public BackupUpload     startUpload(Exhibitor exhibitor, BackupMetaData metaData, List<BackupMetaData> existingBackups, Map<String, String> configValues) throws Exception;
+}
@@ -16,58 +16,50 @@
 
 package com.netflix.exhibitor.core.backup;
 
-import org.apache.curator.utils.CloseableUtils;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
 
 class TempCompressedFile
 {
     private final File      tempFile;
     private final File      source;
+    private final long      offset;
+    private final long      length;
+    private final BackupCodec codec;
+    private final int       level;
+    private long            checksum = 0;
 
-    private static final int        BUFFER_SIZE = 1024 * 1024;  // 1 MB
+    TempCompressedFile(File source, BackupCodec codec, int level) throws IOException
+    {
+        this(source, 0, Long.MAX_VALUE, codec, level);
+    }
 
-    TempCompressedFile(File source) throws IOException
+    TempCompressedFile(File source, long offset, long length, BackupCodec codec, int level) throws IOException
     {
         this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.codec = codec;
+        this.level = level;
         tempFile = File.createTempFile("exhibitor", ".tmp");
     }
 
     void        compress() throws IOException
     {
-        byte[]          buffer = new byte[BUFFER_SIZE];
-
-        InputStream     in = null;
-        OutputStream    out = null;
-        try
-        {
-            in = new FileInputStream(source);
-            out = new GZIPOutputStream(new FileOutputStream(tempFile));
-
-            for(;;)
-            {
-                int     bytesRead = in.read(buffer);
-                if ( bytesRead < 0 )
-                {
-                    break;
-                }
-                out.write(buffer, 0, bytesRead);
-            }
-        }
-        finally
-        {
-            CloseableUtils.closeQuietly(in);
-            CloseableUtils.closeQuietly(out);
-        }
+        checksum = BackupCompressor.compress(source, offset, length, new FileOutputStream(tempFile), codec, level);
     }
 
     File getTempFile()
     {
         return tempFile;
     }
+
+    /**
+     * @return CRC32 of the uncompressed source (valid after {@link #compress()})
+     */
+    long getChecksum()
+    {
+        return checksum;
+    }
 }
@@ -17,7 +17,9 @@
 package com.netflix.exhibitor.core.backup.filesystem;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
 import com.netflix.exhibitor.core.backup.BackupProvider;
 import com.netflix.exhibitor.core.Exhibitor;
@@ -33,6 +35,11 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class FileSystemBackupProvider implements BackupProvider
 {
@@ -40,6 +47,8 @@ public class FileSystemBackupProvider implements BackupProvider
 
     private static final List<BackupConfigSpec> BACKUP_CONFIGS = Arrays.asList(CONFIG_DIRECTORY);
 
+    private static final int DELETE_THREAD_QTY = 4;
+
     @Override
     public List<BackupConfigSpec> getConfigs()
     {
@@ -130,6 +139,55 @@ public class FileSystemBackupProvider implements BackupProvider
 
     @Override
     public void deleteBackup(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        internalDeleteBackup(exhibitor, backup, configValues);
+    }
+
+    @Override
+    public List<BackupMetaData> deleteBackups(final Exhibitor exhibitor, List<BackupMetaData> backups, final Map<String, String> configValues) throws Exception
+    {
+        ExecutorService                 service = Executors.newFixedThreadPool(DELETE_THREAD_QTY, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FileSystemBackupProvider-%d").build());
+        try
+        {
+            List<Future<Boolean>>       futures = Lists.newArrayList();
+            for ( final BackupMetaData backup : backups )
+            {
+                Callable<Boolean>       deleter = new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call() throws Exception
+                    {
+                        return internalDeleteBackup(exhibitor, backup, configValues);
+                    }
+                };
+                futures.add(service.submit(deleter));
+            }
+
+            List<BackupMetaData>        deleted = Lists.newArrayList();
+            for ( int i = 0; i < backups.size(); ++i )
+            {
+                try
+                {
+                    if ( futures.get(i).get() )
+                    {
+                        deleted.add(backups.get(i));
+                    }
+                }
+                catch ( ExecutionException e )
+                {
+                    // only this backup failed - the rest are still reported
+                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete old backup: " + backups.get(i).getName(), e.getCause());
+                }
+            }
+            return deleted;
+        }
+        finally
+        {
+            service.shutdownNow();
+        }
+    }
+
+    private boolean internalDeleteBackup(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues)
     {
         File        directory = new File(configValues.get(CONFIG_DIRECTORY.getKey()));
         File        destinationDirectory = new File(directory, backup.getName());
@@ -137,7 +195,9 @@ public class FileSystemBackupProvider implements BackupProvider
         if ( !destinationFile.delete() )
         {
             exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete old backup: " + destinationFile);
+            return false;
         }
+        return true;
     }
 
     @Override
@@ -16,6 +16,7 @@
 
 package com.netflix.exhibitor.core.backup.s3;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.model.*;
 import com.google.common.annotations.VisibleForTesting;
@@ -23,13 +24,18 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.backup.BackupConfigSpec;
+import com.netflix.exhibitor.core.backup.BackupManager;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
 import com.netflix.exhibitor.core.backup.BackupProvider;
 import com.netflix.exhibitor.core.backup.BackupStream;
+import com.netflix.exhibitor.core.backup.BackupUpload;
+import com.netflix.exhibitor.core.backup.StreamingBackupProvider;
 import com.netflix.exhibitor.core.s3.S3Client;
 import com.netflix.exhibitor.core.s3.S3ClientConfig;
 import com.netflix.exhibitor.core.s3.S3ClientFactory;
@@ -40,31 +46,67 @@ import org.apache.curator.RetryLoop;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.utils.CloseableUtils;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.netflix.exhibitor.core.config.DefaultProperties.asInt;
 
-public class S3BackupProvider implements BackupProvider
+public class S3BackupProvider implements StreamingBackupProvider
 {
     private final S3Client s3Client;
+    private final Throttle throttle = new Throttle
+    (
+        getClass().getCanonicalName(),
+        new Throttle.ThroughputFunction()
+        {
+            @Override
+            public int targetThroughput()
+            {
+                return asInt(throttleConfig.get(CONFIG_THROTTLE.getKey()));
+            }
+        },
+        new Throttle.BurstFunction()
+        {
+            @Override
+            public long burstBytes()
+            {
+                return asInt(throttleConfig.get(CONFIG_THROTTLE_BURST.getKey()));
+            }
+        }
+    );
+    private volatile Map<String, String> throttleConfig = Collections.emptyMap();
+    private final AtomicLong lastUploadStateSweepMs = new AtomicLong(0);
+    private final AtomicBoolean loggedNoUploadState = new AtomicBoolean(false);
+
+    private static final int        DEFAULT_UPLOAD_THREADS = 4;
+    private static final int        DEFAULT_DOWNLOAD_THREADS = 4;
 
-    private static final BackupConfigSpec CONFIG_THROTTLE = new BackupConfigSpec("throttle", "Throttle (bytes/ms)", "Data throttling. Maximum bytes per millisecond.", Integer.toString(1024 * 1024), BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_THROTTLE = new BackupConfigSpec("throttle", "Throttle (bytes/ms)", "Data throttling. Maximum bytes per millisecond for all backup transfers on this host.", Integer.toString(1024 * 1024), BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_THROTTLE_BURST = new BackupConfigSpec("throttle-burst", "Throttle Burst (bytes)", "Bytes that can be transferred without throttling after a quiet period", Integer.toString(8 * 1024 * 1024), BackupConfigSpec.Type.INTEGER);
     private static final BackupConfigSpec CONFIG_BUCKET = new BackupConfigSpec("bucket-name", "S3 Bucket Name", "The S3 bucket to use", "", BackupConfigSpec.Type.STRING);
     private static final BackupConfigSpec CONFIG_KEY_PREFIX = new BackupConfigSpec("key-prefix", "S3 Key Prefix", "The prefix for S3 backup keys", "exhibitor-backup", BackupConfigSpec.Type.STRING);
     private static final BackupConfigSpec CONFIG_MAX_RETRIES = new BackupConfigSpec("max-retries", "Max Retries", "Maximum retries when uploading/downloading S3 data", "3", BackupConfigSpec.Type.INTEGER);
     private static final BackupConfigSpec CONFIG_RETRY_SLEEP_MS = new BackupConfigSpec("retry-sleep-ms", "Retry Sleep (ms)", "Sleep time in milliseconds when retrying", "1000", BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_UPLOAD_THREADS = new BackupConfigSpec("upload-threads", "Upload Threads", "Number of backup parts uploaded concurrently while the backup is being compressed", Integer.toString(DEFAULT_UPLOAD_THREADS), BackupConfigSpec.Type.INTEGER);
+    private static final BackupConfigSpec CONFIG_DOWNLOAD_THREADS = new BackupConfigSpec("download-threads", "Download Threads", "Number of ranged GETs fetched concurrently when restoring or indexing a backup", Integer.toString(DEFAULT_DOWNLOAD_THREADS), BackupConfigSpec.Type.INTEGER);
 
-    private static final List<BackupConfigSpec>     CONFIGS = Arrays.asList(CONFIG_THROTTLE, CONFIG_BUCKET, CONFIG_KEY_PREFIX, CONFIG_MAX_RETRIES, CONFIG_RETRY_SLEEP_MS);
+    private static final List<BackupConfigSpec>     CONFIGS = Arrays.asList(CONFIG_THROTTLE, CONFIG_THROTTLE_BURST, CONFIG_BUCKET, CONFIG_KEY_PREFIX, CONFIG_MAX_RETRIES, CONFIG_RETRY_SLEEP_MS, CONFIG_UPLOAD_THREADS, CONFIG_DOWNLOAD_THREADS);
     
     private static final int        MIN_S3_PART_SIZE = 5 * (1024 * 1024);
+    private static final int        DOWNLOAD_CHUNK_SIZE = 8 * (1024 * 1024);
+    private static final int        MAX_DELETE_KEYS = 1000;    // S3 limit for multi-object delete
+
+    private static final String     UPLOAD_STATE_DIRECTORY_NAME = "s3-uploads";
+    private static final int        UPLOAD_STATE_TTL_MS = 24 * 60 * 60 * 1000;       // 1 day
+    private static final int        UPLOAD_STATE_SWEEP_PERIOD_MS = 60 * 60 * 1000;
 
     @VisibleForTesting
     static final String       SEPARATOR = "/";
@@ -121,6 +163,14 @@ public class S3BackupProvider implements BackupProvider
         return s3Client;
     }
 
+    /**
+     * @return the throttle shared by all uploads and downloads of this provider
+     */
+    public Throttle getThrottle()
+    {
+        return throttle;
+    }
+
     @Override
     public List<BackupConfigSpec> getConfigs()
     {
@@ -143,9 +193,6 @@ public class S3BackupProvider implements BackupProvider
             return UploadResult.DUPLICATE;
         }
 
-        RetryPolicy retryPolicy = makeRetryPolicy(configValues);
-        Throttle    throttle = makeThrottle(configValues);
-
         String                          key = toKey(backup, configValues);
 
         if ( source.length() < MIN_S3_PART_SIZE )
@@ -155,135 +202,193 @@ public class S3BackupProvider implements BackupProvider
         }
         else
         {
-            multiPartUpload(source, configValues, retryPolicy, throttle, key);
-        }
-
-        UploadResult        result = UploadResult.SUCCEEDED;
-        for ( BackupMetaData existing : availableBackups )
-        {
-            if ( existing.getName().equals(backup.getName()) )
+            // the file is already on disk - parts are uploaded one at a time as before
+            S3MultipartUpload   upload = newUpload(exhibitor, key, configValues, 1);
+            try
             {
-                deleteBackup(exhibitor, existing, configValues);
-                result = UploadResult.REPLACED_OLD_VERSION;
+                Files.copy(source, upload.getStream());
+            }
+            catch ( Exception e )
+            {
+                upload.abort();
+                throw e;
             }
+            upload.complete();
         }
-        return result;
+
+        return replaceOldVersions(exhibitor, backup, availableBackups, configValues);
     }
 
-    private void multiPartUpload(File source, Map<String, String> configValues, RetryPolicy retryPolicy, Throttle throttle, String key) throws Exception
+    @Override
+    public BackupUpload startUpload(final Exhibitor exhibitor, final BackupMetaData backup, final List<BackupMetaData> existingBackups, final Map<String, String> configValues) throws Exception
     {
-        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(configValues.get(CONFIG_BUCKET.getKey()), key);
-        InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
+        if ( existingBackups.contains(backup) )
+        {
+            return null;
+        }
 
-        byte[]      buffer = new byte[MIN_S3_PART_SIZE];
-        InputStream in = null;
-        try
+        int                         uploadThreads = asInt(configValues.get(CONFIG_UPLOAD_THREADS.getKey()));
+        final S3MultipartUpload     upload = newUpload(exhibitor, toKey(backup, configValues), configValues, (uploadThreads > 0) ? uploadThreads : DEFAULT_UPLOAD_THREADS);
+        return new BackupUpload()
         {
-            List<PartETag>      eTags = Lists.newArrayList();
-            int                 index = 1;
+            @Override
+            public OutputStream getStream()
+            {
+                return upload.getStream();
+            }
 
-            in = new FileInputStream(source);
-            for(;;)
+            @Override
+            public UploadResult complete() throws Exception
             {
-                int     bytesRead = in.read(buffer);
-                if ( bytesRead < 0 )
-                {
-                    break;
-                }
-                throttle.throttle(bytesRead);
+                upload.complete();
+                return replaceOldVersions(exhibitor, backup, existingBackups, configValues);
+            }
 
-                PartETag eTag = uploadChunkWithRetry(buffer, bytesRead, initResponse, index++, retryPolicy);
-                eTags.add(eTag);
+            @Override
+            public void abort()
+            {
+                upload.abort();
             }
+        };
+    }
 
-            completeUpload(initResponse, eTags);
+    private S3MultipartUpload newUpload(Exhibitor exhibitor, String key, Map<String, String> configValues, int uploadThreads)
+    {
+        S3UploadStateStore  stateStore = getUploadStateStore(exhibitor);
+        if ( stateStore != null )
+        {
+            sweepUploadStates(stateStore);
         }
-        catch ( Exception e )
+
+        S3MultipartUpload   upload = new S3MultipartUpload(s3Client, configValues.get(CONFIG_BUCKET.getKey()), key, makeRetryPolicy(configValues), makeThrottle(configValues), MIN_S3_PART_SIZE, uploadThreads, stateStore);
+        if ( upload.isResumed() )
         {
-            abortUpload(initResponse);
-            throw e;
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Resuming upload of: " + key);
         }
-        finally
+        return upload;
+    }
+
+    // upload progress is kept next to the backup manifest. No directory, no resuming.
+    private S3UploadStateStore getUploadStateStore(Exhibitor exhibitor)
+    {
+        if ( exhibitor == null )
         {
-            CloseableUtils.closeQuietly(in);
+            return null;
         }
+
+        File        stateDirectory = BackupManager.getStateDirectory(exhibitor);
+        if ( stateDirectory == null )
+        {
+            if ( loggedNoUploadState.compareAndSet(false, true) )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.INFO, "Neither the backup state directory nor the log index directory is set. Interrupted S3 uploads will start again from the beginning.");
+            }
+            return null;
+        }
+        return new S3UploadStateStore(new File(stateDirectory, UPLOAD_STATE_DIRECTORY_NAME));
     }
 
-    @Override
-    public BackupStream getBackupStream(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    private void sweepUploadStates(S3UploadStateStore stateStore)
     {
-        long            startMs = System.currentTimeMillis();
+        long        now = System.currentTimeMillis();
+        long        last = lastUploadStateSweepMs.get();
+        if ( ((now - last) >= UPLOAD_STATE_SWEEP_PERIOD_MS) && lastUploadStateSweepMs.compareAndSet(last, now) )
+        {
+            stateStore.sweep(s3Client, UPLOAD_STATE_TTL_MS);
+        }
+    }
+
+    /**
+     * Open the backup as a series of parallel ranged GETs. Each chunk is retried on its own so
+     * a failure late in a large backup doesn't restart the whole download.
+     *
+     * @return the stream or null if the backup doesn't exist
+     */
+    private InputStream newDownload(BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        String          bucket = configValues.get(CONFIG_BUCKET.getKey());
+        String          key = toKey(backup, configValues);
         RetryPolicy     retryPolicy = makeRetryPolicy(configValues);
-        S3Object        object = null;
+
+        long            startMs = System.currentTimeMillis();
         int             retryCount = 0;
-        while ( object == null )
+        ObjectMetadata  metadata;
+        for(;;)
         {
             try
             {
-                object = s3Client.getObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
+                metadata = s3Client.getObjectMetadata(bucket, key);
+                break;
             }
-            catch ( AmazonS3Exception e)
+            catch ( AmazonClientException e )
             {
-                if ( e.getErrorType() == AmazonServiceException.ErrorType.Client )
-                {
-                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Amazon client error: " + ActivityLog.getExceptionMessage(e));
-                    return null;
-                }
-
-                if ( !retryPolicy.allowRetry(retryCount++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
+                // connection failures, timeouts, etc. don't come back as service exceptions - retry those too
+                if ( isClientError(e) || !retryPolicy.allowRetry(retryCount++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
                 {
-                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Retries exhausted: " + ActivityLog.getExceptionMessage(e));
-                    return null;
+                    throw e;
                 }
             }
         }
-
-        final Throttle      throttle = makeThrottle(configValues);
-        final InputStream   in = object.getObjectContent();
-        final InputStream   wrappedstream = new InputStream()
+        if ( metadata == null )
         {
-            @Override
-            public void close() throws IOException
-            {
-                in.close();
-            }
+            return null;
+        }
 
-            @Override
-            public int read() throws IOException
+        int             downloadThreads = asInt(configValues.get(CONFIG_DOWNLOAD_THREADS.getKey()));
+        return new S3RangedInputStream(s3Client, bucket, key, metadata.getContentLength(), DOWNLOAD_CHUNK_SIZE, (downloadThreads > 0) ? downloadThreads : DEFAULT_DOWNLOAD_THREADS, retryPolicy, makeThrottle(configValues));
+    }
+
+    // a request that S3 rejected - retrying it won't help
+    private static boolean isClientError(AmazonClientException e)
+    {
+        return (e instanceof AmazonServiceException) && (((AmazonServiceException)e).getErrorType() == AmazonServiceException.ErrorType.Client);
+    }
+
+    private UploadResult replaceOldVersions(Exhibitor exhibitor, BackupMetaData backup, List<BackupMetaData> availableBackups, Map<String, String> configValues) throws Exception
+    {
+        UploadResult        result = UploadResult.SUCCEEDED;
+        for ( BackupMetaData existing : availableBackups )
+        {
+            if ( existing.getName().equals(backup.getName()) )
             {
-                throttle.throttle(1);
-                return in.read();
+                deleteBackup(exhibitor, existing, configValues);
+                result = UploadResult.REPLACED_OLD_VERSION;
             }
+        }
+        return result;
+    }
 
-            @Override
-            public int read(byte[] b) throws IOException
+    @Override
+    public BackupStream getBackupStream(Exhibitor exhibitor, BackupMetaData backup, Map<String, String> configValues) throws Exception
+    {
+        final InputStream   in;
+        try
+        {
+            in = newDownload(backup, configValues);
+        }
+        catch ( AmazonClientException e )
+        {
+            if ( isClientError(e) )
             {
-                int bytesRead = in.read(b);
-                if ( bytesRead > 0 )
-                {
-                    throttle.throttle(bytesRead);
-                }
-                return bytesRead;
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Amazon client error: " + ActivityLog.getExceptionMessage(e));
             }
-
-            @Override
-            public int read(byte[] b, int off, int len) throws IOException
+            else
             {
-                int bytesRead = in.read(b, off, len);
-                if ( bytesRead > 0 )
-                {
-                    throttle.throttle(bytesRead);
-                }
-                return bytesRead;
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Retries exhausted: " + ActivityLog.getExceptionMessage(e));
             }
-        };
+            return null;
+        }
+        if ( in == null )
+        {
+            return null;
+        }
 
         return new BackupStream()
         {
             @Override
             public InputStream getStream()
             {
-                return wrappedstream;
+                return in;
             }
 
             @Override
@@ -297,47 +402,19 @@ public class S3BackupProvider implements BackupProvider
     @Override
     public void downloadBackup(Exhibitor exhibitor, BackupMetaData backup, OutputStream destination, Map<String, String> configValues) throws Exception
     {
-        byte[]          buffer = new byte[MIN_S3_PART_SIZE];
-
-        long            startMs = System.currentTimeMillis();
-        RetryPolicy     retryPolicy = makeRetryPolicy(configValues);
-        int             retryCount = 0;
-        boolean         done = false;
-
-        while ( !done )
+        InputStream     in = newDownload(backup, configValues);
+        if ( in == null )
         {
-            Throttle            throttle = makeThrottle(configValues);
-            InputStream         in = null;
-            try
-            {
-                S3Object            object = s3Client.getObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
-                in = object.getObjectContent();
-
-                for(;;)
-                {
-                    int     bytesRead = in.read(buffer);
-                    if ( bytesRead < 0 )
-                    {
-                        break;
-                    }
-
-                    throttle.throttle(bytesRead);
-                    destination.write(buffer, 0, bytesRead);
-                }
+            throw new IOException("Backup not found: " + backup);
+        }
 
-                done = true;
-            }
-            catch ( Exception e )
-            {
-                if ( !retryPolicy.allowRetry(retryCount++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
-                {
-                    done = true;
-                }
-            }
-            finally
-            {
-                CloseableUtils.closeQuietly(in);
-            }
+        try
+        {
+            ByteStreams.copy(in, destination);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
         }
     }
 
@@ -394,36 +471,57 @@ public class S3BackupProvider implements BackupProvider
         s3Client.deleteObject(configValues.get(CONFIG_BUCKET.getKey()), toKey(backup, configValues));
     }
 
-    private Throttle makeThrottle(final Map<String, String> configValues)
+    @Override
+    public List<BackupMetaData> deleteBackups(Exhibitor exhibitor, List<BackupMetaData> backups, Map<String, String> configValues) throws Exception
     {
-        return new Throttle(this.getClass().getCanonicalName(), new Throttle.ThroughputFunction()
+        List<BackupMetaData>    deleted = Lists.newArrayList();
+        for ( List<BackupMetaData> batch : Lists.partition(backups, MAX_DELETE_KEYS) )
         {
-            public int targetThroughput()
+            Map<String, BackupMetaData>             keyToBackup = Maps.newHashMap();
+            List<DeleteObjectsRequest.KeyVersion>   keys = Lists.newArrayList();
+            for ( BackupMetaData backup : batch )
             {
-                return Math.max(asInt(configValues.get(CONFIG_THROTTLE.getKey())), Integer.MAX_VALUE);
+                String      key = toKey(backup, configValues);
+                keyToBackup.put(key, backup);
+                keys.add(new DeleteObjectsRequest.KeyVersion(key));
             }
-        });
-    }
 
-    private ExponentialBackoffRetry makeRetryPolicy(Map<String, String> configValues)
-    {
-        return new ExponentialBackoffRetry(asInt(configValues.get(CONFIG_RETRY_SLEEP_MS.getKey())), asInt(configValues.get(CONFIG_MAX_RETRIES.getKey())));
+            DeleteObjectsRequest    request = new DeleteObjectsRequest(configValues.get(CONFIG_BUCKET.getKey())).withKeys(keys);
+            for ( DeleteObjectsResult.DeletedObject deletedObject : deleteObjectsWithRetry(exhibitor, request, configValues) )
+            {
+                BackupMetaData      backup = keyToBackup.get(deletedObject.getKey());
+                if ( backup != null )
+                {
+                    deleted.add(backup);
+                }
+            }
+        }
+        return deleted;
     }
 
-
-    private PartETag uploadChunkWithRetry(byte[] buffer, int bytesRead, InitiateMultipartUploadResult initResponse, int index, RetryPolicy retryPolicy) throws Exception
+    private List<DeleteObjectsResult.DeletedObject> deleteObjectsWithRetry(Exhibitor exhibitor, DeleteObjectsRequest request, Map<String, String> configValues) throws Exception
     {
+        RetryPolicy     retryPolicy = makeRetryPolicy(configValues);
         long            startMs = System.currentTimeMillis();
-        int             retries = 0;
+        int             retryCount = 0;
         for(;;)
         {
             try
             {
-                return uploadChunk(buffer, bytesRead, initResponse, index);
+                return s3Client.deleteObjects(request).getDeletedObjects();
             }
-            catch ( Exception e )
+            catch ( MultiObjectDeleteException e )
+            {
+                for ( MultiObjectDeleteException.DeleteError error : e.getErrors() )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Could not delete backup: " + error.getKey() + " - " + error.getMessage());
+                }
+                return e.getDeletedObjects();
+            }
+            catch ( AmazonClientException e )
             {
-                if ( !retryPolicy.allowRetry(retries++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
+                // deletes are idempotent so the whole batch can be sent again
+                if ( !retryPolicy.allowRetry(retryCount++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
                 {
                     throw e;
                 }
@@ -431,40 +529,18 @@ public class S3BackupProvider implements BackupProvider
         }
     }
 
-    private PartETag uploadChunk(byte[] buffer, int bytesRead, InitiateMultipartUploadResult initResponse, int index) throws Exception
+    // every transfer shares the one throttle so the configured throughput is a cap for the whole host
+    private Throttle makeThrottle(Map<String, String> configValues)
     {
-        byte[]          md5 = S3Utils.md5(buffer, bytesRead);
-
-        UploadPartRequest   request = new UploadPartRequest();
-        request.setBucketName(initResponse.getBucketName());
-        request.setKey(initResponse.getKey());
-        request.setUploadId(initResponse.getUploadId());
-        request.setPartNumber(index);
-        request.setPartSize(bytesRead);
-        request.setMd5Digest(S3Utils.toBase64(md5));
-        request.setInputStream(new ByteArrayInputStream(buffer, 0, bytesRead));
-
-        UploadPartResult    response = s3Client.uploadPart(request);
-        PartETag            partETag = response.getPartETag();
-        if ( !response.getPartETag().getETag().equals(S3Utils.toHex(md5)) )
-        {
-            throw new Exception("Unable to match MD5 for part " + index);
-        }
-
-        return partETag;
+        throttleConfig = configValues;
+        return throttle;
     }
 
-    private void completeUpload(InitiateMultipartUploadResult initResponse, List<PartETag> eTags) throws Exception
+    private ExponentialBackoffRetry makeRetryPolicy(Map<String, String> configValues)
     {
-        CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId(), eTags);
-        s3Client.completeMultipartUpload(completeRequest);
+        return new ExponentialBackoffRetry(asInt(configValues.get(CONFIG_RETRY_SLEEP_MS.getKey())), asInt(configValues.get(CONFIG_MAX_RETRIES.getKey())));
     }
 
-    private void abortUpload(InitiateMultipartUploadResult initResponse) throws Exception
-    {
-        AbortMultipartUploadRequest abortRequest = new AbortMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId());
-        s3Client.abortMultipartUpload(abortRequest);
-    }
 
     private String toKey(BackupMetaData backup, Map<String, String> configValues)
     {
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.s3.S3Client;
+import com.netflix.exhibitor.core.s3.S3Utils;
+import org.apache.curator.RetryLoop;
+import org.apache.curator.RetryPolicy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ *     Uploads an object whose bytes are written to {@link #getStream()}. The bytes are collected into
+ *     part sized buffers and each full part is uploaded in the background while the writer carries on
+ *     producing the next one. Objects smaller than a part are uploaded with a single put.
+ * </p>
+ *
+ * <p>
+ *     Memory is bounded by a small pool of part buffers (one more than the number of upload threads). The
+ *     writer blocks when all the buffers are waiting to be uploaded.
+ * </p>
+ *
+ * <p>
+ *     When given a {@link S3UploadStateStore} the upload can be resumed: the upload id and the ETag of
+ *     each finished part are saved and a failed upload is left open on S3. The next attempt for the same
+ *     key carries on with that upload and skips any part whose MD5 matches the saved ETag.
+ * </p>
+ */
+class S3MultipartUpload
+{
+    private final S3Client                      s3Client;
+    private final String                        bucket;
+    private final String                        key;
+    private final RetryPolicy                   retryPolicy;
+    private final Throttle                      throttle;
+    private final int                           partSize;
+    private final int                           maxBuffers;
+    private final BlockingQueue<byte[]>         bufferPool;
+    private final ExecutorService               executor;
+    private final List<Future<PartETag>>        parts = Lists.newArrayList();
+    private final AtomicReference<Exception>    partException = new AtomicReference<Exception>();
+    private final OutputStream                  stream = new PartOutputStream();
+    private final S3UploadStateStore            stateStore;
+
+    private InitiateMultipartUploadResult       initResponse;
+    private volatile S3UploadState              state;
+    private byte[]                              currentBuffer;
+    private int                                 currentLength = 0;
+    private int                                 allocatedBuffers = 0;
+
+    private static final String                 NO_SUCH_UPLOAD = "NoSuchUpload";
+
+    /**
+     * @param s3Client the client
+     * @param bucket bucket
+     * @param key object key
+     * @param retryPolicy retry policy for each part
+     * @param throttle throttle applied as parts are handed off for upload
+     * @param partSize size of each part (except the last)
+     * @param uploadThreads number of parts to upload concurrently
+     * @param stateStore where to save the upload's progress or null if the upload can't be resumed
+     */
+    S3MultipartUpload(S3Client s3Client, String bucket, String key, RetryPolicy retryPolicy, Throttle throttle, int partSize, int uploadThreads, S3UploadStateStore stateStore)
+    {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.retryPolicy = retryPolicy;
+        this.throttle = throttle;
+        this.partSize = partSize;
+        maxBuffers = uploadThreads + 1;
+        bufferPool = new ArrayBlockingQueue<byte[]>(maxBuffers);
+        executor = Executors.newFixedThreadPool(uploadThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("S3MultipartUpload-%d").build());
+        this.stateStore = stateStore;
+
+        state = (stateStore != null) ? stateStore.get(bucket, key, partSize) : null;
+        if ( state != null )
+        {
+            initResponse = new InitiateMultipartUploadResult();
+            initResponse.setBucketName(state.getBucket());
+            initResponse.setKey(state.getKey());
+            initResponse.setUploadId(state.getUploadId());
+        }
+    }
+
+    /**
+     * @return true if this is continuing an earlier attempt
+     */
+    boolean             isResumed()
+    {
+        return state != null;
+    }
+
+    OutputStream        getStream()
+    {
+        return stream;
+    }
+
+    /**
+     * Upload anything that's left and wait for all parts to finish. The upload is stopped on errors - see {@link #abort()}.
+     *
+     * @throws Exception errors
+     */
+    void                complete() throws Exception
+    {
+        try
+        {
+            if ( parts.isEmpty() )
+            {
+                // smaller than a part - an upload resumed from an earlier attempt isn't needed
+                discardMultipartUpload();
+
+                byte[]      bytes = (currentBuffer != null) ? Arrays.copyOf(currentBuffer, currentLength) : new byte[0];
+                S3Utils.simpleUploadFile(s3Client, bytes, bucket, key);
+            }
+            else
+            {
+                if ( currentLength > 0 )
+                {
+                    submitPart();
+                }
+
+                List<PartETag>      eTags = Lists.newArrayList();
+                for ( Future<PartETag> part : parts )
+                {
+                    eTags.add(part.get());
+                }
+                s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId(), eTags));
+                if ( state != null )
+                {
+                    state.delete();
+                    state = null;
+                }
+            }
+        }
+        catch ( ExecutionException e )
+        {
+            Exception   cause = (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e;
+            failed(cause);
+            throw cause;
+        }
+        catch ( Exception e )
+        {
+            failed(e);
+            throw e;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop the upload. A resumable upload is left open on S3 for the next attempt.
+     */
+    void                abort()
+    {
+        executor.shutdownNow();
+        if ( (state == null) || isNoSuchUpload(partException.get()) )
+        {
+            discardMultipartUpload();
+        }
+        initResponse = null;
+    }
+
+    private void        failed(Exception e)
+    {
+        if ( isNoSuchUpload(e) )
+        {
+            discardMultipartUpload();
+        }
+        abort();
+    }
+
+    // the saved upload has gone (aborted or expired) - the next attempt has to start again
+    private static boolean isNoSuchUpload(Exception e)
+    {
+        return (e instanceof AmazonS3Exception) && NO_SUCH_UPLOAD.equals(((AmazonS3Exception)e).getErrorCode());
+    }
+
+    private void        discardMultipartUpload()
+    {
+        if ( initResponse != null )
+        {
+            try
+            {
+                s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(initResponse.getBucketName(), initResponse.getKey(), initResponse.getUploadId()));
+            }
+            catch ( Exception ignore )
+            {
+                // ignore - S3 lifecycle rules can clean up
+            }
+            initResponse = null;
+        }
+        if ( state != null )
+        {
+            state.delete();
+            state = null;
+        }
+    }
+
+    private class PartOutputStream extends OutputStream
+    {
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[]{(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while ( len > 0 )
+            {
+                if ( currentBuffer == null )
+                {
+                    currentBuffer = takeBuffer();
+                    currentLength = 0;
+                }
+
+                int     thisLength = Math.min(len, partSize - currentLength);
+                System.arraycopy(b, off, currentBuffer, currentLength, thisLength);
+                currentLength += thisLength;
+                off += thisLength;
+                len -= thisLength;
+
+                if ( currentLength == partSize )
+                {
+                    submitPart();
+                }
+            }
+        }
+    }
+
+    private byte[]      takeBuffer() throws IOException
+    {
+        byte[]      buffer = bufferPool.poll();
+        if ( buffer == null )
+        {
+            if ( allocatedBuffers < maxBuffers )
+            {
+                ++allocatedBuffers;
+                buffer = new byte[partSize];
+            }
+            else
+            {
+                try
+                {
+                    buffer = bufferPool.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private void        submitPart() throws IOException
+    {
+        Exception       exception = partException.get();
+        if ( exception != null )
+        {
+            // a part has already failed - no point compressing the rest
+            throw new IOException(exception);
+        }
+
+        if ( initResponse == null )
+        {
+            try
+            {
+                initResponse = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key));
+                if ( stateStore != null )
+                {
+                    state = stateStore.create(bucket, key, initResponse.getUploadId(), partSize);
+                }
+            }
+            catch ( Exception e )
+            {
+                throw new IOException(e);
+            }
+        }
+
+        final InitiateMultipartUploadResult upload = initResponse;
+        final S3UploadState uploadState = state;
+        final byte[]        buffer = currentBuffer;
+        final int           length = currentLength;
+        final int           partNumber = parts.size() + 1;
+        currentBuffer = null;
+        currentLength = 0;
+
+        Callable<PartETag>  uploader = new Callable<PartETag>()
+        {
+            @Override
+            public PartETag call() throws Exception
+            {
+                try
+                {
+                    byte[]      md5 = S3Utils.md5(buffer, length);
+                    String      savedETag = (uploadState != null) ? uploadState.getETag(partNumber) : null;
+                    if ( S3Utils.toHex(md5).equals(savedETag) )
+                    {
+                        // sent by an earlier attempt
+                        return new PartETag(partNumber, savedETag);
+                    }
+
+                    throttle.throttleDelta(length);
+                    PartETag    partETag = uploadPartWithRetry(upload, buffer, length, md5, partNumber);
+                    if ( uploadState != null )
+                    {
+                        uploadState.partUploaded(partETag);
+                    }
+                    return partETag;
+                }
+                catch ( Exception e )
+                {
+                    partException.compareAndSet(null, e);
+                    throw e;
+                }
+                finally
+                {
+                    bufferPool.offer(buffer);
+                }
+            }
+        };
+        parts.add(executor.submit(uploader));
+    }
+
+    private PartETag    uploadPartWithRetry(InitiateMultipartUploadResult upload, byte[] buffer, int length, byte[] md5, int partNumber) throws Exception
+    {
+        long            startMs = System.currentTimeMillis();
+        int             retries = 0;
+        for(;;)
+        {
+            try
+            {
+                return uploadPart(upload, buffer, length, md5, partNumber);
+            }
+            catch ( Exception e )
+            {
+                if ( !retryPolicy.allowRetry(retries++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
+                {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private PartETag    uploadPart(InitiateMultipartUploadResult upload, byte[] buffer, int length, byte[] md5, int partNumber) throws Exception
+    {
+        UploadPartRequest   request = new UploadPartRequest();
+        request.setBucketName(upload.getBucketName());
+        request.setKey(upload.getKey());
+        request.setUploadId(upload.getUploadId());
+        request.setPartNumber(partNumber);
+        request.setPartSize(length);
+        request.setMd5Digest(S3Utils.toBase64(md5));
+        request.setInputStream(new ByteArrayInputStream(buffer, 0, length));
+
+        UploadPartResult    response = s3Client.uploadPart(request);
+        PartETag            partETag = response.getPartETag();
+        if ( !response.getPartETag().getETag().equals(S3Utils.toHex(md5)) )
+        {
+            throw new Exception("Unable to match MD5 for part " + partNumber);
+        }
+
+        return partETag;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.s3.S3Client;
+import org.apache.curator.RetryLoop;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *     Reads an S3 object as a series of ranged GETs that are fetched in parallel and handed back in order. A
+ *     failed chunk is retried on its own - the rest of the object isn't fetched again.
+ * </p>
+ *
+ * <p>
+ *     At most one more chunk than there are download threads is held in memory (fetched or being fetched). The
+ *     throttle is applied as chunks are consumed.
+ * </p>
+ */
+class S3RangedInputStream extends InputStream
+{
+    private final S3Client                  s3Client;
+    private final String                    bucket;
+    private final String                    key;
+    private final long                      length;
+    private final int                       chunkSize;
+    private final RetryPolicy               retryPolicy;
+    private final Throttle                  throttle;
+    private final int                       maxChunks;
+    private final ExecutorService           executor;
+    private final LinkedList<Future<byte[]>> chunks = Lists.newLinkedList();
+
+    private long                            nextChunkStart = 0;
+    private byte[]                          current;
+    private int                             currentOffset = 0;
+
+    /**
+     * @param s3Client the client
+     * @param bucket bucket
+     * @param key object key
+     * @param length object length
+     * @param chunkSize size of each ranged GET
+     * @param downloadThreads number of chunks to fetch concurrently
+     * @param retryPolicy retry policy for each chunk
+     * @param throttle throttle
+     */
+    S3RangedInputStream(S3Client s3Client, String bucket, String key, long length, int chunkSize, int downloadThreads, RetryPolicy retryPolicy, Throttle throttle)
+    {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.retryPolicy = retryPolicy;
+        this.throttle = throttle;
+        maxChunks = downloadThreads + 1;
+        executor = Executors.newFixedThreadPool(downloadThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("S3RangedInputStream-%d").build());
+
+        fillChunks();
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if ( !nextChunk() )
+        {
+            return -1;
+        }
+        return current[currentOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !nextChunk() )
+        {
+            return -1;
+        }
+
+        int     thisLength = Math.min(len, current.length - currentOffset);
+        System.arraycopy(current, currentOffset, b, off, thisLength);
+        currentOffset += thisLength;
+        return thisLength;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return (current != null) ? (current.length - currentOffset) : 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        executor.shutdownNow();
+        chunks.clear();
+        current = null;
+    }
+
+    private boolean nextChunk() throws IOException
+    {
+        if ( (current != null) && (currentOffset < current.length) )
+        {
+            return true;
+        }
+
+        Future<byte[]>      future = chunks.poll();
+        if ( future == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            current = future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch ( ExecutionException e )
+        {
+            close();
+            throw new IOException("Could not read " + key, e.getCause());
+        }
+        currentOffset = 0;
+
+        throttle.throttleDelta(current.length);
+        fillChunks();
+
+        return true;
+    }
+
+    private void fillChunks()
+    {
+        while ( (chunks.size() < maxChunks) && (nextChunkStart < length) )
+        {
+            final long      start = nextChunkStart;
+            final long      end = Math.min(start + chunkSize, length) - 1;
+            nextChunkStart = end + 1;
+
+            Callable<byte[]>    fetcher = new Callable<byte[]>()
+            {
+                @Override
+                public byte[] call() throws Exception
+                {
+                    return fetchWithRetry(start, end);
+                }
+            };
+            chunks.add(executor.submit(fetcher));
+        }
+    }
+
+    private byte[] fetchWithRetry(long start, long end) throws Exception
+    {
+        long            startMs = System.currentTimeMillis();
+        int             retries = 0;
+        for(;;)
+        {
+            try
+            {
+                return fetch(start, end);
+            }
+            catch ( Exception e )
+            {
+                if ( !retryPolicy.allowRetry(retries++, System.currentTimeMillis() - startMs, RetryLoop.getDefaultRetrySleeper()) )
+                {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private byte[] fetch(long start, long end) throws Exception
+    {
+        S3Object        object = s3Client.getObject(bucket, key, start, end);
+        InputStream     in = object.getObjectContent();
+        try
+        {
+            byte[]      bytes = new byte[(int)(end - start + 1)];
+            ByteStreams.readFully(in, bytes);
+            return bytes;
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+}
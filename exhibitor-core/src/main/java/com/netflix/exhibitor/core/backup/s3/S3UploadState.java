@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.amazonaws.services.s3.model.PartETag;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.backup.PropertiesFile;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The local record of a multipart upload in progress: the upload id and the ETags of the parts that
+ * have been uploaded. If the upload fails the record is kept so that the next attempt can carry on
+ * with the same upload and only send the missing parts.
+ */
+class S3UploadState
+{
+    private final File                  file;
+    private final String                bucket;
+    private final String                key;
+    private final String                uploadId;
+    private final int                   partSize;
+    private final long                  createdMs;
+    private final Map<Integer, String>  eTags = Maps.newTreeMap();
+
+    private static final String     PROPERTY_BUCKET = "bucket";
+    private static final String     PROPERTY_KEY = "key";
+    private static final String     PROPERTY_UPLOAD_ID = "upload-id";
+    private static final String     PROPERTY_PART_SIZE = "part-size";
+    private static final String     PROPERTY_CREATED = "created";
+    private static final String     PROPERTY_PART_PREFIX = "part.";
+
+    S3UploadState(File file, String bucket, String key, String uploadId, int partSize, long createdMs)
+    {
+        this.file = file;
+        this.bucket = bucket;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.partSize = partSize;
+        this.createdMs = createdMs;
+    }
+
+    /**
+     * @param file state file
+     * @return the state or null if the file doesn't exist or can't be read
+     */
+    static S3UploadState    read(File file)
+    {
+        if ( !file.exists() )
+        {
+            return null;
+        }
+
+        Properties      properties = new Properties();
+        InputStream     in = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(file));
+            properties.load(in);
+
+            S3UploadState   state = new S3UploadState
+            (
+                file,
+                properties.getProperty(PROPERTY_BUCKET),
+                properties.getProperty(PROPERTY_KEY),
+                properties.getProperty(PROPERTY_UPLOAD_ID),
+                Integer.parseInt(properties.getProperty(PROPERTY_PART_SIZE)),
+                Long.parseLong(properties.getProperty(PROPERTY_CREATED))
+            );
+            if ( (state.bucket == null) || (state.key == null) || (state.uploadId == null) )
+            {
+                return null;
+            }
+
+            for ( String name : properties.stringPropertyNames() )
+            {
+                if ( name.startsWith(PROPERTY_PART_PREFIX) )
+                {
+                    state.eTags.put(Integer.parseInt(name.substring(PROPERTY_PART_PREFIX.length())), properties.getProperty(name));
+                }
+            }
+            return state;
+        }
+        catch ( Exception e )
+        {
+            // unreadable or corrupt - treat it as missing
+            return null;
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    String              getBucket()
+    {
+        return bucket;
+    }
+
+    String              getKey()
+    {
+        return key;
+    }
+
+    String              getUploadId()
+    {
+        return uploadId;
+    }
+
+    int                 getPartSize()
+    {
+        return partSize;
+    }
+
+    long                getCreatedMs()
+    {
+        return createdMs;
+    }
+
+    /**
+     * @param partNumber part
+     * @return the ETag recorded for the part or null
+     */
+    synchronized String getETag(int partNumber)
+    {
+        return eTags.get(partNumber);
+    }
+
+    /**
+     * Record an uploaded part and save
+     *
+     * @param partETag the part
+     * @throws IOException errors
+     */
+    synchronized void   partUploaded(PartETag partETag) throws IOException
+    {
+        eTags.put(partETag.getPartNumber(), partETag.getETag());
+        save();
+    }
+
+    synchronized void   save() throws IOException
+    {
+        Properties      properties = new Properties();
+        properties.setProperty(PROPERTY_BUCKET, bucket);
+        properties.setProperty(PROPERTY_KEY, key);
+        properties.setProperty(PROPERTY_UPLOAD_ID, uploadId);
+        properties.setProperty(PROPERTY_PART_SIZE, Integer.toString(partSize));
+        properties.setProperty(PROPERTY_CREATED, Long.toString(createdMs));
+        for ( Map.Entry<Integer, String> entry : eTags.entrySet() )
+        {
+            properties.setProperty(PROPERTY_PART_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+
+        PropertiesFile.save(properties, file);
+    }
+
+    synchronized void   delete()
+    {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.netflix.exhibitor.core.s3.S3Client;
+import java.io.File;
+
+/**
+ * Directory of {@link S3UploadState}s - one file per object key
+ */
+class S3UploadStateStore
+{
+    private final File      directory;
+
+    private static final String     FILE_EXTENSION = ".upload";
+
+    /**
+     * @param directory where to keep the state files
+     */
+    S3UploadStateStore(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Return the saved state of an earlier attempt to upload the given object
+     *
+     * @param bucket bucket
+     * @param key key
+     * @param partSize the part size of this attempt - state for a different part size can't be resumed
+     * @return state or null
+     */
+    S3UploadState   get(String bucket, String key, int partSize)
+    {
+        S3UploadState   state = S3UploadState.read(toFile(bucket, key));
+        if ( (state != null) && (!state.getBucket().equals(bucket) || !state.getKey().equals(key) || (state.getPartSize() != partSize)) )
+        {
+            state.delete();
+            state = null;
+        }
+        return state;
+    }
+
+    /**
+     * Record the start of a new upload
+     *
+     * @param bucket bucket
+     * @param key key
+     * @param uploadId S3 upload id
+     * @param partSize part size
+     * @return state
+     * @throws Exception errors
+     */
+    S3UploadState   create(String bucket, String key, String uploadId, int partSize) throws Exception
+    {
+        S3UploadState   state = new S3UploadState(toFile(bucket, key), bucket, key, uploadId, partSize, System.currentTimeMillis());
+        state.save();
+        return state;
+    }
+
+    /**
+     * Abort and forget uploads that were started more than the given time ago. They are for
+     * backups that will never be resumed (the log is gone or was backed up some other way).
+     *
+     * @param s3Client the client
+     * @param maxAgeMs max age
+     */
+    void            sweep(S3Client s3Client, long maxAgeMs)
+    {
+        File[]      files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+
+        for ( File file : files )
+        {
+            if ( !file.getName().endsWith(FILE_EXTENSION) )
+            {
+                continue;
+            }
+
+            S3UploadState   state = S3UploadState.read(file);
+            if ( state == null )
+            {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            else if ( (System.currentTimeMillis() - state.getCreatedMs()) > maxAgeMs )
+            {
+                try
+                {
+                    s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(state.getBucket(), state.getKey(), state.getUploadId()));
+                }
+                catch ( Exception ignore )
+                {
+                    // ignore - S3 lifecycle rules can clean up
+                }
+                state.delete();
+            }
+        }
+    }
+
+    private File    toFile(String bucket, String key)
+    {
+        return new File(directory, (bucket + "_" + key).replaceAll("[^A-Za-z0-9._-]", "_") + FILE_EXTENSION);
+    }
+}
@@ -16,78 +16,114 @@
 
 package com.netflix.exhibitor.core.backup.s3;
 
+import com.netflix.exhibitor.core.servo.ThrottleMonitoredData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Token bucket that is safe to share between threads so that concurrent transfers together stay
+ * under the target throughput. Callers pay after the fact: a transfer is let through if the bucket
+ * isn't in debt and its bytes are charged to whoever comes next. Up to the burst size can be sent
+ * without waiting after the bucket has been idle.
+ */
 public class Throttle
 {
     private static final Logger logger = LoggerFactory.getLogger(Throttle.class);
 
     private final String name;
     private final ThroughputFunction fun;
+    private final BurstFunction burstFun;
+    private final ThrottleMonitoredData monitoredData = new ThrottleMonitoredData();
 
-    // the bytes that had been handled the last time we delayed to throttle,
-    // and the time in milliseconds when we last throttled
-    private long bytesAtLastDelay;
-    private long timeAtLastDelay = System.currentTimeMillis();  // JLZ - need to initialize
+    // the time (System.nanoTime()) at which all the bytes charged so far will have been paid for
+    private final AtomicLong paidUpToNanos = new AtomicLong(System.nanoTime());
 
-    // current target bytes of throughput per millisecond
-    private int targetBytesPerMS = -1;
+    private static final BurstFunction NO_BURST = new BurstFunction()
+    {
+        @Override
+        public long burstBytes()
+        {
+            return 0;
+        }
+    };
 
     public Throttle(String name, ThroughputFunction fun)
     {
-        this.name = name;
-        this.fun = fun;
+        this(name, fun, NO_BURST);
     }
 
-    /** @param currentBytes Bytes of throughput since the beginning of the task. */
-    public void throttle(long currentBytes)
+    public Throttle(String name, ThroughputFunction fun, BurstFunction burstFun)
     {
-        throttleDelta(currentBytes - bytesAtLastDelay);
+        this.name = name;
+        this.fun = fun;
+        this.burstFun = burstFun;
     }
 
-    /** @param bytesDelta Bytes of throughput since the last call to throttle*(). */
+    /** @param bytesDelta Bytes of throughput since the last call to throttleDelta(). */
     public void throttleDelta(long bytesDelta)
     {
-        int newTargetBytesPerMS = fun.targetThroughput();
-        if ( newTargetBytesPerMS < 1 )
+        int targetBytesPerMS = fun.targetThroughput();
+        if ( targetBytesPerMS != monitoredData.targetBytesPerMs.getAndSet(targetBytesPerMS) )
+        {
+            logger.debug("{} target throughput now {} bytes/ms.", this, targetBytesPerMS);
+        }
+        monitoredData.bytes.addAndGet(bytesDelta);
+
+        if ( (targetBytesPerMS < 1) || (bytesDelta <= 0) )
         // throttling disabled
         {
             return;
         }
 
-        // if the target changed, log
-        if ( newTargetBytesPerMS != targetBytesPerMS )
+        double  nanosPerByte = (double)TimeUnit.MILLISECONDS.toNanos(1) / targetBytesPerMS;
+        long    costNanos = (long)(bytesDelta * nanosPerByte);
+        long    burstNanos = (long)(Math.max(0, burstFun.burstBytes()) * nanosPerByte);
+
+        long    waitNanos;
+        for(;;)
         {
-            logger.debug("{} target throughput now {} bytes/ms.", this, newTargetBytesPerMS);
+            long    now = System.nanoTime();
+            long    paidUpTo = paidUpToNanos.get();
+            long    start = Math.max(paidUpTo, now - burstNanos);   // unused credit is capped at the burst size
+            if ( paidUpToNanos.compareAndSet(paidUpTo, start + costNanos) )
+            {
+                waitNanos = paidUpTo - now;
+                break;
+            }
         }
-        targetBytesPerMS = newTargetBytesPerMS;
-
-        // time passed since last delay
-        long msSinceLast = System.currentTimeMillis() - timeAtLastDelay;
-        // the excess bytes in this period
-        long excessBytes = bytesDelta - msSinceLast * targetBytesPerMS;
 
-        // the time to delay to recap the deficit
-        long timeToDelay = excessBytes / Math.max(1, targetBytesPerMS);
-        if (timeToDelay > 0)
+        if ( waitNanos > 0 )
         {
             if ( logger.isTraceEnabled() )
             {
-                logger.trace(String.format("%s actual throughput was %d bytes in %d ms: throttling for %d ms",
-                    this, bytesDelta, msSinceLast, timeToDelay));
+                logger.trace(String.format("%s %d bytes: throttling for %d ms", this, bytesDelta, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
             }
+
+            monitoredData.waiting.incrementAndGet();
             try
             {
-                Thread.sleep(timeToDelay);
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
             }
-            catch (InterruptedException e)
+            catch ( InterruptedException e )
             {
-                throw new AssertionError(e);
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                monitoredData.waiting.decrementAndGet();
+                monitoredData.waitMs.addAndGet(TimeUnit.NANOSECONDS.toMillis(waitNanos));
             }
         }
-        bytesAtLastDelay += bytesDelta;
-        timeAtLastDelay = System.currentTimeMillis();
+    }
+
+    /**
+     * @return throughput and wait time metrics
+     */
+    public ThrottleMonitoredData getMonitoredData()
+    {
+        return monitoredData;
     }
 
     @Override
@@ -104,4 +140,12 @@ public class Throttle
          */
         public int targetThroughput();
     }
+
+    public interface BurstFunction
+    {
+        /**
+         * @return The number of bytes that can be sent without waiting after the throttle has been idle
+         */
+        public long burstBytes();
+    }
 }
@@ -18,6 +18,7 @@ package com.netflix.exhibitor.core.config;
 
 import com.google.common.collect.Lists;
 import com.netflix.exhibitor.core.backup.BackupConfigSpec;
+import com.netflix.exhibitor.core.backup.BackupManager;
 import com.netflix.exhibitor.core.backup.BackupProvider;
 import java.util.List;
 import java.util.Properties;
@@ -76,6 +77,10 @@ public class DefaultProperties
             {
                 backupDefaultValues.add(new EncodedConfigParser.FieldValue(spec.getKey(), spec.getDefaultValue()));
             }
+            for ( BackupConfigSpec spec : BackupManager.COMMON_CONFIGS )
+            {
+                backupDefaultValues.add(new EncodedConfigParser.FieldValue(spec.getKey(), spec.getDefaultValue()));
+            }
         }
         final String                    backupExtraValue = new EncodedConfigParser(backupDefaultValues).toEncoded();
 
@@ -159,6 +164,21 @@ public class DefaultProperties
                         return 1;
                     }
 
+                    case INDEX_CACHE_MAX_READERS:
+                    {
+                        return 10;
+                    }
+
+                    case INDEX_CACHE_MAX_MB:
+                    {
+                        return 256;
+                    }
+
+                    case INDEX_QUEUE_SIZE:
+                    {
+                        return 1000;
+                    }
+
                 }
                 return 0;
             }
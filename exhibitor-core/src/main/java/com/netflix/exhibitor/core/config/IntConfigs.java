@@ -170,6 +170,66 @@ public enum IntConfigs
      * of via rolling change).
      */
     AUTO_MANAGE_INSTANCES_APPLY_ALL_AT_ONCE()
+    {
+        @Override
+        public boolean isRestartSignificant()
+        {
+            return false;
+        }
+    },
+
+    /**
+     * Period in ms to tail the transaction logs into the live index - 0 (the default) disables the live index
+     */
+    LIVE_INDEX_PERIOD_MS()
+    {
+        @Override
+        public boolean isRestartSignificant()
+        {
+            return false;
+        }
+    },
+
+    /**
+     * Max number of index searchers to keep open when they are not in use
+     */
+    INDEX_CACHE_MAX_READERS()
+    {
+        @Override
+        public boolean isRestartSignificant()
+        {
+            return false;
+        }
+    },
+
+    /**
+     * Max approximate size in MB of the index searchers to keep open when they are not in use
+     */
+    INDEX_CACHE_MAX_MB()
+    {
+        @Override
+        public boolean isRestartSignificant()
+        {
+            return false;
+        }
+    },
+
+    /**
+     * Number of threads that fetch and parse logs when building an index - 0 (the default) uses one per processor
+     */
+    INDEX_THREAD_QTY()
+    {
+        @Override
+        public boolean isRestartSignificant()
+        {
+            return false;
+        }
+    },
+
+    /**
+     * Max number of parsed log entries waiting to be written when building an index
+     */
+    INDEX_QUEUE_SIZE()
     {
         @Override
         public boolean isRestartSignificant()
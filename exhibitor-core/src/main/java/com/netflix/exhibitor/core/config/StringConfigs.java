@@ -90,6 +90,18 @@ public enum StringConfigs
         }
     },
 
+    /**
+     * Where to keep the backup manifest and the progress of uploads - defaults to the log index directory
+     */
+    BACKUP_STATE_DIRECTORY
+    {
+        @Override
+        public boolean isRestartSignificant()
+        {
+            return false;
+        }
+    },
+
     /**
      * Additional properties to add to zoo.cfg
      */
@@ -16,26 +16,36 @@
 
 package com.netflix.exhibitor.core.index;
 
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Query;
 
+/**
+ * A search handle. Only the query is retained - pages are computed on demand so that
+ * open handles don't pin result sets in memory.
+ */
 public class CachedSearch
 {
-    private final TopDocs docs;
-    private final int totalDocs;
+    private final Query query;
+    private final int maxResults;
 
-    CachedSearch(TopDocs docs, int totalDocs)
+    CachedSearch(Query query, int maxResults)
     {
-        this.docs = docs;
-        this.totalDocs = totalDocs;
+        this.query = query;
+        this.maxResults = maxResults;
     }
 
-    public int  getTotalHits()
+    /**
+     * @return the query or null for all documents
+     */
+    public Query getQuery()
     {
-        return (docs != null) ? docs.totalHits : totalDocs;
+        return query;
     }
-    
-    public int  getNthDocId(int n)
+
+    /**
+     * @return max results to return or 0 for no limit
+     */
+    public int  getMaxResults()
     {
-        return (docs != null) ? docs.scoreDocs[n].doc : n;
+        return maxResults;
     }
 }
@@ -20,6 +20,8 @@ class FieldNames
 {
     static final String      TYPE = "type";
     static final String      PATH = "path";
+    static final String      PATH_TREE = "pathTree";
+    static final String      PATH_FAMILY = "pathFamily";
     static final String      DATE = "date";
     static final String      DATA = "data";
     static final String      VERSION = "version";
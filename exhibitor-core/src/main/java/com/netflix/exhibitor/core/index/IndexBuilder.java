@@ -16,12 +16,16 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.apache.curator.utils.CloseableUtils;
 import org.apache.jute.Record;
 import org.apache.lucene.analysis.KeywordAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.NIOFSDirectory;
@@ -31,11 +35,14 @@ import org.apache.zookeeper.txn.CreateTxn;
 import org.apache.zookeeper.txn.DeleteTxn;
 import org.apache.zookeeper.txn.SetDataTxn;
 import org.apache.zookeeper.txn.TxnHeader;
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -45,6 +52,11 @@ public class IndexBuilder implements Closeable
     private final AtomicInteger     count = new AtomicInteger(0);
     private final AtomicLong        from = new AtomicLong(Long.MAX_VALUE);
     private final AtomicLong        to = new AtomicLong(Long.MIN_VALUE);
+    private final ConcurrentMap<String, IndexedSource> sources = Maps.newConcurrentMap();
+    private final AtomicLong        committedZxid = new AtomicLong(-1);
+    private final AtomicLong        lastAddedZxid = new AtomicLong(-1);
+
+    private static final String     LAST_ZXID_KEY = "lastZxid";
 
     private NIOFSDirectory niofsDirectory;
     private IndexWriter writer;
@@ -55,15 +67,53 @@ public class IndexBuilder implements Closeable
     }
 
     public void open() throws Exception
+    {
+        open(false);
+    }
+
+    /**
+     * @param append if true, an existing index in the directory is added to instead of
+     *               being replaced. The existing meta data is used so that only new logs/entries
+     *               get indexed
+     * @throws Exception errors
+     */
+    public void open(boolean append) throws Exception
     {
         if ( !directory.exists() && !directory.mkdirs() )
         {
             throw new IOException("Could not make: " + directory);
         }
 
-        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        File                metaDataFile = IndexMetaData.getMetaDataFile(directory);
+        if ( append && metaDataFile.exists() )
+        {
+            IndexMetaData   metaData = IndexMetaData.read(metaDataFile);
+            count.set(metaData.getEntryCount());
+            if ( metaData.getEntryCount() > 0 )
+            {
+                from.set(metaData.getFrom().getTime());
+                to.set(metaData.getTo().getTime());
+            }
+            sources.putAll(metaData.getSources());
+        }
+
+        IndexWriterConfig.OpenMode  openMode = append ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE;
+        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer()).setOpenMode(openMode);
 
         niofsDirectory = new NIOFSDirectory(directory, new SingleInstanceLockFactory());
+        if ( append && IndexReader.indexExists(niofsDirectory) )
+        {
+            IndexReader     reader = IndexReader.open(niofsDirectory);
+            try
+            {
+                String      lastZxid = reader.getIndexCommit().getUserData().get(LAST_ZXID_KEY);
+                committedZxid.set((lastZxid != null) ? Long.parseLong(lastZxid) : -1);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(reader);
+            }
+        }
         writer = new IndexWriter(niofsDirectory, conf);
     }
 
@@ -79,19 +129,263 @@ public class IndexBuilder implements Closeable
                     @Override
                     public void receiveEntry(TxnHeader header, Record record) throws Exception
                     {
-                        indexRecord(header, record, count, from, to);
+                        Document    document = makeDocument(header, record);
+                        if ( document != null )
+                        {
+                            writer.addDocument(document);
+                        }
                     }
                 }
             );
         }
     }
 
+    /**
+     * Returns true if the given version of the named log has already been completely indexed
+     *
+     * @param name log name
+     * @param modifiedDate log modified date
+     * @return true/false
+     */
+    public boolean isIndexed(String name, long modifiedDate)
+    {
+        IndexedSource       source = sources.get(name);
+        return (source != null) && (source.getModifiedDate() == modifiedDate);
+    }
+
+    /**
+     * Add the given log to the index. If the log was previously (partially) indexed, only
+     * entries after the previously indexed entries are added.
+     *
+     * @param name log name
+     * @param modifiedDate log modified date
+     * @param stream the log (uncompressed)
+     * @throws Exception errors
+     */
+    public void add(String name, long modifiedDate, InputStream stream) throws Exception
+    {
+        add
+        (
+            name,
+            modifiedDate,
+            stream,
+            new DocumentReceiver()
+            {
+                @Override
+                public void receiveDocument(Document document) throws Exception
+                {
+                    writer.addDocument(document);
+                }
+            }
+        );
+    }
+
+    /**
+     * Parse the given log, passing the documents to be indexed to the given receiver
+     * instead of writing them. This method is thread safe - multiple logs can be parsed
+     * concurrently as long as each log name is only parsed by one thread at a time. The receiver
+     * is responsible for passing the documents to {@link #addDocument(Document)}.
+     *
+     * @param name log name
+     * @param modifiedDate log modified date
+     * @param stream the log (uncompressed)
+     * @param receiver receives the documents
+     * @throws Exception errors
+     */
+    public void add(String name, long modifiedDate, InputStream stream, DocumentReceiver receiver) throws Exception
+    {
+        add(name, modifiedDate, new ZooKeeperLogParser(stream), receiver);
+    }
+
+    /**
+     * Same as {@link #add(String, long, InputStream, DocumentReceiver)} but for a local, uncompressed
+     * log. The log is memory mapped if possible.
+     *
+     * @param name log name
+     * @param modifiedDate log modified date
+     * @param file the log
+     * @param receiver receives the documents
+     * @throws Exception errors
+     */
+    public void add(String name, long modifiedDate, File file, DocumentReceiver receiver) throws Exception
+    {
+        if ( MappedZooKeeperLogParser.canMap(file) )
+        {
+            add(name, modifiedDate, new MappedZooKeeperLogParser(file), receiver);
+        }
+        else
+        {
+            InputStream     in = new BufferedInputStream(new FileInputStream(file));
+            try
+            {
+                add(name, modifiedDate, new ZooKeeperLogParser(in), receiver);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Return what has been indexed for the given log
+     *
+     * @param name log name
+     * @return indexed details or null
+     */
+    public IndexedSource getIndexedSource(String name)
+    {
+        return sources.get(name);
+    }
+
+    private void add(String name, long modifiedDate, LogParser logParser, final DocumentReceiver receiver) throws Exception
+    {
+        IndexedSource       source = parseNewEntries
+        (
+            name,
+            modifiedDate,
+            logParser,
+            sources.get(name),
+            new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    Document    document = makeDocument(header, record);
+                    if ( document != null )
+                    {
+                        receiver.receiveDocument(document);
+                    }
+                }
+            }
+        );
+        if ( source != null )
+        {
+            sources.put(name, source);
+        }
+    }
+
+    /**
+     * Parse the entries of the given log that come after what was previously indexed
+     *
+     * @param name log name
+     * @param modifiedDate log modified date
+     * @param logParser parser for the log
+     * @param previous what was previously indexed from the log or null
+     * @param receiver receives the new entries
+     * @return what has now been indexed from the log or null if nothing could be parsed
+     * @throws Exception errors
+     */
+    static IndexedSource parseNewEntries(String name, long modifiedDate, LogParser logParser, IndexedSource previous, final LogEntryReceiver receiver) throws Exception
+    {
+        if ( !logParser.isValid() )
+        {
+            return null;
+        }
+
+        final long          lastIndexedZxid = (previous != null) ? previous.getLastZxid() : -1;
+        if ( (previous != null) && !logParser.skipTo(previous.getOffset()) )
+        {
+            return null; // log is shorter than what was indexed - nothing new
+        }
+
+        final AtomicLong    firstZxid = new AtomicLong((previous != null) ? previous.getFirstZxid() : -1);
+        final AtomicLong    lastZxid = new AtomicLong(lastIndexedZxid);
+        logParser.parse
+        (
+            new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    if ( header.getZxid() > lastIndexedZxid )
+                    {
+                        receiver.receiveEntry(header, record);
+                        firstZxid.compareAndSet(-1, header.getZxid());
+                        lastZxid.set(header.getZxid());
+                    }
+                }
+            }
+        );
+
+        long                offset = Math.max(logParser.getLastEntryEndOffset(), (previous != null) ? previous.getOffset() : 0);
+        return new IndexedSource(name, modifiedDate, offset, firstZxid.get(), lastZxid.get());
+    }
+
+    /**
+     * Write a document produced via {@link #add(String, long, InputStream, DocumentReceiver)}
+     *
+     * @param document the document
+     * @throws IOException errors
+     */
+    public void addDocument(Document document) throws IOException
+    {
+        writer.addDocument(document);
+    }
+
+    /**
+     * Index a single log entry. Entry types that aren't indexed are ignored as are entries
+     * that are already part of a {@link #commit()}.
+     *
+     * @param header entry header
+     * @param record entry record
+     * @throws IOException errors
+     */
+    public void add(TxnHeader header, Record record) throws IOException
+    {
+        if ( header.getZxid() <= committedZxid.get() )
+        {
+            return;
+        }
+
+        Document    document = makeDocument(header, record);
+        if ( document != null )
+        {
+            writer.addDocument(document);
+        }
+        lastAddedZxid.set(Math.max(lastAddedZxid.get(), header.getZxid()));
+    }
+
+    /**
+     * Commit the entries added via {@link #add(TxnHeader, Record)}. The highest zxid is stored with
+     * the commit and entries up to it are ignored when the index is opened for append again. Thus,
+     * adding the same entries again (e.g. the caller failed before saving its position) doesn't
+     * duplicate them.
+     *
+     * @throws IOException errors
+     */
+    public void commit() throws IOException
+    {
+        long        zxid = Math.max(committedZxid.get(), lastAddedZxid.get());
+        writer.commit(ImmutableMap.of(LAST_ZXID_KEY, Long.toString(zxid)));
+        committedZxid.set(zxid);
+    }
+
     public void writeMetaData() throws Exception
     {
-        IndexMetaData       metaData = new IndexMetaData(new Date(from.get()), new Date(to.get()), count.get());
+        IndexMetaData       metaData = new IndexMetaData(new Date(from.get()), new Date(to.get()), count.get(), sources);
         IndexMetaData.write(metaData, IndexMetaData.getMetaDataFile(directory));
     }
 
+    /**
+     * Discard any changes made since the index was opened
+     */
+    public void abort()
+    {
+        if ( writer != null )
+        {
+            try
+            {
+                writer.rollback();
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
+            writer = null;
+        }
+    }
+
     @Override
     public void close() throws IOException
     {
@@ -104,25 +398,25 @@ public class IndexBuilder implements Closeable
         return count.get();
     }
 
-    private void indexRecord(TxnHeader header, Record record, AtomicInteger count, AtomicLong from, AtomicLong to) throws IOException
+    private Document makeDocument(TxnHeader header, Record record)
     {
         if ( record instanceof CreateTxn )
         {
             CreateTxn   createTxn = (CreateTxn)record;
 
             EntryTypes type = createTxn.getEphemeral() ? EntryTypes.CREATE_EPHEMERAL: EntryTypes.CREATE_PERSISTENT;
-            Document document = makeDocument(header, type, count, from, to);
+            Document document = makeDocument(header, type);
             addPath(document, createTxn.getPath());
             addData(document, createTxn.getData());
-            writer.addDocument(document);
+            return document;
         }
         else if ( record instanceof DeleteTxn )
         {
             DeleteTxn   deleteTxn = (DeleteTxn)record;
 
-            Document document = makeDocument(header, EntryTypes.DELETE, count, from, to);
+            Document document = makeDocument(header, EntryTypes.DELETE);
             addPath(document, deleteTxn.getPath());
-            writer.addDocument(document);
+            return document;
         }
         else if ( record instanceof SetDataTxn )
         {
@@ -131,12 +425,13 @@ public class IndexBuilder implements Closeable
             NumericField versionField = new NumericField(FieldNames.VERSION, Field.Store.YES, true);
             versionField.setIntValue(setDataTxn.getVersion());
 
-            Document document = makeDocument(header, EntryTypes.SET_DATA, count, from, to);
+            Document document = makeDocument(header, EntryTypes.SET_DATA);
             addPath(document, setDataTxn.getPath());
             addData(document, setDataTxn.getData());
             document.add(versionField);
-            writer.addDocument(document);
+            return document;
         }
+        return null;
     }
 
     private void addData(Document document, byte[] data)
@@ -150,27 +445,62 @@ public class IndexBuilder implements Closeable
 
     private void addPath(Document document, String path)
     {
-        document.add(new Field(FieldNames.PATH, path, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(newKeywordField(FieldNames.PATH, path));
+        for ( String ancestor : PathTerms.ancestors(path) )
+        {
+            document.add(newMatchOnlyField(FieldNames.PATH_TREE, ancestor));
+        }
+        document.add(newMatchOnlyField(FieldNames.PATH_FAMILY, PathTerms.family(path)));
+    }
+
+    // derived terms that are never displayed
+    private Field newMatchOnlyField(String name, String value)
+    {
+        Field       field = new Field(name, value, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS);
+        field.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+        return field;
+    }
+
+    // single term fields that are only used for matching and for the columns read by IndexColumns - norms and term freqs aren't needed
+    private Field newKeywordField(String name, String value)
+    {
+        Field       field = new Field(name, value, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS);
+        field.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+        return field;
     }
 
-    private Document makeDocument(TxnHeader header, EntryTypes type, AtomicInteger count, AtomicLong from, AtomicLong to)
+    private Document makeDocument(TxnHeader header, EntryTypes type)
     {
         count.incrementAndGet();
-        if ( header.getTime() < from.get() )
-        {
-            from.set(header.getTime());
-        }
-        if ( header.getTime() > to.get() )
-        {
-            to.set(header.getTime());
-        }
+        updateRange(header.getTime());
 
         NumericField dateField = new NumericField(FieldNames.DATE, Field.Store.YES, true);
         dateField.setLongValue(header.getTime());
 
         Document    document = new Document();
-        document.add(new Field(FieldNames.TYPE, Integer.toString(type.getId()), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(newKeywordField(FieldNames.TYPE, Integer.toString(type.getId())));
         document.add(dateField);
         return document;
     }
+
+    private void updateRange(long time)
+    {
+        // logs can be parsed concurrently
+        for(;;)
+        {
+            long        current = from.get();
+            if ( (time >= current) || from.compareAndSet(current, time) )
+            {
+                break;
+            }
+        }
+        for(;;)
+        {
+            long        current = to.get();
+            if ( (time <= current) || to.compareAndSet(current, time) )
+            {
+                break;
+            }
+        }
+    }
 }
@@ -16,18 +16,29 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.servo.IndexCacheMonitoredData;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -52,28 +63,118 @@ public class IndexCache implements Closeable
     private final ConcurrentMap<File, LogSearchHolder>  indexCache = Maps.newConcurrentMap();
     private final AtomicBoolean                         isOpen = new AtomicBoolean(true);
     private final ActivityLog                           log;
+    private final ExecutorService                       searchExecutor = Executors.newFixedThreadPool(SEARCH_THREAD_QTY, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("IndexSearch-%d").build());
+    private final ScheduledExecutorService              sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("IndexCacheSweeper-%d").build());
+    private final IndexCacheMonitoredData               monitoredData = new IndexCacheMonitoredData();
+    private final int                                   maxIdleMs;
+    private volatile int                                maxOpenReaders;
+    private volatile long                               maxOpenBytes;
 
     private static class LogSearchHolder
     {
         // all protected by synchronization
         private LogSearch               logSearch;
+        private long                    approximateBytes = 0;
         private int                     useCount = 0;
         private long                    lastUse = System.currentTimeMillis();
         private boolean                 markedForDeletion = false;
+        private boolean                 isStale = false;
+        private boolean                 isRemoved = false;
+    }
+
+    private static class EvictionCandidate
+    {
+        private final File              indexDirectory;
+        private final LogSearchHolder   holder;
+        private final long              lastUse;
+
+        private EvictionCandidate(File indexDirectory, LogSearchHolder holder, long lastUse)
+        {
+            this.indexDirectory = indexDirectory;
+            this.holder = holder;
+            this.lastUse = lastUse;
+        }
     }
 
     private static final int        MAX_CACHE_MS = (int)TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
+    private static final int        SWEEP_PERIOD_MS = (int)TimeUnit.MILLISECONDS.convert(1, TimeUnit.MINUTES);
+    private static final int        SEARCH_THREAD_QTY = Runtime.getRuntime().availableProcessors();
 
-    public IndexCache(ActivityLog log)
+    /**
+     * Open searches that are in use are never closed. So, the limits can be exceeded while
+     * more searches than the limits allow are in use.
+     *
+     * @param log the log
+     * @param maxOpenReaders maximum number of index readers to keep open
+     * @param maxOpenBytes maximum approximate heap used by the open readers
+     */
+    public IndexCache(ActivityLog log, int maxOpenReaders, long maxOpenBytes)
+    {
+        this(log, maxOpenReaders, maxOpenBytes, MAX_CACHE_MS, SWEEP_PERIOD_MS);
+    }
+
+    @VisibleForTesting
+    IndexCache(ActivityLog log, int maxOpenReaders, long maxOpenBytes, int maxIdleMs, int sweepPeriodMs)
     {
         this.log = log;
+        this.maxOpenReaders = maxOpenReaders;
+        this.maxOpenBytes = maxOpenBytes;
+        this.maxIdleMs = maxIdleMs;
+
+        Runnable        command = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    sweep();
+                }
+                catch ( Throwable e )
+                {
+                    IndexCache.this.log.add(ActivityLog.Type.ERROR, "Sweeping the index cache", e);
+                }
+            }
+        };
+        sweeper.scheduleWithFixedDelay(command, sweepPeriodMs, sweepPeriodMs, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void close() throws IOException
     {
         Preconditions.checkArgument(isOpen.compareAndSet(true, false), "Cache is closed");
-        clean();
+        sweeper.shutdownNow();
+        searchExecutor.shutdownNow();
+        sweep();
+    }
+
+    /**
+     * Change the limits. Searches over the new limits that are not in use are closed immediately.
+     *
+     * @param maxOpenReaders maximum number of index readers to keep open
+     * @param maxOpenBytes maximum approximate heap used by the open readers
+     */
+    public void setLimits(int maxOpenReaders, long maxOpenBytes)
+    {
+        this.maxOpenReaders = maxOpenReaders;
+        this.maxOpenBytes = maxOpenBytes;
+        evictIfNeeded();
+    }
+
+    /**
+     * @return hit/miss/eviction counters and the current size of the cache
+     */
+    public IndexCacheMonitoredData getMonitoredData()
+    {
+        return monitoredData;
+    }
+
+    /**
+     * @return bounded executor for running searches across indexes in parallel
+     */
+    ExecutorService         getSearchExecutor()
+    {
+        return searchExecutor;
     }
 
     public IndexMetaData    getMetaData(File indexDirectory) throws Exception
@@ -87,39 +188,90 @@ public class IndexCache implements Closeable
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        LogSearchHolder     holder = getHolder(indexDirectory);
-        synchronized(holder)
+        boolean             done = false;
+        while ( !done )
         {
-            holder.markedForDeletion = true;
+            LogSearchHolder     holder = getHolder(indexDirectory);
+            synchronized(holder)
+            {
+                if ( !holder.isRemoved )
+                {
+                    holder.markedForDeletion = true;
+                    if ( holder.useCount == 0 )
+                    {
+                        closeHolder(indexDirectory, holder);
+                    }
+                    done = true;
+                }
+            }
         }
-        clean();
     }
 
-    public LogSearch        getLogSearch(File indexDirectory) throws Exception
+    /**
+     * Call after an index has been updated in place. The cached meta data is discarded and the
+     * open searcher (if any) is re-opened once it is no longer in use.
+     *
+     * @param indexDirectory the index
+     */
+    public void     indexUpdated(File indexDirectory)
     {
         Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        clean();
+        metaDataCache.invalidate(indexDirectory);
+        LogSearchHolder     holder = indexCache.get(indexDirectory);
+        if ( holder != null )
+        {
+            synchronized(holder)
+            {
+                holder.isStale = true;
+                if ( holder.useCount == 0 )
+                {
+                    closeHolder(indexDirectory, holder);
+                }
+            }
+        }
+    }
 
-        final LogSearchHolder     holder = getHolder(indexDirectory);
+    public LogSearch        getLogSearch(File indexDirectory) throws Exception
+    {
+        Preconditions.checkArgument(isOpen.get(), "Cache is closed");
 
-        LogSearch                 logSearch;
-        synchronized(holder)
+        LogSearch                 logSearch = null;
+        while ( logSearch == null )
         {
-            if ( holder.logSearch == null )
+            LogSearchHolder     holder = getHolder(indexDirectory);
+            synchronized(holder)
             {
-                Preconditions.checkArgument(holder.useCount == 0, "use count is non zero but instance is null: " + holder.useCount);
-                holder.logSearch = new LogSearch(indexDirectory);
-            }
+                if ( holder.isRemoved )
+                {
+                    continue;   // closed by the sweeper/eviction in the meantime - use a new holder
+                }
 
-            ++holder.useCount;
-            Preconditions.checkArgument(holder.useCount > 0, "use count has rolled over: " + holder.useCount);
+                if ( holder.logSearch == null )
+                {
+                    Preconditions.checkArgument(holder.useCount == 0, "use count is non zero but instance is null: " + holder.useCount);
+                    holder.logSearch = new LogSearch(indexDirectory);
+                    holder.approximateBytes = holder.logSearch.getApproximateBytes();
+                    monitoredData.misses.incrementAndGet();
+                    monitoredData.openReaders.incrementAndGet();
+                    monitoredData.openBytes.addAndGet(holder.approximateBytes);
+                }
+                else
+                {
+                    monitoredData.hits.incrementAndGet();
+                }
+
+                ++holder.useCount;
+                Preconditions.checkArgument(holder.useCount > 0, "use count has rolled over: " + holder.useCount);
 
-            holder.lastUse = System.currentTimeMillis();
+                holder.lastUse = System.currentTimeMillis();
 
-            logSearch = holder.logSearch;
+                logSearch = holder.logSearch;
+            }
         }
 
+        evictIfNeeded();
+
         return logSearch;
     }
 
@@ -134,7 +286,14 @@ public class IndexCache implements Closeable
         {
             Preconditions.checkArgument(holder.useCount > 0, "non positive use count in release: " + holder.useCount);
             --holder.useCount;
+
+            if ( (holder.useCount == 0) && (holder.markedForDeletion || holder.isStale) )
+            {
+                closeHolder(indexDirectory, holder);
+            }
         }
+
+        evictIfNeeded();
     }
 
     private LogSearchHolder getHolder(File indexDirectory)
@@ -170,33 +329,99 @@ public class IndexCache implements Closeable
         log.add(ActivityLog.Type.INFO, "Index deleted: " + indexDirectory.getName());
     }
 
-    private void        clean()
+    // closes idle, stale and deleted entries - runs periodically in the background
+    @VisibleForTesting
+    void                sweep()
     {
-        Iterator<Map.Entry<File, LogSearchHolder>> iterator = indexCache.entrySet().iterator();
-        while ( iterator.hasNext() )
+        long        now = System.currentTimeMillis();
+        for ( Map.Entry<File, LogSearchHolder> entry : indexCache.entrySet() )
         {
-            final Map.Entry<File, LogSearchHolder> entry = iterator.next();
-            final LogSearchHolder     holder = entry.getValue();
+            LogSearchHolder     holder = entry.getValue();
             synchronized(holder)
             {
-                if ( holder.useCount == 0 )
+                if ( (holder.useCount == 0) && !holder.isRemoved )
                 {
-                    if ( !isOpen.get() || holder.markedForDeletion || ((System.currentTimeMillis() - holder.lastUse) > MAX_CACHE_MS) )
+                    if ( !isOpen.get() || holder.markedForDeletion || holder.isStale || ((now - holder.lastUse) > maxIdleMs) )
                     {
-                        if ( holder.logSearch != null )
-                        {
-                            holder.logSearch.close();
-                            holder.logSearch = null;
-                        }
-                        iterator.remove();
-
-                        if ( holder.markedForDeletion )
-                        {
-                            delete(entry.getKey());
-                        }
+                        closeHolder(entry.getKey(), holder);
                     }
                 }
             }
         }
+
+        evictIfNeeded();
+    }
+
+    // closes the least recently used searches that aren't in use until the cache is within its limits
+    private synchronized void evictIfNeeded()
+    {
+        if ( !isOverLimit() )
+        {
+            return;
+        }
+
+        List<EvictionCandidate>     candidates = Lists.newArrayList();
+        for ( Map.Entry<File, LogSearchHolder> entry : indexCache.entrySet() )
+        {
+            LogSearchHolder     holder = entry.getValue();
+            synchronized(holder)
+            {
+                if ( (holder.useCount == 0) && (holder.logSearch != null) )
+                {
+                    candidates.add(new EvictionCandidate(entry.getKey(), holder, holder.lastUse));
+                }
+            }
+        }
+        Collections.sort
+        (
+            candidates,
+            new Comparator<EvictionCandidate>()
+            {
+                @Override
+                public int compare(EvictionCandidate o1, EvictionCandidate o2)
+                {
+                    return Longs.compare(o1.lastUse, o2.lastUse);
+                }
+            }
+        );
+
+        Iterator<EvictionCandidate>     iterator = candidates.iterator();
+        while ( isOverLimit() && iterator.hasNext() )
+        {
+            EvictionCandidate   candidate = iterator.next();
+            synchronized(candidate.holder)
+            {
+                if ( (candidate.holder.useCount == 0) && (candidate.holder.logSearch != null) )
+                {
+                    closeHolder(candidate.indexDirectory, candidate.holder);
+                    monitoredData.evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private boolean     isOverLimit()
+    {
+        return (monitoredData.openReaders.get() > maxOpenReaders) || (monitoredData.openBytes.get() > maxOpenBytes);
+    }
+
+    // caller must hold the holder's lock
+    private void        closeHolder(File indexDirectory, LogSearchHolder holder)
+    {
+        if ( holder.logSearch != null )
+        {
+            holder.logSearch.close();
+            holder.logSearch = null;
+            monitoredData.openReaders.decrementAndGet();
+            monitoredData.openBytes.addAndGet(-holder.approximateBytes);
+            holder.approximateBytes = 0;
+        }
+        holder.isRemoved = true;
+        indexCache.remove(indexDirectory, holder);
+
+        if ( holder.markedForDeletion )
+        {
+            delete(indexDirectory);
+        }
     }
 }
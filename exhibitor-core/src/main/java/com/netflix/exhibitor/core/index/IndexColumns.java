@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ReaderUtil;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <p>
+ *     Column oriented (one array per field per segment) view of the type, date, path and version of
+ *     every entry in an index so that search results can be rendered without loading stored fields
+ *     (which would also decode the potentially large data field).
+ * </p>
+ *
+ * <p>
+ *     The arrays come from Lucene's field cache. They are held per segment and are therefore shared with
+ *     the date sort used by searches.
+ * </p>
+ */
+class IndexColumns
+{
+    private final int[]         docStarts;
+    private final Segment[]     segments;
+    private final long          approximateBytes;
+
+    // rough JVM overhead of a String object plus its char array
+    private static final int    STRING_OVERHEAD_BYTES = 40;
+
+    private static class Segment
+    {
+        private final long[]                    dates;
+        private final int[]                     typeOrds;
+        private final int[]                     typeIdsByOrd;
+        private final FieldCache.StringIndex    paths;
+        private final int[]                     versions;
+        private final Bits                      hasVersion;
+
+        private Segment(IndexReader reader) throws IOException
+        {
+            dates = FieldCache.DEFAULT.getLongs(reader, FieldNames.DATE, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+            paths = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.PATH);
+            versions = FieldCache.DEFAULT.getInts(reader, FieldNames.VERSION, FieldCache.NUMERIC_UTILS_INT_PARSER);
+            hasVersion = FieldCache.DEFAULT.getDocsWithField(reader, FieldNames.VERSION);
+
+            FieldCache.StringIndex  types = FieldCache.DEFAULT.getStringIndex(reader, FieldNames.TYPE);
+            typeOrds = types.order;
+            typeIdsByOrd = new int[types.lookup.length];
+            for ( int i = 0; i < types.lookup.length; ++i )
+            {
+                EntryTypes      type = (types.lookup[i] != null) ? EntryTypes.getFromId(types.lookup[i]) : null;
+                typeIdsByOrd[i] = (type != null) ? type.getId() : -1;
+            }
+        }
+
+        private long getApproximateBytes()
+        {
+            long        bytes = (dates.length * 8L) + (typeOrds.length * 4L) + (typeIdsByOrd.length * 4L) + (paths.order.length * 4L) + (versions.length * 4L) + (versions.length / 8);
+            for ( String path : paths.lookup )
+            {
+                bytes += (path != null) ? (STRING_OVERHEAD_BYTES + (path.length() * 2L)) : 4;
+            }
+            return bytes;
+        }
+    }
+
+    IndexColumns(IndexReader reader) throws IOException
+    {
+        List<IndexReader>   subReaders = Lists.newArrayList();
+        ReaderUtil.gatherSubReaders(subReaders, reader);
+
+        docStarts = new int[subReaders.size()];
+        segments = new Segment[subReaders.size()];
+        int                 docStart = 0;
+        long                bytes = 0;
+        for ( int i = 0; i < subReaders.size(); ++i )
+        {
+            IndexReader     subReader = subReaders.get(i);
+            docStarts[i] = docStart;
+            segments[i] = new Segment(subReader);
+            docStart += subReader.maxDoc();
+            bytes += segments[i].getApproximateBytes();
+        }
+        approximateBytes = bytes;
+    }
+
+    /**
+     * @return approximate heap used by the columns
+     */
+    long            getApproximateBytes()
+    {
+        return approximateBytes;
+    }
+
+    /**
+     * @param documentId top level document id
+     * @return the entry (without data)
+     */
+    SearchItem      toResult(int documentId)
+    {
+        int         segmentIndex = ReaderUtil.subIndex(documentId, docStarts);
+        Segment     segment = segments[segmentIndex];
+        int         doc = documentId - docStarts[segmentIndex];
+        if ( (doc < 0) || (doc >= segment.dates.length) )
+        {
+            throw new IllegalArgumentException("Invalid document id: " + documentId);
+        }
+
+        return new SearchItem
+        (
+            segment.typeIdsByOrd[segment.typeOrds[doc]],
+            segment.paths.lookup[segment.paths.order[doc]],
+            segment.hasVersion.get(doc) ? segment.versions[doc] : -1,
+            new Date(segment.dates[doc])
+        );
+    }
+}
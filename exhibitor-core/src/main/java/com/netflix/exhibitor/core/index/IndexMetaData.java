@@ -16,6 +16,8 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.collect.ImmutableMap;
+import com.netflix.exhibitor.core.config.DefaultProperties;
 import org.apache.curator.utils.CloseableUtils;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -26,6 +28,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.DateFormat;
 import java.util.Date;
+import java.util.Map;
 import java.util.Properties;
 
 public class IndexMetaData
@@ -33,15 +36,18 @@ public class IndexMetaData
     private final Date  from;
     private final Date  to;
     private final int   entryCount;
+    private final Map<String, IndexedSource> sources;
 
     private static final String         META_DATA_FILE_EXTENSION = ".properties";
 
-    private static final int        VERSION = 1;
+    private static final int        VERSION = 2;
+    private static final int        MIN_VERSION = 1;
     
     private static final String     PROPERTY_FROM = "from";
     private static final String     PROPERTY_TO = "to";
     private static final String     PROPERTY_COUNT = "count";
     private static final String     PROPERTY_VERSION = "version";
+    private static final String     PROPERTY_SOURCE_PREFIX = "source.";
 
     public static boolean isValid(File indexDirectory)
     {
@@ -62,6 +68,10 @@ public class IndexMetaData
         properties.setProperty(PROPERTY_TO, format.format(meta.to));
         properties.setProperty(PROPERTY_VERSION, Integer.toString(VERSION));
         properties.setProperty(PROPERTY_COUNT, Integer.toString(meta.entryCount));
+        for ( IndexedSource source : meta.sources.values() )
+        {
+            properties.setProperty(PROPERTY_SOURCE_PREFIX + source.getName(), source.encode());
+        }
         
         OutputStream    out = new BufferedOutputStream(new FileOutputStream(to));
         try
@@ -90,24 +100,52 @@ public class IndexMetaData
         }
 
         String version = properties.getProperty(PROPERTY_VERSION, "0");
-        if ( !version.equals(Integer.toString(VERSION)) )
+        int    versionNumber = DefaultProperties.asInt(version);
+        if ( (versionNumber < MIN_VERSION) || (versionNumber > VERSION) )
         {
             throw new Exception("Unknown version: " + version);
         }
 
+        ImmutableMap.Builder<String, IndexedSource> builder = ImmutableMap.builder();
+        for ( String name : properties.stringPropertyNames() )
+        {
+            if ( name.startsWith(PROPERTY_SOURCE_PREFIX) )
+            {
+                String          sourceName = name.substring(PROPERTY_SOURCE_PREFIX.length());
+                IndexedSource   source = IndexedSource.decode(sourceName, properties.getProperty(name));
+                if ( source != null )
+                {
+                    builder.put(sourceName, source);
+                }
+            }
+        }
+
         return new IndexMetaData
         (
             format.parse(properties.getProperty(PROPERTY_FROM)),
             format.parse(properties.getProperty(PROPERTY_TO)),
-            Integer.parseInt(properties.getProperty(PROPERTY_COUNT))
+            Integer.parseInt(properties.getProperty(PROPERTY_COUNT)),
+            builder.build()
         );
     }
 
     public IndexMetaData(Date from, Date to, int entryCount)
+    {
+        this(from, to, entryCount, ImmutableMap.<String, IndexedSource>of());
+    }
+
+    /**
+     * @param from earliest entry date
+     * @param to latest entry date
+     * @param entryCount number of entries
+     * @param sources the logs that have been indexed - used for incremental builds
+     */
+    public IndexMetaData(Date from, Date to, int entryCount, Map<String, IndexedSource> sources)
     {
         this.from = from;
         this.to = to;
         this.entryCount = entryCount;
+        this.sources = ImmutableMap.copyOf(sources);
     }
 
     public Date getFrom()
@@ -124,4 +162,15 @@ public class IndexMetaData
     {
         return entryCount;
     }
+
+    /**
+     * Return the logs that were indexed keyed by log name. Indexes written by older
+     * versions of Exhibitor have no sources.
+     *
+     * @return sources
+     */
+    public Map<String, IndexedSource> getSources()
+    {
+        return sources;
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.lucene.document.Document;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes a set of logs using a bounded pipeline: a pool of workers fetch and parse
+ * the logs (one log per worker at a time) and feed the resulting documents through a
+ * bounded queue to the calling thread which writes them to the index
+ */
+public class IndexPipeline
+{
+    private final IndexBuilder              builder;
+    private final ActivityLog               log;
+    private final int                       threadQty;
+    private final BlockingQueue<Document>   queue;
+
+    private final AtomicInteger             startedSources = new AtomicInteger(0);
+    private final AtomicLong                bytesRead = new AtomicLong(0);
+    private final AtomicLong                documentsParsed = new AtomicLong(0);
+    private final AtomicLong                parseNanos = new AtomicLong(0);
+    private final AtomicLong                blockedNanos = new AtomicLong(0);
+
+    private static final int        DEFAULT_THREAD_QTY = Runtime.getRuntime().availableProcessors();
+    private static final int        POLL_MS = 100;
+
+    /**
+     * @param builder the builder - must be opened
+     * @param log the log
+     * @param threadQty number of fetch/parse workers - 0 means one per processor
+     * @param queueSize max number of parsed documents waiting to be written
+     */
+    public IndexPipeline(IndexBuilder builder, ActivityLog log, int threadQty, int queueSize)
+    {
+        this.builder = builder;
+        this.log = log;
+        this.threadQty = (threadQty > 0) ? threadQty : DEFAULT_THREAD_QTY;
+        queue = new ArrayBlockingQueue<Document>(Math.max(queueSize, 1));
+    }
+
+    /**
+     * Index the given logs. Each log name must only appear once. Blocks until all logs have been
+     * indexed. If any log fails, the remaining work is cancelled and the exception is thrown.
+     *
+     * @param sources logs to index - they are started in the given order
+     * @throws Exception errors
+     */
+    public void     process(final List<LogSource> sources) throws Exception
+    {
+        if ( sources.size() == 0 )
+        {
+            return;
+        }
+
+        int                         workerQty = Math.min(threadQty, sources.size());
+        ExecutorService             executorService = Executors.newFixedThreadPool(workerQty, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("IndexPipeline-%d").build());
+        CompletionService<Void>     completionService = new ExecutorCompletionService<Void>(executorService);
+        long                        startNanos = System.nanoTime();
+        long                        writeNanos = 0;
+        long                        idleNanos = 0;
+        long                        documentsWritten = 0;
+        try
+        {
+            for ( final LogSource source : sources )
+            {
+                completionService.submit
+                (
+                    new Callable<Void>()
+                    {
+                        @Override
+                        public Void call() throws Exception
+                        {
+                            parseSource(source, sources.size());
+                            return null;
+                        }
+                    }
+                );
+            }
+
+            int         completedQty = 0;
+            while ( completedQty < sources.size() )
+            {
+                long        pollStart = System.nanoTime();
+                Document    document = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                long        writeStart = System.nanoTime();
+                idleNanos += writeStart - pollStart;
+                if ( document != null )
+                {
+                    builder.addDocument(document);
+                    ++documentsWritten;
+                    writeNanos += System.nanoTime() - writeStart;
+                }
+
+                Future<Void>    future;
+                while ( (future = completionService.poll()) != null )
+                {
+                    checkResult(future);
+                    ++completedQty;
+                }
+            }
+
+            // all workers are done - write whatever is left
+            Document    document;
+            while ( (document = queue.poll()) != null )
+            {
+                long        writeStart = System.nanoTime();
+                builder.addDocument(document);
+                ++documentsWritten;
+                writeNanos += System.nanoTime() - writeStart;
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+            queue.clear();
+        }
+
+        long        elapsedMs = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), 1);
+        long        parseMs = TimeUnit.NANOSECONDS.toMillis(parseNanos.get());
+        long        writeMs = TimeUnit.NANOSECONDS.toMillis(writeNanos);
+        String      message = String.format
+        (
+            "Index Build: %d logs in %d ms. Fetch/parse (%d threads): %d bytes, %d documents, %d ms total worker time, %d ms blocked on a full queue (%.2f MB/s). Write: %d documents, %d ms writing, %d ms idle (%.0f documents/s)",
+            sources.size(),
+            elapsedMs,
+            workerQty,
+            bytesRead.get(),
+            documentsParsed.get(),
+            parseMs,
+            TimeUnit.NANOSECONDS.toMillis(blockedNanos.get()),
+            (bytesRead.get() / (1024.0 * 1024.0)) / (elapsedMs / 1000.0),
+            documentsWritten,
+            writeMs,
+            TimeUnit.NANOSECONDS.toMillis(idleNanos),
+            documentsWritten / (elapsedMs / 1000.0)
+        );
+        log.add(ActivityLog.Type.INFO, message);
+    }
+
+    private void checkResult(Future<Void> future) throws Exception
+    {
+        try
+        {
+            future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable       cause = e.getCause();
+            if ( cause instanceof Exception )
+            {
+                throw (Exception)cause;
+            }
+            throw e;
+        }
+    }
+
+    private void parseSource(LogSource source, int totalQty) throws Exception
+    {
+        log.add(ActivityLog.Type.INFO, String.format("Index Build: indexing %s (%d of %d)", source.getName(), startedSources.incrementAndGet(), totalQty));
+
+        long                startNanos = System.nanoTime();
+        IndexedSource       previous = builder.getIndexedSource(source.getName());
+        DocumentReceiver    receiver = new DocumentReceiver()
+        {
+            @Override
+            public void receiveDocument(Document document) throws Exception
+            {
+                documentsParsed.incrementAndGet();
+                if ( !queue.offer(document) )
+                {
+                    long        putStart = System.nanoTime();
+                    queue.put(document);
+                    blockedNanos.addAndGet(System.nanoTime() - putStart);
+                }
+            }
+        };
+        try
+        {
+            if ( source.getLocalFile() != null )
+            {
+                builder.add(source.getName(), source.getModifiedDate(), source.getLocalFile(), receiver);
+            }
+            else
+            {
+                InputStream     in = source.open();
+                try
+                {
+                    builder.add(source.getName(), source.getModifiedDate(), in, receiver);
+                }
+                finally
+                {
+                    CloseableUtils.closeQuietly(in);
+                }
+            }
+        }
+        finally
+        {
+            parseNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        IndexedSource       current = builder.getIndexedSource(source.getName());
+        if ( current != null )
+        {
+            bytesRead.addAndGet(current.getOffset() - ((previous != null) ? previous.getOffset() : 0));
+        }
+    }
+}
@@ -17,12 +17,14 @@
 package com.netflix.exhibitor.core.index;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
-import com.netflix.exhibitor.core.backup.BackupStream;
-import org.apache.curator.utils.CloseableUtils;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -30,6 +32,7 @@ import java.io.InputStream;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 public class IndexProcessor
 {
@@ -41,6 +44,18 @@ public class IndexProcessor
     }
 
     public void     process(File directory) throws Exception
+    {
+        process(directory, false);
+    }
+
+    /**
+     * Build or update an index
+     *
+     * @param directory the index directory
+     * @param append if true, add only new logs/entries to the existing index in the directory
+     * @throws Exception errors
+     */
+    public void     process(File directory, boolean append) throws Exception
     {
         if ( !directory.exists() && !directory.mkdirs() )
         {
@@ -49,30 +64,58 @@ public class IndexProcessor
 
         Exception           exception = null;
         IndexBuilder        builder = new IndexBuilder(directory);
+        int                 startingCount = 0;
         try
         {
-            builder.open();
-            addBackups(builder);
-            addActive(builder);
+            builder.open(append);
+            startingCount = builder.getCurrentCount();
+            Map<String, LogSource>  sources = Maps.newHashMap();
+            addBackups(builder, sources);
+            addActive(builder, sources);   // active logs replace backups of the same log as they are at least as complete
+
+            List<LogSource>         sortedSources = Lists.newArrayList(sources.values());
+            Collections.sort
+            (
+                sortedSources,
+                new Comparator<LogSource>()
+                {
+                    @Override
+                    public int compare(LogSource o1, LogSource o2)
+                    {
+                        long        diff = o1.getModifiedDate() - o2.getModifiedDate();
+                        return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                    }
+                }
+            );
+            InstanceConfig          config = exhibitor.getConfigManager().getConfig();
+            new IndexPipeline(builder, exhibitor.getLog(), config.getInt(IntConfigs.INDEX_THREAD_QTY), config.getInt(IntConfigs.INDEX_QUEUE_SIZE)).process(sortedSources);
 
             builder.writeMetaData();
         }
         catch ( Exception e )
         {
             exception = e;
+            builder.abort();
         }
         finally
         {
             builder.close();
             if ( exception != null )
             {
-                cleanDirectory(directory);
+                if ( !append )
+                {
+                    cleanDirectory(directory);
+                }
                 //noinspection ThrowFromFinallyBlock
                 throw exception;
             }
         }
 
-        if ( builder.getCurrentCount() == 0 )
+        if ( append )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index updated: %s (%d new entries)", directory, builder.getCurrentCount() - startingCount));
+        }
+        else if ( builder.getCurrentCount() == 0 )
         {
             exhibitor.getLog().add(ActivityLog.Type.INFO, "Index is empty and will be deleted: " + directory);
             cleanDirectory(directory);
@@ -83,80 +126,114 @@ public class IndexProcessor
         }
     }
 
-    private void addActive(IndexBuilder builder) throws Exception
+    private void addActive(IndexBuilder builder, Map<String, LogSource> sources) throws Exception
     {
         ZooKeeperLogFiles       zooKeeperLogFiles = new ZooKeeperLogFiles(exhibitor);
-        List<File>              paths = zooKeeperLogFiles.getPaths();
-        Collections.sort
-        (
-            paths,
-            new Comparator<File>()
+        for ( final File f : zooKeeperLogFiles.getPaths() )
+        {
+            final long      modifiedDate = f.lastModified();
+            if ( !f.exists() )
             {
-                @Override
-                public int compare(File o1, File o2)
-                {
-                    long        diff = o1.lastModified() - o2.lastModified();
-                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
-                }
+                continue;
             }
-        );
-
-        int     index = 0;
-        for ( File f : paths )
-        {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Indexing active log %d of %d", ++index, paths.size()));
-
-            if ( f.exists() )
+            if ( builder.isIndexed(f.getName(), modifiedDate) )
             {
-                InputStream         in = new BufferedInputStream(new FileInputStream(f));
-                try
-                {
-                    builder.add(in);
-                }
-                finally
+                sources.remove(f.getName());
+                continue;
+            }
+
+            sources.put
+            (
+                f.getName(),
+                new LogSource()
                 {
-                    CloseableUtils.closeQuietly(in);
+                    @Override
+                    public String getName()
+                    {
+                        return f.getName();
+                    }
+
+                    @Override
+                    public long getModifiedDate()
+                    {
+                        return modifiedDate;
+                    }
+
+                    @Override
+                    public InputStream open() throws Exception
+                    {
+                        return new BufferedInputStream(new FileInputStream(f));
+                    }
+
+                    @Override
+                    public File getLocalFile()
+                    {
+                        return f;
+                    }
                 }
-            }
+            );
         }
     }
 
-    private void addBackups(IndexBuilder builder) throws Exception
+    private void addBackups(IndexBuilder builder, Map<String, LogSource> sources) throws Exception
     {
-        exhibitor.getLog().add(ActivityLog.Type.ERROR, "Index Build: Getting available backups");
-        List<BackupMetaData> availableBackups = Lists.newArrayList(exhibitor.getBackupManager().getAvailableBackups());
-        Collections.sort
-        (
-            availableBackups,
-            new Comparator<BackupMetaData>()
-            {
-                @Override
-                public int compare(BackupMetaData o1, BackupMetaData o2)
-                {
-                    long diff = o1.getModifiedDate() - o2.getModifiedDate();
-                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
-                }
-            }
-        );
-        exhibitor.getLog().add(ActivityLog.Type.ERROR, "Index Build: there are " + availableBackups.size() + " available backups");
+        if ( !exhibitor.getBackupManager().isActive() )
+        {
+            return;
+        }
+
+        exhibitor.getLog().add(ActivityLog.Type.INFO, "Index Build: Getting available backups");
+        List<BackupMetaData> availableBackups = exhibitor.getBackupManager().getAvailableBackups();
+        exhibitor.getLog().add(ActivityLog.Type.INFO, "Index Build: there are " + availableBackups.size() + " available backups");
 
-        int     index = 0;
-        for ( BackupMetaData metaData : availableBackups )
+        for ( final BackupMetaData metaData : availableBackups )
         {
-            exhibitor.getLog().add(ActivityLog.Type.INFO, String.format("Index Build: indexing backup log %d of %d", ++index, availableBackups.size()));
+            if ( ZooKeeperLogFiles.isSnapshotName(metaData.getName()) )
+            {
+                continue;   // only logs are indexed
+            }
+            if ( builder.isIndexed(metaData.getName(), metaData.getModifiedDate()) )
+            {
+                continue;
+            }
 
-            BackupStream backupStream = exhibitor.getBackupManager().getBackupStream(metaData);
-            if ( backupStream != null )
+            LogSource   existing = sources.get(metaData.getName());
+            if ( (existing != null) && (existing.getModifiedDate() >= metaData.getModifiedDate()) )
             {
-                try
-                {
-                    builder.add(backupStream.getStream());
-                }
-                finally
+                continue;
+            }
+
+            sources.put
+            (
+                metaData.getName(),
+                new LogSource()
                 {
-                    CloseableUtils.closeQuietly(backupStream);
+                    @Override
+                    public String getName()
+                    {
+                        return metaData.getName();
+                    }
+
+                    @Override
+                    public long getModifiedDate()
+                    {
+                        return metaData.getModifiedDate();
+                    }
+
+                    @Override
+                    public InputStream open() throws Exception
+                    {
+                        InputStream     in = exhibitor.getBackupManager().openBackup(metaData);
+                        return (in != null) ? in : new ByteArrayInputStream(new byte[0]);
+                    }
+
+                    @Override
+                    public File getLocalFile()
+                    {
+                        return null;
+                    }
                 }
-            }
+            );
         }
     }
 
@@ -24,11 +24,23 @@ import java.io.File;
 
 public class IndexProcessorActivity implements Activity
 {
-    private Exhibitor exhibitor;
+    private final Exhibitor exhibitor;
+    private final File existingIndex;
 
     public IndexProcessorActivity(Exhibitor exhibitor)
+    {
+        this(exhibitor, null);
+    }
+
+    /**
+     * @param exhibitor main instance
+     * @param existingIndex if not null, this index is updated with new log entries instead of
+     *                      creating a new index
+     */
+    public IndexProcessorActivity(Exhibitor exhibitor, File existingIndex)
     {
         this.exhibitor = exhibitor;
+        this.existingIndex = existingIndex;
     }
 
     @Override
@@ -45,6 +57,23 @@ public class IndexProcessorActivity implements Activity
         {
             exhibitor.getLog().add(ActivityLog.Type.ERROR, "No index directory set in config");
         }
+        else if ( existingIndex != null )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting index update: " + existingIndex.getName());
+            try
+            {
+                IndexProcessor  processor = new IndexProcessor(exhibitor);
+                processor.process(existingIndex, true);
+            }
+            catch ( Exception e )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Updating Index", e);
+            }
+            finally
+            {
+                exhibitor.getIndexCache().indexUpdated(existingIndex);
+            }
+        }
         else
         {
             exhibitor.getLog().add(ActivityLog.Type.INFO, "Starting index build");
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+/**
+ * Records how much of a single transaction log (active or backed up) has been
+ * added to an index so that later builds only need to process what's new
+ */
+public class IndexedSource
+{
+    private final String    name;
+    private final long      modifiedDate;
+    private final long      offset;
+    private final long      firstZxid;
+    private final long      lastZxid;
+
+    private static final String     SEPARATOR = ",";
+
+    /**
+     * @param name log file name (e.g. log.100000001)
+     * @param modifiedDate modified date of the log when it was indexed
+     * @param offset uncompressed byte offset just past the last complete entry that was indexed
+     * @param firstZxid first zxid indexed from the log or -1
+     * @param lastZxid last zxid indexed from the log or -1
+     */
+    public IndexedSource(String name, long modifiedDate, long offset, long firstZxid, long lastZxid)
+    {
+        this.name = name;
+        this.modifiedDate = modifiedDate;
+        this.offset = offset;
+        this.firstZxid = firstZxid;
+        this.lastZxid = lastZxid;
+    }
+
+    static IndexedSource    decode(String name, String encoded)
+    {
+        String[]        parts = encoded.split(SEPARATOR);
+        if ( parts.length != 4 )
+        {
+            return null;
+        }
+        try
+        {
+            return new IndexedSource(name, Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    String          encode()
+    {
+        return modifiedDate + SEPARATOR + offset + SEPARATOR + firstZxid + SEPARATOR + lastZxid;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getModifiedDate()
+    {
+        return modifiedDate;
+    }
+
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    public long getFirstZxid()
+    {
+        return firstZxid;
+    }
+
+    public long getLastZxid()
+    {
+        return lastZxid;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IndexedSource{" +
+            "name='" + name + '\'' +
+            ", modifiedDate=" + modifiedDate +
+            ", offset=" + offset +
+            ", firstZxid=" + firstZxid +
+            ", lastZxid=" + lastZxid +
+            '}';
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.Activity;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.activity.OnOffRepeatingActivity;
+import com.netflix.exhibitor.core.activity.QueueGroups;
+import com.netflix.exhibitor.core.activity.RepeatingActivity;
+import com.netflix.exhibitor.core.activity.RepeatingActivityImpl;
+import com.netflix.exhibitor.core.config.ConfigListener;
+import com.netflix.exhibitor.core.config.IntConfigs;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NativeFSLockFactory;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     A continuously updated index. A repeating activity tails the active transaction logs and appends
+ *     new entries to hourly indexes under <code>live/</code> in the index
+ *     directory. Partitions that are older than the backup retention period are dropped. Searches only
+ *     open the partitions that overlap the requested date range.
+ * </p>
+ *
+ * <p>
+ *     Enable by setting {@link IntConfigs#LIVE_INDEX_PERIOD_MS} to the tail period (e.g. 10000).
+ * </p>
+ *
+ * <p>
+ *     Each partition commits the zxid of its last entry along with the entries themselves so that,
+ *     if the process dies before the tail positions are saved, re-tailing the same entries doesn't
+ *     add them twice.
+ * </p>
+ */
+public class LiveIndex implements Closeable
+{
+    private final Exhibitor                     exhibitor;
+    private final RepeatingActivity             repeatingActivity;
+    private final Map<String, IndexedSource>    sources = Maps.newHashMap();    // only accessed from the repeating activity
+    private final Map<String, PartitionReader>  readers = Maps.newHashMap();    // partition name -> open reader. Protected by synchronization
+    private volatile boolean                    sourcesLoaded = false;
+
+    private static final String     LIVE_DIRECTORY_NAME = "live";
+    private static final String     STATE_FILE_NAME = "state.properties";
+    private static final String     PARTITION_PREFIX = "live-";
+    private static final String     PARTITION_FORMAT = "yyyyMMdd-HH";
+    private static final long       PARTITION_LENGTH_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static class Partition
+    {
+        private final String    name;
+        private final File      directory;
+        private final long      startMs;
+        private final long      endMs;
+
+        private Partition(String name, File directory, long startMs, long endMs)
+        {
+            this.name = name;
+            this.directory = directory;
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+    }
+
+    private static class PartitionReader
+    {
+        private final Directory     directory;
+        private IndexReader         reader;
+
+        private PartitionReader(Directory directory, IndexReader reader)
+        {
+            this.directory = directory;
+            this.reader = reader;
+        }
+    }
+
+    public LiveIndex(final Exhibitor exhibitor)
+    {
+        this.exhibitor = exhibitor;
+
+        final Activity  activity = new Activity()
+        {
+            @Override
+            public void completed(boolean wasSuccessful)
+            {
+            }
+
+            @Override
+            public Boolean call() throws Exception
+            {
+                update();
+                return true;
+            }
+        };
+        repeatingActivity = new OnOffRepeatingActivity
+        (
+            new OnOffRepeatingActivity.Factory()
+            {
+                @Override
+                public RepeatingActivity newRepeatingActivity(long timePeriodMs)
+                {
+                    return new RepeatingActivityImpl(exhibitor.getLog(), exhibitor.getActivityQueue(), QueueGroups.IO, activity, timePeriodMs);
+                }
+            },
+            getPeriodMs()
+        );
+    }
+
+    /**
+     * @return true if the live index has been enabled
+     */
+    public boolean isActive()
+    {
+        return getPeriodMs() > 0;
+    }
+
+    public void start()
+    {
+        repeatingActivity.start();
+        exhibitor.getConfigManager().addConfigListener
+        (
+            new ConfigListener()
+            {
+                @Override
+                public void configUpdated()
+                {
+                    repeatingActivity.setTimePeriodMs(getPeriodMs());
+                }
+            }
+        );
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        repeatingActivity.close();
+
+        synchronized(readers)
+        {
+            for ( PartitionReader partitionReader : readers.values() )
+            {
+                release(partitionReader);
+            }
+            readers.clear();
+        }
+    }
+
+    /**
+     * Return a search over the partitions that overlap the given range. The caller must close the
+     * returned instance.
+     *
+     * @param from range start or null for no lower bound
+     * @param to range end or null for no upper bound
+     * @return search or null if the live index isn't active/configured
+     * @throws Exception errors
+     */
+    public LogSearch getLogSearch(Date from, Date to) throws Exception
+    {
+        File                liveDirectory = getLiveDirectory();
+        if ( !isActive() || (liveDirectory == null) )
+        {
+            return null;
+        }
+
+        long                fromMs = (from != null) ? from.getTime() : Long.MIN_VALUE;
+        long                toMs = (to != null) ? to.getTime() : Long.MAX_VALUE;
+        List<IndexReader>   subReaders = Lists.newArrayList();
+        synchronized(readers)
+        {
+            for ( Partition partition : getPartitions(liveDirectory) )
+            {
+                if ( (partition.endMs > fromMs) && (partition.startMs <= toMs) )
+                {
+                    IndexReader     reader = getReader(partition);
+                    if ( reader != null )
+                    {
+                        subReaders.add(reader);
+                    }
+                }
+            }
+
+            // MultiReader increments the sub readers' ref counts and decrements them when closed
+            MultiReader     multiReader = new MultiReader(subReaders.toArray(new IndexReader[subReaders.size()]), false);
+            return new LogSearch(liveDirectory, multiReader);
+        }
+    }
+
+    @VisibleForTesting
+    void update() throws Exception
+    {
+        File        liveDirectory = getLiveDirectory();
+        if ( liveDirectory == null )
+        {
+            return;
+        }
+        if ( !liveDirectory.exists() && !liveDirectory.mkdirs() )
+        {
+            throw new IOException("Could not make: " + liveDirectory);
+        }
+
+        File        stateFile = new File(liveDirectory, STATE_FILE_NAME);
+        if ( !sourcesLoaded )
+        {
+            if ( stateFile.exists() )
+            {
+                sources.putAll(IndexMetaData.read(stateFile).getSources());
+            }
+            sourcesLoaded = true;
+        }
+
+        Map<String, IndexBuilder>   builders = Maps.newHashMap();
+        Map<String, IndexedSource>  newSources = Maps.newHashMap();
+        Exception                   exception = null;
+        try
+        {
+            for ( File log : getSortedLogs() )
+            {
+                IndexedSource   previous = sources.get(log.getName());
+                long            modifiedDate = log.lastModified();
+                if ( (previous != null) && (previous.getModifiedDate() == modifiedDate) )
+                {
+                    newSources.put(log.getName(), previous);
+                    continue;
+                }
+
+                IndexedSource   current = tail(log, modifiedDate, previous, liveDirectory, builders);
+                newSources.put(log.getName(), (current != null) ? current : previous);
+            }
+
+            int     entryCount = 0;
+            for ( IndexBuilder builder : builders.values() )
+            {
+                builder.commit();
+                builder.writeMetaData();
+                entryCount += builder.getCurrentCount();
+            }
+            if ( builders.size() > 0 )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.DEBUG, String.format("Live index: updated %d partition(s) (%d total entries)", builders.size(), entryCount));
+            }
+        }
+        catch ( Exception e )
+        {
+            exception = e;
+            for ( IndexBuilder builder : builders.values() )
+            {
+                builder.abort();
+            }
+        }
+        finally
+        {
+            for ( IndexBuilder builder : builders.values() )
+            {
+                CloseableUtils.closeQuietly(builder);
+            }
+        }
+        if ( exception != null )
+        {
+            throw exception;
+        }
+
+        // logs that no longer exist are dropped from the state
+        sources.clear();
+        sources.putAll(newSources);
+        IndexMetaData.write(new IndexMetaData(new Date(), new Date(), 0, sources), stateFile);
+
+        refreshReaders(builders.keySet());
+        dropExpiredPartitions(liveDirectory);
+    }
+
+    private IndexedSource tail(File log, long modifiedDate, IndexedSource previous, final File liveDirectory, final Map<String, IndexBuilder> builders) throws Exception
+    {
+        LogEntryReceiver    receiver = new LogEntryReceiver()
+        {
+            @Override
+            public void receiveEntry(TxnHeader header, Record record) throws Exception
+            {
+                getBuilder(liveDirectory, builders, header.getTime()).add(header, record);
+            }
+        };
+
+        if ( MappedZooKeeperLogParser.canMap(log) )
+        {
+            return IndexBuilder.parseNewEntries(log.getName(), modifiedDate, new MappedZooKeeperLogParser(log), previous, receiver);
+        }
+
+        InputStream         in = new BufferedInputStream(new FileInputStream(log));
+        try
+        {
+            return IndexBuilder.parseNewEntries(log.getName(), modifiedDate, new ZooKeeperLogParser(in), previous, receiver);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    private IndexBuilder getBuilder(File liveDirectory, Map<String, IndexBuilder> builders, long time) throws Exception
+    {
+        long            startMs = time - (time % PARTITION_LENGTH_MS);
+        String          name = PARTITION_PREFIX + newPartitionFormat().format(new Date(startMs));
+        IndexBuilder    builder = builders.get(name);
+        if ( builder == null )
+        {
+            builder = new IndexBuilder(new File(liveDirectory, name));
+            builder.open(true);
+            builders.put(name, builder);
+        }
+        return builder;
+    }
+
+    private List<File> getSortedLogs() throws Exception
+    {
+        List<File>      logs = new ZooKeeperLogFiles(exhibitor).getPaths();
+        Collections.sort
+        (
+            logs,
+            new Comparator<File>()
+            {
+                @Override
+                public int compare(File o1, File o2)
+                {
+                    long        diff = o1.lastModified() - o2.lastModified();
+                    return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+                }
+            }
+        );
+        return logs;
+    }
+
+    private void refreshReaders(Set<String> updatedPartitionNames)
+    {
+        synchronized(readers)
+        {
+            for ( String name : updatedPartitionNames )
+            {
+                PartitionReader     partitionReader = readers.get(name);
+                if ( partitionReader != null )
+                {
+                    try
+                    {
+                        IndexReader     newReader = IndexReader.openIfChanged(partitionReader.reader);
+                        if ( newReader != null )
+                        {
+                            partitionReader.reader.decRef();    // searches that are using the old reader hold their own reference
+                            partitionReader.reader = newReader;
+                        }
+                    }
+                    catch ( IOException e )
+                    {
+                        exhibitor.getLog().add(ActivityLog.Type.ERROR, "Live index: could not reopen partition " + name, e);
+                        readers.remove(name);
+                        release(partitionReader);
+                    }
+                }
+            }
+        }
+    }
+
+    private void dropExpiredPartitions(File liveDirectory)
+    {
+        long        oldestMs = System.currentTimeMillis() - exhibitor.getConfigManager().getConfig().getInt(IntConfigs.BACKUP_MAX_STORE_MS);
+        for ( Partition partition : getPartitions(liveDirectory) )
+        {
+            if ( partition.endMs < oldestMs )
+            {
+                synchronized(readers)
+                {
+                    PartitionReader     partitionReader = readers.remove(partition.name);
+                    if ( partitionReader != null )
+                    {
+                        release(partitionReader);
+                    }
+                }
+                exhibitor.getIndexCache().delete(partition.directory);
+            }
+        }
+    }
+
+    // must be called while synchronized on readers
+    private IndexReader getReader(Partition partition) throws IOException
+    {
+        PartitionReader     partitionReader = readers.get(partition.name);
+        if ( (partitionReader == null) && IndexMetaData.getMetaDataFile(partition.directory).exists() )
+        {
+            Directory       directory = new NIOFSDirectory(partition.directory, new NativeFSLockFactory());
+            try
+            {
+                partitionReader = new PartitionReader(directory, IndexReader.open(directory));
+            }
+            catch ( IOException e )
+            {
+                CloseableUtils.closeQuietly(directory);
+                throw e;
+            }
+            readers.put(partition.name, partitionReader);
+        }
+        return (partitionReader != null) ? partitionReader.reader : null;
+    }
+
+    // the directory is closed once searches that still use the reader have finished with it
+    private void release(final PartitionReader partitionReader)
+    {
+        partitionReader.reader.addReaderClosedListener
+        (
+            new IndexReader.ReaderClosedListener()
+            {
+                @Override
+                public void onClose(IndexReader reader)
+                {
+                    CloseableUtils.closeQuietly(partitionReader.directory);
+                }
+            }
+        );
+        try
+        {
+            partitionReader.reader.decRef();
+        }
+        catch ( IOException e )
+        {
+            exhibitor.getLog().add(ActivityLog.Type.ERROR, "Live index: could not close reader", e);
+        }
+    }
+
+    private List<Partition> getPartitions(File liveDirectory)
+    {
+        List<Partition>     partitions = Lists.newArrayList();
+        File[]              files = liveDirectory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                if ( f.isDirectory() && f.getName().startsWith(PARTITION_PREFIX) )
+                {
+                    try
+                    {
+                        long    startMs = newPartitionFormat().parse(f.getName().substring(PARTITION_PREFIX.length())).getTime();
+                        partitions.add(new Partition(f.getName(), f, startMs, startMs + PARTITION_LENGTH_MS));
+                    }
+                    catch ( ParseException ignore )
+                    {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        Collections.sort
+        (
+            partitions,
+            new Comparator<Partition>()
+            {
+                @Override
+                public int compare(Partition o1, Partition o2)
+                {
+                    int     diff = (o1.startMs < o2.startMs) ? -1 : ((o1.startMs > o2.startMs) ? 1 : 0);
+                    return (diff != 0) ? diff : o1.name.compareTo(o2.name);
+                }
+            }
+        );
+        return partitions;
+    }
+
+    private static DateFormat newPartitionFormat()
+    {
+        DateFormat  dateFormat = new SimpleDateFormat(PARTITION_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        dateFormat.setLenient(false);
+        return dateFormat;
+    }
+
+    private int getPeriodMs()
+    {
+        return exhibitor.getConfigManager().getConfig().getInt(IntConfigs.LIVE_INDEX_PERIOD_MS);
+    }
+
+    private File getLiveDirectory()
+    {
+        String      path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY);
+        if ( (path == null) || (path.trim().length() == 0) )
+        {
+            return null;
+        }
+        return new File(path, LIVE_DIRECTORY_NAME);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import java.io.IOException;
+
+/**
+ * Parses a ZooKeeper transaction log
+ */
+public interface LogParser
+{
+    /**
+     * @return true if the log has a valid header
+     */
+    public boolean  isValid();
+
+    /**
+     * Skip ahead to the given offset (as returned by {@link #getLastEntryEndOffset()} from
+     * a previous parse of the same log) so that only later entries are parsed. Must be
+     * called before {@link #parse(LogEntryReceiver)}
+     *
+     * @param offset uncompressed offset into the log
+     * @return true if the offset could be reached
+     * @throws IOException errors
+     */
+    public boolean  skipTo(long offset) throws IOException;
+
+    /**
+     * Return the uncompressed offset just past the last complete entry that was parsed
+     *
+     * @return offset
+     */
+    public long     getLastEntryEndOffset();
+
+    /**
+     * Parse the log from the current position, passing each complete entry to the receiver
+     *
+     * @param receiver the receiver
+     * @throws Exception errors
+     */
+    public void     parse(LogEntryReceiver receiver) throws Exception;
+}
@@ -18,12 +18,14 @@ package com.netflix.exhibitor.core.index;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import org.apache.curator.utils.CloseableUtils;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Fieldable;
-import org.apache.lucene.document.NumericField;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
@@ -34,7 +36,7 @@ import org.apache.lucene.store.NativeFSLockFactory;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -43,12 +45,18 @@ public class LogSearch implements Closeable
     private final Directory directory;
     private final IndexReader reader;
     private final IndexSearcher searcher;
+    private final IndexColumns columns;
     private final File file;
-    private final Cache<String, TopDocs> cache = CacheBuilder.newBuilder()
+    private final FieldSelector dataSelector = new MapFieldSelector(FieldNames.DATA);
+    private final Cache<String, CachedSearch> cache = CacheBuilder.newBuilder()
         .expireAfterAccess(5, TimeUnit.MINUTES) // does this need to be configurable?
         .build();
 
-    private static final int            MAX_RESULTS = 5000; // does this need to be configurable?
+    /**
+     * Positional paging has to collect every hit before the start of the page. Pages
+     * beyond this position must be reached via {@link SearchCursor}s instead.
+     */
+    public static final int     MAX_POSITION = 10000;
 
     public LogSearch(File file) throws Exception
     {
@@ -56,6 +64,24 @@ public class LogSearch implements Closeable
         directory = new NIOFSDirectory(file, new NativeFSLockFactory());
         reader = IndexReader.open(directory);
         searcher = new IndexSearcher(reader);
+        columns = new IndexColumns(reader);
+    }
+
+    /**
+     * Search over an already open reader (e.g. a MultiReader over several indexes). The
+     * reader is closed when this instance is closed.
+     *
+     * @param file the file/directory that the reader represents
+     * @param reader the reader
+     * @throws IOException errors
+     */
+    LogSearch(File file, IndexReader reader) throws IOException
+    {
+        this.file = file;
+        this.reader = reader;
+        directory = null;
+        searcher = new IndexSearcher(reader);
+        columns = new IndexColumns(reader);
     }
 
     public File getFile()
@@ -68,31 +94,93 @@ public class LogSearch implements Closeable
         return reader.numDocs();
     }
 
+    /**
+     * @return approximate heap held open by this search - used to bound the {@link IndexCache}
+     */
+    long            getApproximateBytes()
+    {
+        return columns.getApproximateBytes();
+    }
+
     public void     releaseCache(String id)
     {
         cache.invalidate(id);
     }
 
-    public String    cacheSearch(Query query, String reuseId, int maxResults) throws IOException
+    /**
+     * Register a search handle for the given query. Only the query is held - use
+     * {@link #search(Query, int, int)} to get pages of results
+     *
+     * @param query the query or null for all documents
+     * @param reuseId existing handle to reuse or null
+     * @param maxResults max results for the handle or 0 for no limit
+     * @return the handle
+     */
+    public String    cacheSearch(Query query, String reuseId, int maxResults)
     {
-        if ( (maxResults <= 0) || (maxResults > MAX_RESULTS) )
-        {
-            maxResults = MAX_RESULTS;
-        }
-        
         String      id = ((reuseId != null) && (reuseId.length() > 0)) ? reuseId : UUID.randomUUID().toString();
-        if ( query != null )    // otherwise it's an All Docs search which is the default
-        {
-            TopDocs docs = search(query, maxResults);
-            docs.totalHits = Math.min(maxResults, docs.totalHits);
-            cache.put(id, docs);
-        }
+        cache.put(id, new CachedSearch(query, Math.max(maxResults, 0)));
         return id;
     }
-    
+
     public CachedSearch getCachedSearch(String id)
     {
-        return new CachedSearch(cache.getIfPresent(id), getDocQty());
+        CachedSearch    cachedSearch = cache.getIfPresent(id);
+        return (cachedSearch != null) ? cachedSearch : new CachedSearch(null, 0);
+    }
+
+    /**
+     * Return a page of results sorted by date (newest first) starting after the given cursor. Only
+     * the hits for the page are held while searching regardless of how many documents match.
+     *
+     * @param query the query or null for all documents
+     * @param after cursor returned by a previous page or null to start from the beginning
+     * @param pageSize max hits to return
+     * @return the page
+     * @throws IOException errors
+     */
+    public SearchPage   search(Query query, SearchCursor after, int pageSize) throws IOException
+    {
+        return search(query, after, 0, pageSize);
+    }
+
+    /**
+     * Return a page of results sorted by date (newest first) by position. Only the first
+     * {@link #MAX_POSITION} hits can be reached - the page is empty (but the total hits are
+     * still returned) if the start is at or past it.
+     *
+     * @param query the query or null for all documents
+     * @param start index of the first hit to return
+     * @param length max hits to return
+     * @return the page
+     * @throws IOException errors
+     */
+    public SearchPage   search(Query query, int start, int length) throws IOException
+    {
+        return search(query, null, Math.min(Math.max(start, 0), MAX_POSITION), Math.min(length, MAX_POSITION));
+    }
+
+    private SearchPage  search(Query query, SearchCursor after, int skip, int pageSize) throws IOException
+    {
+        pageSize = Math.max(pageSize, 1);
+        int                     maxHits = (after == null) ? Math.min(skip + pageSize, MAX_POSITION) : pageSize;
+        SortedPageCollector     collector = new SortedPageCollector(after, maxHits);
+        searcher.search((query != null) ? query : new MatchAllDocsQuery(), collector);
+
+        List<SortedPageCollector.Hit>   hits = collector.getHits();
+        List<Integer>                   docIds = Lists.newArrayList();
+        for ( int i = skip; i < hits.size(); ++i )
+        {
+            docIds.add(hits.get(i).docId);
+        }
+
+        SearchCursor            next = null;
+        if ( (docIds.size() > 0) && (collector.getTotalHits() > hits.size()) )
+        {
+            SortedPageCollector.Hit     last = hits.get(hits.size() - 1);
+            next = new SearchCursor(last.date, last.docId);
+        }
+        return new SearchPage(docIds, collector.getTotalHits(), next);
     }
 
     public TopDocs   search(Query query, int maxResults) throws IOException
@@ -101,26 +189,22 @@ public class LogSearch implements Closeable
         return searcher.search(query, maxResults, sort);
     }
 
+    /**
+     * Return the type, path, version and date of the given document. These values are
+     * read from in-memory columns - stored fields are not loaded.
+     *
+     * @param documentId document id
+     * @return the entry
+     * @throws IOException errors
+     */
     public SearchItem toResult(int documentId) throws IOException
     {
-        Document        document = searcher.doc(documentId);
-
-        String          type = document.getFieldable(FieldNames.TYPE).stringValue();
-        NumericField    date = (NumericField)document.getFieldable(FieldNames.DATE);
-        Fieldable       path = document.getFieldable(FieldNames.PATH);
-        NumericField    version = (NumericField)document.getFieldable(FieldNames.VERSION);
-        return new SearchItem
-        (
-            Integer.parseInt(type),
-            path.stringValue(),
-            (version != null) ? version.getNumericValue().intValue() : -1,
-            new Date(date.getNumericValue().longValue())
-        );
+        return columns.toResult(documentId);
     }
 
     public byte[]           toData(int documentId) throws IOException
     {
-        Document document = searcher.doc(documentId);
+        Document document = searcher.doc(documentId, dataSelector);
         return document.getBinaryValue(FieldNames.DATA);
     }
 
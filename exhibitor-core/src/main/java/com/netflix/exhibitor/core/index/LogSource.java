@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * A transaction log (active or backed up) that is to be indexed
+ */
+public interface LogSource
+{
+    /**
+     * @return log name (e.g. log.100000001)
+     */
+    public String       getName();
+
+    /**
+     * @return modified date of the log
+     */
+    public long         getModifiedDate();
+
+    /**
+     * Open the log. The returned stream must be uncompressed. The caller closes the stream.
+     *
+     * @return stream
+     * @throws Exception errors
+     */
+    public InputStream  open() throws Exception;
+
+    /**
+     * @return if the log is a local, uncompressed file, the file. Otherwise <code>null</code>.
+     *         When non-null, the file is parsed directly instead of via {@link #open()}
+     */
+    public File         getLocalFile();
+}
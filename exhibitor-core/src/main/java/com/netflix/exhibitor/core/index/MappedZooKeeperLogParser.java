@@ -0,0 +1,313 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Charsets;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+
+/**
+ * <p>
+ *     Parser for local (uncompressed) transaction logs that walks a memory mapped view of the file
+ *     instead of going through jute archives/streams. Entry framing is read directly from the mapped
+ *     buffer and only create, delete and setData transactions are decoded (all other transactions are
+ *     passed to the receiver with a <code>null</code> record).
+ * </p>
+ *
+ * <p>
+ *     A single checksum and a single scratch buffer are reused for all entries. The entry payload is
+ *     copied into the scratch buffer once for the checksum (<code>Adler32</code> can't update from a
+ *     <code>ByteBuffer</code> prior to Java 8) and the transaction is decoded from there - the only other
+ *     allocations are the values handed to the receiver.
+ * </p>
+ */
+public class MappedZooKeeperLogParser implements LogParser
+{
+    private final ByteBuffer    buffer;
+    private final boolean       validHeader;
+    private final Adler32       crc = new Adler32();
+    private final Cursor        cursor = new Cursor();
+
+    private byte[]              scratch = new byte[INITIAL_SCRATCH_SIZE];
+    private long                lastEntryEndOffset;
+
+    private static final int    FILE_HEADER_SIZE = 16;  // magic, version, dbid
+    private static final int    TXN_HEADER_SIZE = 32;   // clientId, cxid, zxid, time, type
+    private static final int    ENTRY_OVERHEAD = 12;    // crc, length
+    private static final int    INITIAL_SCRATCH_SIZE = 4096;
+    private static final byte   EOR = 'B';
+
+    /**
+     * Return true if the given file can be mapped by this parser
+     *
+     * @param f file
+     * @return true/false
+     */
+    public static boolean       canMap(File f)
+    {
+        return f.isFile() && (f.length() <= Integer.MAX_VALUE);
+    }
+
+    public MappedZooKeeperLogParser(File f) throws IOException
+    {
+        RandomAccessFile    file = new RandomAccessFile(f, "r");
+        try
+        {
+            FileChannel     channel = file.getChannel();
+            long            size = channel.size();
+            if ( size > Integer.MAX_VALUE )
+            {
+                throw new IOException("Log is too large to be mapped: " + f);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);  // the mapping remains valid after the channel is closed
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(file);
+        }
+
+        validHeader = (buffer.limit() >= FILE_HEADER_SIZE) && (buffer.getInt(0) == FileTxnLog.TXNLOG_MAGIC);
+        buffer.position(validHeader ? FILE_HEADER_SIZE : 0);
+        lastEntryEndOffset = buffer.position();
+    }
+
+    @Override
+    public boolean isValid()
+    {
+        return validHeader;
+    }
+
+    @Override
+    public boolean skipTo(long offset) throws IOException
+    {
+        if ( (offset < buffer.position()) || (offset > buffer.limit()) )
+        {
+            return false;
+        }
+        buffer.position((int)offset);
+        lastEntryEndOffset = offset;
+        return true;
+    }
+
+    @Override
+    public long getLastEntryEndOffset()
+    {
+        return lastEntryEndOffset;
+    }
+
+    @Override
+    public void parse(LogEntryReceiver receiver) throws Exception
+    {
+        if ( !validHeader )
+        {
+            throw new Exception("Invalid magic number for");
+        }
+
+        for(;;)
+        {
+            int         position = buffer.position();
+            if ( (buffer.limit() - position) < ENTRY_OVERHEAD )
+            {
+                break;
+            }
+
+            long        crcValue = buffer.getLong(position);
+            int         length = buffer.getInt(position + 8);
+            if ( length == 0 )
+            {
+                // Since ZooKeeper preallocates, EOF is defined to be an empty transaction
+                break;
+            }
+            int         entryStart = position + ENTRY_OVERHEAD;
+            if ( (length < 0) || (length >= (buffer.limit() - entryStart)) )
+            {
+                break;  // partial transaction - the EOR byte must follow the entry
+            }
+
+            if ( scratch.length < length )
+            {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.position(entryStart);
+            buffer.get(scratch, 0, length);
+
+            crc.reset();
+            crc.update(scratch, 0, length);
+            if ( crcValue != crc.getValue() )
+            {
+                throw new IOException("CRC doesn't match " + crcValue + " vs " + crc.getValue());
+            }
+
+            if ( buffer.get() != EOR )
+            {
+                break;  // partial transaction
+            }
+            lastEntryEndOffset = buffer.position();
+
+            if ( length < TXN_HEADER_SIZE )
+            {
+                throw new EOFException("Transaction is too short: " + length);
+            }
+            TxnHeader       header = new TxnHeader(getLong(0), getInt(8), getLong(12), getLong(20), getInt(28));
+            receiver.receiveEntry(header, decodeRecord(header.getType(), length));
+        }
+    }
+
+    private Record decodeRecord(int type, int length) throws IOException
+    {
+        cursor.reset(TXN_HEADER_SIZE, length);
+        switch ( type )
+        {
+            case ZooDefs.OpCode.create:
+            {
+                CreateTxn   createTxn = new CreateTxn();
+                createTxn.setPath(cursor.readString());
+                createTxn.setData(cursor.readBuffer());
+                cursor.skipAcls();
+                createTxn.setEphemeral(cursor.readBoolean());
+                return createTxn;
+            }
+
+            case ZooDefs.OpCode.delete:
+            {
+                DeleteTxn   deleteTxn = new DeleteTxn();
+                deleteTxn.setPath(cursor.readString());
+                return deleteTxn;
+            }
+
+            case ZooDefs.OpCode.setData:
+            {
+                SetDataTxn  setDataTxn = new SetDataTxn();
+                setDataTxn.setPath(cursor.readString());
+                setDataTxn.setData(cursor.readBuffer());
+                setDataTxn.setVersion(cursor.readInt());
+                return setDataTxn;
+            }
+
+            default:
+            {
+                return null;
+            }
+        }
+    }
+
+    private long getLong(int offset)
+    {
+        return ((long)getInt(offset) << 32) | (getInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private int getInt(int offset)
+    {
+        return ((scratch[offset] & 0xFF) << 24) | ((scratch[offset + 1] & 0xFF) << 16) | ((scratch[offset + 2] & 0xFF) << 8) | (scratch[offset + 3] & 0xFF);
+    }
+
+    // reads jute encoded values from the scratch buffer
+    private class Cursor
+    {
+        private int         offset;
+        private int         limit;
+
+        void        reset(int offset, int limit)
+        {
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        int         readInt() throws IOException
+        {
+            require(4);
+            int     value = getInt(offset);
+            offset += 4;
+            return value;
+        }
+
+        boolean     readBoolean() throws IOException
+        {
+            require(1);
+            return scratch[offset++] == 1;
+        }
+
+        String      readString() throws IOException
+        {
+            int     length = readInt();
+            if ( length < 0 )
+            {
+                return null;
+            }
+            require(length);
+            String  value = new String(scratch, offset, length, Charsets.UTF_8);
+            offset += length;
+            return value;
+        }
+
+        byte[]      readBuffer() throws IOException
+        {
+            int     length = readInt();
+            if ( length < 0 )
+            {
+                return null;
+            }
+            require(length);
+            byte[]  value = Arrays.copyOfRange(scratch, offset, offset + length);
+            offset += length;
+            return value;
+        }
+
+        void        skipAcls() throws IOException
+        {
+            int     qty = readInt();
+            for ( int i = 0; i < qty; ++i )
+            {
+                readInt();      // perms
+                skipString();   // scheme
+                skipString();   // id
+            }
+        }
+
+        private void skipString() throws IOException
+        {
+            int     length = readInt();
+            if ( length > 0 )
+            {
+                require(length);
+                offset += length;
+            }
+        }
+
+        private void require(int qty) throws EOFException
+        {
+            if ( (qty < 0) || ((limit - offset) < qty) )
+            {
+                throw new EOFException("Transaction is truncated");
+            }
+        }
+    }
+}
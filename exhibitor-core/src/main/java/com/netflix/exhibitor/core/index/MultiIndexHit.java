@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import java.io.File;
+
+/**
+ * A hit from a search across multiple indexes
+ */
+public class MultiIndexHit
+{
+    private final File          index;
+    private final int           docId;
+    private final SearchItem    item;
+
+    MultiIndexHit(File index, int docId, SearchItem item)
+    {
+        this.index = index;
+        this.docId = docId;
+        this.item = item;
+    }
+
+    public File getIndex()
+    {
+        return index;
+    }
+
+    public int getDocId()
+    {
+        return docId;
+    }
+
+    public SearchItem getItem()
+    {
+        return item;
+    }
+}
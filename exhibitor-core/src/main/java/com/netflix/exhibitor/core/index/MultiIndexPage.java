@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import java.util.List;
+
+/**
+ * A page of date sorted results from a search across multiple indexes
+ */
+public class MultiIndexPage
+{
+    private final List<MultiIndexHit>   hits;
+    private final int                   totalHits;
+    private final String                next;
+
+    MultiIndexPage(List<MultiIndexHit> hits, int totalHits, String next)
+    {
+        this.hits = hits;
+        this.totalHits = totalHits;
+        this.next = next;
+    }
+
+    /**
+     * @return the hits in sort order (newest first)
+     */
+    public List<MultiIndexHit> getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return number of matching documents (across the searched indexes) after the cursor the page was requested with
+     */
+    public int getTotalHits()
+    {
+        return totalHits;
+    }
+
+    /**
+     * @return cursor for the following page or null if this is the last page
+     */
+    public String getNext()
+    {
+        return next;
+    }
+}
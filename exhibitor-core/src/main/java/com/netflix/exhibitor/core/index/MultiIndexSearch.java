@@ -0,0 +1,330 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.lucene.search.Query;
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *     Searches several indexes at once. Candidate indexes are chosen from their meta data (date range and
+ *     entry count) before any index is opened. The per-index searches run in parallel on the index cache's
+ *     search executor and their date sorted pages are merged with a heap.
+ * </p>
+ *
+ * <p>
+ *     Hits are ordered by date (newest first), then by index (in the order given) and then by document id.
+ *     Cursors encode a position in that order.
+ * </p>
+ */
+public class MultiIndexSearch
+{
+    private final IndexCache        indexCache;
+    private final ActivityLog       log;
+
+    private static final String     CURSOR_SEPARATOR = "_";
+    private static final long       META_DATA_DATE_SLOP_MS = 1000;  // meta data dates are only stored with second precision
+
+    public MultiIndexSearch(IndexCache indexCache, ActivityLog log)
+    {
+        this.indexCache = indexCache;
+        this.log = log;
+    }
+
+    /**
+     * Return the indexes from the given list whose date range overlaps the given range. Only meta data
+     * is read - no index is opened.
+     *
+     * @param indexes indexes to choose from
+     * @param from range start or null
+     * @param to range end or null
+     * @return candidate indexes
+     */
+    public List<File>   getCandidates(List<File> indexes, Date from, Date to)
+    {
+        List<File>      candidates = Lists.newArrayList();
+        for ( File index : indexes )
+        {
+            IndexMetaData   metaData;
+            try
+            {
+                metaData = indexCache.getMetaData(index);
+            }
+            catch ( Exception e )
+            {
+                log.add(ActivityLog.Type.ERROR, "Loading index metadata: " + index, e);
+                continue;
+            }
+
+            if ( metaData.getEntryCount() == 0 )
+            {
+                continue;
+            }
+            if ( (from != null) && ((metaData.getTo().getTime() + META_DATA_DATE_SLOP_MS) < from.getTime()) )
+            {
+                continue;
+            }
+            if ( (to != null) && ((metaData.getFrom().getTime() - META_DATA_DATE_SLOP_MS) > to.getTime()) )
+            {
+                continue;
+            }
+            candidates.add(index);
+        }
+        return candidates;
+    }
+
+    /**
+     * Search the given indexes in parallel and merge the results
+     *
+     * @param indexes indexes to search (see {@link #getCandidates(List, Date, Date)})
+     * @param query the query or null for all documents
+     * @param cursor cursor returned by a previous page or null
+     * @param pageSize max hits to return
+     * @return the page
+     * @throws Exception errors
+     */
+    public MultiIndexPage search(final List<File> indexes, final Query query, String cursor, final int pageSize) throws Exception
+    {
+        final Position      after = Position.parse(cursor, indexes);
+
+        List<Callable<IndexHits>>   tasks = Lists.newArrayList();
+        for ( int i = 0; i < indexes.size(); ++i )
+        {
+            final int       indexRank = i;
+            tasks.add
+            (
+                new Callable<IndexHits>()
+                {
+                    @Override
+                    public IndexHits call() throws Exception
+                    {
+                        return searchIndex(indexes.get(indexRank), indexRank, query, after, pageSize);
+                    }
+                }
+            );
+        }
+
+        List<IndexHits>     results = Lists.newArrayList();
+        for ( Future<IndexHits> future : indexCache.getSearchExecutor().invokeAll(tasks) )
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable   cause = e.getCause();
+                throw (cause instanceof Exception) ? (Exception)cause : e;
+            }
+        }
+
+        return merge(indexes, results, pageSize);
+    }
+
+    private IndexHits searchIndex(File index, int indexRank, Query query, Position after, int pageSize) throws Exception
+    {
+        SearchCursor    indexCursor = null;
+        if ( after != null )
+        {
+            // translate the global position into this index's position: hits with the cursor's date
+            // sort before/after this index depending on the index order
+            int     docId;
+            if ( indexRank < after.indexRank )
+            {
+                docId = Integer.MAX_VALUE;
+            }
+            else if ( indexRank == after.indexRank )
+            {
+                docId = after.docId;
+            }
+            else
+            {
+                docId = -1;
+            }
+            indexCursor = new SearchCursor(after.date, docId);
+        }
+
+        LogSearch       logSearch = indexCache.getLogSearch(index);
+        try
+        {
+            SearchPage          page = logSearch.search(query, indexCursor, pageSize);
+            List<MultiIndexHit> hits = Lists.newArrayList();
+            for ( int docId : page.getDocIds() )
+            {
+                hits.add(new MultiIndexHit(index, docId, logSearch.toResult(docId)));
+            }
+            return new IndexHits(indexRank, hits, page.getTotalHits());
+        }
+        finally
+        {
+            indexCache.releaseLogSearch(index);
+        }
+    }
+
+    private MultiIndexPage merge(List<File> indexes, List<IndexHits> results, int pageSize)
+    {
+        int                         totalHits = 0;
+        PriorityQueue<IndexHits>    queue = new PriorityQueue<IndexHits>(Math.max(results.size(), 1), newestFirst);
+        for ( IndexHits indexHits : results )
+        {
+            totalHits += indexHits.totalHits;
+            if ( indexHits.hasCurrent() )
+            {
+                queue.add(indexHits);
+            }
+        }
+
+        List<MultiIndexHit>     hits = Lists.newArrayList();
+        IndexHits               lastSource = null;
+        while ( (hits.size() < pageSize) && (queue.size() > 0) )
+        {
+            IndexHits       indexHits = queue.poll();
+            hits.add(indexHits.current());
+            lastSource = indexHits;
+            indexHits.advance();
+            if ( indexHits.hasCurrent() )
+            {
+                queue.add(indexHits);
+            }
+        }
+
+        String      next = null;
+        if ( (lastSource != null) && (totalHits > hits.size()) )
+        {
+            MultiIndexHit   last = hits.get(hits.size() - 1);
+            next = new Position(last.getItem().getDate().getTime(), lastSource.indexRank, last.getDocId()).encode(indexes);
+        }
+        return new MultiIndexPage(Collections.unmodifiableList(hits), totalHits, next);
+    }
+
+    private static final Comparator<IndexHits> newestFirst = new Comparator<IndexHits>()
+    {
+        @Override
+        public int compare(IndexHits o1, IndexHits o2)
+        {
+            long        date1 = o1.current().getItem().getDate().getTime();
+            long        date2 = o2.current().getItem().getDate().getTime();
+            if ( date1 != date2 )
+            {
+                return (date1 > date2) ? -1 : 1;
+            }
+            if ( o1.indexRank != o2.indexRank )
+            {
+                return (o1.indexRank < o2.indexRank) ? -1 : 1;
+            }
+            int         doc1 = o1.current().getDocId();
+            int         doc2 = o2.current().getDocId();
+            return (doc1 < doc2) ? -1 : ((doc1 > doc2) ? 1 : 0);
+        }
+    };
+
+    private static class IndexHits
+    {
+        private final int                   indexRank;
+        private final List<MultiIndexHit>   hits;
+        private final int                   totalHits;
+        private int                         position = 0;
+
+        private IndexHits(int indexRank, List<MultiIndexHit> hits, int totalHits)
+        {
+            this.indexRank = indexRank;
+            this.hits = hits;
+            this.totalHits = totalHits;
+        }
+
+        private boolean         hasCurrent()
+        {
+            return position < hits.size();
+        }
+
+        private MultiIndexHit   current()
+        {
+            return hits.get(position);
+        }
+
+        private void            advance()
+        {
+            ++position;
+        }
+    }
+
+    private static class Position
+    {
+        private final long      date;
+        private final int       indexRank;
+        private final int       docId;
+
+        private Position(long date, int indexRank, int docId)
+        {
+            this.date = date;
+            this.indexRank = indexRank;
+            this.docId = docId;
+        }
+
+        // format: date_docId_indexName
+        private String          encode(List<File> indexes)
+        {
+            return date + CURSOR_SEPARATOR + docId + CURSOR_SEPARATOR + indexes.get(indexRank).getName();
+        }
+
+        private static Position parse(String cursor, List<File> indexes)
+        {
+            if ( (cursor == null) || (cursor.length() == 0) )
+            {
+                return null;
+            }
+
+            String[]    parts = cursor.split(CURSOR_SEPARATOR, 3);
+            if ( parts.length != 3 )
+            {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+
+            int         indexRank = -1;
+            for ( int i = 0; i < indexes.size(); ++i )
+            {
+                if ( indexes.get(i).getName().equals(parts[2]) )
+                {
+                    indexRank = i;
+                    break;
+                }
+            }
+            if ( indexRank < 0 )
+            {
+                throw new IllegalArgumentException("Cursor refers to an index that is not being searched: " + parts[2]);
+            }
+            try
+            {
+                return new Position(Long.parseLong(parts[0]), indexRank, Integer.parseInt(parts[1]));
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
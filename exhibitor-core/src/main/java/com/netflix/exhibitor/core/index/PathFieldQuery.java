@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.base.Objects;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import java.io.IOException;
+
+/**
+ * Matches a single term of one of the derived path fields. Indexes (or the older parts of an
+ * appended index) written before those fields existed don't have them. In that case the query
+ * is rewritten to an equivalent, slower, query against the raw path field instead.
+ */
+class PathFieldQuery extends Query
+{
+    private final Term      term;
+    private final Query     fallback;
+
+    private static final long serialVersionUID = 1L;
+
+    PathFieldQuery(Term term, Query fallback)
+    {
+        this.term = term;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException
+    {
+        Query       query = hasPathFields(reader) ? new TermQuery(term) : (Query)fallback.clone();
+        query.setBoost(getBoost());
+        return query;
+    }
+
+    @Override
+    public String toString(String field)
+    {
+        return term.field().equals(field) ? term.text() : term.toString();
+    }
+
+    @SuppressWarnings("RedundantIfStatement")
+    @Override
+    public boolean equals(Object o)
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( (o == null) || (getClass() != o.getClass()) )
+        {
+            return false;
+        }
+
+        PathFieldQuery that = (PathFieldQuery)o;
+        if ( !term.equals(that.term) )
+        {
+            return false;
+        }
+        if ( !fallback.equals(that.fallback) )
+        {
+            return false;
+        }
+        return getBoost() == that.getBoost();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(term, fallback, getBoost());
+    }
+
+    // every document written with the path fields has the root ancestor term
+    private static boolean hasPathFields(IndexReader reader) throws IOException
+    {
+        return reader.docFreq(new Term(FieldNames.PATH_TREE, PathTerms.ROOT)) == reader.maxDoc();
+    }
+}
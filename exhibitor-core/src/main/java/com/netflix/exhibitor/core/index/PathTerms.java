@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+
+/**
+ * Derives the extra path terms that are indexed alongside the raw znode path
+ */
+class PathTerms
+{
+    static final String     ROOT = "/";
+
+    private static final char       SEPARATOR = '/';
+    private static final int        SEQUENCE_LENGTH = 10;   // ZooKeeper formats sequence numbers as %010d
+
+    /**
+     * Return the path and all of its ancestors - e.g. "/a/b/c" returns "/", "/a", "/a/b" and "/a/b/c".
+     * Every document gets the root term which is used to tell whether an index has the path tree field.
+     *
+     * @param path znode path
+     * @return ancestor terms
+     */
+    static List<String>     ancestors(String path)
+    {
+        List<String>    terms = Lists.newArrayList();
+        terms.add(ROOT);
+        for ( int i = path.indexOf(SEPARATOR, 1); i > 0; i = path.indexOf(SEPARATOR, i + 1) )
+        {
+            terms.add(path.substring(0, i));
+        }
+        if ( !path.equals(ROOT) )
+        {
+            terms.add(path);
+        }
+        return terms;
+    }
+
+    /**
+     * Return the path with the sequence suffix of its last segment removed so that all the
+     * nodes of a lock or queue share a term - e.g. "/locks/lock-0000000012" returns "/locks/lock-".
+     * Paths without a sequence suffix are returned as is.
+     *
+     * @param path znode path
+     * @return family
+     */
+    static String           family(String path)
+    {
+        int     lastSeparator = path.lastIndexOf(SEPARATOR);
+        int     suffixStart = path.length() - SEQUENCE_LENGTH;
+        if ( suffixStart <= lastSeparator )
+        {
+            return path;
+        }
+        for ( int i = suffixStart; i < path.length(); ++i )
+        {
+            if ( !Character.isDigit(path.charAt(i)) )
+            {
+                return path;
+            }
+        }
+        return path.substring(0, suffixStart);
+    }
+
+    /**
+     * Clean up a user supplied path - removes any trailing separators
+     *
+     * @param path path
+     * @return cleaned path
+     */
+    static String           normalize(String path)
+    {
+        String      normalized = path.trim();
+        while ( (normalized.length() > 1) && (normalized.charAt(normalized.length() - 1) == SEPARATOR) )
+        {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private PathTerms()
+    {
+    }
+}
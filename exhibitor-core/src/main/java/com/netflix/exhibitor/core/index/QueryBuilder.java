@@ -25,6 +25,7 @@ import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
 import java.util.Collection;
 import java.util.Date;
 
@@ -75,6 +76,41 @@ public class QueryBuilder
         return this;
     }
 
+    /**
+     * Match the given path and everything below it. Uses a single term lookup
+     * on indexes that have the path tree field.
+     *
+     * @param path parent path
+     * @return this
+     */
+    public QueryBuilder pathUnder(String path)
+    {
+        String          normalized = PathTerms.normalize(path);
+        BooleanQuery    fallback = new BooleanQuery();
+        fallback.add(new TermQuery(new Term(FieldNames.PATH, normalized)), BooleanClause.Occur.SHOULD);
+        fallback.add(new PrefixQuery(new Term(FieldNames.PATH, normalized.equals(PathTerms.ROOT) ? normalized : (normalized + "/"))), BooleanClause.Occur.SHOULD);
+        queries.add(new PathFieldQuery(new Term(FieldNames.PATH_TREE, normalized), fallback));
+        return this;
+    }
+
+    /**
+     * Match every sequential node that shares the given path once the sequence number
+     * is removed - e.g. all the nodes of a lock or queue. Either a full node path
+     * ("/locks/lock-0000000012") or the family itself ("/locks/lock-") can be passed.
+     *
+     * @param path node path or family
+     * @return this
+     */
+    public QueryBuilder pathFamily(String path)
+    {
+        String          family = PathTerms.family(PathTerms.normalize(path));
+        BooleanQuery    fallback = new BooleanQuery();
+        fallback.add(new TermQuery(new Term(FieldNames.PATH, family)), BooleanClause.Occur.SHOULD);
+        fallback.add(new WildcardQuery(new Term(FieldNames.PATH, family + "??????????")), BooleanClause.Occur.SHOULD);
+        queries.add(new PathFieldQuery(new Term(FieldNames.PATH_FAMILY, family), fallback));
+        return this;
+    }
+
     public QueryBuilder     versionRange(int startVersion, int endVersion)
     {
         NumericRangeQuery<Integer> query = NumericRangeQuery.newIntRange(FieldNames.VERSION, startVersion, endVersion, true, false);
@@ -82,9 +118,16 @@ public class QueryBuilder
         return this;
     }
 
+    /**
+     * @param startDate start date (inclusive) or null for no lower bound
+     * @param endDate end date (exclusive) or null for no upper bound
+     * @return this
+     */
     public QueryBuilder     dateRange(Date startDate, Date endDate)
     {
-        NumericRangeQuery<Long> query = NumericRangeQuery.newLongRange(FieldNames.DATE, startDate.getTime(), endDate.getTime(), true, false);
+        Long                    min = (startDate != null) ? startDate.getTime() : null;
+        Long                    max = (endDate != null) ? endDate.getTime() : null;
+        NumericRangeQuery<Long> query = NumericRangeQuery.newLongRange(FieldNames.DATE, min, max, true, false);
         queries.add(query);
         return this;
     }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+/**
+ * Position in a date sorted (newest first) result set. Hits are ordered by date descending
+ * and then by document id ascending, so a cursor identifies a single position.
+ */
+public class SearchCursor
+{
+    private final long      date;
+    private final int       docId;
+
+    private static final String     SEPARATOR = "_";
+
+    /**
+     * Parse a cursor previously returned by {@link #encode()}
+     *
+     * @param encoded the encoded cursor (can be null/empty)
+     * @return cursor or null if the value was null/empty/invalid
+     */
+    public static SearchCursor      parse(String encoded)
+    {
+        if ( (encoded == null) || (encoded.length() == 0) )
+        {
+            return null;
+        }
+
+        String[]        parts = encoded.split(SEPARATOR);
+        if ( parts.length != 2 )
+        {
+            return null;
+        }
+        try
+        {
+            return new SearchCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    public SearchCursor(long date, int docId)
+    {
+        this.date = date;
+        this.docId = docId;
+    }
+
+    public String   encode()
+    {
+        return date + SEPARATOR + docId;
+    }
+
+    public long getDate()
+    {
+        return date;
+    }
+
+    public int getDocId()
+    {
+        return docId;
+    }
+
+    /**
+     * Returns true if the given hit sorts after this cursor
+     *
+     * @param hitDate date of the hit
+     * @param hitDocId document id of the hit
+     * @return true/false
+     */
+    boolean         isBefore(long hitDate, int hitDocId)
+    {
+        return (hitDate < date) || ((hitDate == date) && (hitDocId > docId));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SearchCursor{" +
+            "date=" + date +
+            ", docId=" + docId +
+            '}';
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import java.util.List;
+
+/**
+ * A page of date sorted search results
+ */
+public class SearchPage
+{
+    private final List<Integer>     docIds;
+    private final int               totalHits;
+    private final SearchCursor      next;
+
+    SearchPage(List<Integer> docIds, int totalHits, SearchCursor next)
+    {
+        this.docIds = docIds;
+        this.totalHits = totalHits;
+        this.next = next;
+    }
+
+    /**
+     * @return ids of the documents in this page, in sort order
+     */
+    public List<Integer> getDocIds()
+    {
+        return docIds;
+    }
+
+    /**
+     * @return number of matching documents after the cursor the page was requested with (all
+     *         matching documents when there was no cursor)
+     */
+    public int getTotalHits()
+    {
+        return totalHits;
+    }
+
+    /**
+     * @return cursor for the following page or null if this is the last page
+     */
+    public SearchCursor getNext()
+    {
+        return next;
+    }
+}
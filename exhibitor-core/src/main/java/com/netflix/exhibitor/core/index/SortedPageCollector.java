@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects a bounded number of hits sorted by date (newest first) and then document id, optionally
+ * starting after a cursor. Only the hits for the requested page are kept - dates are read from the
+ * field cache that Lucene's sorted searches already use.
+ */
+class SortedPageCollector extends Collector
+{
+    private final SearchCursor          after;
+    private final int                   maxHits;
+    private final PriorityQueue<Hit>    queue;
+
+    private long[]                      dates;
+    private int                         docBase;
+    private int                         totalHits;
+
+    static class Hit
+    {
+        long    date;
+        int     docId;
+
+        private Hit(long date, int docId)
+        {
+            this.date = date;
+            this.docId = docId;
+        }
+    }
+
+    // orders the queue so that the head is the hit that sorts last (i.e. the one to evict)
+    private static final Comparator<Hit>    worstFirst = new Comparator<Hit>()
+    {
+        @Override
+        public int compare(Hit o1, Hit o2)
+        {
+            if ( o1.date != o2.date )
+            {
+                return (o1.date < o2.date) ? -1 : 1;
+            }
+            return (o1.docId > o2.docId) ? -1 : ((o1.docId < o2.docId) ? 1 : 0);
+        }
+    };
+
+    /**
+     * @param after only collect hits that sort after this cursor (or null for all hits)
+     * @param maxHits max hits to keep
+     */
+    SortedPageCollector(SearchCursor after, int maxHits)
+    {
+        this.after = after;
+        this.maxHits = Math.max(maxHits, 1);
+        queue = new PriorityQueue<Hit>(Math.min(this.maxHits, 1024), worstFirst);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException
+    {
+        // scores aren't used
+    }
+
+    @Override
+    public void collect(int doc) throws IOException
+    {
+        long        date = dates[doc];
+        int         docId = docBase + doc;
+        if ( (after != null) && !after.isBefore(date, docId) )
+        {
+            return;
+        }
+
+        ++totalHits;
+        if ( queue.size() < maxHits )
+        {
+            queue.add(new Hit(date, docId));
+        }
+        else
+        {
+            Hit     worst = queue.peek();
+            if ( (date > worst.date) || ((date == worst.date) && (docId < worst.docId)) )
+            {
+                queue.poll();
+                worst.date = date;
+                worst.docId = docId;
+                queue.add(worst);
+            }
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException
+    {
+        dates = FieldCache.DEFAULT.getLongs(reader, FieldNames.DATE, FieldCache.NUMERIC_UTILS_LONG_PARSER);
+        this.docBase = docBase;
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder()
+    {
+        return true;
+    }
+
+    /**
+     * @return number of matching hits after the cursor
+     */
+    int         getTotalHits()
+    {
+        return totalHits;
+    }
+
+    /**
+     * @return the collected hits in sort order (newest first)
+     */
+    List<Hit>   getHits()
+    {
+        List<Hit>       hits = Lists.newArrayListWithCapacity(queue.size());
+        while ( queue.size() > 0 )
+        {
+            hits.add(queue.poll());
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+}
@@ -18,21 +18,53 @@ package com.netflix.exhibitor.core.index;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.io.Closeables;
+import com.google.common.collect.Maps;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import org.apache.curator.utils.CloseableUtils;
-import java.io.BufferedInputStream;
+import org.apache.zookeeper.server.persistence.FileSnap;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.server.persistence.Util;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 public class ZooKeeperLogFiles
 {
     private final List<File>        paths;
+    private final List<File>        snapshotPaths;
     private final boolean           isValid;
 
+    // directory -> (file name -> classification). Unchanged files (same length and modified date) are not re-read
+    private static final ConcurrentMap<File, Map<String, ClassifiedFile>> cache = Maps.newConcurrentMap();
+
+    private static final String     LOG_PREFIX = "log.";
+    private static final String     SNAPSHOT_PREFIX = "snapshot.";
+
+    private enum FileType
+    {
+        LOG,
+        SNAPSHOT,
+        OTHER
+    }
+
+    private static class ClassifiedFile
+    {
+        private final long          length;
+        private final long          lastModified;
+        private final FileType      type;
+
+        private ClassifiedFile(long length, long lastModified, FileType type)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.type = type;
+        }
+    }
+
     public static File      getDataDir(Exhibitor exhibitor)
     {
         String      path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.ZOOKEEPER_LOG_DIRECTORY);
@@ -43,28 +75,73 @@ public class ZooKeeperLogFiles
         return new File(path, "version-2");
     }
 
+    /**
+     * Snapshots are always in the data directory even when the logs are in a separate directory
+     *
+     * @param exhibitor main instance
+     * @return snapshot directory
+     */
+    public static File      getSnapshotDir(Exhibitor exhibitor)
+    {
+        String      path = exhibitor.getConfigManager().getConfig().getString(StringConfigs.ZOOKEEPER_DATA_DIRECTORY);
+        return new File(path, "version-2");
+    }
+
+    /**
+     * @param name file or backup name
+     * @return true if the name is that of a snapshot
+     */
+    public static boolean   isSnapshotName(String name)
+    {
+        return name.startsWith(SNAPSHOT_PREFIX);
+    }
+
+    /**
+     * @param name file or backup name
+     * @return true if the name is that of a transaction log
+     */
+    public static boolean   isLogName(String name)
+    {
+        return name.startsWith(LOG_PREFIX);
+    }
+
+    /**
+     * Return the zxid in a log or snapshot name. For a log it's the first zxid in the log, for
+     * a snapshot it's the last zxid applied when the snapshot was started.
+     *
+     * @param name file or backup name
+     * @return zxid or -1
+     */
+    public static long      getZxid(String name)
+    {
+        return Util.getZxidFromName(name, isSnapshotName(name) ? "snapshot" : "log");
+    }
+
     public ZooKeeperLogFiles(Exhibitor exhibitor) throws Exception
     {
         ImmutableList.Builder<File> builder = ImmutableList.builder();
+        ImmutableList.Builder<File> snapshotBuilder = ImmutableList.builder();
 
         File        path = getDataDir(exhibitor);
         isValid = path.isDirectory();
         if ( isValid )
         {
-            File[]      logs = path.listFiles();
-            if ( logs != null )
+            scan(path, builder, snapshotBuilder);
+
+            File    snapshotPath = getSnapshotDir(exhibitor);
+            if ( !snapshotPath.equals(path) && snapshotPath.isDirectory() )
             {
-                for ( File f : logs )
-                {
-                    if ( isLogFile(f) )
-                    {
-                        builder.add(f);
-                    }
-                }
+                ImmutableList.Builder<File> ignoredLogs = ImmutableList.builder();
+                scan(snapshotPath, ignoredLogs, snapshotBuilder);
             }
         }
+        else
+        {
+            cache.remove(path);
+        }
 
         paths = builder.build();
+        snapshotPaths = snapshotBuilder.build();
     }
 
     public boolean isValid()
@@ -77,17 +154,71 @@ public class ZooKeeperLogFiles
         return Lists.newArrayList(paths);
     }
 
-    private boolean isLogFile(File f) throws Exception
+    public List<File> getSnapshotPaths()
+    {
+        return Lists.newArrayList(snapshotPaths);
+    }
+
+    private static void scan(File path, ImmutableList.Builder<File> builder, ImmutableList.Builder<File> snapshotBuilder)
     {
-        InputStream         log = new BufferedInputStream(new FileInputStream(f));
+        File[]      files = path.listFiles();
+        if ( files != null )
+        {
+            Map<String, ClassifiedFile>     previous = cache.get(path);
+            Map<String, ClassifiedFile>     current = Maps.newHashMap();
+            for ( File f : files )
+            {
+                long                length = f.length();
+                long                lastModified = f.lastModified();
+                ClassifiedFile      classifiedFile = (previous != null) ? previous.get(f.getName()) : null;
+                if ( (classifiedFile == null) || (classifiedFile.length != length) || (classifiedFile.lastModified != lastModified) )
+                {
+                    classifiedFile = new ClassifiedFile(length, lastModified, classify(f));
+                }
+                current.put(f.getName(), classifiedFile);
+
+                if ( classifiedFile.type == FileType.LOG )
+                {
+                    builder.add(f);
+                }
+                else if ( classifiedFile.type == FileType.SNAPSHOT )
+                {
+                    snapshotBuilder.add(f);
+                }
+            }
+            cache.put(path, current);  // replacing the map drops entries for files that no longer exist
+        }
+    }
+
+    private static FileType classify(File f)
+    {
+        String      name = f.getName();
+        if ( name.startsWith(LOG_PREFIX) )
+        {
+            return (readMagic(f) == FileTxnLog.TXNLOG_MAGIC) ? FileType.LOG : FileType.OTHER;
+        }
+        if ( name.startsWith(SNAPSHOT_PREFIX) )
+        {
+            return (readMagic(f) == FileSnap.SNAP_MAGIC) ? FileType.SNAPSHOT : FileType.OTHER;
+        }
+        return FileType.OTHER;
+    }
+
+    private static int readMagic(File f)
+    {
+        RandomAccessFile    file = null;
         try
         {
-            ZooKeeperLogParser  logParser = new ZooKeeperLogParser(log);
-            return logParser.isValid();
+            file = new RandomAccessFile(f, "r");
+            return file.readInt();
+        }
+        catch ( IOException e )
+        {
+            return 0;   // missing, unreadable or too short
         }
         finally
         {
-            CloseableUtils.closeQuietly(log);
+            CloseableUtils.closeQuietly(file);
         }
     }
 }
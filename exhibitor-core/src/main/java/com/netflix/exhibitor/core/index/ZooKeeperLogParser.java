@@ -16,6 +16,8 @@
 
 package com.netflix.exhibitor.core.index;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import org.apache.jute.BinaryInputArchive;
 import org.apache.jute.InputArchive;
 import org.apache.jute.Record;
@@ -31,11 +33,14 @@ import java.lang.reflect.Method;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
-public class ZooKeeperLogParser
+public class ZooKeeperLogParser implements LogParser
 {
+    private final CountingInputStream countingStream;
     private final BinaryInputArchive logStream;
     private final boolean            validHeader;
 
+    private long                     lastEntryEndOffset;
+
     private static final Method             deserializeTxnMethod;
     private static final boolean            useOldDeserializeMethod;
     static
@@ -67,7 +72,8 @@ public class ZooKeeperLogParser
 
     public ZooKeeperLogParser(InputStream log)
     {
-        logStream = BinaryInputArchive.getArchive(log);
+        countingStream = new CountingInputStream(log);
+        logStream = BinaryInputArchive.getArchive(countingStream);
 
         boolean         localValidHeader = false;
         try
@@ -81,13 +87,50 @@ public class ZooKeeperLogParser
             // ignore
         }
         validHeader = localValidHeader;
+        lastEntryEndOffset = countingStream.getCount();
     }
 
+    @Override
     public boolean isValid()
     {
         return validHeader;
     }
 
+    @Override
+    public boolean skipTo(long offset) throws IOException
+    {
+        long        toSkip = offset - countingStream.getCount();
+        if ( toSkip < 0 )
+        {
+            return false;
+        }
+        try
+        {
+            if ( toSkip > 0 )
+            {
+                // skip() on a file stream can go past the end - reading the last byte proves the offset exists
+                ByteStreams.skipFully(countingStream, toSkip - 1);
+                if ( countingStream.read() < 0 )
+                {
+                    return false;
+                }
+            }
+        }
+        catch ( EOFException e )
+        {
+            return false;
+        }
+        lastEntryEndOffset = countingStream.getCount();
+        return true;
+    }
+
+    @Override
+    public long getLastEntryEndOffset()
+    {
+        return lastEntryEndOffset;
+    }
+
+    @Override
     public void parse(LogEntryReceiver receiver) throws Exception
     {
         if ( !validHeader )
@@ -95,6 +138,8 @@ public class ZooKeeperLogParser
             throw new Exception("Invalid magic number for");
         }
 
+        Checksum    crc = new Adler32();
+
         while ( true )
         {
             long crcValue;
@@ -116,7 +161,7 @@ public class ZooKeeperLogParser
                 break;
             }
 
-            Checksum crc = new Adler32();
+            crc.reset();
             crc.update(bytes, 0, bytes.length);
             if ( crcValue != crc.getValue() )
             {
@@ -132,6 +177,7 @@ public class ZooKeeperLogParser
             {
                 break;  // partial transaction
             }
+            lastEntryEndOffset = countingStream.getCount();
 
             receiver.receiveEntry(hdr, record);
         }
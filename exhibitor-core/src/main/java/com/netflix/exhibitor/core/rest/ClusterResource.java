@@ -25,10 +25,11 @@ import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
 import com.netflix.exhibitor.core.entities.Result;
 import com.netflix.exhibitor.core.entities.ServerStatus;
+import com.netflix.exhibitor.core.servo.MetricsHistory;
 import com.netflix.exhibitor.core.state.FourLetterWord;
+import com.netflix.exhibitor.core.state.InstanceStateSnapshot;
 import com.netflix.exhibitor.core.state.InstanceStateTypes;
 import com.netflix.exhibitor.core.state.KillRunningInstance;
-import com.netflix.exhibitor.core.state.MonitorRunningInstance;
 import com.netflix.exhibitor.core.state.ServerList;
 import com.netflix.exhibitor.core.state.ServerSpec;
 import com.netflix.exhibitor.core.state.StartInstance;
@@ -40,6 +41,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
@@ -47,8 +49,10 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("UnusedDeclaration")
 @Path("exhibitor/v1/cluster")
@@ -91,7 +95,7 @@ public class ClusterResource
                     @Override
                     public String call() throws Exception
                     {
-                        return getStatus();
+                        return getStatus(false);
                     }
                 }
             );
@@ -198,7 +202,7 @@ public class ClusterResource
                 @Override
                 public String call() throws Exception
                 {
-                    return getFourLetterWord(word);
+                    return getFourLetterWord(word, false);
                 }
             },
             word
@@ -238,7 +242,7 @@ public class ClusterResource
     @Path("4ltr/{word}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public String getFourLetterWord(@PathParam("word") String word) throws Exception
+    public String getFourLetterWord(@PathParam("word") String word, @QueryParam("fresh") boolean fresh) throws Exception
     {
         InstanceConfig config = context.getExhibitor().getConfigManager().getConfig();
 
@@ -246,7 +250,14 @@ public class ClusterResource
         try
         {
             FourLetterWord.Word wordEnum = FourLetterWord.Word.valueOf(word.toUpperCase());
-            value = new FourLetterWord(wordEnum, config, context.getExhibitor().getConnectionTimeOutMs()).getResponse();
+
+            // ruok/srvr are taken every check and mntr every CHECK_MS - only go to ZooKeeper for the others or when asked to
+            FourLetterWord      response = fresh ? null : context.getExhibitor().getMonitorRunningInstance().getSnapshot(false).getResponse(wordEnum);
+            if ( response == null )
+            {
+                response = context.getExhibitor().getFourLetterWordClient().get(wordEnum, "localhost", config, context.getExhibitor().getConnectionTimeOutMs());
+            }
+            value = response.getResponse();
         }
         catch ( IllegalArgumentException e )
         {
@@ -327,7 +338,7 @@ public class ClusterResource
     @Path("state")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public String   getStatus() throws Exception
+    public String   getStatus(@QueryParam("fresh") boolean fresh) throws Exception
     {
         ObjectNode          mainNode = JsonNodeFactory.instance.objectNode();
 
@@ -338,11 +349,12 @@ public class ClusterResource
         }
         mainNode.put("switches", switchesNode);
 
-        MonitorRunningInstance  monitorRunningInstance = context.getExhibitor().getMonitorRunningInstance();
-        InstanceStateTypes      state = monitorRunningInstance.getCurrentInstanceState();
+        InstanceStateSnapshot   snapshot = context.getExhibitor().getMonitorRunningInstance().getSnapshot(fresh);
+        InstanceStateTypes      state = snapshot.getState();
         mainNode.put("state", state.getCode());
         mainNode.put("description", state.getDescription());
-        mainNode.put("isLeader", monitorRunningInstance.isCurrentlyLeader());
+        mainNode.put("isLeader", snapshot.isLeader());
+        mainNode.put("timestampMs", snapshot.getTimestampMs());
 
         return JsonUtil.writeValueAsString(mainNode);
     }
@@ -391,6 +403,124 @@ public class ClusterResource
         return response.toString();
     }
 
+    @Path("metrics")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String   getMetricsHistoryInfo() throws Exception
+    {
+        MetricsHistory      history = context.getExhibitor().getMetricsHistory();
+
+        ObjectNode          node = JsonNodeFactory.instance.objectNode();
+
+        ArrayNode           metricsNode = JsonNodeFactory.instance.arrayNode();
+        for ( String name : history.getMetricNames() )
+        {
+            metricsNode.add(name);
+        }
+        node.put("metrics", metricsNode);
+
+        ObjectNode          resolutionsNode = JsonNodeFactory.instance.objectNode();
+        for ( MetricsHistory.Resolution resolution : MetricsHistory.Resolution.values() )
+        {
+            ObjectNode      resolutionNode = JsonNodeFactory.instance.objectNode();
+            resolutionNode.put("intervalMs", resolution.getIntervalMs());
+            resolutionNode.put("slots", history.getSlotQty(resolution));
+            resolutionsNode.put(resolution.name().toLowerCase(), resolutionNode);
+        }
+        node.put("resolutions", resolutionsNode);
+        node.put("sizeBytes", history.getSizeBytes());
+
+        return JsonUtil.writeValueAsString(node);
+    }
+
+    @Path("metrics/{metric}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetricsHistoryAsJson(@PathParam("metric") String metric, @QueryParam("from") long fromMs, @QueryParam("to") long toMs, @QueryParam("resolution") String resolution) throws Exception
+    {
+        MetricsHistory.Series   series;
+        try
+        {
+            series = getMetricsSeries(metric, fromMs, toMs, resolution);
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if ( series == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        ObjectNode          node = JsonNodeFactory.instance.objectNode();
+        node.put("metric", metric);
+        node.put("resolution", series.getResolution().name().toLowerCase());
+        node.put("intervalMs", series.getResolution().getIntervalMs());
+        node.put("startMs", series.getStartMs());
+
+        ArrayNode           valuesNode = JsonNodeFactory.instance.arrayNode();
+        for ( long value : series.getValues() )
+        {
+            if ( value == MetricsHistory.NO_VALUE )
+            {
+                valuesNode.addNull();
+            }
+            else
+            {
+                valuesNode.add(value);
+            }
+        }
+        node.put("values", valuesNode);
+
+        return Response.ok(JsonUtil.writeValueAsString(node)).build();
+    }
+
+    /**
+     * Binary form of {@link #getMetricsHistoryAsJson(String, long, long, String)}: big-endian
+     * start time (long), interval in ms (long), value count (int) and then the values (longs).
+     * Slots without samples have the value {@link MetricsHistory#NO_VALUE}.
+     */
+    @Path("metrics/{metric}")
+    @GET
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getMetricsHistoryAsBinary(@PathParam("metric") String metric, @QueryParam("from") long fromMs, @QueryParam("to") long toMs, @QueryParam("resolution") String resolution) throws Exception
+    {
+        MetricsHistory.Series   series;
+        try
+        {
+            series = getMetricsSeries(metric, fromMs, toMs, resolution);
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if ( series == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        ByteBuffer          buffer = ByteBuffer.allocate(8 + 8 + 4 + (series.getValues().length * 8));
+        buffer.putLong(series.getStartMs());
+        buffer.putLong(series.getResolution().getIntervalMs());
+        buffer.putInt(series.getValues().length);
+        for ( long value : series.getValues() )
+        {
+            buffer.putLong(value);
+        }
+        return Response.ok(buffer.array()).build();
+    }
+
+    // from/to default to the last hour, the resolution defaults to the finest that covers the range
+    private MetricsHistory.Series getMetricsSeries(String metric, long fromMs, long toMs, String resolutionStr)
+    {
+        MetricsHistory              history = context.getExhibitor().getMetricsHistory();
+        long                        nowMs = System.currentTimeMillis();
+        long                        localToMs = (toMs > 0) ? toMs : nowMs;
+        long                        localFromMs = (fromMs > 0) ? fromMs : (localToMs - TimeUnit.HOURS.toMillis(1));
+        MetricsHistory.Resolution   resolution = (resolutionStr != null) ? MetricsHistory.Resolution.valueOf(resolutionStr.toUpperCase()) : history.getResolutionFor(localFromMs, nowMs);
+        return history.get(metric, resolution, localFromMs, localToMs);
+    }
+
     private String    makeRemoteRequest(String methodName, String hostname, boolean responseIsJson, Callable<String> proc, Object... values) throws Exception
     {
         String      remoteResponse;
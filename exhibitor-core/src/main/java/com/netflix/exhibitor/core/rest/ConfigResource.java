@@ -27,7 +27,6 @@ import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.config.PseudoLock;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.entities.Result;
-import com.netflix.exhibitor.core.state.FourLetterWord;
 import com.netflix.exhibitor.core.state.ServerList;
 import com.netflix.exhibitor.core.state.ServerSpec;
 import com.netflix.exhibitor.core.state.UsState;
@@ -39,6 +38,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
@@ -65,11 +65,11 @@ public class ConfigResource
     @Path("get-state")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getSystemState(@Context Request request) throws Exception
+    public Response getSystemState(@Context Request request, @QueryParam("fresh") boolean fresh) throws Exception
     {
         InstanceConfig              config = context.getExhibitor().getConfigManager().getConfig();
 
-        String                      response = new FourLetterWord(FourLetterWord.Word.RUOK, config, context.getExhibitor().getConnectionTimeOutMs()).getResponse();
+        String                      response = context.getExhibitor().getMonitorRunningInstance().getSnapshot(fresh).getRuok().getResponse();
         ServerList                  serverList = new ServerList(config.getString(StringConfigs.SERVERS_SPEC));
         ServerSpec                  us = UsState.findUs(context.getExhibitor(), serverList.getSpecs());
 
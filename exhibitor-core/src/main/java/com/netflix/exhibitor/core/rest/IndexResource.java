@@ -17,11 +17,15 @@
 package com.netflix.exhibitor.core.rest;
 
 import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
+import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.activity.QueueGroups;
+import com.netflix.exhibitor.core.backup.BackupManager;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
+import com.netflix.exhibitor.core.backup.RestorePlan;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.entities.Index;
 import com.netflix.exhibitor.core.entities.NameAndModifiedDate;
@@ -36,33 +40,49 @@ import com.netflix.exhibitor.core.index.IndexList;
 import com.netflix.exhibitor.core.index.IndexMetaData;
 import com.netflix.exhibitor.core.index.IndexProcessorActivity;
 import com.netflix.exhibitor.core.index.LogSearch;
+import com.netflix.exhibitor.core.index.MultiIndexHit;
+import com.netflix.exhibitor.core.index.MultiIndexPage;
+import com.netflix.exhibitor.core.index.MultiIndexSearch;
 import com.netflix.exhibitor.core.index.QueryBuilder;
+import com.netflix.exhibitor.core.index.SearchCursor;
 import com.netflix.exhibitor.core.index.SearchItem;
+import com.netflix.exhibitor.core.index.SearchPage;
+import com.netflix.exhibitor.core.index.ZooKeeperLogFiles;
 import org.apache.lucene.search.Query;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.ContextResolver;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @Path("exhibitor/v1/index")
 public class IndexResource
@@ -71,6 +91,9 @@ public class IndexResource
 
     private static final int        MAX_PATH = 50;
     private static final String     DATE_FORMAT_STR = "MM/dd/yyyy-HH:ss";
+    private static final int        MAX_PAGE_SIZE = 1000;
+    private static final String     NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final String     RESTORE_DIRECTORY_NAME = "restore";
 
     public IndexResource(@Context ContextResolver<UIContext> resolver)
     {
@@ -86,6 +109,20 @@ public class IndexResource
         return Response.ok(new Result("OK", true)).build();
     }
 
+    @Path("update-index/{index-name}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response updateIndex(@PathParam("index-name") String indexName) throws Exception
+    {
+        File        indexFile = getLogFile(indexName);
+        if ( indexFile == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        context.getExhibitor().getActivityQueue().add(QueueGroups.IO, new IndexProcessorActivity(context.getExhibitor(), indexFile));
+        return Response.ok(new Result("OK", true)).build();
+    }
+
     @Path("{index-name}")
     @DELETE
     @Produces(MediaType.APPLICATION_JSON)
@@ -99,12 +136,25 @@ public class IndexResource
     @Path("get-backups")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAvailableBackups() throws Exception
+    public Response getAvailableBackups(@QueryParam("refresh") boolean refresh) throws Exception
     {
-        Collection<BackupMetaData>  backups = context.getExhibitor().getBackupManager().getAvailableBackups();
-        Collection<NameAndModifiedDate>  transformed = Collections2.transform
+        BackupManager               backupManager = context.getExhibitor().getBackupManager();
+        Collection<BackupMetaData>  backups = refresh ? backupManager.refreshAvailableBackups() : backupManager.getAvailableBackups();
+        Collection<BackupMetaData>  logBackups = Collections2.filter
         (
             backups,
+            new Predicate<BackupMetaData>()
+            {
+                @Override
+                public boolean apply(BackupMetaData backup)
+                {
+                    return !ZooKeeperLogFiles.isSnapshotName(backup.getName());    // snapshots can't be indexed
+                }
+            }
+        );
+        Collection<NameAndModifiedDate>  transformed = Collections2.transform
+        (
+            logBackups,
             new Function<BackupMetaData, NameAndModifiedDate>()
             {
                 @Override
@@ -120,6 +170,53 @@ public class IndexResource
         return Response.ok(entity).build();
     }
 
+    // restores into restore/zxid-{zxid} under the log index directory. The zxid is in hex as in the log file names.
+    // If no backed up snapshot is known to have finished before the zxid, the result may include later transactions - this is logged
+    @Path("restore-to-zxid/{zxid}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response restoreToZxid(@PathParam("zxid") String zxidHex) throws Exception
+    {
+        final long      zxid;
+        try
+        {
+            zxid = Long.parseLong(zxidHex, 16);
+        }
+        catch ( NumberFormatException e )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        final File      directory = getRestoreDirectory("zxid-" + Long.toHexString(zxid));
+        Callable<RestorePlan>   restorer = new Callable<RestorePlan>()
+        {
+            @Override
+            public RestorePlan call() throws Exception
+            {
+                return context.getExhibitor().getBackupManager().restoreToZxid(zxid, directory);
+            }
+        };
+        return queueRestore(directory, restorer);
+    }
+
+    // restores into restore/time-{time-ms} under the log index directory
+    @Path("restore-to-time/{time-ms}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response restoreToTime(@PathParam("time-ms") final long timeMs) throws Exception
+    {
+        final File      directory = getRestoreDirectory("time-" + timeMs);
+        Callable<RestorePlan>   restorer = new Callable<RestorePlan>()
+        {
+            @Override
+            public RestorePlan call() throws Exception
+            {
+                return context.getExhibitor().getBackupManager().restoreToTime(timeMs, directory);
+            }
+        };
+        return queueRestore(directory, restorer);
+    }
+
     @Path("get/{index-name}/{doc-id}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -185,16 +282,22 @@ public class IndexResource
         try
         {
             CachedSearch        cachedSearch = logSearch.getCachedSearch(searchHandle);
+            int                 maxResults = (cachedSearch.getMaxResults() > 0) ? Math.min(cachedSearch.getMaxResults(), LogSearch.MAX_POSITION) : LogSearch.MAX_POSITION;
+            int                 start = Math.max(iDisplayStart, 0);
+            int                 length = Math.min(Math.min(iDisplayLength, MAX_PAGE_SIZE), maxResults - start);
+            SearchPage          page = (length > 0) ? logSearch.search(cachedSearch.getQuery(), start, length) : null;
+            int                 totalHits = (page != null) ? page.getTotalHits() : 0;
+            totalHits = Math.min(totalHits, maxResults);   // the table can only page up to here
+
             DateFormat          dateFormatter = new SimpleDateFormat(DATE_FORMAT_STR);
             ArrayNode           dataTab = JsonNodeFactory.instance.arrayNode();
-            for ( int i = iDisplayStart; i < (iDisplayStart + iDisplayLength); ++i )
+            if ( page != null )
             {
-                if ( i < cachedSearch.getTotalHits() )
+                for ( int docId : page.getDocIds() )
                 {
                     ObjectNode      data = JsonNodeFactory.instance.objectNode();
-                    int             docId = cachedSearch.getNthDocId(i);
                     SearchItem      item = logSearch.toResult(docId);
-                    
+
                     data.put("DT_RowId", "index-query-result-" + docId);
                     data.put("0", getTypeName(EntryTypes.getFromId(item.getType())));
                     data.put("1", dateFormatter.format(item.getDate()));
@@ -207,7 +310,7 @@ public class IndexResource
             node = JsonNodeFactory.instance.objectNode();
             node.put("sEcho", sEcho);
             node.put("iTotalRecords", logSearch.getDocQty());
-            node.put("iTotalDisplayRecords", cachedSearch.getTotalHits());
+            node.put("iTotalDisplayRecords", totalHits);
             node.put("aaData", dataTab);
         }
         finally
@@ -296,23 +399,10 @@ public class IndexResource
         SearchId    searchHandle;
         try
         {
-            boolean         hasTerms = false;
-            QueryBuilder    builder = QueryBuilder.builder();
-            if ( (request.getPathPrefix() != null) && (request.getPathPrefix().length() > 0) )
-            {
-                hasTerms = true;
-                builder.pathPrefix(request.getPathPrefix());
-            }
-            if ( request.getOperationType() >= 0 )
-            {
-                hasTerms = true;
-                builder.operationType(request.getOperationType());
-            }
+            Date        startDate = null;
+            Date        endDate = null;
             if ( (request.getFirstDate() != null) && (request.getSecondDate() != null) )
             {
-                hasTerms = true;
-                Date        startDate;
-                Date        endDate;
                 if ( request.getFirstDate().before(request.getSecondDate()) )
                 {
                     startDate = request.getFirstDate();
@@ -329,9 +419,8 @@ public class IndexResource
                 endOfDayEndDate.set(Calendar.MINUTE, 59);
                 endOfDayEndDate.set(Calendar.SECOND, 59);
                 endDate = endOfDayEndDate.getTime();
-                builder.dateRange(startDate, endDate);
             }
-            Query       query = hasTerms ? builder.build(QueryBuilder.Type.AND) : null;
+            Query       query = buildQuery(request.getPathPrefix(), null, null, request.getOperationType(), startDate, endDate);
             String      id = logSearch.cacheSearch(query, request.getReuseHandle(), request.getMaxResults());
             searchHandle = new SearchId(id);
         }
@@ -342,6 +431,347 @@ public class IndexResource
         return Response.ok(searchHandle).build();
     }
 
+    @Path("page/{index-name}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPage
+        (
+            @PathParam("index-name") String indexName,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("page-size") @DefaultValue("100") int pageSize,
+            @QueryParam("path-prefix") String pathPrefix,
+            @QueryParam("path-under") String pathUnder,
+            @QueryParam("path-family") String pathFamily,
+            @QueryParam("operation-type") @DefaultValue("-1") int operationType,
+            @QueryParam("start-date") @DefaultValue("0") long startDate,
+            @QueryParam("end-date") @DefaultValue("0") long endDate
+        ) throws Exception
+    {
+        if ( getLogFile(indexName) == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return getPage(new CachedSearchSource(indexName), cursor, pageSize, buildQuery(pathPrefix, pathUnder, pathFamily, operationType, toDate(startDate), toDate(endDate)));
+    }
+
+    /**
+     * Streams every matching entry, newest first, as newline delimited JSON. Results are
+     * paged internally so memory use doesn't depend on the number of matches.
+     */
+    @Path("stream/{index-name}")
+    @GET
+    @Produces(NDJSON_MEDIA_TYPE)
+    public Response streamResults
+        (
+            @PathParam("index-name") String indexName,
+            @QueryParam("path-prefix") String pathPrefix,
+            @QueryParam("path-under") String pathUnder,
+            @QueryParam("path-family") String pathFamily,
+            @QueryParam("operation-type") @DefaultValue("-1") int operationType,
+            @QueryParam("start-date") @DefaultValue("0") long startDate,
+            @QueryParam("end-date") @DefaultValue("0") long endDate
+        ) throws Exception
+    {
+        if ( getLogFile(indexName) == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return streamResults(new CachedSearchSource(indexName), buildQuery(pathPrefix, pathUnder, pathFamily, operationType, toDate(startDate), toDate(endDate)));
+    }
+
+    /**
+     * Searches several indexes in parallel and merges the results (newest first). Indexes whose date
+     * range doesn't overlap the requested range are skipped without being opened.
+     */
+    @Path("multi/page")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMultiIndexPage
+        (
+            @QueryParam("indexes") String indexNames,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("page-size") @DefaultValue("100") int pageSize,
+            @QueryParam("path-prefix") String pathPrefix,
+            @QueryParam("path-under") String pathUnder,
+            @QueryParam("path-family") String pathFamily,
+            @QueryParam("operation-type") @DefaultValue("-1") int operationType,
+            @QueryParam("start-date") @DefaultValue("0") long startDate,
+            @QueryParam("end-date") @DefaultValue("0") long endDate
+        ) throws Exception
+    {
+        List<File>          indexes = Lists.newArrayList();
+        if ( (indexNames != null) && (indexNames.trim().length() > 0) )
+        {
+            for ( String indexName : indexNames.split(",") )
+            {
+                File        indexFile = getLogFile(indexName.trim());
+                if ( indexFile == null )
+                {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+                indexes.add(indexFile);
+            }
+        }
+        else
+        {
+            indexes.addAll(new IndexList(new File(context.getExhibitor().getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY))).getIndexes());
+        }
+        Collections.sort(indexes);  // cursors depend on a stable index order
+
+        MultiIndexSearch    search = new MultiIndexSearch(context.getExhibitor().getIndexCache(), context.getExhibitor().getLog());
+        List<File>          candidates = search.getCandidates(indexes, toDate(startDate), toDate(endDate));
+        MultiIndexPage      page;
+        try
+        {
+            page = search.search(candidates, buildQuery(pathPrefix, pathUnder, pathFamily, operationType, toDate(startDate), toDate(endDate)), cursor, Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE));
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+
+        ArrayNode           items = JsonNodeFactory.instance.arrayNode();
+        for ( MultiIndexHit hit : page.getHits() )
+        {
+            ObjectNode      item = toJson(hit.getDocId(), hit.getItem());
+            item.put("index", hit.getIndex().getName());
+            items.add(item);
+        }
+
+        ObjectNode          node = JsonNodeFactory.instance.objectNode();
+        node.put("searchedIndexes", candidates.size());
+        node.put("totalHits", page.getTotalHits());
+        node.put("nextCursor", page.getNext());
+        node.put("items", items);
+        return Response.ok(node.toString()).build();
+    }
+
+    /**
+     * Same as {@link #getPage(String, String, int, String, String, String, int, long, long)} but searches the live index. Only
+     * the live index partitions that overlap the date range are searched.
+     */
+    @Path("live/page")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getLivePage
+        (
+            @QueryParam("cursor") String cursor,
+            @QueryParam("page-size") @DefaultValue("100") int pageSize,
+            @QueryParam("path-prefix") String pathPrefix,
+            @QueryParam("path-under") String pathUnder,
+            @QueryParam("path-family") String pathFamily,
+            @QueryParam("operation-type") @DefaultValue("-1") int operationType,
+            @QueryParam("start-date") @DefaultValue("0") long startDate,
+            @QueryParam("end-date") @DefaultValue("0") long endDate
+        ) throws Exception
+    {
+        if ( !context.getExhibitor().getLiveIndex().isActive() )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return getPage(new LiveSearchSource(toDate(startDate), toDate(endDate)), cursor, pageSize, buildQuery(pathPrefix, pathUnder, pathFamily, operationType, toDate(startDate), toDate(endDate)));
+    }
+
+    /**
+     * Same as {@link #streamResults(String, String, String, String, int, long, long)} but searches the live index
+     */
+    @Path("live/stream")
+    @GET
+    @Produces(NDJSON_MEDIA_TYPE)
+    public Response streamLiveResults
+        (
+            @QueryParam("path-prefix") String pathPrefix,
+            @QueryParam("path-under") String pathUnder,
+            @QueryParam("path-family") String pathFamily,
+            @QueryParam("operation-type") @DefaultValue("-1") int operationType,
+            @QueryParam("start-date") @DefaultValue("0") long startDate,
+            @QueryParam("end-date") @DefaultValue("0") long endDate
+        ) throws Exception
+    {
+        if ( !context.getExhibitor().getLiveIndex().isActive() )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return streamResults(new LiveSearchSource(toDate(startDate), toDate(endDate)), buildQuery(pathPrefix, pathUnder, pathFamily, operationType, toDate(startDate), toDate(endDate)));
+    }
+
+    // abstracts where a search comes from and how it's given back
+    private interface SearchSource
+    {
+        public LogSearch    acquire() throws Exception;
+
+        public void         release(LogSearch logSearch);
+    }
+
+    private class CachedSearchSource implements SearchSource
+    {
+        private final String indexName;
+
+        private CachedSearchSource(String indexName)
+        {
+            this.indexName = indexName;
+        }
+
+        @Override
+        public LogSearch acquire() throws Exception
+        {
+            return getLogSearch(indexName);
+        }
+
+        @Override
+        public void release(LogSearch logSearch)
+        {
+            context.getExhibitor().getIndexCache().releaseLogSearch(logSearch.getFile());
+        }
+    }
+
+    private class LiveSearchSource implements SearchSource
+    {
+        private final Date from;
+        private final Date to;
+
+        private LiveSearchSource(Date from, Date to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public LogSearch acquire() throws Exception
+        {
+            return context.getExhibitor().getLiveIndex().getLogSearch(from, to);
+        }
+
+        @Override
+        public void release(LogSearch logSearch)
+        {
+            logSearch.close();
+        }
+    }
+
+    private Response getPage(SearchSource source, String cursor, int pageSize, Query query) throws Exception
+    {
+        LogSearch logSearch = source.acquire();
+        if ( logSearch == null )
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        ObjectNode          node = JsonNodeFactory.instance.objectNode();
+        try
+        {
+            SearchPage      page = logSearch.search(query, SearchCursor.parse(cursor), Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE));
+            ArrayNode       items = JsonNodeFactory.instance.arrayNode();
+            for ( int docId : page.getDocIds() )
+            {
+                items.add(toJson(docId, logSearch.toResult(docId)));
+            }
+
+            node.put("totalHits", page.getTotalHits());
+            node.put("nextCursor", (page.getNext() != null) ? page.getNext().encode() : null);
+            node.put("items", items);
+        }
+        finally
+        {
+            source.release(logSearch);
+        }
+        return Response.ok(node.toString()).build();
+    }
+
+    private Response streamResults(final SearchSource source, final Query query)
+    {
+        StreamingOutput     output = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException
+            {
+                LogSearch   logSearch;
+                try
+                {
+                    logSearch = source.acquire();
+                }
+                catch ( Exception e )
+                {
+                    throw new WebApplicationException(e);
+                }
+                if ( logSearch == null )
+                {
+                    return;
+                }
+
+                try
+                {
+                    Writer          writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+                    SearchCursor    cursor = null;
+                    do
+                    {
+                        SearchPage  page = logSearch.search(query, cursor, MAX_PAGE_SIZE);
+                        for ( int docId : page.getDocIds() )
+                        {
+                            writer.write(toJson(docId, logSearch.toResult(docId)).toString());
+                            writer.write('\n');
+                        }
+                        writer.flush();
+                        cursor = page.getNext();
+                    } while ( cursor != null );
+                }
+                finally
+                {
+                    source.release(logSearch);
+                }
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    private Query buildQuery(String pathPrefix, String pathUnder, String pathFamily, int operationType, Date startDate, Date endDate)
+    {
+        boolean         hasTerms = false;
+        QueryBuilder    builder = QueryBuilder.builder();
+        if ( (pathPrefix != null) && (pathPrefix.length() > 0) )
+        {
+            hasTerms = true;
+            builder.pathPrefix(pathPrefix);
+        }
+        if ( (pathUnder != null) && (pathUnder.length() > 0) )
+        {
+            hasTerms = true;
+            builder.pathUnder(pathUnder);
+        }
+        if ( (pathFamily != null) && (pathFamily.length() > 0) )
+        {
+            hasTerms = true;
+            builder.pathFamily(pathFamily);
+        }
+        if ( operationType >= 0 )
+        {
+            hasTerms = true;
+            builder.operationType(operationType);
+        }
+        if ( (startDate != null) || (endDate != null) )
+        {
+            hasTerms = true;
+            builder.dateRange(startDate, endDate);
+        }
+        return hasTerms ? builder.build(QueryBuilder.Type.AND) : null;
+    }
+
+    private Date toDate(long ms)
+    {
+        return (ms > 0) ? new Date(ms) : null;
+    }
+
+    private ObjectNode toJson(int docId, SearchItem item)
+    {
+        ObjectNode      node = JsonNodeFactory.instance.objectNode();
+        node.put("docId", docId);
+        node.put("type", getTypeName(EntryTypes.getFromId(item.getType())));
+        node.put("date", item.getDate().getTime());
+        node.put("path", item.getPath());
+        node.put("version", item.getVersion());
+        return node;
+    }
+
     private String trimPath(String path)
     {
         if ( path.length() > MAX_PATH )
@@ -362,6 +792,57 @@ public class IndexResource
         return context.getExhibitor().getIndexCache().getLogSearch(indexFile);
     }
 
+    private File getRestoreDirectory(String name)
+    {
+        String      indexDirectory = context.getExhibitor().getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY);
+        if ( (indexDirectory == null) || (indexDirectory.trim().length() == 0) )
+        {
+            return null;
+        }
+        return new File(new File(indexDirectory, RESTORE_DIRECTORY_NAME), name);
+    }
+
+    private Response queueRestore(final File directory, final Callable<RestorePlan> restorer)
+    {
+        if ( !context.getExhibitor().getBackupManager().isActive() )
+        {
+            return Response.ok(new Result("Backups are not configured", false)).build();
+        }
+        if ( directory == null )
+        {
+            return Response.ok(new Result("The log index directory is not configured", false)).build();
+        }
+        if ( directory.exists() )
+        {
+            return Response.ok(new Result("Already restored to: " + directory, false)).build();
+        }
+
+        Activity    activity = new Activity()
+        {
+            @Override
+            public void completed(boolean wasSuccessful)
+            {
+            }
+
+            @Override
+            public Boolean call() throws Exception
+            {
+                try
+                {
+                    restorer.call();
+                    return true;
+                }
+                catch ( Exception e )
+                {
+                    context.getExhibitor().getLog().add(ActivityLog.Type.ERROR, "Restoring backups to: " + directory, e);
+                    return false;
+                }
+            }
+        };
+        context.getExhibitor().getActivityQueue().add(QueueGroups.IO, activity);
+        return Response.ok(new Result("Restoring to: " + directory, true)).build();
+    }
+
     private File getLogFile(String indexName)
     {
         String      indexDirectory = context.getExhibitor().getConfigManager().getConfig().getString(StringConfigs.LOG_INDEX_DIRECTORY);
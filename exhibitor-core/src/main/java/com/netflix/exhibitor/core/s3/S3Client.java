@@ -29,6 +29,18 @@ public interface S3Client extends Closeable
 
     public S3Object getObject(String bucket, String key) throws Exception;
 
+    /**
+     * Ranged GET of an object
+     *
+     * @param bucket bucket
+     * @param key key
+     * @param start first byte (inclusive)
+     * @param end last byte (inclusive)
+     * @return the object whose content holds the requested range
+     * @throws Exception errors
+     */
+    public S3Object getObject(String bucket, String key, long start, long end) throws Exception;
+
     public ObjectMetadata getObjectMetadata(String bucket, String key) throws Exception;
 
     public ObjectListing listObjects(ListObjectsRequest request) throws Exception;
@@ -39,6 +51,15 @@ public interface S3Client extends Closeable
 
     public void deleteObject(String bucket, String key) throws Exception;
 
+    /**
+     * Multi-object delete - S3 allows at most 1000 keys per request
+     *
+     * @param request the request
+     * @return result
+     * @throws Exception errors. A {@link com.amazonaws.services.s3.model.MultiObjectDeleteException} if only some keys were deleted
+     */
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) throws Exception;
+
     public UploadPartResult uploadPart(UploadPartRequest request) throws Exception;
 
     public void completeMultipartUpload(CompleteMultipartUploadRequest request) throws Exception;
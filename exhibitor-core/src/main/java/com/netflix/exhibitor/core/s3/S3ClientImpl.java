@@ -138,6 +138,21 @@ public class S3ClientImpl implements S3Client
         }
     }
 
+    @Override
+    public S3Object getObject(String bucket, String key, long start, long end) throws Exception
+    {
+        RefCountedClient holder = client.get();
+        AmazonS3Client amazonS3Client = holder.useClient();
+        try
+        {
+            return amazonS3Client.getObject(new GetObjectRequest(bucket, key).withRange(start, end));
+        }
+        finally
+        {
+            holder.release();
+        }
+    }
+
     @Override
     public ObjectMetadata getObjectMetadata(String bucket, String key) throws Exception
     {
@@ -198,6 +213,21 @@ public class S3ClientImpl implements S3Client
         }
     }
 
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) throws Exception
+    {
+        RefCountedClient holder = client.get();
+        AmazonS3Client amazonS3Client = holder.useClient();
+        try
+        {
+            return amazonS3Client.deleteObjects(request);
+        }
+        finally
+        {
+            holder.release();
+        }
+    }
+
     @Override
     public UploadPartResult uploadPart(UploadPartRequest request) throws Exception
     {
@@ -19,7 +19,10 @@ package com.netflix.exhibitor.core.servo;
 import com.google.common.collect.Maps;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.Activity;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.state.FourLetterWord;
+import com.netflix.exhibitor.core.state.InstanceStateSnapshot;
 import com.netflix.servo.monitor.BasicCounter;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +32,10 @@ public class GetMonitorData implements Activity
     private final Exhibitor exhibitor;
     private final ZookeeperMonitoredData monitor;
 
+    // the monitor checks at least every CHECK_MS and only resends mntr once the last response is
+    // CHECK_MS old - so the snapshot's mntr is routinely up to twice CHECK_MS old
+    private static final int STALE_CHECK_FACTOR = 3;
+
     public GetMonitorData(Exhibitor exhibitor, ZookeeperMonitoredData monitor)
     {
         this.exhibitor = exhibitor;
@@ -44,33 +51,49 @@ public class GetMonitorData implements Activity
     @Override
     public Boolean call() throws Exception
     {
-        List<String>            lines = new FourLetterWord(FourLetterWord.Word.MNTR, exhibitor.getThisJVMHostname(), exhibitor.getConfigManager().getConfig(), exhibitor.getConnectionTimeOutMs()).getResponseLines();
-        doUpdate(lines);
+        InstanceConfig          config = exhibitor.getConfigManager().getConfig();
+        InstanceStateSnapshot   snapshot = exhibitor.getMonitorRunningInstance().getSnapshot(false);
+        FourLetterWord          mntr = snapshot.getMntr();
+        if ( (System.currentTimeMillis() - snapshot.getMntrTimestampMs()) > (STALE_CHECK_FACTOR * (long)config.getInt(IntConfigs.CHECK_MS)) )
+        {
+            // the monitor is behind - don't report stale values
+            mntr = exhibitor.getFourLetterWordClient().get(FourLetterWord.Word.MNTR, exhibitor.getThisJVMHostname(), config, exhibitor.getConnectionTimeOutMs());
+        }
+        doUpdate(mntr.getResponseLines());
 
         return true;
     }
 
     public void doUpdate(List<String> lines)
     {
-        Map<String, Integer> values = Maps.newHashMap();
+        monitor.updateValues(parseMntr(lines));
+    }
+
+    /**
+     * @param lines mntr response lines
+     * @return the numeric values by key
+     */
+    public static Map<String, Long> parseMntr(List<String> lines)
+    {
+        Map<String, Long> values = Maps.newHashMap();
         for ( String line : lines )
         {
-            String[]        parts = line.split("\\s");
-            if ( parts.length == 2 )
+            // mntr lines are "<key>\t<value>"
+            int             tabIndex = line.indexOf('\t');
+            if ( tabIndex > 0 )
             {
                 try
                 {
-                    String  name = parts[0];
-                    int     value = Integer.parseInt(parts[1]);
+                    String  name = line.substring(0, tabIndex);
+                    long    value = Long.parseLong(line.substring(tabIndex + 1).trim());
                     values.put(name, value);
                 }
                 catch ( NumberFormatException ignore )
                 {
-                    // ignore
+                    // ignore - non-numeric values such as zk_version and zk_server_state
                 }
             }
         }
-
-        monitor.updateValues(values);
+        return values;
     }
 }
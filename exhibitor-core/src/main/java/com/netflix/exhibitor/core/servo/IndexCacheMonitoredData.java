@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.servo;
+
+import com.netflix.servo.annotations.Monitor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.netflix.servo.annotations.DataSourceType.*;
+
+/**
+ * Usage of the {@link com.netflix.exhibitor.core.index.IndexCache}
+ */
+public class IndexCacheMonitoredData
+{
+    @Monitor(name="index_cache_hits", type=COUNTER)
+    public final AtomicLong     hits = new AtomicLong(0);
+
+    @Monitor(name="index_cache_misses", type=COUNTER)
+    public final AtomicLong     misses = new AtomicLong(0);
+
+    @Monitor(name="index_cache_evictions", type=COUNTER)
+    public final AtomicLong     evictions = new AtomicLong(0);
+
+    @Monitor(name="index_cache_open_readers", type=GAUGE)
+    public final AtomicLong     openReaders = new AtomicLong(0);
+
+    @Monitor(name="index_cache_open_bytes", type=GAUGE)
+    public final AtomicLong     openBytes = new AtomicLong(0);
+}
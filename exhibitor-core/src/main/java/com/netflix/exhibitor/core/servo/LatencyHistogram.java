@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.servo;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ *     Percentiles over the last N recorded values. Values are counted in log-linear buckets
+ *     (in the manner of an HDR histogram): values below 16 are exact and larger values fall into
+ *     one of 16 buckets per power of two so reported percentiles are within about 6% of the real value.
+ * </p>
+ *
+ * <p>
+ *     The recorded values are kept in a ring so that the oldest value leaves the histogram
+ *     when a new one is recorded once the window is full.
+ * </p>
+ */
+class LatencyHistogram
+{
+    private final long[] window;
+    private final long[] counts = new long[BUCKET_QTY];
+    private int nextIndex = 0;
+    private int count = 0;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_QTY = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_QTY = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_QTY;
+
+    /**
+     * @param windowSize number of values to keep
+     */
+    LatencyHistogram(int windowSize)
+    {
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be greater than 0");
+        window = new long[windowSize];
+    }
+
+    /**
+     * @param value value to record. Negative values are recorded as 0
+     */
+    synchronized void record(long value)
+    {
+        value = Math.max(value, 0);
+        if ( count == window.length )
+        {
+            --counts[bucketIndex(window[nextIndex])];
+        }
+        else
+        {
+            ++count;
+        }
+        window[nextIndex] = value;
+        nextIndex = (nextIndex + 1) % window.length;
+        ++counts[bucketIndex(value)];
+    }
+
+    /**
+     * @param percentile percentile (0 - 100)
+     * @return the highest value in the bucket that holds the given percentile or 0 if nothing has been recorded
+     */
+    synchronized long getValueAtPercentile(double percentile)
+    {
+        if ( count == 0 )
+        {
+            return 0;
+        }
+
+        long        target = Math.max(1, (long)Math.ceil((Math.min(percentile, 100) / 100) * count));
+        long        total = 0;
+        for ( int i = 0; i < counts.length; ++i )
+        {
+            total += counts[i];
+            if ( total >= target )
+            {
+                return highestValueInBucket(i);
+            }
+        }
+        return highestValueInBucket(counts.length - 1);    // can't get here
+    }
+
+    synchronized int getCount()
+    {
+        return count;
+    }
+
+    private static int bucketIndex(long value)
+    {
+        if ( value < SUB_BUCKET_QTY )
+        {
+            return (int)value;
+        }
+        int     magnitude = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        int     subBucket = (int)(value >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKET_QTY;
+        return ((magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_QTY) + subBucket;
+    }
+
+    private static long highestValueInBucket(int index)
+    {
+        if ( index < SUB_BUCKET_QTY )
+        {
+            return index;
+        }
+        int     magnitude = (index / SUB_BUCKET_QTY) + SUB_BUCKET_BITS - 1;
+        long    subBucket = (index % SUB_BUCKET_QTY) + SUB_BUCKET_QTY;
+        return ((subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.servo;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Fixed size in-memory history of ZooKeeper metrics. Each metric is kept at three resolutions
+ *     (1 second, 1 minute and 1 hour) in ring buffers of primitive longs that are allocated up
+ *     front - see {@link #getSizeBytes()}. A slot holds the average of the samples recorded
+ *     during its interval.
+ * </p>
+ *
+ * <p>
+ *     Samples are recorded from each new mntr response taken by the instance monitor (see
+ *     {@link com.netflix.exhibitor.core.state.Checker}) so, while the instance is serving, per second
+ *     slots are filled about every {@link com.netflix.exhibitor.core.config.IntConfigs#CHECK_MS}.
+ * </p>
+ *
+ * <p>
+ *     With the defaults, 3 hours of per second data, 1 day of per minute data and 2 weeks of
+ *     hourly data for 16 metrics takes about 1.7 MB.
+ * </p>
+ */
+public class MetricsHistory
+{
+    private final List<String> metricNames;
+    private final Map<String, Integer> metricIndexes;
+    private final Tier[] tiers;
+
+    /**
+     * Marks a slot with no samples
+     */
+    public static final long        NO_VALUE = Long.MIN_VALUE;
+
+    /**
+     * The mntr keys that are recorded by default
+     */
+    public static final List<String> DEFAULT_METRIC_NAMES = ImmutableList.of
+    (
+        "zk_avg_latency",
+        "zk_max_latency",
+        "zk_min_latency",
+        "zk_packets_received",
+        "zk_packets_sent",
+        "zk_num_alive_connections",
+        "zk_outstanding_requests",
+        "zk_znode_count",
+        "zk_watch_count",
+        "zk_ephemerals_count",
+        "zk_approximate_data_size",
+        "zk_open_file_descriptor_count",
+        "zk_max_file_descriptor_count",
+        "zk_followers",
+        "zk_synced_followers",
+        "zk_pending_syncs"
+    );
+
+    private static final int        SECOND_SLOTS = 3 * 60 * 60;     // 3 hours
+    private static final int        MINUTE_SLOTS = 24 * 60;         // 1 day
+    private static final int        HOUR_SLOTS = 14 * 24;         // 2 weeks
+
+    public enum Resolution
+    {
+        SECONDS(1000),
+        MINUTES(60 * 1000),
+        HOURS(60 * 60 * 1000)
+        ;
+
+        private final long intervalMs;
+
+        public long getIntervalMs()
+        {
+            return intervalMs;
+        }
+
+        private Resolution(long intervalMs)
+        {
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    /**
+     * A range of one metric. Values are for consecutive slots starting at {@link #getStartMs()}.
+     */
+    public static class Series
+    {
+        private final Resolution resolution;
+        private final long startMs;
+        private final long[] values;
+
+        private Series(Resolution resolution, long startMs, long[] values)
+        {
+            this.resolution = resolution;
+            this.startMs = startMs;
+            this.values = values;
+        }
+
+        public Resolution getResolution()
+        {
+            return resolution;
+        }
+
+        public long getStartMs()
+        {
+            return startMs;
+        }
+
+        /**
+         * @return one value per slot - {@link MetricsHistory#NO_VALUE} for slots without samples
+         */
+        public long[] getValues()
+        {
+            return values;
+        }
+    }
+
+    /**
+     * History of the {@link #DEFAULT_METRIC_NAMES} with the default sizes: 3 hours of per second,
+     * 1 day of per minute and 2 weeks of hourly slots
+     */
+    public MetricsHistory()
+    {
+        this(DEFAULT_METRIC_NAMES, SECOND_SLOTS, MINUTE_SLOTS, HOUR_SLOTS);
+    }
+
+    /**
+     * @param metricNames the metrics to record
+     * @param secondSlots number of per second slots to keep
+     * @param minuteSlots number of per minute slots to keep
+     * @param hourSlots number of hourly slots to keep
+     */
+    public MetricsHistory(List<String> metricNames, int secondSlots, int minuteSlots, int hourSlots)
+    {
+        this.metricNames = ImmutableList.copyOf(metricNames);
+
+        ImmutableMap.Builder<String, Integer>   builder = ImmutableMap.builder();
+        for ( int i = 0; i < this.metricNames.size(); ++i )
+        {
+            builder.put(this.metricNames.get(i), i);
+        }
+        metricIndexes = builder.build();
+
+        tiers = new Tier[Resolution.values().length];
+        tiers[Resolution.SECONDS.ordinal()] = new Tier(Resolution.SECONDS, secondSlots, this.metricNames.size());
+        tiers[Resolution.MINUTES.ordinal()] = new Tier(Resolution.MINUTES, minuteSlots, this.metricNames.size());
+        tiers[Resolution.HOURS.ordinal()] = new Tier(Resolution.HOURS, hourSlots, this.metricNames.size());
+    }
+
+    public List<String> getMetricNames()
+    {
+        return metricNames;
+    }
+
+    /**
+     * @param resolution resolution
+     * @return number of slots kept at the resolution
+     */
+    public int          getSlotQty(Resolution resolution)
+    {
+        return tiers[resolution.ordinal()].slotStarts.length;
+    }
+
+    /**
+     * @return the memory used by the buffers in bytes
+     */
+    public long         getSizeBytes()
+    {
+        long        size = 0;
+        for ( Tier tier : tiers )
+        {
+            // slot starts + values + the current slot's sums and counts
+            size += (tier.slotStarts.length * (1L + metricNames.size()) * 8) + (metricNames.size() * (8L + 4));
+        }
+        return size;
+    }
+
+    /**
+     * Record a sample. Values for metrics that aren't recorded are ignored, recorded metrics that
+     * are missing count as no sample.
+     *
+     * @param nowMs time of the sample
+     * @param values metric values
+     */
+    public void         record(long nowMs, Map<String, Long> values)
+    {
+        long[]      sample = new long[metricNames.size()];
+        Arrays.fill(sample, NO_VALUE);
+        for ( Map.Entry<String, Long> entry : values.entrySet() )
+        {
+            Integer     index = metricIndexes.get(entry.getKey());
+            if ( (index != null) && (entry.getValue() != null) )
+            {
+                sample[index] = entry.getValue();
+            }
+        }
+
+        synchronized(this)
+        {
+            for ( Tier tier : tiers )
+            {
+                tier.record(nowMs, sample);
+            }
+        }
+    }
+
+    /**
+     * Return the finest resolution that still holds data from the given time
+     *
+     * @param fromMs start of the range
+     * @param nowMs the current time
+     * @return resolution
+     */
+    public Resolution   getResolutionFor(long fromMs, long nowMs)
+    {
+        for ( Resolution resolution : Resolution.values() )
+        {
+            if ( fromMs >= (nowMs - (getSlotQty(resolution) * resolution.getIntervalMs())) )
+            {
+                return resolution;
+            }
+        }
+        return Resolution.HOURS;
+    }
+
+    /**
+     * Return the values of a metric for the slots from <code>fromMs</code> through <code>toMs</code>. The range
+     * is clipped to what the resolution can hold. The slot that is being filled is included with the
+     * average of its samples so far.
+     *
+     * @param metricName metric
+     * @param resolution resolution
+     * @param fromMs start of the range
+     * @param toMs end of the range
+     * @return the series or null if the metric isn't recorded
+     */
+    public Series       get(String metricName, Resolution resolution, long fromMs, long toMs)
+    {
+        Integer     index = metricIndexes.get(metricName);
+        if ( index == null )
+        {
+            return null;
+        }
+
+        synchronized(this)
+        {
+            return tiers[resolution.ordinal()].get(index, fromMs, toMs);
+        }
+    }
+
+    private static class Tier
+    {
+        private final Resolution resolution;
+        private final long[] slotStarts;
+        private final long[][] values;  // [metric][slot]
+        private final long[] currentSums;
+        private final int[] currentCounts;
+
+        private long currentSlotStart = NO_VALUE;
+        private int nextSlot = 0;
+
+        private Tier(Resolution resolution, int slotQty, int metricQty)
+        {
+            Preconditions.checkArgument(slotQty > 0, "slotQty must be greater than 0");
+
+            this.resolution = resolution;
+            slotStarts = new long[slotQty];
+            Arrays.fill(slotStarts, NO_VALUE);
+            values = new long[metricQty][slotQty];
+            currentSums = new long[metricQty];
+            currentCounts = new int[metricQty];
+        }
+
+        private void record(long nowMs, long[] sample)
+        {
+            long        slotStart = nowMs - (nowMs % resolution.getIntervalMs());
+            if ( slotStart != currentSlotStart )
+            {
+                if ( currentSlotStart != NO_VALUE )
+                {
+                    flush();
+                }
+                currentSlotStart = slotStart;
+                Arrays.fill(currentSums, 0);
+                Arrays.fill(currentCounts, 0);
+            }
+
+            for ( int i = 0; i < sample.length; ++i )
+            {
+                if ( sample[i] != NO_VALUE )
+                {
+                    currentSums[i] += sample[i];
+                    ++currentCounts[i];
+                }
+            }
+        }
+
+        private void flush()
+        {
+            slotStarts[nextSlot] = currentSlotStart;
+            for ( int i = 0; i < values.length; ++i )
+            {
+                values[i][nextSlot] = average(i);
+            }
+            nextSlot = (nextSlot + 1) % slotStarts.length;
+        }
+
+        private long average(int metricIndex)
+        {
+            return (currentCounts[metricIndex] > 0) ? (currentSums[metricIndex] / currentCounts[metricIndex]) : NO_VALUE;
+        }
+
+        private Series get(int metricIndex, long fromMs, long toMs)
+        {
+            long        intervalMs = resolution.getIntervalMs();
+            long        lastStart = toMs - (toMs % intervalMs);
+            long        firstStart = Math.max(fromMs - (fromMs % intervalMs), lastStart - (slotStarts.length * intervalMs));
+            if ( firstStart > lastStart )
+            {
+                return new Series(resolution, firstStart, new long[0]);
+            }
+
+            long[]      series = new long[(int)((lastStart - firstStart) / intervalMs) + 1];
+            Arrays.fill(series, NO_VALUE);
+            for ( int slot = 0; slot < slotStarts.length; ++slot )
+            {
+                set(series, firstStart, lastStart, slotStarts[slot], values[metricIndex][slot]);
+            }
+            if ( currentSlotStart != NO_VALUE )
+            {
+                set(series, firstStart, lastStart, currentSlotStart, average(metricIndex));
+            }
+            return new Series(resolution, firstStart, series);
+        }
+
+        private void set(long[] series, long firstStart, long lastStart, long slotStart, long value)
+        {
+            if ( (slotStart != NO_VALUE) && (slotStart >= firstStart) && (slotStart <= lastStart) )
+            {
+                series[(int)((slotStart - firstStart) / resolution.getIntervalMs())] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.servo;
+
+import com.netflix.servo.annotations.Monitor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.netflix.servo.annotations.DataSourceType.*;
+
+/**
+ * Usage of the shared backup transfer {@link com.netflix.exhibitor.core.backup.s3.Throttle}. The
+ * counters are reported as rates so <code>throttle_bytes</code> is the current throughput
+ */
+public class ThrottleMonitoredData
+{
+    @Monitor(name="throttle_bytes", type=COUNTER)
+    public final AtomicLong     bytes = new AtomicLong(0);
+
+    @Monitor(name="throttle_wait_ms", type=COUNTER)
+    public final AtomicLong     waitMs = new AtomicLong(0);
+
+    @Monitor(name="throttle_waiting", type=GAUGE)
+    public final AtomicLong     waiting = new AtomicLong(0);
+
+    @Monitor(name="throttle_target_bytes_per_ms", type=GAUGE)
+    public final AtomicLong     targetBytesPerMs = new AtomicLong(0);
+}
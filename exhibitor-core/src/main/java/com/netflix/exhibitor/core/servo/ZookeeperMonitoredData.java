@@ -16,79 +16,121 @@
 
 package com.netflix.exhibitor.core.servo;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.netflix.servo.annotations.DataSourceType;
 import com.netflix.servo.annotations.Monitor;
+import com.netflix.servo.monitor.CompositeMonitor;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Monitors;
 import java.lang.reflect.Field;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.netflix.servo.annotations.DataSourceType.*;
 
 public class ZookeeperMonitoredData
 {
-    private final Map<String, AtomicInteger>        fieldMap;
+    private final Map<String, AtomicLong>           fieldMap;
+    private final ConcurrentMap<String, AtomicLong> discoveredValues = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, com.netflix.servo.monitor.Monitor<?>> discoveredMonitors = Maps.newConcurrentMap();
+    private final LatencyHistogram                  latencyHistogram = new LatencyHistogram(LATENCY_SAMPLES);
+
+    // protected by sync - values from the previous update for the derived values
+    private long                                    previousUpdateMs = -1;
+    private long                                    previousPacketsReceived = -1;
+    private long                                    previousPacketsSent = -1;
+    private long                                    previousOutstandingRequests = -1;
+    private long                                    previousMaxLatency = -1;
+
+    private static final int        LATENCY_SAMPLES = 1000;
 
     /*
         See http://zookeeper.apache.org/doc/r3.4.4/zookeeperAdmin.html#sc_zkCommands
     */
     @Monitor(name="zk_avg_latency", type=GAUGE)
-    public final AtomicInteger     zk_avg_latency = new AtomicInteger(0);
+    public final AtomicLong     zk_avg_latency = new AtomicLong(0);
 
     @Monitor(name="zk_max_latency", type=GAUGE)
-    public final AtomicInteger     zk_max_latency = new AtomicInteger(0);
+    public final AtomicLong     zk_max_latency = new AtomicLong(0);
 
     @Monitor(name="zk_min_latency", type=GAUGE)
-    public final AtomicInteger     zk_min_latency = new AtomicInteger(0);
+    public final AtomicLong     zk_min_latency = new AtomicLong(0);
 
     @Monitor(name="zk_packets_received", type=COUNTER)
-    public final AtomicInteger     zk_packets_received = new AtomicInteger(0);
+    public final AtomicLong     zk_packets_received = new AtomicLong(0);
 
     @Monitor(name="zk_packets_sent", type=COUNTER)
-    public final AtomicInteger     zk_packets_sent = new AtomicInteger(0);
+    public final AtomicLong     zk_packets_sent = new AtomicLong(0);
 
     @Monitor(name="zk_outstanding_requests", type=GAUGE)
-    public final AtomicInteger     zk_outstanding_requests = new AtomicInteger(0);
+    public final AtomicLong     zk_outstanding_requests = new AtomicLong(0);
 
     @Monitor(name="zk_znode_count", type=GAUGE)
-    public final AtomicInteger     zk_znode_count = new AtomicInteger(0);
+    public final AtomicLong     zk_znode_count = new AtomicLong(0);
 
     @Monitor(name="zk_watch_count", type=GAUGE)
-    public final AtomicInteger     zk_watch_count = new AtomicInteger(0);
+    public final AtomicLong     zk_watch_count = new AtomicLong(0);
 
     @Monitor(name="zk_ephemerals_count", type=GAUGE)
-    public final AtomicInteger     zk_ephemerals_count = new AtomicInteger(0);
+    public final AtomicLong     zk_ephemerals_count = new AtomicLong(0);
 
     @Monitor(name="zk_approximate_data_size", type=GAUGE)
-    public final AtomicInteger     zk_approximate_data_size = new AtomicInteger(0);
+    public final AtomicLong     zk_approximate_data_size = new AtomicLong(0);
 
     @Monitor(name="zk_followers", type=GAUGE)
-    public final AtomicInteger     zk_followers = new AtomicInteger(0);
+    public final AtomicLong     zk_followers = new AtomicLong(0);
 
     @Monitor(name="zk_synced_followers", type=GAUGE)
-    public final AtomicInteger     zk_synced_followers = new AtomicInteger(0);
+    public final AtomicLong     zk_synced_followers = new AtomicLong(0);
 
     @Monitor(name="zk_pending_syncs", type=GAUGE)
-    public final AtomicInteger     zk_pending_syncs = new AtomicInteger(0);
+    public final AtomicLong     zk_pending_syncs = new AtomicLong(0);
 
     @Monitor(name="zk_open_file_descriptor_count", type=GAUGE)
-    public final AtomicInteger     zk_open_file_descriptor_count = new AtomicInteger(0);
+    public final AtomicLong     zk_open_file_descriptor_count = new AtomicLong(0);
 
     @Monitor(name="zk_max_file_descriptor_count", type=GAUGE)
-    public final AtomicInteger     zk_max_file_descriptor_count = new AtomicInteger(0);
+    public final AtomicLong     zk_max_file_descriptor_count = new AtomicLong(0);
 
     @Monitor(name="zk_num_alive_connections", type=GAUGE)
-    public final AtomicInteger     zk_num_alive_connections = new AtomicInteger(0);
+    public final AtomicLong     zk_num_alive_connections = new AtomicLong(0);
+
+    /*
+        Derived from successive updates
+    */
+    @Monitor(name="zk_packets_received_per_sec", type=GAUGE)
+    public final AtomicLong     packetsReceivedPerSec = new AtomicLong(0);
+
+    @Monitor(name="zk_packets_sent_per_sec", type=GAUGE)
+    public final AtomicLong     packetsSentPerSec = new AtomicLong(0);
+
+    @Monitor(name="zk_outstanding_requests_delta", type=GAUGE)
+    public final AtomicLong     outstandingRequestsDelta = new AtomicLong(0);
+
+    @Monitor(name="zk_latency_p50", type=GAUGE)
+    public final AtomicLong     latencyP50 = new AtomicLong(0);
+
+    @Monitor(name="zk_latency_p90", type=GAUGE)
+    public final AtomicLong     latencyP90 = new AtomicLong(0);
+
+    @Monitor(name="zk_latency_p99", type=GAUGE)
+    public final AtomicLong     latencyP99 = new AtomicLong(0);
 
     public ZookeeperMonitoredData()
     {
-        ImmutableMap.Builder<String, AtomicInteger>         builder = ImmutableMap.builder();
+        ImmutableMap.Builder<String, AtomicLong>            builder = ImmutableMap.builder();
         try
         {
             for ( Field f : getClass().getDeclaredFields() )
             {
                 if ( f.getName().startsWith("zk_") )
                 {
-                    builder.put(f.getName(), (AtomicInteger)f.get(this));
+                    builder.put(f.getName(), (AtomicLong)f.get(this));
                 }
             }
         }
@@ -100,15 +142,154 @@ public class ZookeeperMonitoredData
         fieldMap = builder.build();
     }
 
-    public void         updateValues(Map<String, Integer> newValues)
+    /**
+     * Return a monitor for the fields of this class plus every other numeric mntr key seen so far.
+     * Pollers ask the monitor for its list each time so keys found later are picked up without
+     * registering again.
+     *
+     * @return monitor
+     */
+    public CompositeMonitor<?>  newCompositeMonitor()
     {
-        for ( Map.Entry<String, Integer> entry : newValues.entrySet() )
+        final CompositeMonitor<?>   fieldsMonitor = Monitors.newObjectMonitor(this);
+        return new CompositeMonitor<Integer>()
         {
-            AtomicInteger       value = fieldMap.get(entry.getKey());
-            if ( value != null )
+            @Override
+            public List<com.netflix.servo.monitor.Monitor<?>> getMonitors()
+            {
+                List<com.netflix.servo.monitor.Monitor<?>>  monitors = Lists.newArrayList(fieldsMonitor.getMonitors());
+                monitors.addAll(discoveredMonitors.values());
+                return monitors;
+            }
+
+            @Override
+            public Integer getValue()
             {
-                value.set(entry.getValue());
+                return fieldsMonitor.getMonitors().size() + discoveredMonitors.size();
             }
+
+            @Override
+            public MonitorConfig getConfig()
+            {
+                return fieldsMonitor.getConfig();
+            }
+        };
+    }
+
+    /**
+     * @return the values of mntr keys that don't have a field
+     */
+    public Map<String, Long>    getDiscoveredValues()
+    {
+        ImmutableMap.Builder<String, Long>  builder = ImmutableMap.builder();
+        for ( Map.Entry<String, AtomicLong> entry : discoveredValues.entrySet() )
+        {
+            builder.put(entry.getKey(), entry.getValue().get());
+        }
+        return builder.build();
+    }
+
+    public void         updateValues(Map<String, Long> newValues)
+    {
+        updateValues(newValues, System.currentTimeMillis());
+    }
+
+    @VisibleForTesting
+    synchronized void   updateValues(Map<String, Long> newValues, long nowMs)
+    {
+        for ( Map.Entry<String, Long> entry : newValues.entrySet() )
+        {
+            AtomicLong       value = fieldMap.get(entry.getKey());
+            if ( value == null )
+            {
+                value = discover(entry.getKey());
+            }
+            value.set(entry.getValue());
+        }
+
+        long        elapsedMs = nowMs - previousUpdateMs;
+        long        packetsReceived = getValue(newValues, "zk_packets_received");
+        long        packetsSent = getValue(newValues, "zk_packets_sent");
+        long        outstandingRequests = getValue(newValues, "zk_outstanding_requests");
+        long        maxLatency = getValue(newValues, "zk_max_latency");
+        long        avgLatency = getValue(newValues, "zk_avg_latency");
+
+        packetsReceivedPerSec.set(perSecond(packetsReceived, previousPacketsReceived, elapsedMs));
+        packetsSentPerSec.set(perSecond(packetsSent, previousPacketsSent, elapsedMs));
+        outstandingRequestsDelta.set(((outstandingRequests >= 0) && (previousOutstandingRequests >= 0)) ? (outstandingRequests - previousOutstandingRequests) : 0);
+
+        if ( avgLatency >= 0 )
+        {
+            latencyHistogram.record(avgLatency);
+        }
+        if ( (maxLatency >= 0) && (previousMaxLatency >= 0) && (maxLatency > previousMaxLatency) )
+        {
+            // zk_max_latency is the max since the server's stats were reset - a new max must have happened since the last update
+            latencyHistogram.record(maxLatency);
+        }
+        latencyP50.set(latencyHistogram.getValueAtPercentile(50));
+        latencyP90.set(latencyHistogram.getValueAtPercentile(90));
+        latencyP99.set(latencyHistogram.getValueAtPercentile(99));
+
+        previousUpdateMs = nowMs;
+        previousPacketsReceived = packetsReceived;
+        previousPacketsSent = packetsSent;
+        previousOutstandingRequests = outstandingRequests;
+        previousMaxLatency = maxLatency;
+    }
+
+    private AtomicLong discover(String key)
+    {
+        AtomicLong      value = discoveredValues.get(key);
+        if ( value == null )
+        {
+            AtomicLong      newValue = new AtomicLong(0);
+            value = discoveredValues.putIfAbsent(key, newValue);
+            if ( value == null )
+            {
+                value = newValue;
+                discoveredMonitors.put(key, new DiscoveredGauge(key, value));
+            }
+        }
+        return value;
+    }
+
+    private static long getValue(Map<String, Long> values, String key)
+    {
+        Long        value = values.get(key);
+        return (value != null) ? value : -1;
+    }
+
+    private static long perSecond(long value, long previousValue, long elapsedMs)
+    {
+        if ( (value < 0) || (previousValue < 0) || (value < previousValue) || (elapsedMs <= 0) )
+        {
+            return 0;   // no previous value or the server was restarted
+        }
+        return ((value - previousValue) * 1000) / elapsedMs;
+    }
+
+    private static class DiscoveredGauge implements com.netflix.servo.monitor.Monitor<Long>
+    {
+        private final MonitorConfig config;
+        private final AtomicLong value;
+
+        private DiscoveredGauge(String name, AtomicLong value)
+        {
+            this.config = MonitorConfig.builder(name).withTag(DataSourceType.GAUGE).build();
+            this.value = value;
+        }
+
+        @Override
+        public Long getValue()
+        {
+            return value.get();
+        }
+
+        @Override
+        public MonitorConfig getConfig()
+        {
+            return config;
         }
     }
 }
@@ -16,8 +16,10 @@
 
 package com.netflix.exhibitor.core.state;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import java.util.List;
 
@@ -37,24 +39,60 @@ public class Checker
         this.hostname = hostname;
     }
 
-    public StateAndLeader calculateState() throws Exception
+    public InstanceStateSnapshot calculateState() throws Exception
+    {
+        return calculateState(null);
+    }
+
+    /**
+     * Check the instance. mntr is only sent if the previous check's mntr response is older than
+     * {@link IntConfigs#CHECK_MS} - otherwise that response is carried over. This keeps frequent checks
+     * (e.g. right after a restart) down to ruok and srvr.
+     *
+     * @param previous the previous check or null
+     * @return the state
+     * @throws Exception errors
+     */
+    public InstanceStateSnapshot calculateState(InstanceStateSnapshot previous) throws Exception
     {
         InstanceConfig          config = exhibitor.getConfigManager().getConfig();
+        FourLetterWord          empty = new FourLetterWord("");
 
         if ( !isSet(config, StringConfigs.ZOOKEEPER_DATA_DIRECTORY) || !isSet(config, StringConfigs.ZOOKEEPER_INSTALL_DIRECTORY) )
         {
-            return new StateAndLeader(InstanceStateTypes.LATENT, false);
+            return new InstanceStateSnapshot(InstanceStateTypes.LATENT, false, empty, empty, empty, System.currentTimeMillis());
         }
 
+        FourLetterWordClient    client = exhibitor.getFourLetterWordClient();
+        int                     port = config.getInt(IntConfigs.CLIENT_PORT);
         InstanceStateTypes      actualState = InstanceStateTypes.DOWN;
         boolean                 isLeader = false;
-        String                  ruok = new FourLetterWord(FourLetterWord.Word.RUOK, hostname, config, exhibitor.getConnectionTimeOutMs()).getResponse();
-        if ( "imok".equals(ruok) )
+        FourLetterWord          ruok = client.get(FourLetterWord.Word.RUOK, hostname, port, exhibitor.getConnectionTimeOutMs());
+        FourLetterWord          srvr = empty;
+        FourLetterWord          mntr = empty;
+        long                    nowMs = System.currentTimeMillis();
+        long                    mntrTimestampMs = nowMs;
+        if ( "imok".equals(ruok.getResponse()) )
         {
+            // mntr is kept for anything that wants the full stats (see MonitorRunningInstance.getSnapshot())
+            boolean                             mntrIsCurrent = (previous != null) && (previous.getMntr().getResponse().length() > 0) && ((nowMs - previous.getMntrTimestampMs()) < config.getInt(IntConfigs.CHECK_MS));
+            ListenableFuture<FourLetterWord>    srvrFuture = client.submit(FourLetterWord.Word.SRVR, hostname, port, exhibitor.getConnectionTimeOutMs());
+            ListenableFuture<FourLetterWord>    mntrFuture = mntrIsCurrent ? null : client.submit(FourLetterWord.Word.MNTR, hostname, port, exhibitor.getConnectionTimeOutMs());
+            srvr = srvrFuture.get();
+            if ( mntrFuture != null )
+            {
+                mntr = mntrFuture.get();
+            }
+            else
+            {
+                mntr = previous.getMntr();
+                mntrTimestampMs = previous.getMntrTimestampMs();
+            }
+
             // The following code depends on inside knowledge of the "srvr" response. If they change it
             // this code might break
 
-            List<String> lines = new FourLetterWord(FourLetterWord.Word.SRVR, hostname, config, exhibitor.getConnectionTimeOutMs()).getResponseLines();
+            List<String> lines = srvr.getResponseLines();
             for ( String line : lines )
             {
                 if ( line.contains("not currently serving") )
@@ -80,7 +118,7 @@ public class Checker
             }
         }
 
-        return new StateAndLeader(actualState, isLeader);
+        return new InstanceStateSnapshot(actualState, isLeader, ruok, srvr, mntr, System.currentTimeMillis(), mntrTimestampMs);
     }
 
     private boolean isSet(InstanceConfig config, StringConfigs type)
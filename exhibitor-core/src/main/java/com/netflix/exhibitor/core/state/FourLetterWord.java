@@ -49,6 +49,21 @@ public class FourLetterWord
         MNTR
     }
 
+    /**
+     * @param response a response received by {@link FourLetterWordClient}
+     */
+    public FourLetterWord(String response)
+    {
+        this.response = Preconditions.checkNotNull(response, "response cannot be null");
+    }
+
+    /**
+     * Send the word over a new blocking connection. Prefer {@link FourLetterWordClient}
+     *
+     * @param word the word
+     * @param config config for the client port
+     * @param connectionTimeOutMs socket timeout
+     */
     public FourLetterWord(Word word, InstanceConfig config, int connectionTimeOutMs)
     {
         this(word, "localhost", config, connectionTimeOutMs);
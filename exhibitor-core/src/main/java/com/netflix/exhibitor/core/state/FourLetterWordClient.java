@@ -0,0 +1,437 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.state;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ *     Sends four letter words to any number of ZooKeeper servers from a single selector thread.
+ *     Each command has its own deadline. A command for the same word and server that is already
+ *     in flight is shared instead of opening another connection as long as it ends no later than
+ *     the caller's deadline.
+ * </p>
+ *
+ * <p>
+ *     ZooKeeper closes the connection after answering a four letter word so every command still needs
+ *     its own connection - the savings come from coalescing and from not tying up a thread per command.
+ *     As with {@link FourLetterWord}, errors and timeouts produce an empty response.
+ * </p>
+ */
+public class FourLetterWordClient implements Closeable
+{
+    private final Selector selector;
+    private final ExecutorService service = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FourLetterWordClient-%d").build());
+    private final Queue<Command> newCommands = new ConcurrentLinkedQueue<Command>();
+    private final Map<CommandKey, Command> inFlight = Maps.newHashMap();  // protected by sync
+    private final AtomicBoolean isOpen = new AtomicBoolean(true);
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * @throws IOException errors opening the selector
+     */
+    public FourLetterWordClient() throws IOException
+    {
+        selector = Selector.open();
+        service.submit
+        (
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    selectLoop();
+                }
+            }
+        );
+    }
+
+    /**
+     * Send a four letter word to the ZooKeeper client port given in the config and wait for the response
+     *
+     * @param word the word
+     * @param hostname server
+     * @param config config for the client port
+     * @param timeoutMs max time for the command
+     * @return the response (empty on errors/timeout)
+     */
+    public FourLetterWord get(FourLetterWord.Word word, String hostname, InstanceConfig config, int timeoutMs)
+    {
+        return get(word, hostname, config.getInt(IntConfigs.CLIENT_PORT), timeoutMs);
+    }
+
+    /**
+     * Send a four letter word and wait for the response
+     *
+     * @param word the word
+     * @param hostname server
+     * @param port ZooKeeper client port
+     * @param timeoutMs max time for the command
+     * @return the response (empty on errors/timeout)
+     */
+    public FourLetterWord get(FourLetterWord.Word word, String hostname, int port, int timeoutMs)
+    {
+        long        deadlineMs = System.currentTimeMillis() + timeoutMs;
+        try
+        {
+            for(;;)
+            {
+                long            remainingMs = deadlineMs - System.currentTimeMillis();
+                if ( remainingMs <= 0 )
+                {
+                    return new FourLetterWord("");
+                }
+
+                Command         command = submitCommand(word, hostname, port, deadlineMs);
+                FourLetterWord  response = command.future.get(remainingMs, TimeUnit.MILLISECONDS);
+                if ( !command.timedOut || (command.deadlineMs >= deadlineMs) )
+                {
+                    return response;
+                }
+                // joined a command with an earlier deadline that ran out - use the rest of this caller's time
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return new FourLetterWord("");
+        }
+        catch ( TimeoutException e )
+        {
+            return new FourLetterWord("");
+        }
+        catch ( ExecutionException e )
+        {
+            return new FourLetterWord("");   // never happens - failures complete with an empty response
+        }
+    }
+
+    /**
+     * Send a four letter word. If the same word is already in flight to the same server and
+     * that command's deadline is at or before this one, the returned future is for that command.
+     *
+     * @param word the word
+     * @param hostname server
+     * @param port ZooKeeper client port
+     * @param timeoutMs max time for the command
+     * @return future for the response. It always completes by the deadline and never fails (errors/timeout give an empty response)
+     */
+    public ListenableFuture<FourLetterWord> submit(FourLetterWord.Word word, String hostname, int port, int timeoutMs)
+    {
+        return submitCommand(word, hostname, port, System.currentTimeMillis() + timeoutMs).future;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if ( isOpen.compareAndSet(true, false) )
+        {
+            selector.wakeup();
+            service.shutdownNow();
+        }
+    }
+
+    private Command submitCommand(FourLetterWord.Word word, String hostname, int port, long deadlineMs)
+    {
+        Preconditions.checkNotNull(word, "word cannot be null");
+        Preconditions.checkNotNull(hostname, "hostname cannot be null");
+
+        CommandKey      key = new CommandKey(word, hostname, port);
+        Command         command;
+        synchronized(inFlight)
+        {
+            command = inFlight.get(key);
+            if ( (command != null) && (command.deadlineMs <= deadlineMs) )
+            {
+                return command;
+            }
+        }
+
+        // resolve on the caller's thread - a slow DNS lookup must not stall the selector thread
+        InetSocketAddress   address = new InetSocketAddress(hostname, port);
+        synchronized(inFlight)
+        {
+            command = inFlight.get(key);
+            if ( (command != null) && (command.deadlineMs <= deadlineMs) )
+            {
+                return command;
+            }
+
+            command = new Command(key, address, deadlineMs);
+            if ( !isOpen.get() )
+            {
+                command.future.set(new FourLetterWord(""));
+                return command;
+            }
+            inFlight.put(key, command);     // replaces a command with a later deadline - it still runs for its own callers
+            newCommands.add(command);
+        }
+
+        selector.wakeup();
+        return command;
+    }
+
+    private static class CommandKey
+    {
+        private final FourLetterWord.Word word;
+        private final String hostname;
+        private final int port;
+
+        private CommandKey(FourLetterWord.Word word, String hostname, int port)
+        {
+            this.word = word;
+            this.hostname = hostname;
+            this.port = port;
+        }
+
+        @SuppressWarnings("RedundantIfStatement")
+        @Override
+        public boolean equals(Object o)
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+
+            CommandKey that = (CommandKey)o;
+
+            if ( port != that.port )
+            {
+                return false;
+            }
+            if ( !hostname.equals(that.hostname) )
+            {
+                return false;
+            }
+            if ( word != that.word )
+            {
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = word.hashCode();
+            result = 31 * result + hostname.hashCode();
+            result = 31 * result + port;
+            return result;
+        }
+    }
+
+    private static class Command
+    {
+        private final CommandKey key;
+        private final InetSocketAddress address;
+        private final long deadlineMs;
+        private final SettableFuture<FourLetterWord> future = SettableFuture.create();
+        private final ByteBuffer request;
+        private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        private SocketChannel channel;
+        private volatile boolean timedOut = false;
+
+        private Command(CommandKey key, InetSocketAddress address, long deadlineMs)
+        {
+            this.key = key;
+            this.address = address;
+            this.deadlineMs = deadlineMs;
+            request = ByteBuffer.wrap(key.word.name().toLowerCase().getBytes());
+        }
+    }
+
+    private void selectLoop()
+    {
+        List<Command>   active = Lists.newArrayList();
+        ByteBuffer      readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try
+        {
+            while ( isOpen.get() )
+            {
+                Command     command;
+                while ( (command = newCommands.poll()) != null )
+                {
+                    if ( start(command) )
+                    {
+                        active.add(command);
+                    }
+                }
+
+                long        now = System.currentTimeMillis();
+                long        nextDeadline = Long.MAX_VALUE;
+                for ( Command activeCommand : Lists.newArrayList(active) )
+                {
+                    if ( now >= activeCommand.deadlineMs )
+                    {
+                        activeCommand.timedOut = true;
+                        complete(activeCommand, false);
+                        active.remove(activeCommand);
+                    }
+                    else
+                    {
+                        nextDeadline = Math.min(nextDeadline, activeCommand.deadlineMs);
+                    }
+                }
+
+                selector.select((nextDeadline == Long.MAX_VALUE) ? 0 : Math.max(1, nextDeadline - now));
+
+                for ( SelectionKey selectionKey : selector.selectedKeys() )
+                {
+                    Command     selectedCommand = (Command)selectionKey.attachment();
+                    if ( !handle(selectionKey, selectedCommand, readBuffer) )
+                    {
+                        active.remove(selectedCommand);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+        catch ( Throwable e )
+        {
+            // the selector is unusable - fall through and fail everything
+        }
+        finally
+        {
+            synchronized(inFlight)
+            {
+                // no new commands can be queued once this is set
+                isOpen.set(false);
+            }
+            for ( Command command : active )
+            {
+                complete(command, false);
+            }
+            Command     command;
+            while ( (command = newCommands.poll()) != null )
+            {
+                complete(command, false);
+            }
+            CloseableUtils.closeQuietly(selector);
+        }
+    }
+
+    private boolean start(Command command)
+    {
+        try
+        {
+            command.channel = SocketChannel.open();
+            command.channel.configureBlocking(false);
+            command.channel.socket().setTcpNoDelay(true);
+            if ( command.channel.connect(command.address) )
+            {
+                command.channel.register(selector, SelectionKey.OP_WRITE, command);
+            }
+            else
+            {
+                command.channel.register(selector, SelectionKey.OP_CONNECT, command);
+            }
+            return true;
+        }
+        catch ( Exception e )
+        {
+            // ignore - treat as server not running
+            complete(command, false);
+            return false;
+        }
+    }
+
+    // returns false when the command is done
+    private boolean handle(SelectionKey selectionKey, Command command, ByteBuffer readBuffer)
+    {
+        try
+        {
+            if ( selectionKey.isConnectable() )
+            {
+                command.channel.finishConnect();
+                selectionKey.interestOps(SelectionKey.OP_WRITE);
+            }
+            else if ( selectionKey.isWritable() )
+            {
+                command.channel.write(command.request);
+                if ( !command.request.hasRemaining() )
+                {
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            else if ( selectionKey.isReadable() )
+            {
+                readBuffer.clear();
+                int     bytesRead = command.channel.read(readBuffer);
+                if ( bytesRead < 0 )
+                {
+                    // ZooKeeper closes the connection once the response has been written
+                    complete(command, true);
+                    return false;
+                }
+                command.response.write(readBuffer.array(), 0, bytesRead);
+            }
+            return true;
+        }
+        catch ( Exception e )
+        {
+            // ignore - treat as server not running
+            complete(command, false);
+            return false;
+        }
+    }
+
+    private void complete(Command command, boolean wasSuccessful)
+    {
+        synchronized(inFlight)
+        {
+            if ( inFlight.get(command.key) == command )
+            {
+                inFlight.remove(command.key);
+            }
+        }
+        CloseableUtils.closeQuietly(command.channel);
+        command.future.set(new FourLetterWord(wasSuccessful ? command.response.toString() : ""));
+    }
+}
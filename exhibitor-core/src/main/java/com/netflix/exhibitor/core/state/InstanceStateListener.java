@@ -0,0 +1,29 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.state;
+
+public interface InstanceStateListener
+{
+    /**
+     * Called by {@link MonitorRunningInstance} as soon as a check finds that the instance's state
+     * or leadership has changed. Called from the monitor's thread so it must not block.
+     *
+     * @param previous the previous check
+     * @param current the new check
+     */
+    public void     stateChanged(InstanceStateSnapshot previous, InstanceStateSnapshot current);
+}
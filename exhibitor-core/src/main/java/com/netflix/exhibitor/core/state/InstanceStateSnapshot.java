@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.state;
+
+/**
+ * The result of one check of the local ZooKeeper instance: its state plus the four letter
+ * word responses the state was worked out from. {@link MonitorRunningInstance} keeps the latest
+ * one so that REST calls can be answered without contacting ZooKeeper.
+ */
+public class InstanceStateSnapshot extends StateAndLeader
+{
+    private final FourLetterWord ruok;
+    private final FourLetterWord srvr;
+    private final FourLetterWord mntr;
+    private final long timestampMs;
+    private final long mntrTimestampMs;
+
+    private static final FourLetterWord EMPTY = new FourLetterWord("");
+
+    /**
+     * The snapshot used before the first check
+     */
+    public static final InstanceStateSnapshot LATENT = new InstanceStateSnapshot(InstanceStateTypes.LATENT, false, EMPTY, EMPTY, EMPTY, 0);
+
+    /**
+     * Wrap a state that wasn't calculated by {@link Checker} (it has no four letter word responses)
+     *
+     * @param stateAndLeader state
+     * @return snapshot
+     */
+    public static InstanceStateSnapshot from(StateAndLeader stateAndLeader)
+    {
+        if ( stateAndLeader instanceof InstanceStateSnapshot )
+        {
+            return (InstanceStateSnapshot)stateAndLeader;
+        }
+        return new InstanceStateSnapshot(stateAndLeader.getState(), stateAndLeader.isLeader(), EMPTY, EMPTY, EMPTY, System.currentTimeMillis());
+    }
+
+    /**
+     * @param state instance state
+     * @param leader true if leader
+     * @param ruok the ruok response
+     * @param srvr the srvr response (empty if not serving)
+     * @param mntr the mntr response (empty if not serving)
+     * @param timestampMs time of the check
+     */
+    public InstanceStateSnapshot(InstanceStateTypes state, boolean leader, FourLetterWord ruok, FourLetterWord srvr, FourLetterWord mntr, long timestampMs)
+    {
+        this(state, leader, ruok, srvr, mntr, timestampMs, timestampMs);
+    }
+
+    /**
+     * @param state instance state
+     * @param leader true if leader
+     * @param ruok the ruok response
+     * @param srvr the srvr response (empty if not serving)
+     * @param mntr the mntr response (empty if not serving) - possibly carried over from an earlier check
+     * @param timestampMs time of the check
+     * @param mntrTimestampMs time the mntr response was received
+     */
+    public InstanceStateSnapshot(InstanceStateTypes state, boolean leader, FourLetterWord ruok, FourLetterWord srvr, FourLetterWord mntr, long timestampMs, long mntrTimestampMs)
+    {
+        super(state, leader);
+        this.ruok = ruok;
+        this.srvr = srvr;
+        this.mntr = mntr;
+        this.timestampMs = timestampMs;
+        this.mntrTimestampMs = mntrTimestampMs;
+    }
+
+    public FourLetterWord getRuok()
+    {
+        return ruok;
+    }
+
+    public FourLetterWord getSrvr()
+    {
+        return srvr;
+    }
+
+    public FourLetterWord getMntr()
+    {
+        return mntr;
+    }
+
+    public long getTimestampMs()
+    {
+        return timestampMs;
+    }
+
+    /**
+     * mntr isn't sent on every check - see {@link Checker}
+     *
+     * @return time the mntr response was received
+     */
+    public long getMntrTimestampMs()
+    {
+        return mntrTimestampMs;
+    }
+
+    /**
+     * @param word the word
+     * @return the response to the given word if it's part of the snapshot or null
+     */
+    public FourLetterWord getResponse(FourLetterWord.Word word)
+    {
+        switch ( word )
+        {
+            case RUOK:
+            {
+                return ruok;
+            }
+
+            case SRVR:
+            {
+                return srvr;
+            }
+
+            case MNTR:
+            {
+                return mntr;
+            }
+
+            default:
+            {
+                return null;
+            }
+        }
+    }
+}
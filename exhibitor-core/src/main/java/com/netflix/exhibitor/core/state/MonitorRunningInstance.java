@@ -17,22 +17,29 @@
 package com.netflix.exhibitor.core.state;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.exhibitor.core.Exhibitor;
 import com.netflix.exhibitor.core.activity.Activity;
 import com.netflix.exhibitor.core.activity.ActivityLog;
 import com.netflix.exhibitor.core.activity.QueueGroups;
-import com.netflix.exhibitor.core.activity.RepeatingActivity;
-import com.netflix.exhibitor.core.activity.RepeatingActivityImpl;
-import com.netflix.exhibitor.core.config.ConfigListener;
 import com.netflix.exhibitor.core.config.EncodedConfigParser;
 import com.netflix.exhibitor.core.config.InstanceConfig;
 import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
+import com.netflix.exhibitor.core.servo.GetMonitorData;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class MonitorRunningInstance implements Closeable
@@ -40,53 +47,54 @@ public class MonitorRunningInstance implements Closeable
     private final Exhibitor                         exhibitor;
     private final AtomicReference<InstanceState>    currentInstanceState = new AtomicReference<InstanceState>();
     private final AtomicBoolean                     currentIsLeader = new AtomicBoolean(false);
-    private final RepeatingActivity                 repeatingActivity;
+    private final AtomicReference<InstanceStateSnapshot> currentSnapshot = new AtomicReference<InstanceStateSnapshot>(InstanceStateSnapshot.LATENT);
+    private final ScheduledExecutorService          probeService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MonitorRunningInstance-%d").build());
+    private final Set<InstanceStateListener>        listeners = Sets.newSetFromMap(Maps.<InstanceStateListener, Boolean>newConcurrentMap());
     private final AtomicInteger                     restartCount = new AtomicInteger(1);
+    private final AtomicLong                        lastRestartMs = new AtomicLong(0);
+    private final AtomicBoolean                     rollingConfigCheckQueued = new AtomicBoolean(false);
+
+    // only accessed from the probe thread
+    private int                                     servingProbeMs = FAST_PROBE_MS;
+    private long                                    lastWaitingMessageMs = 0;
+    private long                                    lastRollingConfigCheckMs = 0;
 
     private static final int    DOWN_RECHECK_FACTOR = 10;
+    private static final int    FAST_PROBE_MS = 250;
+    private static final int    RESTART_FAST_PROBE_WINDOW_MS = 30 * 1000;
 
     public MonitorRunningInstance(Exhibitor exhibitor)
     {
         this.exhibitor = exhibitor;
-        Activity activity = new Activity()
-        {
-            @Override
-            public void completed(boolean wasSuccessful)
-            {
-                // NOP
-            }
-
-            @Override
-            public Boolean call() throws Exception
-            {
-                doWork();
-                return true;
-            }
-        };
-
-        repeatingActivity = new RepeatingActivityImpl(exhibitor.getLog(), exhibitor.getActivityQueue(), QueueGroups.MAIN, activity, exhibitor.getConfigManager().getConfig().getInt(IntConfigs.CHECK_MS));
     }
 
+    /**
+     * Start checking the instance. Checks run on their own thread: every 250 ms while the instance is
+     * down/not-serving or has been restarted in the last 30 seconds, backing off to {@link IntConfigs#CHECK_MS}
+     * while it is serving.
+     */
     public void start()
     {
-        repeatingActivity.start();
-        exhibitor.getConfigManager().addConfigListener
-        (
-            new ConfigListener()
-            {
-                @Override
-                public void configUpdated()
-                {
-                    repeatingActivity.setTimePeriodMs(exhibitor.getConfigManager().getConfig().getInt(IntConfigs.CHECK_MS));
-                }
-            }
-        );
+        scheduleProbe(0);
     }
 
     @Override
     public void close() throws IOException
     {
-        repeatingActivity.close();
+        probeService.shutdownNow();
+    }
+
+    /**
+     * @param listener listener to call when the instance's state or leadership changes
+     */
+    public void addInstanceStateListener(InstanceStateListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeInstanceStateListener(InstanceStateListener listener)
+    {
+        listeners.remove(listener);
     }
 
     public InstanceStateTypes   getCurrentInstanceState()
@@ -105,6 +113,25 @@ public class MonitorRunningInstance implements Closeable
         return restartCount.get();
     }
 
+    /**
+     * Return the result of the latest check of the instance (made at least every {@link IntConfigs#CHECK_MS}). This is
+     * a memory read - pass <code>fresh</code> to check the instance now instead.
+     *
+     * @param fresh if true, check the instance now
+     * @return snapshot
+     * @throws Exception errors
+     */
+    public InstanceStateSnapshot getSnapshot(boolean fresh) throws Exception
+    {
+        if ( fresh )
+        {
+            InstanceStateSnapshot   snapshot = InstanceStateSnapshot.from(getStateAndLeader());
+            updateSnapshot(snapshot);
+            return snapshot;
+        }
+        return currentSnapshot.get();
+    }
+
     @VisibleForTesting
     void doWork() throws Exception
     {
@@ -113,8 +140,9 @@ public class MonitorRunningInstance implements Closeable
         InstanceState   instanceState = new InstanceState(new ServerList(config.getString(StringConfigs.SERVERS_SPEC)), stateAndLeader.getState(), new RestartSignificantConfig(config));
 
         currentIsLeader.set(stateAndLeader.isLeader());
+        updateSnapshot(InstanceStateSnapshot.from(stateAndLeader));
 
-        exhibitor.getConfigManager().checkRollingConfig(instanceState);
+        queueRollingConfigCheck(config, instanceState);
 
         InstanceState   localCurrentInstanceState = currentInstanceState.get();
         if ( instanceState.equals(localCurrentInstanceState) )
@@ -127,10 +155,146 @@ public class MonitorRunningInstance implements Closeable
         }
     }
 
+    /**
+     * The rolling config check counts each not-serving check as an attempt and it contends with config loading
+     * for the config manager's lock. So, it runs at the {@link IntConfigs#CHECK_MS} cadence in the main queue
+     * regardless of how fast the instance is being probed.
+     */
+    private void queueRollingConfigCheck(InstanceConfig config, final InstanceState instanceState)
+    {
+        long        nowMs = System.currentTimeMillis();
+        if ( (nowMs - lastRollingConfigCheckMs) < config.getInt(IntConfigs.CHECK_MS) )
+        {
+            return;
+        }
+        if ( !rollingConfigCheckQueued.compareAndSet(false, true) )
+        {
+            return; // the previous check hasn't run yet
+        }
+        lastRollingConfigCheckMs = nowMs;
+
+        Activity    activity = new Activity()
+        {
+            @Override
+            public void completed(boolean wasSuccessful)
+            {
+            }
+
+            @Override
+            public Boolean call() throws Exception
+            {
+                try
+                {
+                    exhibitor.getConfigManager().checkRollingConfig(instanceState);
+                }
+                finally
+                {
+                    rollingConfigCheckQueued.set(false);
+                }
+                return true;
+            }
+        };
+        exhibitor.getActivityQueue().add(QueueGroups.MAIN, activity);
+    }
+
     @VisibleForTesting
     protected StateAndLeader getStateAndLeader() throws Exception
     {
-        return new Checker(exhibitor).calculateState();
+        return new Checker(exhibitor).calculateState(currentSnapshot.get());
+    }
+
+    @VisibleForTesting
+    int getNextProbeMs()
+    {
+        int                 checkMs = Math.max(exhibitor.getConfigManager().getConfig().getInt(IntConfigs.CHECK_MS), 1);
+        InstanceStateTypes  state = getCurrentInstanceState();
+        boolean             recentlyRestarted = (System.currentTimeMillis() - lastRestartMs.get()) < RESTART_FAST_PROBE_WINDOW_MS;
+        if ( recentlyRestarted || (state == InstanceStateTypes.DOWN) || (state == InstanceStateTypes.NOT_SERVING) )
+        {
+            servingProbeMs = FAST_PROBE_MS;
+            return Math.min(FAST_PROBE_MS, checkMs);
+        }
+
+        if ( state == InstanceStateTypes.SERVING )
+        {
+            int     probeMs = Math.min(servingProbeMs, checkMs);
+            servingProbeMs = Math.min(probeMs * 2, checkMs);
+            return probeMs;
+        }
+
+        return checkMs;
+    }
+
+    private void scheduleProbe(long delayMs)
+    {
+        Runnable        probe = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    doWork();
+                }
+                catch ( Throwable e )
+                {
+                    exhibitor.getLog().add(ActivityLog.Type.ERROR, "Monitoring instance", e);
+                }
+                finally
+                {
+                    scheduleProbe(getNextProbeMs());
+                }
+            }
+        };
+
+        try
+        {
+            probeService.schedule(probe, delayMs, TimeUnit.MILLISECONDS);
+        }
+        catch ( RejectedExecutionException ignore )
+        {
+            // closed
+        }
+    }
+
+    private void updateSnapshot(InstanceStateSnapshot snapshot)
+    {
+        for(;;)
+        {
+            InstanceStateSnapshot   current = currentSnapshot.get();
+            if ( current.getTimestampMs() > snapshot.getTimestampMs() )
+            {
+                return; // a fresh check got in first
+            }
+            if ( currentSnapshot.compareAndSet(current, snapshot) )
+            {
+                if ( (current.getState() != snapshot.getState()) || (current.isLeader() != snapshot.isLeader()) )
+                {
+                    notifyListeners(current, snapshot);
+                }
+                if ( (snapshot.getMntrTimestampMs() > current.getMntrTimestampMs()) && (snapshot.getMntr().getResponse().length() > 0) )
+                {
+                    // a new mntr response - the history is fed from the checks rather than polling on its own
+                    exhibitor.getMetricsHistory().record(snapshot.getMntrTimestampMs(), GetMonitorData.parseMntr(snapshot.getMntr().getResponseLines()));
+                }
+                return;
+            }
+        }
+    }
+
+    private void notifyListeners(InstanceStateSnapshot previous, InstanceStateSnapshot current)
+    {
+        for ( InstanceStateListener listener : listeners )
+        {
+            try
+            {
+                listener.stateChanged(previous, current);
+            }
+            catch ( Exception e )
+            {
+                exhibitor.getLog().add(ActivityLog.Type.ERROR, "Instance state listener", e);
+            }
+        }
     }
 
     @VisibleForTesting
@@ -214,8 +378,10 @@ public class MonitorRunningInstance implements Closeable
                 exhibitor.getLog().add(ActivityLog.Type.INFO, "Restarting down/not-serving ZooKeeper after " + elapsedMs + " ms pause");
                 restartZooKeeperAndIncrementCount(localCurrentInstanceState);
             }
-            else
+            else if ( (System.currentTimeMillis() - lastWaitingMessageMs) >= config.getInt(IntConfigs.CHECK_MS) )
             {
+                // down instances are checked every FAST_PROBE_MS - don't flood the log
+                lastWaitingMessageMs = System.currentTimeMillis();
                 exhibitor.getLog().add(ActivityLog.Type.INFO, "ZooKeeper down/not-serving waiting " + elapsedMs + " of " + downInstanceRestartMs + " ms before restarting");
             }
         }
@@ -235,6 +401,7 @@ public class MonitorRunningInstance implements Closeable
         }
 
         exhibitor.getActivityQueue().add(QueueGroups.MAIN, new KillRunningInstance(exhibitor, true));
+        lastRestartMs.set(System.currentTimeMillis());
     }
 
     private void restartZooKeeperAndIncrementCount(InstanceState currentInstanceState) throws Exception
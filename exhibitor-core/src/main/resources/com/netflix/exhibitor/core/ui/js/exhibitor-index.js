@@ -40,6 +40,19 @@ function initRestoreUI()
             return false;
         });
 
+    $('#restore-update-button').button({
+        icons:{
+            primary:"ui-icon-refresh"
+        }
+    }).click(function(){
+            okCancelDialog("Update Index", "Logs and backups added since the selected index was built will be added to it. Check the log for the index progress.", function ()
+            {
+                var radio = $('input:radio:checked[name="restore-item-radio"]');
+                $.getJSON(URL_UPDATE_INDEX_BASE + radio.val() + '?ts=' + getNow());
+            }, true);
+            return false;
+        });
+
     $('#restore-index-button').button({
         icons:{
             primary:"ui-icon-document"
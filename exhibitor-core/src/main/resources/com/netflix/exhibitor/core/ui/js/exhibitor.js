@@ -4,6 +4,7 @@ var UPDATE_STATE_PERIOD = 2500;
 
 var URL_GET_BACKUPS = "../index/get-backups";
 var URL_NEW_INDEX = "../index/new-index";
+var URL_UPDATE_INDEX_BASE = "../index/update-index/";
 var URL_DELETE_INDEX_BASE = "../index/";
 var URL_INDEX_DATA_BASE = "../index/dataTable/";
 var URL_GET_INDEX_BASE = "../index/get/";
@@ -250,6 +251,11 @@ function buildNewConfig()
     newConfig.zookeeperDataDirectory = $('#config-zookeeper-snapshot-dir').val();
     newConfig.zookeeperLogDirectory = $('#config-zookeeper-log-dir').val();
     newConfig.logIndexDirectory = $('#config-log-index-dir').val();
+    newConfig.liveIndexPeriodMs = $('#config-live-index-ms').val();
+    newConfig.indexCacheMaxReaders = $('#config-index-cache-max-readers').val();
+    newConfig.indexCacheMaxMb = $('#config-index-cache-max-mb').val();
+    newConfig.indexThreadQty = $('#config-index-thread-qty').val();
+    newConfig.indexQueueSize = $('#config-index-queue-size').val();
     newConfig.autoManageInstancesSettlingPeriodMs = $('#config-automatic-management-period-ms').val();
     newConfig.autoManageInstancesFixedEnsembleSize = $('#config-fixed-ensemble-size').val();
     newConfig.autoManageInstancesApplyAllAtOnce = $('#config-apply-all-at-once').val();
@@ -265,6 +271,7 @@ function buildNewConfig()
     newConfig.cleanupMaxFiles = $('#config-cleanup-max-files').val();
     newConfig.backupPeriodMs = $('#config-backup-ms').val();
     newConfig.backupMaxStoreMs = $('#config-backup-max-store-ms').val();
+    newConfig.backupStateDirectory = $('#config-backup-state-dir').val();
     newConfig.autoManageInstances = $('#cp-auto-init-instances').prop("checked") ? "1" : "0";
 
     var zooCfgTab = $('#config-custom').val().split("\n");
@@ -364,6 +371,11 @@ function ableConfig(enable)
     $('#config-observer-threshold').prop('disabled', !enable);
     $('#config-apply-all-at-once').prop('disabled', !enable);
     $('#config-log-index-dir').prop('disabled', !enable);
+    $('#config-live-index-ms').prop('disabled', !enable);
+    $('#config-index-cache-max-readers').prop('disabled', !enable);
+    $('#config-index-cache-max-mb').prop('disabled', !enable);
+    $('#config-index-thread-qty').prop('disabled', !enable);
+    $('#config-index-queue-size').prop('disabled', !enable);
     $('#config-servers-spec').prop('disabled', !enable);
     $('#config-java-env').prop('disabled', !enable);
     $('#config-java-log4j').prop('disabled', !enable);
@@ -376,6 +388,7 @@ function ableConfig(enable)
     $('#config-cleanup-max-files').prop('disabled', !enable);
     $('#config-backup-ms').prop('disabled', !enable);
     $('#config-backup-max-store-ms').prop('disabled', !enable);
+    $('#config-backup-state-dir').prop('disabled', !enable);
 
     for ( var i = 0; i < configExtraTab.length; ++i )
     {
@@ -408,6 +421,11 @@ function updateConfig()
     $('#config-observer-threshold').val(systemConfig.observerThreshold);
     $('#config-apply-all-at-once').val(systemConfig.autoManageInstancesApplyAllAtOnce);
     $('#config-log-index-dir').val(systemConfig.logIndexDirectory);
+    $('#config-live-index-ms').val(systemConfig.liveIndexPeriodMs);
+    $('#config-index-cache-max-readers').val(systemConfig.indexCacheMaxReaders);
+    $('#config-index-cache-max-mb').val(systemConfig.indexCacheMaxMb);
+    $('#config-index-thread-qty').val(systemConfig.indexThreadQty);
+    $('#config-index-queue-size').val(systemConfig.indexQueueSize);
     $('#config-servers-spec').val(systemConfig.serversSpec);
     $('#config-java-env').val(systemConfig.javaEnvironment);
     $('#config-java-log4j').val(systemConfig.log4jProperties);
@@ -420,6 +438,7 @@ function updateConfig()
     $('#config-cleanup-max-files').val(systemConfig.cleanupMaxFiles);
     $('#config-backup-ms').val(systemConfig.backupPeriodMs);
     $('#config-backup-max-store-ms').val(systemConfig.backupMaxStoreMs);
+    $('#config-backup-state-dir').val(systemConfig.backupStateDirectory);
 
     $('#rolling-config-floater-status').html(systemConfig.rollStatus);
     if ( systemConfig.rollInProgress )
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Standalone benchmark of the {@link BackupCodec}s over a set of transaction logs (e.g. a ZooKeeper
+ *     version-2 directory or one written by <code>LogParserBenchmark generate</code>). Run it from the test classpath:
+ * </p>
+ *
+ * <pre>
+ * BackupCodecBenchmark &lt;directory or log file&gt; [iterations]
+ * </pre>
+ *
+ * <p>
+ *     Logs are read into memory first so that only compression is measured. For each codec/level the
+ *     compression ratio and the compression and decompression rates (uncompressed MB/s) are reported.
+ * </p>
+ */
+public class BackupCodecBenchmark
+{
+    private static final int        DEFAULT_ITERATIONS = 3;
+
+    private static class Candidate
+    {
+        private final String        name;
+        private final BackupCodec   codec;
+        private final int           level;
+
+        private Candidate(String name, BackupCodec codec, int level)
+        {
+            this.name = name;
+            this.codec = codec;
+            this.level = level;
+        }
+    }
+
+    private static final List<Candidate>    CANDIDATES = Arrays.asList
+    (
+        new Candidate("gzip (default)", BackupCodec.GZIP, BackupCodec.DEFAULT_LEVEL),
+        new Candidate("gzip 1", BackupCodec.GZIP, 1),
+        new Candidate("gzip 9", BackupCodec.GZIP, 9),
+        new Candidate("lz4", BackupCodec.LZ4, BackupCodec.DEFAULT_LEVEL)
+    );
+
+    public static void main(String[] args) throws Exception
+    {
+        if ( args.length < 1 )
+        {
+            System.err.println("usage: BackupCodecBenchmark <directory or log file> [iterations]");
+            return;
+        }
+
+        File            source = new File(args[0]);
+        File[]          files = source.isDirectory() ? source.listFiles() : new File[]{source};
+        int             iterations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        ByteArrayOutputStream   allBytes = new ByteArrayOutputStream();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                if ( f.isFile() && f.getName().startsWith("log.") )
+                {
+                    allBytes.write(Files.toByteArray(f));
+                }
+            }
+        }
+        byte[]          logs = allBytes.toByteArray();
+        if ( logs.length == 0 )
+        {
+            System.err.println("No logs found in: " + source);
+            return;
+        }
+        System.out.println(String.format("%,d bytes of logs", logs.length));
+
+        for ( Candidate candidate : CANDIDATES )
+        {
+            run(candidate, logs, 1);   // warm up
+            run(candidate, logs, iterations);
+        }
+    }
+
+    private static void run(Candidate candidate, byte[] logs, int iterations) throws Exception
+    {
+        long        compressedLength = 0;
+        long        compressNanos = 0;
+        long        decompressNanos = 0;
+        for ( int i = 0; i < iterations; ++i )
+        {
+            ByteArrayOutputStream   compressed = new ByteArrayOutputStream(logs.length);
+            long                    startNanos = System.nanoTime();
+            OutputStream            out = candidate.codec.newCompressingStream(compressed, candidate.level);
+            try
+            {
+                out.write(logs);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(out);
+            }
+            compressNanos += System.nanoTime() - startNanos;
+            compressedLength = compressed.size();
+
+            CountingOutputStream    counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+            startNanos = System.nanoTime();
+            InputStream             in = BackupCodec.newDetectingStream(new ByteArrayInputStream(compressed.toByteArray()));
+            try
+            {
+                ByteStreams.copy(in, counter);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(in);
+            }
+            decompressNanos += System.nanoTime() - startNanos;
+            if ( counter.getCount() != logs.length )
+            {
+                throw new Exception("Round trip failed for " + candidate.name);
+            }
+        }
+
+        double      megabytes = (logs.length * (double)iterations) / (1024 * 1024);
+        System.out.println(String.format("%-16s ratio %5.2f  compress %8.1f MB/s  decompress %8.1f MB/s", candidate.name, logs.length / (double)compressedLength, megabytes / toSeconds(compressNanos), megabytes / toSeconds(decompressNanos)));
+    }
+
+    private static double toSeconds(long nanos)
+    {
+        return Math.max(nanos, 1) / (double)TimeUnit.SECONDS.toNanos(1);
+    }
+}
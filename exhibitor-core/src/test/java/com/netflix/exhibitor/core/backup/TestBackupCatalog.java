@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.google.common.collect.Maps;
+import com.netflix.exhibitor.core.backup.s3.MockS3Client;
+import com.netflix.exhibitor.core.backup.s3.MockS3ClientFactory;
+import com.netflix.exhibitor.core.backup.s3.S3BackupProvider;
+import com.netflix.exhibitor.core.s3.PropertyBasedS3Credential;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestBackupCatalog
+{
+    @Test
+    public void     testListsOncePerRefresh() throws Exception
+    {
+        final AtomicInteger     listCount = new AtomicInteger(0);
+        MockS3Client            s3Client = new MockS3Client()
+        {
+            @Override
+            public synchronized ObjectListing listObjects(ListObjectsRequest request) throws Exception
+            {
+                listCount.incrementAndGet();
+                return super.listObjects(request);
+            }
+        };
+        s3Client.putObject(new PutObjectRequest("bucket", "exhibitor-backup/one/1", new ByteArrayInputStream(new byte[]{1}), null));
+
+        S3BackupProvider        provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), null, null);
+        BackupCatalog           catalog = new BackupCatalog(null, provider, Integer.MAX_VALUE);
+        Map<String, String>     config = Maps.newHashMap();
+
+        Assert.assertEquals(catalog.getBackups(config).size(), 1);
+        Assert.assertEquals(catalog.getBackups(config).size(), 1);
+        Assert.assertEquals(listCount.get(), 1);
+
+        catalog.added(new BackupMetaData("one", 2));
+        catalog.added(new BackupMetaData("two", 1));
+        Assert.assertEquals(catalog.getBackups(config).size(), 2);
+        Assert.assertTrue(catalog.getBackups(config).contains(new BackupMetaData("one", 2)));
+
+        catalog.removed(new BackupMetaData("two", 1));
+        Assert.assertEquals(catalog.getBackups(config).size(), 1);
+        Assert.assertEquals(listCount.get(), 1);
+
+        catalog.refresh(config);
+        Assert.assertEquals(listCount.get(), 2);
+        Assert.assertEquals(catalog.getBackups(config).get(0), new BackupMetaData("one", 1));
+
+        config.put("key-prefix", "other");
+        Assert.assertEquals(catalog.getBackups(config).size(), 0);
+        Assert.assertEquals(listCount.get(), 3);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.io.ByteStreams;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class TestBackupCodec
+{
+    @Test
+    public void     testRoundTrip() throws Exception
+    {
+        byte[]      data = newData();
+        for ( BackupCodec codec : BackupCodec.values() )
+        {
+            ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+            OutputStream            out = codec.newCompressingStream(bytes, BackupCodec.DEFAULT_LEVEL);
+            out.write(data);
+            out.close();
+
+            Assert.assertEquals(ByteStreams.toByteArray(BackupCodec.newDetectingStream(new ByteArrayInputStream(bytes.toByteArray()))), data, codec.name());
+        }
+    }
+
+    @Test
+    public void     testLz4ChecksumMatchesDefault() throws Exception
+    {
+        // backups written with the block stream's default checksum must still be readable
+        byte[]                  data = newData();
+        ByteArrayOutputStream   bytes = new ByteArrayOutputStream();
+        OutputStream            out = new LZ4BlockOutputStream(bytes, 64 * 1024, LZ4Factory.fastestJavaInstance().fastCompressor());
+        out.write(data);
+        out.close();
+
+        Assert.assertEquals(ByteStreams.toByteArray(BackupCodec.LZ4.newDecompressingStream(new ByteArrayInputStream(bytes.toByteArray()))), data);
+    }
+
+    private byte[]  newData()
+    {
+        byte[]      data = new byte[300 * 1024];
+        Random      random = new Random(1);
+        for ( int i = 0; i < data.length; ++i )
+        {
+            data[i] = (byte)('a' + random.nextInt(4));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+public class TestBackupManifest
+{
+    private static final Map<String, String>    CONFIG = ImmutableMap.of("directory", "/backups");
+
+    private File        directory;
+    private File        log;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+        log = new File(directory, "log.100");
+        Files.write("one two three", log, Charsets.UTF_8);
+    }
+
+    @AfterMethod
+    public void     teardown()
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void     testRoundTrip() throws Exception
+    {
+        File                manifestFile = new File(new File(directory, "index"), "manifest");
+        BackupManifest      manifest = new BackupManifest(manifestFile);
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+        Assert.assertNull(manifest.getSegments(log, CONFIG));
+        manifest.backedUp(log, log.lastModified(), log.length(), BackupManifest.checksum(log));
+        manifest.segmentsBackedUp(log, new BackupManifest.Segments(log.lastModified(), 3, 1234, 5678));
+        manifest.save();
+        Assert.assertTrue(manifestFile.exists());
+
+        BackupManifest              reread = new BackupManifest(manifestFile);
+        Assert.assertTrue(reread.isBackedUp(log, CONFIG));
+        BackupManifest.Segments     segments = reread.getSegments(log, CONFIG);
+        Assert.assertNotNull(segments);
+        Assert.assertEquals(segments.getLastModified(), log.lastModified());
+        Assert.assertEquals(segments.getCount(), 3);
+        Assert.assertEquals(segments.getOffset(), 1234);
+        Assert.assertEquals(segments.getNewestDate(), 5678);
+
+        // a different destination - nothing has been backed up there
+        Assert.assertFalse(new BackupManifest(manifestFile).isBackedUp(log, ImmutableMap.of("directory", "/other")));
+    }
+
+    @Test
+    public void     testChangedLog() throws Exception
+    {
+        BackupManifest      manifest = new BackupManifest(null);
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+        manifest.backedUp(log, log.lastModified(), log.length(), BackupManifest.checksum(log));
+        Assert.assertTrue(manifest.isBackedUp(log, CONFIG));
+
+        // touched but not changed - the checksum still matches
+        Assert.assertTrue(log.setLastModified(log.lastModified() - 10000));
+        Assert.assertTrue(manifest.isBackedUp(log, CONFIG));
+
+        // same length, different content
+        Files.write("one two thre3", log, Charsets.UTF_8);
+        Assert.assertTrue(log.setLastModified(log.lastModified() - 20000));
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+
+        Files.write("one two three four", log, Charsets.UTF_8);
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+    }
+
+    @Test
+    public void     testInMemory() throws Exception
+    {
+        // no state directory - the manifest only lives as long as the instance
+        BackupManifest      manifest = new BackupManifest(null);
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+        manifest.backedUp(log, log.lastModified(), log.length(), BackupManifest.checksum(log));
+        manifest.segmentsBackedUp(log, new BackupManifest.Segments(log.lastModified(), 1, 10, 20));
+        manifest.save();
+
+        Assert.assertTrue(manifest.isBackedUp(log, CONFIG));
+        Assert.assertNotNull(manifest.getSegments(log, CONFIG));
+        Assert.assertEquals(directory.list(), new String[]{log.getName()});
+
+        Assert.assertFalse(new BackupManifest(null).isBackedUp(log, CONFIG));
+    }
+
+    @Test
+    public void     testRetainAll() throws Exception
+    {
+        File                other = new File(directory, "log.200");
+        Files.write("four five six", other, Charsets.UTF_8);
+
+        BackupManifest      manifest = new BackupManifest(null);
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+        manifest.backedUp(log, log.lastModified(), log.length(), BackupManifest.checksum(log));
+        manifest.backedUp(other, other.lastModified(), other.length(), BackupManifest.checksum(other));
+        manifest.segmentsBackedUp(other, new BackupManifest.Segments(other.lastModified(), 1, 10, 20));
+
+        manifest.retainAll(Arrays.asList(log.getName()));
+        Assert.assertTrue(manifest.isBackedUp(log, CONFIG));
+        Assert.assertFalse(manifest.isBackedUp(other, CONFIG));
+        Assert.assertNull(manifest.getSegments(other, CONFIG));
+    }
+
+    @Test
+    public void     testCorruptEntriesAreIgnored() throws Exception
+    {
+        File                manifestFile = new File(directory, "manifest");
+        BackupManifest      manifest = new BackupManifest(manifestFile);
+        Assert.assertFalse(manifest.isBackedUp(log, CONFIG));
+        manifest.backedUp(log, log.lastModified(), log.length(), BackupManifest.checksum(log));
+        manifest.save();
+
+        String              content = Files.toString(manifestFile, Charsets.UTF_8);
+        Files.write(content + "entry.log.200=abc,1\nsegments.log.300=1,x,3,4\n", manifestFile, Charsets.UTF_8);
+
+        BackupManifest      reread = new BackupManifest(manifestFile);
+        Assert.assertTrue(reread.isBackedUp(log, CONFIG));
+        Assert.assertFalse(reread.isBackedUp(new File(directory, "log.200"), CONFIG));
+        Assert.assertNull(reread.getSegments(new File(directory, "log.300"), CONFIG));
+    }
+
+    private void    delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
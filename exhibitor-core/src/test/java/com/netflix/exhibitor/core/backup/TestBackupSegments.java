@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestBackupSegments
+{
+    @Test
+    public void     testNames()
+    {
+        String      name = BackupSegments.segmentName("log.100", 12);
+        Assert.assertTrue(BackupSegments.isSegment(name));
+        Assert.assertEquals(BackupSegments.getLogName(name), "log.100");
+        Assert.assertEquals(BackupSegments.getSegmentNumber(name), 12);
+
+        Assert.assertFalse(BackupSegments.isSegment("log.100"));
+        Assert.assertEquals(BackupSegments.getLogName("log.100"), "log.100");
+    }
+
+    @Test
+    public void     testCollapse()
+    {
+        List<BackupMetaData>    backups = Arrays.asList
+        (
+            new BackupMetaData("snapshot.1", 10),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 0), 20),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 1), 30),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 2), 40)
+        );
+        Assert.assertEquals(BackupSegments.collapse(backups), Arrays.asList(new BackupMetaData("snapshot.1", 10), new BackupMetaData("log.1", 40)));
+    }
+
+    @Test
+    public void     testGetSegments()
+    {
+        List<BackupMetaData>    backups = Arrays.asList
+        (
+            new BackupMetaData(BackupSegments.segmentName("log.1", 1), 30),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 0), 20),
+            new BackupMetaData(BackupSegments.segmentName("log.2", 0), 25),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 3), 50)     // no segment 2
+        );
+        Assert.assertEquals(BackupSegments.getSegments(backups, "log.1"), Arrays.asList(backups.get(1), backups.get(0)));
+        Assert.assertEquals(BackupSegments.getSegments(backups, "log.3").size(), 0);
+    }
+
+    @Test
+    public void     testStaleSegmentsAreIgnored()
+    {
+        // segment 0 was backed up again after the log was restarted - the old segment 1 no longer follows it
+        List<BackupMetaData>    backups = Arrays.asList
+        (
+            new BackupMetaData(BackupSegments.segmentName("log.1", 0), 20),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 0), 60),
+            new BackupMetaData(BackupSegments.segmentName("log.1", 1), 30)
+        );
+        Assert.assertEquals(BackupSegments.getSegments(backups, "log.1"), Arrays.asList(backups.get(1)));
+    }
+}
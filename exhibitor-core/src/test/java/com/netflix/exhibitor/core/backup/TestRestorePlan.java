@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestRestorePlan
+{
+    private final List<BackupMetaData>  backups = Arrays.asList
+    (
+        new BackupMetaData("log.1", 1000),
+        new BackupMetaData("log.100", 2000),
+        new BackupMetaData("snapshot.150", 2500),
+        new BackupMetaData("log.200", 3000),
+        new BackupMetaData("snapshot.250", 3500),
+        new BackupMetaData("log.300", 4000),
+        new BackupMetaData("log.300", 4100)     // later version of the same log
+    );
+
+    @Test
+    public void     testForZxid() throws Exception
+    {
+        // snapshot.250 finished (3500) after log.200 was last changed (3000) so it may hold transactions from log.300
+        RestorePlan     plan = RestorePlan.forZxid(backups, 0x400);
+        Assert.assertEquals(plan.getSnapshot().getName(), "snapshot.150");
+        Assert.assertEquals(names(plan.getLogs()), Arrays.asList("log.100", "log.200", "log.300"));
+        Assert.assertEquals(plan.getLogs().get(2).getModifiedDate(), 4100);
+        Assert.assertEquals(plan.getTargetZxid(), 0x400);
+        Assert.assertFalse(plan.isSnapshotFuzzy());
+
+        List<BackupMetaData>    withLaterLog = Lists.newArrayList(backups);
+        withLaterLog.add(new BackupMetaData("log.500", 5000));
+        plan = RestorePlan.forZxid(withLaterLog, 0x510);
+        Assert.assertEquals(plan.getSnapshot().getName(), "snapshot.250");
+        Assert.assertEquals(names(plan.getLogs()), Arrays.asList("log.200", "log.300", "log.500"));
+        Assert.assertFalse(plan.isSnapshotFuzzy());
+    }
+
+    @Test
+    public void     testFuzzySnapshotIsNotUsed() throws Exception
+    {
+        // snapshot.150 finished (2500) after log.100 was last changed (2000) - replay from the start instead
+        RestorePlan     plan = RestorePlan.forZxid(backups, 0x210);
+        Assert.assertNull(plan.getSnapshot());
+        Assert.assertEquals(names(plan.getLogs()), Arrays.asList("log.1", "log.100", "log.200"));
+        Assert.assertFalse(plan.isSnapshotFuzzy());
+    }
+
+    @Test
+    public void     testForTime() throws Exception
+    {
+        RestorePlan     plan = RestorePlan.forTime(backups, 2700);
+        Assert.assertEquals(plan.getSnapshot().getName(), "snapshot.150");
+        Assert.assertEquals(names(plan.getLogs()), Arrays.asList("log.100", "log.200"));
+        Assert.assertEquals(plan.getBackups().size(), 3);
+    }
+
+    @Test
+    public void     testNoSnapshot() throws Exception
+    {
+        RestorePlan     plan = RestorePlan.forZxid(backups, 0x120);
+        Assert.assertNull(plan.getSnapshot());
+        Assert.assertEquals(names(plan.getLogs()), Arrays.asList("log.1", "log.100"));
+    }
+
+    @Test
+    public void     testNoSnapshotAndLogsDontStartAtTheBeginning() throws Exception
+    {
+        List<BackupMetaData>    rolledBackups = backups.subList(1, backups.size());    // log.1 has been rolled
+        try
+        {
+            RestorePlan.forZxid(rolledBackups, 0x120);
+            Assert.fail();
+        }
+        catch ( Exception expected )
+        {
+            // expected
+        }
+        try
+        {
+            RestorePlan.forTime(rolledBackups, 2100);
+            Assert.fail();
+        }
+        catch ( Exception expected )
+        {
+            // expected
+        }
+
+        // the only choice is a snapshot that may hold later transactions
+        RestorePlan             plan = RestorePlan.forZxid(rolledBackups, 0x210);
+        Assert.assertEquals(plan.getSnapshot().getName(), "snapshot.150");
+        Assert.assertTrue(plan.isSnapshotFuzzy());
+    }
+
+    @Test
+    public void     testBaseSnapshotName()
+    {
+        List<String>    names = names(backups);
+        Assert.assertEquals(RestorePlan.getBaseSnapshotName(names, 0x300), "snapshot.250");
+        Assert.assertEquals(RestorePlan.getBaseSnapshotName(names, 0x200), "snapshot.150");
+        Assert.assertEquals(RestorePlan.getBaseSnapshotName(names, 0x150), "snapshot.150");
+        Assert.assertNull(RestorePlan.getBaseSnapshotName(names, 0x100));
+    }
+
+    private List<String>    names(List<BackupMetaData> backups)
+    {
+        List<String>    names = Lists.newArrayList();
+        for ( BackupMetaData backup : backups )
+        {
+            names.add(backup.getName());
+        }
+        return names;
+    }
+}
@@ -27,13 +27,16 @@ import com.netflix.exhibitor.core.s3.S3ClientConfig;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MockS3Client implements S3Client
 {
     private final List<byte[]>              uploadedBytes = new CopyOnWriteArrayList<byte[]>();
+    private final AtomicInteger             uploadIds = new AtomicInteger(0);
     private final ObjectListing             listing;
     private final Map<String, S3Object>     uploads = Maps.newConcurrentMap();
 
@@ -103,7 +106,11 @@ public class MockS3Client implements S3Client
     @Override
     public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) throws Exception
     {
-        return new InitiateMultipartUploadResult();
+        InitiateMultipartUploadResult   result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId("upload-" + uploadIds.incrementAndGet());
+        return result;
     }
 
     @Override
@@ -128,6 +135,27 @@ public class MockS3Client implements S3Client
         return s3Object;
     }
 
+    @Override
+    public synchronized S3Object getObject(String bucket, String key, long start, long end) throws Exception
+    {
+        S3Object            s3Object = uploads.get(key);
+        if ( s3Object == null )
+        {
+            return null;
+        }
+
+        String              bytesIndexStr = s3Object.getObjectMetadata().getUserMetadata().get(BYTES_HEADER);
+        byte[]              bytes = (bytesIndexStr != null) ? uploadedBytes.get(Integer.parseInt(bytesIndexStr)) : new byte[0];
+        int                 from = (int)Math.min(start, bytes.length);
+        int                 to = (int)Math.min(end + 1, bytes.length);
+
+        S3Object            copy = new S3Object();
+        copy.setKey(key);
+        copy.setObjectMetadata(s3Object.getObjectMetadata());
+        copy.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(Arrays.copyOfRange(bytes, from, to)), null));
+        return copy;
+    }
+
     @Override
     public ObjectMetadata getObjectMetadata(String bucket, String key) throws Exception
     {
@@ -183,6 +211,21 @@ public class MockS3Client implements S3Client
         uploads.remove(key);
     }
 
+    @Override
+    public synchronized DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) throws Exception
+    {
+        List<DeleteObjectsResult.DeletedObject>     deleted = Lists.newArrayList();
+        for ( DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys() )
+        {
+            uploads.remove(keyVersion.getKey());
+
+            DeleteObjectsResult.DeletedObject       deletedObject = new DeleteObjectsResult.DeletedObject();
+            deletedObject.setKey(keyVersion.getKey());
+            deleted.add(deletedObject);
+        }
+        return new DeleteObjectsResult(deleted);
+    }
+
     @Override
     public synchronized UploadPartResult uploadPart(UploadPartRequest request) throws Exception
     {
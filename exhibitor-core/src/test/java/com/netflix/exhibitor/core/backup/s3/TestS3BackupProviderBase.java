@@ -18,26 +18,39 @@ package com.netflix.exhibitor.core.backup.s3;
 
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.netflix.exhibitor.core.backup.BackupMetaData;
-import com.netflix.exhibitor.core.s3.PropertyBasedS3ClientConfig;
+import com.netflix.exhibitor.core.backup.BackupProvider;
+import com.netflix.exhibitor.core.backup.BackupUpload;
 import com.netflix.exhibitor.core.s3.PropertyBasedS3Credential;
+import org.apache.curator.retry.RetryNTimes;
 import org.apache.curator.utils.CloseableUtils;
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class TestS3BackupProviderBase
 {
@@ -57,6 +70,27 @@ public abstract class TestS3BackupProviderBase
         Assert.assertEquals(uploadedBytes, fileBytes);
     }
 
+    @Test
+    public void   testStreamingUpload() throws Exception
+    {
+        MockS3Client        s3Client = new MockS3Client();
+        S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), null, null);
+
+        Map<String, String> config = Maps.newHashMap();
+        config.put("upload-threads", "1");  // the mock records parts in the order they arrive
+        BackupUpload        upload = provider.startUpload(null, new BackupMetaData("test", 10), Lists.<BackupMetaData>newArrayList(), config);
+        Assert.assertNotNull(upload);
+        Files.copy(sourceFile, upload.getStream());
+        Assert.assertEquals(upload.complete(), BackupProvider.UploadResult.SUCCEEDED);
+
+        ByteArrayOutputStream   out = new ByteArrayOutputStream();
+        for ( byte[] bytes : s3Client.getUploadedBytes() )
+        {
+            out.write(bytes);
+        }
+        Assert.assertEquals(out.toByteArray(), Files.toByteArray(sourceFile));
+    }
+
     @Test
     public void     testDownload() throws Exception
     {
@@ -73,7 +107,7 @@ public abstract class TestS3BackupProviderBase
             MockS3Client        s3Client = new MockS3Client(null, null);
             s3Client.putObject(dummyRequest);
 
-            S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), new PropertyBasedS3ClientConfig(new Properties()), null);
+            S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), null, null);
             out = new FileOutputStream(tempFile);
             provider.downloadBackup(null, new BackupMetaData("test", 1), out, Maps.<String, String>newHashMap());
             
@@ -89,6 +123,142 @@ public abstract class TestS3BackupProviderBase
         }
     }
 
+    @Test
+    public void     testRangedDownloadRetriesChunks() throws Exception
+    {
+        final Set<Long>     failedStarts = Sets.newConcurrentHashSet();
+        MockS3Client        s3Client = new MockS3Client()
+        {
+            @Override
+            public S3Object getObject(String bucket, String key, long start, long end) throws Exception
+            {
+                if ( failedStarts.add(start) )
+                {
+                    throw new IOException("chunk failure");
+                }
+                return super.getObject(bucket, key, start, end);
+            }
+        };
+        s3Client.putObject(new PutObjectRequest("bucket", "key", new ByteArrayInputStream(Files.toByteArray(sourceFile)), null));
+
+        Throttle            throttle = new Throttle("test", new Throttle.ThroughputFunction()
+        {
+            @Override
+            public int targetThroughput()
+            {
+                return Integer.MAX_VALUE;
+            }
+        });
+        InputStream         in = new S3RangedInputStream(s3Client, "bucket", "key", sourceFile.length(), 1000, 3, new RetryNTimes(1, 0), throttle);
+        try
+        {
+            Assert.assertEquals(ByteStreams.toByteArray(in), Files.toByteArray(sourceFile));
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    @Test
+    public void     testResumedUpload() throws Exception
+    {
+        final byte[]        bytes = Files.toByteArray(sourceFile);
+        final int           partSize = Math.max(1, bytes.length / 4);
+        final int           failingPart = 2;
+        final AtomicBoolean failPart = new AtomicBoolean(true);
+        final List<UploadPartRequest>   partRequests = new CopyOnWriteArrayList<UploadPartRequest>();
+        MockS3Client        s3Client = new MockS3Client()
+        {
+            @Override
+            public synchronized UploadPartResult uploadPart(UploadPartRequest request) throws Exception
+            {
+                if ( (request.getPartNumber() == failingPart) && failPart.get() )
+                {
+                    throw new IOException("part failure");
+                }
+                partRequests.add(request);
+                return super.uploadPart(request);
+            }
+        };
+
+        File                stateDirectory = Files.createTempDir();
+        try
+        {
+            S3UploadStateStore  stateStore = new S3UploadStateStore(stateDirectory);
+            Throttle            throttle = new Throttle("test", new Throttle.ThroughputFunction()
+            {
+                @Override
+                public int targetThroughput()
+                {
+                    return 0;
+                }
+            });
+
+            S3MultipartUpload   upload = new S3MultipartUpload(s3Client, "bucket", "key", new RetryNTimes(0, 0), throttle, partSize, 1, stateStore);
+            Assert.assertFalse(upload.isResumed());
+            try
+            {
+                upload.getStream().write(bytes);
+                upload.complete();
+                Assert.fail();
+            }
+            catch ( Exception expected )
+            {
+                upload.abort();
+            }
+            Assert.assertTrue(partRequests.size() > 0);
+
+            failPart.set(false);
+            partRequests.clear();
+            upload = new S3MultipartUpload(s3Client, "bucket", "key", new RetryNTimes(0, 0), throttle, partSize, 1, stateStore);
+            Assert.assertTrue(upload.isResumed());
+            upload.getStream().write(bytes);
+            upload.complete();
+
+            // part 1 was finished by the first attempt (one upload thread so it was saved before part 2 started)
+            Set<Integer>        resentParts = Sets.newHashSet();
+            for ( UploadPartRequest request : partRequests )
+            {
+                Assert.assertEquals(request.getUploadId(), "upload-1");
+                resentParts.add(request.getPartNumber());
+            }
+            Assert.assertFalse(resentParts.contains(1));
+            Assert.assertTrue(resentParts.contains(failingPart));
+            Assert.assertNull(stateStore.get("bucket", "key", partSize));
+        }
+        finally
+        {
+            File[]              files = stateDirectory.listFiles();
+            if ( files != null )
+            {
+                for ( File f : files )
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    f.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            stateDirectory.delete();
+        }
+    }
+
+    @Test
+    public void     testDeleteBackups() throws Exception
+    {
+        MockS3Client        s3Client = new MockS3Client();
+        for ( int i = 0; i < 3; ++i )
+        {
+            s3Client.putObject(new PutObjectRequest("bucket", "exhibitor-backup" + S3BackupProvider.SEPARATOR + "log." + i + S3BackupProvider.SEPARATOR + 1, new ByteArrayInputStream(new byte[]{1}), null));
+        }
+        S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), null, null);
+
+        Map<String, String>     config = Maps.newHashMap();
+        List<BackupMetaData>    toDelete = Arrays.asList(new BackupMetaData("log.0", 1), new BackupMetaData("log.2", 1));
+        Assert.assertEquals(provider.deleteBackups(null, toDelete, config), toDelete);
+        Assert.assertEquals(provider.getAvailableBackups(null, config), Arrays.asList(new BackupMetaData("log.1", 1)));
+    }
+
     @Test
     public void testGetAvailableBackupKeys() throws Exception
     {
@@ -112,7 +282,7 @@ public abstract class TestS3BackupProviderBase
         };
 
         MockS3Client            s3Client = new MockS3Client(null, listing);
-        S3BackupProvider        provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), new PropertyBasedS3ClientConfig(new Properties()), null);
+        S3BackupProvider        provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), null, null);
         List<BackupMetaData>    backups = provider.getAvailableBackups(null, Maps.<String, String>newHashMap());
         List<String>            backupNames = Lists.transform
         (
@@ -132,7 +302,7 @@ public abstract class TestS3BackupProviderBase
     private byte[] getUploadedBytes(File sourceFile) throws Exception
     {
         MockS3Client        s3Client = new MockS3Client();
-        S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), new PropertyBasedS3ClientConfig(new Properties()), null);
+        S3BackupProvider    provider = new S3BackupProvider(new MockS3ClientFactory(s3Client), new PropertyBasedS3Credential(new Properties()), null, null);
 
         provider.uploadBackup(null, new BackupMetaData("test", 10), sourceFile, Maps.<String, String>newHashMap());
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.backup.s3;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestThrottle
+{
+    private static final int    BYTES_PER_MS = 1000;
+
+    @Test
+    public void     testSharedAcrossThreads() throws Exception
+    {
+        final Throttle      throttle = new Throttle("test", new Throttle.ThroughputFunction()
+        {
+            @Override
+            public int targetThroughput()
+            {
+                return BYTES_PER_MS;
+            }
+        });
+
+        final int           threadQty = 4;
+        final int           writesPerThread = 10;
+        final int           writeSize = 10000;
+        ExecutorService     service = Executors.newFixedThreadPool(threadQty);
+        try
+        {
+            long                    startNanos = System.nanoTime();
+            List<Future<Void>>      futures = Lists.newArrayList();
+            for ( int i = 0; i < threadQty; ++i )
+            {
+                Callable<Void>      writer = new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        for ( int j = 0; j < writesPerThread; ++j )
+                        {
+                            throttle.throttleDelta(writeSize);
+                        }
+                        return null;
+                    }
+                };
+                futures.add(service.submit(writer));
+            }
+            for ( Future<Void> future : futures )
+            {
+                future.get();
+            }
+            long                    elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            // the first write is let through for free - everything after it is paid for at the shared rate
+            long                    totalBytes = (long)threadQty * writesPerThread * writeSize;
+            long                    minimumMs = (totalBytes - writeSize) / BYTES_PER_MS;
+            Assert.assertTrue(elapsedMs >= (minimumMs - 1), "elapsed " + elapsedMs + " minimum " + minimumMs);
+            Assert.assertEquals(throttle.getMonitoredData().bytes.get(), totalBytes);
+            Assert.assertTrue(throttle.getMonitoredData().waitMs.get() > 0);
+        }
+        finally
+        {
+            service.shutdownNow();
+        }
+    }
+}
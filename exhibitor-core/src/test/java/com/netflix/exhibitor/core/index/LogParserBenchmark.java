@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Standalone benchmark that compares {@link ZooKeeperLogParser} with {@link MappedZooKeeperLogParser}
+ *     over a set of transaction logs. Run it from the test classpath:
+ * </p>
+ *
+ * <pre>
+ * LogParserBenchmark generate &lt;directory&gt; &lt;size in MB&gt;  - writes a synthetic log set
+ * LogParserBenchmark run &lt;directory&gt; [iterations]        - parses every log in the directory with both parsers
+ * </pre>
+ *
+ * <p>
+ *     Each iteration parses the full set once with each parser (alternating which goes first) after a warm-up
+ *     iteration. Use a log set larger than the page cache to include IO costs.
+ * </p>
+ */
+public class LogParserBenchmark
+{
+    private static final int        DEFAULT_ITERATIONS = 5;
+    private static final long       LOG_ROLL_BYTES = 64 * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception
+    {
+        if ( (args.length >= 3) && args[0].equals("generate") )
+        {
+            generate(new File(args[1]), Long.parseLong(args[2]) * 1024 * 1024);
+        }
+        else if ( (args.length >= 2) && args[0].equals("run") )
+        {
+            run(new File(args[1]), (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS);
+        }
+        else
+        {
+            System.err.println("usage: LogParserBenchmark generate <directory> <size in MB> | run <directory> [iterations]");
+        }
+    }
+
+    private static void generate(File directory, long totalBytes) throws Exception
+    {
+        if ( !directory.exists() && !directory.mkdirs() )
+        {
+            throw new Exception("Could not make: " + directory);
+        }
+
+        Random          random = new Random(1);
+        FileTxnLog      txnLog = new FileTxnLog(directory);
+        try
+        {
+            long        written = 0;
+            long        sinceRoll = 0;
+            long        zxid = 1;
+            while ( written < totalBytes )
+            {
+                String      path = "/benchmark/" + random.nextInt(1000) + "/node-" + random.nextInt(100000);
+                byte[]      data = new byte[random.nextInt(512)];
+                random.nextBytes(data);
+
+                Record      record;
+                int         type;
+                switch ( random.nextInt(3) )
+                {
+                    case 0:
+                    {
+                        type = ZooDefs.OpCode.create;
+                        record = new CreateTxn(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, random.nextBoolean(), 0);
+                        break;
+                    }
+
+                    case 1:
+                    {
+                        type = ZooDefs.OpCode.setData;
+                        record = new SetDataTxn(path, data, random.nextInt(100));
+                        break;
+                    }
+
+                    default:
+                    {
+                        type = ZooDefs.OpCode.delete;
+                        record = new DeleteTxn(path);
+                        break;
+                    }
+                }
+                txnLog.append(new TxnHeader(1, (int)zxid, zxid, System.currentTimeMillis(), type), record);
+                ++zxid;
+
+                long        entryBytes = path.length() + data.length + 64;  // approximate
+                written += entryBytes;
+                sinceRoll += entryBytes;
+                if ( sinceRoll >= LOG_ROLL_BYTES )
+                {
+                    txnLog.commit();
+                    txnLog.rollLog();
+                    sinceRoll = 0;
+                }
+            }
+            txnLog.commit();
+        }
+        finally
+        {
+            txnLog.close();
+        }
+        System.out.println("Generated ~" + (totalBytes / (1024 * 1024)) + " MB of logs in " + directory);
+    }
+
+    private static void run(File directory, int iterations) throws Exception
+    {
+        File[]      logs = directory.listFiles();
+        if ( logs == null )
+        {
+            throw new Exception("Not a directory: " + directory);
+        }
+
+        for ( int i = 0; i <= iterations; ++i )
+        {
+            boolean     isWarmUp = (i == 0);
+            boolean     mappedFirst = (i % 2) == 0;
+            Result      first = parseAll(logs, mappedFirst);
+            Result      second = parseAll(logs, !mappedFirst);
+            if ( !isWarmUp )
+            {
+                System.out.println(String.format("Iteration %d: %s | %s", i, first, second));
+            }
+        }
+    }
+
+    private static Result parseAll(File[] logs, boolean mapped) throws Exception
+    {
+        final Result    result = new Result(mapped ? "mapped" : "stream");
+        long            startNanos = System.nanoTime();
+        for ( File log : logs )
+        {
+            LogParser       parser;
+            InputStream     in = null;
+            if ( mapped )
+            {
+                parser = new MappedZooKeeperLogParser(log);
+            }
+            else
+            {
+                in = new BufferedInputStream(new FileInputStream(log));
+                parser = new ZooKeeperLogParser(in);
+            }
+
+            try
+            {
+                if ( parser.isValid() )
+                {
+                    parser.parse
+                    (
+                        new LogEntryReceiver()
+                        {
+                            @Override
+                            public void receiveEntry(TxnHeader header, Record record) throws Exception
+                            {
+                                ++result.entries;
+                            }
+                        }
+                    );
+                    result.bytes += parser.getLastEntryEndOffset();
+                }
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(in);
+            }
+        }
+        result.elapsedMs = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), 1);
+        return result;
+    }
+
+    private static class Result
+    {
+        private final String    name;
+        private long            entries;
+        private long            bytes;
+        private long            elapsedMs;
+
+        private Result(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            double      seconds = elapsedMs / 1000.0;
+            return String.format("%s: %d entries, %d MB in %d ms (%.1f MB/s, %.0f entries/s)", name, entries, bytes / (1024 * 1024), elapsedMs, (bytes / (1024.0 * 1024.0)) / seconds, entries / seconds);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+public class TestIncrementalIndex
+{
+    private static final int    ENTRY_QTY = 100;
+
+    private File        directory;
+    private File        logFile;
+    private List<Long>  entryEndOffsets;
+
+    @BeforeMethod
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDir();
+
+        File            logDirectory = new File(directory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+        FileTxnLog      txnLog = new FileTxnLog(logDirectory);
+        try
+        {
+            for ( int i = 0; i < ENTRY_QTY; ++i )
+            {
+                long        zxid = i + 1;
+                String      path = "/test/node-" + i;
+                Record      record;
+                int         type;
+                switch ( i % 3 )
+                {
+                    case 0:
+                    {
+                        type = ZooDefs.OpCode.create;
+                        record = new CreateTxn(path, ("data" + i).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, i);
+                        break;
+                    }
+
+                    case 1:
+                    {
+                        type = ZooDefs.OpCode.setData;
+                        record = new SetDataTxn(path, ("new" + i).getBytes(), i);
+                        break;
+                    }
+
+                    default:
+                    {
+                        type = ZooDefs.OpCode.error;    // not indexed
+                        record = new ErrorTxn(KeeperException.Code.NONODE.intValue());
+                        break;
+                    }
+                }
+                txnLog.append(new TxnHeader(i, i, zxid, 1000 + i, type), record);
+            }
+            txnLog.commit();
+        }
+        finally
+        {
+            txnLog.close();
+        }
+
+        File[]          files = logDirectory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+        logFile = files[0];
+
+        InputStream     in = new BufferedInputStream(new FileInputStream(logFile));
+        try
+        {
+            final ZooKeeperLogParser    parser = new ZooKeeperLogParser(in);
+            entryEndOffsets = Lists.newArrayList();
+            parser.parse
+            (
+                new LogEntryReceiver()
+                {
+                    @Override
+                    public void receiveEntry(TxnHeader header, Record record) throws Exception
+                    {
+                        entryEndOffsets.add(parser.getLastEntryEndOffset());
+                    }
+                }
+            );
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+        Assert.assertEquals(entryEndOffsets.size(), ENTRY_QTY);
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void testResumesAfterPreviousOffset() throws Exception
+    {
+        int                 indexedQty = ENTRY_QTY / 2;
+        IndexedSource       previous = new IndexedSource(logFile.getName(), 1, entryEndOffsets.get(indexedQty - 1), 1, indexedQty);
+        List<Long>          zxids = Lists.newArrayList();
+        IndexedSource       current = parseNewEntries(previous, zxids);
+
+        Assert.assertEquals(zxids.size(), ENTRY_QTY - indexedQty);
+        Assert.assertEquals(zxids.get(0).longValue(), indexedQty + 1);
+        Assert.assertEquals(current.getFirstZxid(), 1);
+        Assert.assertEquals(current.getLastZxid(), ENTRY_QTY);
+        Assert.assertEquals(current.getOffset(), entryEndOffsets.get(ENTRY_QTY - 1).longValue());
+
+        zxids.clear();
+        IndexedSource       again = parseNewEntries(current, zxids);
+        Assert.assertEquals(zxids.size(), 0);
+        Assert.assertEquals(again.getLastZxid(), ENTRY_QTY);
+        Assert.assertEquals(again.getOffset(), current.getOffset());
+    }
+
+    @Test
+    public void testSkipsAlreadyIndexedZxids() throws Exception
+    {
+        // the offset lags the zxid (e.g. saved by an older version) - entries up to the zxid still aren't repeated
+        IndexedSource       previous = new IndexedSource(logFile.getName(), 1, entryEndOffsets.get(9), 1, 50);
+        List<Long>          zxids = Lists.newArrayList();
+        parseNewEntries(previous, zxids);
+
+        Assert.assertEquals(zxids.size(), ENTRY_QTY - 50);
+        Assert.assertEquals(zxids.get(0).longValue(), 51);
+    }
+
+    @Test
+    public void testLogShorterThanIndexed() throws Exception
+    {
+        IndexedSource       previous = new IndexedSource(logFile.getName(), 1, logFile.length() + 1, 1, ENTRY_QTY);
+        Assert.assertNull(parseNewEntries(previous, Lists.<Long>newArrayList()));
+    }
+
+    @Test
+    public void testEncoding() throws Exception
+    {
+        IndexedSource       source = new IndexedSource("log.1", 123, 456, 1, 99);
+        IndexedSource       decoded = IndexedSource.decode(source.getName(), source.encode());
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(decoded.getName(), "log.1");
+        Assert.assertEquals(decoded.getModifiedDate(), 123);
+        Assert.assertEquals(decoded.getOffset(), 456);
+        Assert.assertEquals(decoded.getFirstZxid(), 1);
+        Assert.assertEquals(decoded.getLastZxid(), 99);
+
+        Assert.assertNull(IndexedSource.decode("log.1", "123,456"));
+        Assert.assertNull(IndexedSource.decode("log.1", "a,b,c,d"));
+    }
+
+    @Test
+    public void testIndexGrowingLog() throws Exception
+    {
+        // the first half of the log as it was when it was first indexed
+        int                 firstQty = ENTRY_QTY / 2;
+        File                partialLog = new File(new File(directory, "partial"), logFile.getName());
+        copy(logFile, partialLog, entryEndOffsets.get(firstQty - 1));
+
+        File                indexDirectory = new File(directory, "index");
+        IndexBuilder        builder = new IndexBuilder(indexDirectory);
+        builder.open(true);
+        try
+        {
+            InputStream     in = new BufferedInputStream(new FileInputStream(partialLog));
+            try
+            {
+                builder.add(logFile.getName(), 1, in);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(in);
+            }
+            builder.writeMetaData();
+        }
+        finally
+        {
+            builder.close();
+        }
+        Assert.assertEquals(getDocumentCount(indexDirectory), indexedCount(firstQty));
+
+        // the log has grown - reopening for append only adds the new entries
+        builder = new IndexBuilder(indexDirectory);
+        builder.open(true);
+        try
+        {
+            Assert.assertTrue(builder.isIndexed(logFile.getName(), 1));
+            Assert.assertFalse(builder.isIndexed(logFile.getName(), 2));
+            Assert.assertEquals(builder.getIndexedSource(logFile.getName()).getLastZxid(), firstQty);
+
+            InputStream     in = new BufferedInputStream(new FileInputStream(logFile));
+            try
+            {
+                builder.add(logFile.getName(), 2, in);
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(in);
+            }
+            builder.writeMetaData();
+            Assert.assertEquals(builder.getIndexedSource(logFile.getName()).getLastZxid(), ENTRY_QTY);
+        }
+        finally
+        {
+            builder.close();
+        }
+        Assert.assertEquals(getDocumentCount(indexDirectory), indexedCount(ENTRY_QTY));
+    }
+
+    private IndexedSource parseNewEntries(IndexedSource previous, final List<Long> zxids) throws Exception
+    {
+        InputStream         in = new BufferedInputStream(new FileInputStream(logFile));
+        try
+        {
+            LogEntryReceiver    receiver = new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    zxids.add(header.getZxid());
+                }
+            };
+            return IndexBuilder.parseNewEntries(logFile.getName(), 2, new ZooKeeperLogParser(in), previous, receiver);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+    }
+
+    // every third entry is an error which isn't indexed
+    private int indexedCount(int entryQty)
+    {
+        return entryQty - (entryQty / 3);
+    }
+
+    private int getDocumentCount(File indexDirectory) throws Exception
+    {
+        NIOFSDirectory      luceneDirectory = new NIOFSDirectory(indexDirectory);
+        try
+        {
+            IndexReader     reader = IndexReader.open(luceneDirectory);
+            try
+            {
+                return reader.numDocs();
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(reader);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(luceneDirectory);
+        }
+    }
+
+    private void copy(File from, File to, long length) throws Exception
+    {
+        Assert.assertTrue(to.getParentFile().mkdirs());
+        InputStream         in = new FileInputStream(from);
+        OutputStream        out = new FileOutputStream(to);
+        try
+        {
+            ByteStreams.copy(ByteStreams.limit(in, length), out);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+            CloseableUtils.closeQuietly(out);
+        }
+    }
+
+    private void delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.servo.IndexCacheMonitoredData;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.List;
+
+public class TestIndexCache
+{
+    private static final long   MAX_BYTES = Long.MAX_VALUE;
+    private static final int    NO_SWEEP_MS = 60 * 60 * 1000;
+
+    private final List<File>    directories = Lists.newArrayList();
+
+    @BeforeClass
+    public void     setup() throws Exception
+    {
+        for ( int i = 0; i < 4; ++i )
+        {
+            File            directory = Files.createTempDir();
+            IndexBuilder    builder = new IndexBuilder(directory);
+            builder.open();
+            try
+            {
+                builder.add(new TxnHeader(1, i, i + 1, 1000 + i, ZooDefs.OpCode.create), new CreateTxn("/test/node-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, i));
+                builder.commit();
+            }
+            finally
+            {
+                builder.close();
+            }
+            directories.add(directory);
+        }
+    }
+
+    @AfterClass
+    public void     teardown()
+    {
+        for ( File directory : directories )
+        {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void     testEvictsLeastRecentlyUsedThatAreNotInUse() throws Exception
+    {
+        File        inUse = directories.get(0);
+        File        a = directories.get(1);
+        File        b = directories.get(2);
+        File        c = directories.get(3);
+
+        IndexCache  cache = new IndexCache(new ActivityLog(100), 10, MAX_BYTES, NO_SWEEP_MS, NO_SWEEP_MS);
+        try
+        {
+            IndexCacheMonitoredData     data = cache.getMonitoredData();
+
+            cache.getLogSearch(inUse);  // oldest, but never released
+            for ( File f : new File[]{a, b, c} )
+            {
+                Thread.sleep(10);
+                cache.getLogSearch(f);
+                cache.releaseLogSearch(f);
+            }
+            Assert.assertEquals(data.openReaders.get(), 4);
+            Assert.assertEquals(data.evictions.get(), 0);
+
+            cache.setLimits(2, MAX_BYTES);
+            Assert.assertEquals(data.openReaders.get(), 2);
+            Assert.assertEquals(data.evictions.get(), 2);
+
+            long        misses = data.misses.get();
+            cache.getLogSearch(c);
+            cache.releaseLogSearch(c);
+            Assert.assertEquals(data.misses.get(), misses);   // c was the most recently used - still open
+
+            cache.setLimits(0, MAX_BYTES);
+            Assert.assertEquals(data.openReaders.get(), 1);   // the in use search is never closed
+
+            cache.getLogSearch(a);
+            Assert.assertEquals(data.misses.get(), misses + 1);
+            Assert.assertEquals(data.openReaders.get(), 2);
+
+            cache.releaseLogSearch(a);
+            cache.releaseLogSearch(inUse);
+            Assert.assertEquals(data.openReaders.get(), 0);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(cache);
+        }
+    }
+
+    @Test
+    public void     testSweepClosesIdleSearches() throws Exception
+    {
+        File        idle = directories.get(0);
+        File        inUse = directories.get(1);
+        File        stale = directories.get(2);
+
+        IndexCache  cache = new IndexCache(new ActivityLog(100), 10, MAX_BYTES, 100, NO_SWEEP_MS);
+        try
+        {
+            IndexCacheMonitoredData     data = cache.getMonitoredData();
+
+            cache.getLogSearch(idle);
+            cache.releaseLogSearch(idle);
+            cache.getLogSearch(inUse);
+            cache.getLogSearch(stale);
+            cache.sweep();
+            Assert.assertEquals(data.openReaders.get(), 3);
+
+            cache.indexUpdated(stale);
+            Assert.assertEquals(data.openReaders.get(), 3);   // stale but still in use
+            cache.releaseLogSearch(stale);
+            Assert.assertEquals(data.openReaders.get(), 2);
+
+            Thread.sleep(200);
+            cache.sweep();
+            Assert.assertEquals(data.openReaders.get(), 1);   // idle closed, in use kept
+            Assert.assertEquals(data.evictions.get(), 0);
+
+            cache.releaseLogSearch(inUse);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(cache);
+        }
+    }
+
+    @Test
+    public void     testSweeperRunsInBackground() throws Exception
+    {
+        File        idle = directories.get(3);
+
+        IndexCache  cache = new IndexCache(new ActivityLog(100), 10, MAX_BYTES, 10, 10);
+        try
+        {
+            IndexCacheMonitoredData     data = cache.getMonitoredData();
+
+            cache.getLogSearch(idle);
+            cache.releaseLogSearch(idle);
+
+            long        start = System.currentTimeMillis();
+            while ( (data.openReaders.get() > 0) && ((System.currentTimeMillis() - start) < 10000) )
+            {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(data.openReaders.get(), 0);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(cache);
+        }
+    }
+
+    private void    delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class TestIndexPipeline
+{
+    private static final int    LOG_QTY = 4;
+    private static final int    ENTRIES_PER_LOG = 500;
+
+    private File        directory;
+    private List<File>  logFiles;
+
+    @BeforeMethod
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDir();
+
+        File            logDirectory = new File(directory, "logs");
+        Assert.assertTrue(logDirectory.mkdirs());
+        FileTxnLog      txnLog = new FileTxnLog(logDirectory);
+        try
+        {
+            long        zxid = 1;
+            for ( int i = 0; i < LOG_QTY; ++i )
+            {
+                for ( int j = 0; j < ENTRIES_PER_LOG; ++j )
+                {
+                    CreateTxn   record = new CreateTxn("/log-" + i + "/node-" + j, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, j);
+                    txnLog.append(new TxnHeader(1, j, zxid, 1000 + zxid, ZooDefs.OpCode.create), record);
+                    ++zxid;
+                }
+                txnLog.rollLog();
+            }
+            txnLog.commit();
+        }
+        finally
+        {
+            txnLog.close();
+        }
+
+        File[]          files = logDirectory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, LOG_QTY);
+        logFiles = Lists.newArrayList(Arrays.asList(files));
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void testDocumentOrder() throws Exception
+    {
+        List<LogSource>     sources = Lists.newArrayList();
+        for ( int i = 0; i < logFiles.size(); ++i )
+        {
+            sources.add(new TestLogSource(logFiles.get(i), (i % 2) == 0));    // both the mapped and stream parsers
+        }
+
+        File                indexDirectory = new File(directory, "index");
+        IndexBuilder        builder = new IndexBuilder(indexDirectory);
+        builder.open();
+        try
+        {
+            // a small queue so that the workers block on the writer
+            new IndexPipeline(builder, new ActivityLog(100), LOG_QTY, 10).process(sources);
+        }
+        finally
+        {
+            builder.close();
+        }
+
+        // logs are interleaved but each log's entries must be written in order
+        Map<String, Integer>    lastNodeNumbers = Maps.newHashMap();
+        int                     documentQty = 0;
+        NIOFSDirectory          luceneDirectory = new NIOFSDirectory(indexDirectory);
+        try
+        {
+            IndexReader         reader = IndexReader.open(luceneDirectory);
+            try
+            {
+                for ( int i = 0; i < reader.maxDoc(); ++i )
+                {
+                    String      path = reader.document(i).get(FieldNames.PATH);
+                    String      logName = path.substring(0, path.indexOf("/node-"));
+                    int         nodeNumber = Integer.parseInt(path.substring(path.indexOf("/node-") + "/node-".length()));
+                    Integer     lastNodeNumber = lastNodeNumbers.get(logName);
+                    Assert.assertEquals(nodeNumber, (lastNodeNumber != null) ? (lastNodeNumber + 1) : 0, path);
+                    lastNodeNumbers.put(logName, nodeNumber);
+                    ++documentQty;
+                }
+            }
+            finally
+            {
+                CloseableUtils.closeQuietly(reader);
+            }
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(luceneDirectory);
+        }
+        Assert.assertEquals(lastNodeNumbers.size(), LOG_QTY);
+        Assert.assertEquals(documentQty, LOG_QTY * ENTRIES_PER_LOG);
+    }
+
+    @Test(timeOut = 30000)
+    public void testErrorPropagation() throws Exception
+    {
+        List<LogSource>     sources = Lists.newArrayList();
+        for ( File logFile : logFiles )
+        {
+            sources.add(new TestLogSource(logFile, false));
+        }
+        sources.add
+        (
+            1,
+            new TestLogSource(logFiles.get(0), false)
+            {
+                @Override
+                public String getName()
+                {
+                    return "log.broken";
+                }
+
+                @Override
+                public InputStream open() throws Exception
+                {
+                    throw new IOException("broken");
+                }
+            }
+        );
+
+        IndexBuilder        builder = new IndexBuilder(new File(directory, "index"));
+        builder.open();
+        try
+        {
+            // a queue of 1 - the other workers are blocked when the failure is noticed
+            new IndexPipeline(builder, new ActivityLog(100), 2, 1).process(sources);
+            Assert.fail("the failure should be thrown");
+        }
+        catch ( IOException e )
+        {
+            Assert.assertEquals(e.getMessage(), "broken");
+        }
+        finally
+        {
+            builder.close();
+        }
+    }
+
+    private static class TestLogSource implements LogSource
+    {
+        private final File      file;
+        private final boolean   isLocal;
+
+        private TestLogSource(File file, boolean isLocal)
+        {
+            this.file = file;
+            this.isLocal = isLocal;
+        }
+
+        @Override
+        public String getName()
+        {
+            return file.getName();
+        }
+
+        @Override
+        public long getModifiedDate()
+        {
+            return file.lastModified();
+        }
+
+        @Override
+        public InputStream open() throws Exception
+        {
+            return new BufferedInputStream(new FileInputStream(file));
+        }
+
+        @Override
+        public File getLocalFile()
+        {
+            return isLocal ? file : null;
+        }
+    }
+
+    private void delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
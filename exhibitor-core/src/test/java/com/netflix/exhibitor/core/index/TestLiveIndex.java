@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import com.netflix.exhibitor.core.config.ConfigManager;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+public class TestLiveIndex
+{
+    private File            directory;
+    private File            logDirectory;
+    private File            liveDirectory;
+    private IndexCache      indexCache;
+    private LiveIndex       liveIndex;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+        File            dataDirectory = new File(directory, "data");
+        File            indexDirectory = new File(directory, "index");
+        logDirectory = new File(dataDirectory, "version-2");
+        liveDirectory = new File(indexDirectory, "live");
+        Assert.assertTrue(logDirectory.mkdirs());
+
+        InstanceConfig  config = Mockito.mock(InstanceConfig.class);
+        Mockito.when(config.getString(StringConfigs.ZOOKEEPER_DATA_DIRECTORY)).thenReturn(dataDirectory.getPath());
+        Mockito.when(config.getString(StringConfigs.ZOOKEEPER_LOG_DIRECTORY)).thenReturn("");
+        Mockito.when(config.getString(StringConfigs.LOG_INDEX_DIRECTORY)).thenReturn(indexDirectory.getPath());
+        Mockito.when(config.getInt(IntConfigs.LIVE_INDEX_PERIOD_MS)).thenReturn(1000);
+        Mockito.when(config.getInt(IntConfigs.BACKUP_MAX_STORE_MS)).thenReturn((int)TimeUnit.DAYS.toMillis(1));
+        ConfigManager   configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getConfig()).thenReturn(config);
+
+        ActivityLog     log = new ActivityLog(100);
+        indexCache = new IndexCache(log, 10, Long.MAX_VALUE);
+
+        Exhibitor       exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getConfigManager()).thenReturn(configManager);
+        Mockito.when(exhibitor.getLog()).thenReturn(log);
+        Mockito.when(exhibitor.getIndexCache()).thenReturn(indexCache);
+
+        liveIndex = new LiveIndex(exhibitor);
+    }
+
+    @AfterMethod
+    public void     teardown()
+    {
+        CloseableUtils.closeQuietly(liveIndex);
+        CloseableUtils.closeQuietly(indexCache);
+        delete(directory);
+    }
+
+    @Test
+    public void     testTailsActiveLog() throws Exception
+    {
+        long            now = System.currentTimeMillis();
+        FileTxnLog      txnLog = new FileTxnLog(logDirectory);
+        try
+        {
+            append(txnLog, 1, 10, now);
+            File        logFile = getLogFile();
+
+            liveIndex.update();
+            Assert.assertEquals(getTotalHits(), 10);
+
+            append(txnLog, 11, 5, now);
+            Assert.assertTrue(logFile.setLastModified(logFile.lastModified() + 1000));
+            liveIndex.update();
+            Assert.assertEquals(getTotalHits(), 15);
+
+            // nothing new - nothing is added twice
+            Assert.assertTrue(logFile.setLastModified(logFile.lastModified() + 1000));
+            liveIndex.update();
+            Assert.assertEquals(getTotalHits(), 15);
+        }
+        finally
+        {
+            txnLog.close();
+        }
+    }
+
+    @Test
+    public void     testDropsExpiredPartitions() throws Exception
+    {
+        long            now = System.currentTimeMillis();
+        FileTxnLog      txnLog = new FileTxnLog(logDirectory);
+        try
+        {
+            append(txnLog, 1, 5, now - TimeUnit.DAYS.toMillis(3));
+            append(txnLog, 6, 5, now);
+        }
+        finally
+        {
+            txnLog.close();
+        }
+
+        liveIndex.update();
+
+        File[]          partitions = liveDirectory.listFiles();
+        Assert.assertNotNull(partitions);
+        int             partitionQty = 0;
+        for ( File f : partitions )
+        {
+            if ( f.isDirectory() )
+            {
+                ++partitionQty;
+            }
+        }
+        Assert.assertEquals(partitionQty, 1);
+        Assert.assertEquals(getTotalHits(), 5);
+    }
+
+    private void    append(FileTxnLog txnLog, long firstZxid, int qty, long time) throws Exception
+    {
+        for ( int i = 0; i < qty; ++i )
+        {
+            long        zxid = firstZxid + i;
+            txnLog.append(new TxnHeader(1, (int)zxid, zxid, time, ZooDefs.OpCode.create), new CreateTxn("/test/node-" + zxid, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, (int)zxid));
+        }
+        txnLog.commit();
+    }
+
+    private File    getLogFile()
+    {
+        File[]      files = logDirectory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+        return files[0];
+    }
+
+    private int     getTotalHits() throws Exception
+    {
+        LogSearch   logSearch = liveIndex.getLogSearch(null, null);
+        Assert.assertNotNull(logSearch);
+        try
+        {
+            return logSearch.search(null, 0, 100).getTotalHits();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(logSearch);
+        }
+    }
+
+    private void    delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.List;
+
+public class TestLogSearch
+{
+    private static final int    DOCUMENT_QTY = LogSearch.MAX_POSITION + 500;
+
+    private File        directory;
+    private LogSearch   logSearch;
+
+    @BeforeClass
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+
+        IndexBuilder    builder = new IndexBuilder(directory);
+        builder.open();
+        try
+        {
+            for ( int i = 0; i < DOCUMENT_QTY; ++i )
+            {
+                long        zxid = i + 1;
+                builder.add(new TxnHeader(1, i, zxid, 1000 + i, ZooDefs.OpCode.create), new CreateTxn("/test/node-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, i));
+            }
+            builder.commit();
+        }
+        finally
+        {
+            builder.close();
+        }
+
+        logSearch = new LogSearch(directory);
+    }
+
+    @AfterClass
+    public void     teardown()
+    {
+        CloseableUtils.closeQuietly(logSearch);
+        delete(directory);
+    }
+
+    @Test
+    public void     testPositionMatchesCursor() throws Exception
+    {
+        List<Integer>   byCursor = Lists.newArrayList();
+        SearchCursor    cursor = null;
+        for ( int i = 0; i < 3; ++i )
+        {
+            SearchPage  page = logSearch.search(null, cursor, 100);
+            byCursor.addAll(page.getDocIds());
+            cursor = page.getNext();
+        }
+
+        List<Integer>   byPosition = Lists.newArrayList();
+        for ( int i = 0; i < 3; ++i )
+        {
+            SearchPage  page = logSearch.search(null, i * 100, 100);
+            Assert.assertEquals(page.getTotalHits(), DOCUMENT_QTY);
+            byPosition.addAll(page.getDocIds());
+        }
+        Assert.assertEquals(byPosition, byCursor);
+        Assert.assertEquals(logSearch.toResult(byPosition.get(0)).getPath(), "/test/node-" + (DOCUMENT_QTY - 1));    // newest first
+    }
+
+    @Test
+    public void     testDeepPosition() throws Exception
+    {
+        SearchPage      lastPage = logSearch.search(null, LogSearch.MAX_POSITION - 10, 100);
+        Assert.assertEquals(lastPage.getDocIds().size(), 10);
+        Assert.assertEquals(lastPage.getTotalHits(), DOCUMENT_QTY);
+
+        SearchPage      pastEnd = logSearch.search(null, Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+        Assert.assertEquals(pastEnd.getDocIds().size(), 0);
+        Assert.assertEquals(pastEnd.getTotalHits(), DOCUMENT_QTY);
+        Assert.assertNull(pastEnd.getNext());
+
+        // the rest is still reachable via the cursor
+        SearchPage      next = logSearch.search(null, lastPage.getNext(), 1000);
+        Assert.assertEquals(next.getDocIds().size(), DOCUMENT_QTY - LogSearch.MAX_POSITION);
+    }
+
+    private void    delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
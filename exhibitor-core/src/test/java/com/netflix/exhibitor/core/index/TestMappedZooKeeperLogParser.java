@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.jute.Record;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.ErrorTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestMappedZooKeeperLogParser
+{
+    private static final int    ENTRY_QTY = 1000;
+
+    private File    directory;
+    private File    logFile;
+
+    @BeforeMethod
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDir();
+
+        FileTxnLog      txnLog = new FileTxnLog(directory);
+        try
+        {
+            for ( int i = 0; i < ENTRY_QTY; ++i )
+            {
+                long        zxid = i + 1;
+                String      path = "/test/node-" + (i / 4);
+                Record      record;
+                int         type;
+                switch ( i % 5 )
+                {
+                    case 0:
+                    {
+                        type = ZooDefs.OpCode.create;
+                        record = new CreateTxn(path, ("data" + i).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, (i % 2) == 0, i);
+                        break;
+                    }
+
+                    case 1:
+                    {
+                        type = ZooDefs.OpCode.setData;
+                        record = new SetDataTxn(path, (i % 3) == 0 ? null : ("new" + i).getBytes(), i);
+                        break;
+                    }
+
+                    case 2:
+                    {
+                        type = ZooDefs.OpCode.delete;
+                        record = new DeleteTxn(path);
+                        break;
+                    }
+
+                    case 3:
+                    {
+                        type = ZooDefs.OpCode.create;
+                        record = new CreateTxn(path + "/\u00e9l\u00e8ve", new byte[0], ZooDefs.Ids.CREATOR_ALL_ACL, false, i);
+                        break;
+                    }
+
+                    default:
+                    {
+                        type = ZooDefs.OpCode.error;
+                        record = new ErrorTxn(KeeperException.Code.NONODE.intValue());
+                        break;
+                    }
+                }
+                txnLog.append(new TxnHeader(i, i, zxid, 1000 + i, type), record);
+            }
+            txnLog.commit();
+        }
+        finally
+        {
+            txnLog.close();
+        }
+
+        File[]      files = directory.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(files.length, 1);
+        logFile = files[0];
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        File[]      files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void testMatchesStreamParser() throws Exception
+    {
+        MappedZooKeeperLogParser    mappedParser = new MappedZooKeeperLogParser(logFile);
+        Assert.assertTrue(mappedParser.isValid());
+        List<String>                mappedEntries = parse(mappedParser);
+
+        List<String>                streamEntries;
+        long                        streamOffset;
+        InputStream                 in = new BufferedInputStream(new FileInputStream(logFile));
+        try
+        {
+            ZooKeeperLogParser      streamParser = new ZooKeeperLogParser(in);
+            Assert.assertTrue(streamParser.isValid());
+            streamEntries = parse(streamParser);
+            streamOffset = streamParser.getLastEntryEndOffset();
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(in);
+        }
+
+        Assert.assertEquals(mappedEntries.size(), ENTRY_QTY);
+        Assert.assertEquals(mappedEntries, streamEntries);
+        Assert.assertEquals(mappedParser.getLastEntryEndOffset(), streamOffset);
+    }
+
+    @Test
+    public void testSkipTo() throws Exception
+    {
+        final MappedZooKeeperLogParser  parser = new MappedZooKeeperLogParser(logFile);
+        final List<Long>                offsets = Lists.newArrayList();
+        parser.parse
+        (
+            new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    offsets.add(parser.getLastEntryEndOffset());
+                }
+            }
+        );
+        Assert.assertEquals(offsets.size(), ENTRY_QTY);
+
+        int                         midpoint = ENTRY_QTY / 2;
+        MappedZooKeeperLogParser    resumed = new MappedZooKeeperLogParser(logFile);
+        Assert.assertTrue(resumed.skipTo(offsets.get(midpoint - 1)));
+        List<String>                entries = parse(resumed);
+        Assert.assertEquals(entries.size(), ENTRY_QTY - midpoint);
+        Assert.assertTrue(entries.get(0).startsWith((midpoint + 1) + ":"));
+
+        MappedZooKeeperLogParser    atEnd = new MappedZooKeeperLogParser(logFile);
+        Assert.assertTrue(atEnd.skipTo(parser.getLastEntryEndOffset()));
+        Assert.assertEquals(parse(atEnd).size(), 0);
+
+        MappedZooKeeperLogParser    pastEnd = new MappedZooKeeperLogParser(logFile);
+        Assert.assertFalse(pastEnd.skipTo(logFile.length() + 1));
+    }
+
+    private List<String> parse(LogParser parser) throws Exception
+    {
+        final List<String>      entries = Lists.newArrayList();
+        parser.parse
+        (
+            new LogEntryReceiver()
+            {
+                @Override
+                public void receiveEntry(TxnHeader header, Record record) throws Exception
+                {
+                    entries.add(header.getZxid() + ":" + header.getTime() + ":" + header.getType() + ":" + describe(record));
+                }
+            }
+        );
+        return entries;
+    }
+
+    private String describe(Record record)
+    {
+        if ( record instanceof CreateTxn )
+        {
+            CreateTxn   createTxn = (CreateTxn)record;
+            return "create:" + createTxn.getPath() + ":" + Arrays.toString(createTxn.getData()) + ":" + createTxn.getEphemeral();
+        }
+        if ( record instanceof DeleteTxn )
+        {
+            return "delete:" + ((DeleteTxn)record).getPath();
+        }
+        if ( record instanceof SetDataTxn )
+        {
+            SetDataTxn  setDataTxn = (SetDataTxn)record;
+            return "setData:" + setDataTxn.getPath() + ":" + Arrays.toString(setDataTxn.getData()) + ":" + setDataTxn.getVersion();
+        }
+        return "other";   // the mapped parser doesn't decode other types
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.activity.ActivityLog;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TestMultiIndexSearch
+{
+    private static final int    ENTRY_QTY = 10;
+    private static final long   BASE_MS = 1400000000000L;
+
+    private File                directory;
+    private IndexCache          indexCache;
+    private MultiIndexSearch    search;
+    private List<File>          interleaved;    // entry i of index n is at BASE_MS + ((i * 3) + n) seconds
+    private File                old;            // ten days before the others
+    private List<File>          sameDate;       // every entry at the same time
+
+    @BeforeClass
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+
+        interleaved = Lists.newArrayList();
+        for ( int n = 0; n < 3; ++n )
+        {
+            File        index = new File(directory, "index_" + n);
+            long[]      times = new long[ENTRY_QTY];
+            for ( int i = 0; i < ENTRY_QTY; ++i )
+            {
+                times[i] = BASE_MS + TimeUnit.SECONDS.toMillis((i * 3) + n);
+            }
+            build(index, times);
+            interleaved.add(index);
+        }
+
+        old = new File(directory, "old");
+        build(old, new long[]{BASE_MS - TimeUnit.DAYS.toMillis(10), BASE_MS - TimeUnit.DAYS.toMillis(10) + 1000});
+
+        sameDate = Lists.newArrayList();
+        for ( int n = 0; n < 2; ++n )
+        {
+            File        index = new File(directory, "same-" + n);
+            long[]      times = new long[5];
+            Arrays.fill(times, BASE_MS);
+            build(index, times);
+            sameDate.add(index);
+        }
+
+        ActivityLog     log = new ActivityLog(100);
+        indexCache = new IndexCache(log, 10, Long.MAX_VALUE);
+        search = new MultiIndexSearch(indexCache, log);
+    }
+
+    @AfterClass
+    public void     teardown()
+    {
+        CloseableUtils.closeQuietly(indexCache);
+        delete(directory);
+    }
+
+    @Test
+    public void     testCandidatesPrunedByMetaData() throws Exception
+    {
+        List<File>      all = Lists.newArrayList(interleaved);
+        all.add(old);
+
+        Assert.assertEquals(search.getCandidates(all, null, null), all);
+        Assert.assertEquals(search.getCandidates(all, new Date(BASE_MS - TimeUnit.DAYS.toMillis(1)), null), interleaved);
+        Assert.assertEquals(search.getCandidates(all, null, new Date(BASE_MS - TimeUnit.DAYS.toMillis(1))), Arrays.asList(old));
+        Assert.assertEquals(search.getCandidates(all, new Date(BASE_MS + TimeUnit.DAYS.toMillis(1)), null).size(), 0);
+    }
+
+    @Test
+    public void     testMergeIsNewestFirstAcrossIndexes() throws Exception
+    {
+        MultiIndexPage      page = search.search(interleaved, null, null, 1000);
+        Assert.assertEquals(page.getTotalHits(), ENTRY_QTY * 3);
+        Assert.assertEquals(page.getHits().size(), ENTRY_QTY * 3);
+        Assert.assertNull(page.getNext());
+
+        long                expectedSeconds = (ENTRY_QTY * 3) - 1;
+        for ( MultiIndexHit hit : page.getHits() )
+        {
+            Assert.assertEquals(hit.getItem().getDate().getTime(), BASE_MS + TimeUnit.SECONDS.toMillis(expectedSeconds));
+            Assert.assertEquals(hit.getIndex(), interleaved.get((int)(expectedSeconds % 3)));
+            --expectedSeconds;
+        }
+    }
+
+    @Test
+    public void     testCursorRoundTrip() throws Exception
+    {
+        List<String>    all = keys(search.search(interleaved, null, null, 1000).getHits());
+        Assert.assertEquals(all, keys(pageThrough(interleaved, 7)));
+    }
+
+    @Test
+    public void     testCursorWithEqualDates() throws Exception
+    {
+        List<MultiIndexHit> hits = pageThrough(sameDate, 3);
+        Assert.assertEquals(hits.size(), 10);
+        Assert.assertEquals(keys(hits), keys(search.search(sameDate, null, null, 1000).getHits()));
+
+        // equal dates are ordered by index (in the order given) and then by document id
+        for ( int i = 0; i < hits.size(); ++i )
+        {
+            Assert.assertEquals(hits.get(i).getIndex(), sameDate.get(i / 5));
+        }
+    }
+
+    @Test
+    public void     testCursorFormat() throws Exception
+    {
+        MultiIndexPage      page = search.search(interleaved, null, null, 4);
+        MultiIndexHit       last = page.getHits().get(3);
+        Assert.assertEquals(page.getNext(), last.getItem().getDate().getTime() + "_" + last.getDocId() + "_" + last.getIndex().getName());
+        Assert.assertEquals(page.getTotalHits(), ENTRY_QTY * 3);
+
+        MultiIndexPage      next = search.search(interleaved, null, page.getNext(), 4);
+        Assert.assertEquals(next.getTotalHits(), (ENTRY_QTY * 3) - 4);
+
+        try
+        {
+            search.search(sameDate, null, page.getNext(), 4);   // the cursor refers to an index that isn't being searched
+            Assert.fail();
+        }
+        catch ( IllegalArgumentException expected )
+        {
+            // expected
+        }
+    }
+
+    private List<MultiIndexHit> pageThrough(List<File> indexes, int pageSize) throws Exception
+    {
+        List<MultiIndexHit>     hits = Lists.newArrayList();
+        String                  cursor = null;
+        do
+        {
+            MultiIndexPage      page = search.search(indexes, null, cursor, pageSize);
+            Assert.assertTrue(page.getHits().size() <= pageSize);
+            hits.addAll(page.getHits());
+            cursor = page.getNext();
+        } while ( cursor != null );
+        return hits;
+    }
+
+    private List<String>    keys(List<MultiIndexHit> hits)
+    {
+        List<String>    keys = Lists.newArrayList();
+        for ( MultiIndexHit hit : hits )
+        {
+            keys.add(hit.getIndex().getName() + "/" + hit.getDocId());
+        }
+        return keys;
+    }
+
+    private void    build(File index, long[] times) throws Exception
+    {
+        IndexBuilder    builder = new IndexBuilder(index);
+        builder.open();
+        try
+        {
+            for ( int i = 0; i < times.length; ++i )
+            {
+                long        zxid = i + 1;
+                builder.add(new TxnHeader(1, i, zxid, times[i], ZooDefs.OpCode.create), new CreateTxn("/" + index.getName() + "/node-" + i, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, i));
+            }
+            builder.commit();
+            builder.writeMetaData();
+        }
+        finally
+        {
+            builder.close();
+        }
+    }
+
+    private void    delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
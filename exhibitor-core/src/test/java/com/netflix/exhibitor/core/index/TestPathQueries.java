@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Version;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.File;
+import java.util.Arrays;
+
+public class TestPathQueries
+{
+    private static final String[]   PATHS =
+    {
+        "/a",
+        "/a/b",
+        "/a/b/c",
+        "/a/bc",
+        "/locks/lock-0000000001",
+        "/locks/lock-0000000002",
+        "/locks/lock-abc",
+        "/queue/item-0000000007"
+    };
+
+    private File        directory;
+
+    @BeforeMethod
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDir();
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        File[]      files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File f : files )
+            {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void testPathTerms()
+    {
+        Assert.assertEquals(PathTerms.ancestors("/a/b/c"), Arrays.asList("/", "/a", "/a/b", "/a/b/c"));
+        Assert.assertEquals(PathTerms.ancestors("/"), Arrays.asList("/"));
+        Assert.assertEquals(PathTerms.family("/locks/lock-0000000012"), "/locks/lock-");
+        Assert.assertEquals(PathTerms.family("/locks/lock-"), "/locks/lock-");
+        Assert.assertEquals(PathTerms.family("/a/0000000012/b"), "/a/0000000012/b");
+        Assert.assertEquals(PathTerms.family("/123"), "/123");
+        Assert.assertEquals(PathTerms.normalize("/a/b//"), "/a/b");
+        Assert.assertEquals(PathTerms.normalize("/"), "/");
+    }
+
+    @Test
+    public void testPathFields() throws Exception
+    {
+        IndexBuilder    builder = new IndexBuilder(directory);
+        builder.open();
+        try
+        {
+            long        zxid = 1;
+            for ( String path : PATHS )
+            {
+                builder.add(new TxnHeader(1, 1, zxid++, System.currentTimeMillis(), ZooDefs.OpCode.create), new CreateTxn(path, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 0));
+            }
+        }
+        finally
+        {
+            builder.close();
+        }
+
+        assertQueries();
+    }
+
+    @Test
+    public void testFallback() throws Exception
+    {
+        // simulates an index written before the path fields existed
+        IndexWriter     writer = new IndexWriter(new NIOFSDirectory(directory), new IndexWriterConfig(Version.LUCENE_35, new KeywordAnalyzer()));
+        try
+        {
+            for ( String path : PATHS )
+            {
+                Document    document = new Document();
+                document.add(new Field(FieldNames.PATH, path, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+                writer.addDocument(document);
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        assertQueries();
+    }
+
+    private void assertQueries() throws Exception
+    {
+        IndexReader     reader = IndexReader.open(new NIOFSDirectory(directory));
+        try
+        {
+            IndexSearcher   searcher = new IndexSearcher(reader);
+            Assert.assertEquals(count(searcher, QueryBuilder.builder().pathUnder("/a/b").build(QueryBuilder.Type.AND)), 2);
+            Assert.assertEquals(count(searcher, QueryBuilder.builder().pathUnder("/a/").build(QueryBuilder.Type.AND)), 4);
+            Assert.assertEquals(count(searcher, QueryBuilder.builder().pathUnder("/").build(QueryBuilder.Type.AND)), PATHS.length);
+            Assert.assertEquals(count(searcher, QueryBuilder.builder().pathFamily("/locks/lock-0000000005").build(QueryBuilder.Type.AND)), 2);
+            Assert.assertEquals(count(searcher, QueryBuilder.builder().pathFamily("/queue/item-").build(QueryBuilder.Type.AND)), 1);
+            Assert.assertEquals(count(searcher, QueryBuilder.builder().pathFamily("/a/bc").build(QueryBuilder.Type.AND)), 1);
+            searcher.close();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private int count(IndexSearcher searcher, Query query) throws Exception
+    {
+        return searcher.search(query, PATHS.length + 1).totalHits;
+    }
+}
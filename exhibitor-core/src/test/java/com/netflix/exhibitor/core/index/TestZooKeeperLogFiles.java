@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.index;
+
+import com.google.common.io.Files;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.config.ConfigManager;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.server.persistence.FileSnap;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestZooKeeperLogFiles
+{
+    private static final long   MODIFIED_MS = 1400000000000L;
+
+    private File        directory;
+    private File        versionDirectory;
+    private Exhibitor   exhibitor;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        directory = Files.createTempDir();
+        versionDirectory = new File(directory, "version-2");
+        Assert.assertTrue(versionDirectory.mkdirs());
+
+        InstanceConfig  config = Mockito.mock(InstanceConfig.class);
+        Mockito.when(config.getString(StringConfigs.ZOOKEEPER_DATA_DIRECTORY)).thenReturn(directory.getPath());
+        Mockito.when(config.getString(StringConfigs.ZOOKEEPER_LOG_DIRECTORY)).thenReturn("");
+        ConfigManager   configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getConfig()).thenReturn(config);
+        exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getConfigManager()).thenReturn(configManager);
+    }
+
+    @AfterMethod
+    public void     teardown()
+    {
+        delete(directory);
+    }
+
+    @Test
+    public void     testClassifiedByHeader() throws Exception
+    {
+        File    log = write("log.1", FileTxnLog.TXNLOG_MAGIC);
+        File    snapshot = write("snapshot.1", FileSnap.SNAP_MAGIC);
+        write("log.2", FileSnap.SNAP_MAGIC);        // wrong header
+        write("snapshot.2", FileTxnLog.TXNLOG_MAGIC);
+        write("log.3", 0);
+        write("other", FileTxnLog.TXNLOG_MAGIC);    // wrong name
+        Assert.assertTrue(new File(versionDirectory, "log.4").createNewFile());  // too short
+
+        ZooKeeperLogFiles   logFiles = new ZooKeeperLogFiles(exhibitor);
+        Assert.assertTrue(logFiles.isValid());
+        Assert.assertEquals(logFiles.getPaths(), Collections.singletonList(log));
+        Assert.assertEquals(logFiles.getSnapshotPaths(), Collections.singletonList(snapshot));
+    }
+
+    @Test
+    public void     testUnchangedFileIsNotReread() throws Exception
+    {
+        File    log = write("log.1", FileTxnLog.TXNLOG_MAGIC);
+        Assert.assertEquals(new ZooKeeperLogFiles(exhibitor).getPaths(), Collections.singletonList(log));
+
+        // same length and modified date - the cached classification is used so the bad header isn't seen
+        overwriteHeader(log, 0);
+        Assert.assertTrue(log.setLastModified(MODIFIED_MS));
+        Assert.assertEquals(new ZooKeeperLogFiles(exhibitor).getPaths(), Collections.singletonList(log));
+    }
+
+    @Test
+    public void     testModifiedDateChangeInvalidates() throws Exception
+    {
+        File    log = write("log.1", FileTxnLog.TXNLOG_MAGIC);
+        Assert.assertEquals(new ZooKeeperLogFiles(exhibitor).getPaths(), Collections.singletonList(log));
+
+        overwriteHeader(log, 0);
+        Assert.assertTrue(log.setLastModified(MODIFIED_MS + 1000));
+        Assert.assertEquals(new ZooKeeperLogFiles(exhibitor).getPaths().size(), 0);
+
+        overwriteHeader(log, FileTxnLog.TXNLOG_MAGIC);
+        Assert.assertTrue(log.setLastModified(MODIFIED_MS + 2000));
+        Assert.assertEquals(new ZooKeeperLogFiles(exhibitor).getPaths(), Collections.singletonList(log));
+    }
+
+    @Test
+    public void     testLengthChangeInvalidates() throws Exception
+    {
+        File                log = write("log.1", FileTxnLog.TXNLOG_MAGIC);
+        File                snapshot = write("snapshot.1", FileSnap.SNAP_MAGIC);
+        ZooKeeperLogFiles   logFiles = new ZooKeeperLogFiles(exhibitor);
+        Assert.assertEquals(logFiles.getPaths(), Collections.singletonList(log));
+        Assert.assertEquals(logFiles.getSnapshotPaths(), Collections.singletonList(snapshot));
+
+        // the snapshot is replaced by a longer file with a log header but keeps the modified date
+        write("snapshot.1", FileTxnLog.TXNLOG_MAGIC, 100);
+        logFiles = new ZooKeeperLogFiles(exhibitor);
+        Assert.assertEquals(logFiles.getPaths(), Collections.singletonList(log));
+        Assert.assertEquals(logFiles.getSnapshotPaths().size(), 0);
+
+        // deleted files are dropped
+        Assert.assertTrue(log.delete());
+        File                log2 = write("log.2", FileTxnLog.TXNLOG_MAGIC);
+        Assert.assertEquals(new ZooKeeperLogFiles(exhibitor).getPaths(), Arrays.asList(log2));
+    }
+
+    private File    write(String name, int magic) throws Exception
+    {
+        return write(name, magic, 16);
+    }
+
+    private File    write(String name, int magic, int length) throws Exception
+    {
+        File                f = new File(versionDirectory, name);
+        DataOutputStream    out = new DataOutputStream(new FileOutputStream(f));
+        try
+        {
+            out.writeInt(magic);
+            out.write(new byte[length - 4]);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(out);
+        }
+        Assert.assertTrue(f.setLastModified(MODIFIED_MS));
+        return f;
+    }
+
+    private void    overwriteHeader(File f, int magic) throws Exception
+    {
+        RandomAccessFile    file = new RandomAccessFile(f, "rw");
+        try
+        {
+            file.writeInt(magic);
+        }
+        finally
+        {
+            CloseableUtils.closeQuietly(file);
+        }
+    }
+
+    private void    delete(File f)
+    {
+        File[]      children = f.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        f.delete();
+    }
+}
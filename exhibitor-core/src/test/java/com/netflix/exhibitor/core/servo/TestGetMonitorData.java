@@ -16,7 +16,16 @@
 
 package com.netflix.exhibitor.core.servo;
 
+import com.google.common.collect.ImmutableMap;
 import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.config.ConfigManager;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
+import com.netflix.exhibitor.core.state.FourLetterWord;
+import com.netflix.exhibitor.core.state.FourLetterWordClient;
+import com.netflix.exhibitor.core.state.InstanceStateSnapshot;
+import com.netflix.exhibitor.core.state.InstanceStateTypes;
+import com.netflix.exhibitor.core.state.MonitorRunningInstance;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -62,6 +71,83 @@ public class TestGetMonitorData
         Assert.assertEquals(zookeeperMonitoredData.zk_max_file_descriptor_count.get(), 10240);
         Assert.assertEquals(zookeeperMonitoredData.zk_packets_sent.get(), 10101); // assert that it hasn't changed
     }
+
+    @Test
+    public void     testLongAndDiscoveredValues()
+    {
+        final String[]      lines =
+        {
+            "zk_packets_received	5000000000",
+            "zk_approximate_data_size	3000000000",
+            "zk_new_key	123",
+            "zk_server_state	leader"
+        };
+
+        ZookeeperMonitoredData zookeeperMonitoredData = new ZookeeperMonitoredData();
+        GetMonitorData      getMonitorData = new GetMonitorData(Mockito.mock(Exhibitor.class), zookeeperMonitoredData);
+        getMonitorData.doUpdate(Arrays.asList(lines));
+
+        Assert.assertEquals(zookeeperMonitoredData.zk_packets_received.get(), 5000000000L);
+        Assert.assertEquals(zookeeperMonitoredData.zk_approximate_data_size.get(), 3000000000L);
+        Assert.assertEquals(zookeeperMonitoredData.getDiscoveredValues(), ImmutableMap.of("zk_new_key", 123L));
+    }
+
+    @Test
+    public void     testDerivedValues()
+    {
+        ZookeeperMonitoredData zookeeperMonitoredData = new ZookeeperMonitoredData();
+
+        zookeeperMonitoredData.updateValues(ImmutableMap.of("zk_packets_received", 1000L, "zk_outstanding_requests", 10L, "zk_avg_latency", 2L, "zk_max_latency", 5L), 10000);
+        Assert.assertEquals(zookeeperMonitoredData.packetsReceivedPerSec.get(), 0);   // nothing to compare to yet
+        Assert.assertEquals(zookeeperMonitoredData.outstandingRequestsDelta.get(), 0);
+
+        zookeeperMonitoredData.updateValues(ImmutableMap.of("zk_packets_received", 3000L, "zk_outstanding_requests", 4L, "zk_avg_latency", 2L, "zk_max_latency", 100L), 12000);
+        Assert.assertEquals(zookeeperMonitoredData.packetsReceivedPerSec.get(), 1000);
+        Assert.assertEquals(zookeeperMonitoredData.outstandingRequestsDelta.get(), -6);
+        Assert.assertEquals(zookeeperMonitoredData.latencyP50.get(), 2);
+        Assert.assertTrue(zookeeperMonitoredData.latencyP99.get() >= 100);  // the new max is recorded
+
+        zookeeperMonitoredData.updateValues(ImmutableMap.of("zk_packets_received", 10L), 13000);
+        Assert.assertEquals(zookeeperMonitoredData.packetsReceivedPerSec.get(), 0);   // server restarted
+    }
+
+    @Test
+    public void     testSnapshotAge() throws Exception
+    {
+        InstanceConfig          config = Mockito.mock(InstanceConfig.class);
+        Mockito.when(config.getInt(IntConfigs.CHECK_MS)).thenReturn(1000);
+        ConfigManager           configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getConfig()).thenReturn(config);
+        FourLetterWordClient    client = Mockito.mock(FourLetterWordClient.class);
+        Mockito.when(client.get(Mockito.eq(FourLetterWord.Word.MNTR), Mockito.eq("localhost"), Mockito.any(InstanceConfig.class), Mockito.anyInt())).thenReturn(new FourLetterWord("zk_znode_count\t20\n"));
+        MonitorRunningInstance  monitorRunningInstance = Mockito.mock(MonitorRunningInstance.class);
+
+        Exhibitor               exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getConfigManager()).thenReturn(configManager);
+        Mockito.when(exhibitor.getFourLetterWordClient()).thenReturn(client);
+        Mockito.when(exhibitor.getMonitorRunningInstance()).thenReturn(monitorRunningInstance);
+        Mockito.when(exhibitor.getThisJVMHostname()).thenReturn("localhost");
+
+        ZookeeperMonitoredData  zookeeperMonitoredData = new ZookeeperMonitoredData();
+        GetMonitorData          getMonitorData = new GetMonitorData(exhibitor, zookeeperMonitoredData);
+
+        // older than twice CHECK_MS - the monitor's next mntr is due but the snapshot is still usable
+        Mockito.when(monitorRunningInstance.getSnapshot(false)).thenReturn(newSnapshot("zk_znode_count\t10\n", System.currentTimeMillis() - 2500));
+        getMonitorData.call();
+        Assert.assertEquals(zookeeperMonitoredData.zk_znode_count.get(), 10);
+        Mockito.verify(client, Mockito.never()).get(Mockito.any(FourLetterWord.Word.class), Mockito.anyString(), Mockito.any(InstanceConfig.class), Mockito.anyInt());
+
+        // the monitor has fallen behind - ask the server
+        Mockito.when(monitorRunningInstance.getSnapshot(false)).thenReturn(newSnapshot("zk_znode_count\t10\n", System.currentTimeMillis() - 3500));
+        getMonitorData.call();
+        Assert.assertEquals(zookeeperMonitoredData.zk_znode_count.get(), 20);
+    }
+
+    private InstanceStateSnapshot   newSnapshot(String mntr, long timestampMs)
+    {
+        FourLetterWord      empty = new FourLetterWord("");
+        return new InstanceStateSnapshot(InstanceStateTypes.SERVING, false, empty, empty, new FourLetterWord(mntr), timestampMs);
+    }
 /*
 
     @Test
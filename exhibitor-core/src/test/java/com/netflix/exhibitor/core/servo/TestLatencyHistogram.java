@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.servo;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestLatencyHistogram
+{
+    @Test
+    public void     testPercentiles()
+    {
+        LatencyHistogram    histogram = new LatencyHistogram(100);
+        Assert.assertEquals(histogram.getValueAtPercentile(99), 0);
+
+        for ( int i = 1; i <= 100; ++i )
+        {
+            histogram.record(i);
+        }
+        Assert.assertEquals(histogram.getValueAtPercentile(10), 10);   // small values are exact
+        Assert.assertTrue(Math.abs(histogram.getValueAtPercentile(50) - 50) <= 3);
+        Assert.assertTrue(Math.abs(histogram.getValueAtPercentile(99) - 99) <= 6);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), 103);  // highest value in the 100-103 bucket
+    }
+
+    @Test
+    public void     testWindow()
+    {
+        LatencyHistogram    histogram = new LatencyHistogram(3);
+        histogram.record(1000000);
+        histogram.record(1);
+        histogram.record(2);
+        Assert.assertTrue(histogram.getValueAtPercentile(100) >= 1000000);
+
+        histogram.record(3);    // pushes out the first value
+        Assert.assertEquals(histogram.getCount(), 3);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), 3);
+    }
+
+    @Test
+    public void     testLargeValues()
+    {
+        LatencyHistogram    histogram = new LatencyHistogram(1);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(histogram.getValueAtPercentile(50), Long.MAX_VALUE);
+    }
+}
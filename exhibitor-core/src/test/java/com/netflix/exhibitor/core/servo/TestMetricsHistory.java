@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.servo;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import java.util.Arrays;
+
+public class TestMetricsHistory
+{
+    @Test
+    public void     testDownsampling()
+    {
+        MetricsHistory      history = new MetricsHistory(Arrays.asList("a", "b"), 10, 10, 10);
+        long                baseMs = 60 * 60 * 1000;
+        history.record(baseMs, ImmutableMap.of("a", 1L, "b", 10L));
+        history.record(baseMs + 500, ImmutableMap.of("a", 3L));
+        history.record(baseMs + 1000, ImmutableMap.of("a", 5L, "b", 20L));
+        history.record(baseMs + 3000, ImmutableMap.of("a", 7L, "not-recorded", 1L));
+
+        MetricsHistory.Series   series = history.get("a", MetricsHistory.Resolution.SECONDS, baseMs, baseMs + 3999);
+        Assert.assertEquals(series.getStartMs(), baseMs);
+        Assert.assertEquals(series.getValues(), new long[]{2, 5, MetricsHistory.NO_VALUE, 7});
+
+        series = history.get("b", MetricsHistory.Resolution.SECONDS, baseMs, baseMs + 3999);
+        Assert.assertEquals(series.getValues(), new long[]{10, 20, MetricsHistory.NO_VALUE, MetricsHistory.NO_VALUE});
+
+        series = history.get("a", MetricsHistory.Resolution.MINUTES, baseMs, baseMs);
+        Assert.assertEquals(series.getValues(), new long[]{4});  // (1 + 3 + 5 + 7) / 4 - the slot that's still being filled
+
+        Assert.assertNull(history.get("not-recorded", MetricsHistory.Resolution.SECONDS, baseMs, baseMs));
+    }
+
+    @Test
+    public void     testRingWraps()
+    {
+        MetricsHistory      history = new MetricsHistory(Arrays.asList("a"), 3, 1, 1);
+        for ( int i = 0; i < 10; ++i )
+        {
+            history.record(i * 1000, ImmutableMap.of("a", (long)i));
+        }
+
+        // 3 slots are kept plus the one being filled - the range is clipped to that
+        MetricsHistory.Series   series = history.get("a", MetricsHistory.Resolution.SECONDS, 0, 9000);
+        Assert.assertEquals(series.getStartMs(), 6000);
+        Assert.assertEquals(series.getValues(), new long[]{6, 7, 8, 9});
+
+        Assert.assertEquals(history.getResolutionFor(6000, 9000), MetricsHistory.Resolution.SECONDS);
+        Assert.assertEquals(history.getResolutionFor(0, 9000), MetricsHistory.Resolution.MINUTES);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.state;
+
+import com.google.common.util.concurrent.Futures;
+import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.config.ConfigManager;
+import com.netflix.exhibitor.core.config.InstanceConfig;
+import com.netflix.exhibitor.core.config.IntConfigs;
+import com.netflix.exhibitor.core.config.StringConfigs;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TestChecker
+{
+    private Exhibitor               exhibitor;
+    private FourLetterWordClient    client;
+
+    @BeforeMethod
+    public void     setup()
+    {
+        InstanceConfig          config = Mockito.mock(InstanceConfig.class);
+        Mockito.when(config.getString(StringConfigs.ZOOKEEPER_DATA_DIRECTORY)).thenReturn("/data");
+        Mockito.when(config.getString(StringConfigs.ZOOKEEPER_INSTALL_DIRECTORY)).thenReturn("/zookeeper");
+        Mockito.when(config.getInt(IntConfigs.CLIENT_PORT)).thenReturn(2181);
+        Mockito.when(config.getInt(IntConfigs.CHECK_MS)).thenReturn(10000);
+        ConfigManager           configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getConfig()).thenReturn(config);
+
+        client = Mockito.mock(FourLetterWordClient.class);
+        Mockito.when(client.get(Mockito.eq(FourLetterWord.Word.RUOK), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt())).thenReturn(new FourLetterWord("imok"));
+        Mockito.when(client.submit(Mockito.eq(FourLetterWord.Word.SRVR), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt())).thenReturn(Futures.immediateFuture(new FourLetterWord("Mode: leader\n")));
+        Mockito.when(client.submit(Mockito.eq(FourLetterWord.Word.MNTR), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt())).thenReturn(Futures.immediateFuture(new FourLetterWord("zk_znode_count\t10\n")));
+
+        exhibitor = Mockito.mock(Exhibitor.class);
+        Mockito.when(exhibitor.getConfigManager()).thenReturn(configManager);
+        Mockito.when(exhibitor.getFourLetterWordClient()).thenReturn(client);
+        Mockito.when(exhibitor.getConnectionTimeOutMs()).thenReturn(1000);
+    }
+
+    @Test
+    public void     testMntrOnlyEveryCheckMs() throws Exception
+    {
+        Checker                 checker = new Checker(exhibitor);
+        InstanceStateSnapshot   first = checker.calculateState(null);
+        Assert.assertEquals(first.getState(), InstanceStateTypes.SERVING);
+        Assert.assertTrue(first.isLeader());
+        Assert.assertEquals(first.getMntr().getResponse(), "zk_znode_count\t10\n");
+
+        // a fast probe right after - mntr is carried over
+        InstanceStateSnapshot   second = checker.calculateState(first);
+        Assert.assertEquals(second.getMntr().getResponse(), first.getMntr().getResponse());
+        Assert.assertEquals(second.getMntrTimestampMs(), first.getMntrTimestampMs());
+        Mockito.verify(client, Mockito.times(2)).submit(Mockito.eq(FourLetterWord.Word.SRVR), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+        Mockito.verify(client, Mockito.times(1)).submit(Mockito.eq(FourLetterWord.Word.MNTR), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+
+        // CHECK_MS later
+        FourLetterWord          empty = new FourLetterWord("");
+        InstanceStateSnapshot   old = new InstanceStateSnapshot(InstanceStateTypes.SERVING, true, empty, empty, first.getMntr(), System.currentTimeMillis(), System.currentTimeMillis() - 10000);
+        InstanceStateSnapshot   third = checker.calculateState(old);
+        Assert.assertTrue(third.getMntrTimestampMs() > old.getMntrTimestampMs());
+        Mockito.verify(client, Mockito.times(2)).submit(Mockito.eq(FourLetterWord.Word.MNTR), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    public void     testNotServing() throws Exception
+    {
+        Mockito.when(client.get(Mockito.eq(FourLetterWord.Word.RUOK), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt())).thenReturn(new FourLetterWord(""));
+
+        InstanceStateSnapshot   snapshot = new Checker(exhibitor).calculateState(null);
+        Assert.assertEquals(snapshot.getState(), InstanceStateTypes.DOWN);
+        Assert.assertEquals(snapshot.getMntr().getResponse(), "");
+        Mockito.verify(client, Mockito.never()).submit(Mockito.any(FourLetterWord.Word.class), Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.netflix.exhibitor.core.state;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.curator.utils.CloseableUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import java.io.DataInputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestFourLetterWordClient
+{
+    private AtomicInteger connectionCount;
+    private CountDownLatch respondLatch;
+    private ServerSocket serverSocket;
+    private FourLetterWordClient client;
+
+    @BeforeMethod
+    public void     setup() throws Exception
+    {
+        // the acceptor/responders of a previous test may still be running - each test gets its own
+        final AtomicInteger     connectionCount = new AtomicInteger(0);
+        final CountDownLatch    respondLatch = new CountDownLatch(1);
+        final ServerSocket      serverSocket = new ServerSocket(0);
+        this.connectionCount = connectionCount;
+        this.respondLatch = respondLatch;
+        this.serverSocket = serverSocket;
+        client = new FourLetterWordClient();
+
+        // a minimal ZooKeeper: reads the word, waits to be told to answer, answers and closes
+        Thread          acceptor = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for(;;)
+                    {
+                        final Socket    socket = serverSocket.accept();
+                        connectionCount.incrementAndGet();
+                        Thread          responder = new Thread()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                try
+                                {
+                                    byte[]      word = new byte[4];
+                                    new DataInputStream(socket.getInputStream()).readFully(word);
+                                    if ( respondLatch.await(10, TimeUnit.SECONDS) )
+                                    {
+                                        String      response = "ruok".equals(new String(word)) ? "imok" : ("Mode: " + new String(word) + "\nZxid: 0x1");
+                                        socket.getOutputStream().write(response.getBytes());
+                                    }
+                                }
+                                catch ( Exception ignore )
+                                {
+                                    // ignore
+                                }
+                                finally
+                                {
+                                    CloseableUtils.closeQuietly(socket);
+                                }
+                            }
+                        };
+                        responder.setDaemon(true);
+                        responder.start();
+                    }
+                }
+                catch ( Exception ignore )
+                {
+                    // server socket closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterMethod
+    public void     teardown()
+    {
+        CloseableUtils.closeQuietly(client);
+        CloseableUtils.closeQuietly(serverSocket);
+    }
+
+    @Test
+    public void     testCoalescing() throws Exception
+    {
+        ListenableFuture<FourLetterWord>    ruok1 = client.submit(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 10000);
+        ListenableFuture<FourLetterWord>    ruok2 = client.submit(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 10000);
+        ListenableFuture<FourLetterWord>    srvr = client.submit(FourLetterWord.Word.SRVR, "localhost", serverSocket.getLocalPort(), 10000);
+        respondLatch.countDown();
+
+        Assert.assertEquals(ruok1.get().getResponse(), "imok");
+        Assert.assertEquals(ruok2.get().getResponse(), "imok");
+        Assert.assertEquals(srvr.get().getResponseMap().get("mode"), " srvr");
+        Assert.assertEquals(connectionCount.get(), 2);
+
+        // nothing in flight - a new connection
+        Assert.assertEquals(client.get(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 10000).getResponse(), "imok");
+        Assert.assertEquals(connectionCount.get(), 3);
+    }
+
+    @Test
+    public void     testDeadline() throws Exception
+    {
+        long            startMs = System.currentTimeMillis();
+        FourLetterWord  response = client.get(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 500);
+        long            elapsedMs = System.currentTimeMillis() - startMs;
+
+        Assert.assertEquals(response.getResponse(), "");
+        Assert.assertTrue(elapsedMs < 5000, "elapsed: " + elapsedMs);
+        respondLatch.countDown();
+    }
+
+    @Test
+    public void     testShorterDeadlineDoesNotJoin() throws Exception
+    {
+        ListenableFuture<FourLetterWord>    longCommand = client.submit(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 10000);
+
+        long            startMs = System.currentTimeMillis();
+        FourLetterWord  response = client.get(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 500);
+        long            elapsedMs = System.currentTimeMillis() - startMs;
+        Assert.assertEquals(response.getResponse(), "");
+        Assert.assertTrue(elapsedMs < 5000, "elapsed: " + elapsedMs);
+        Assert.assertFalse(longCommand.isDone());
+
+        respondLatch.countDown();
+        Assert.assertEquals(longCommand.get().getResponse(), "imok");
+        Assert.assertEquals(connectionCount.get(), 2);
+    }
+
+    @Test
+    public void     testJoinedCommandTimesOutBeforeCaller() throws Exception
+    {
+        ListenableFuture<FourLetterWord>    shortCommand = client.submit(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 500);
+        Thread                              responder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(1500);
+                }
+                catch ( InterruptedException ignore )
+                {
+                    // ignore
+                }
+                respondLatch.countDown();
+            }
+        };
+        responder.setDaemon(true);
+        responder.start();
+
+        // joins the short command, which times out - the rest of this caller's time is used for a new command
+        Assert.assertEquals(client.get(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 10000).getResponse(), "imok");
+        Assert.assertEquals(shortCommand.get().getResponse(), "");
+        Assert.assertEquals(connectionCount.get(), 2);
+    }
+
+    @Test
+    public void     testClosed() throws Exception
+    {
+        client.close();
+        Assert.assertEquals(client.get(FourLetterWord.Word.RUOK, "localhost", serverSocket.getLocalPort(), 10000).getResponse(), "");
+    }
+}
@@ -16,19 +16,28 @@
 
 package com.netflix.exhibitor.core.state;
 
+import com.google.common.collect.Lists;
 import com.netflix.exhibitor.core.Exhibitor;
+import com.netflix.exhibitor.core.activity.Activity;
+import com.netflix.exhibitor.core.activity.ActivityQueue;
+import com.netflix.exhibitor.core.activity.QueueGroups;
 import com.netflix.exhibitor.core.config.ConfigManager;
 import com.netflix.exhibitor.core.config.InstanceConfig;
 import com.netflix.exhibitor.core.config.IntConfigs;
 import com.netflix.exhibitor.core.config.StringConfigs;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelTypes;
 import com.netflix.exhibitor.core.controlpanel.ControlPanelValues;
+import com.netflix.exhibitor.core.servo.MetricsHistory;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.prefs.Preferences;
 
 public class TestMonitorRunningInstance
@@ -221,6 +230,279 @@ public class TestMonitorRunningInstance
         Assert.assertTrue(semaphore.tryAcquire(10, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testProbeBackoff() throws Exception
+    {
+        InstanceConfig config = new InstanceConfig()
+        {
+            @Override
+            public String getString(StringConfigs config)
+            {
+                switch ( config )
+                {
+                case SERVERS_SPEC:
+                {
+                    return "1:foo,2:bar";
+                }
+
+                case ZOOKEEPER_DATA_DIRECTORY:
+                case ZOOKEEPER_INSTALL_DIRECTORY:
+                {
+                    return "/";
+                }
+                }
+                return null;
+            }
+
+            @Override
+            public int getInt(IntConfigs config)
+            {
+                return (config == IntConfigs.CHECK_MS) ? 1000 : 0;
+            }
+        };
+
+        Exhibitor mockExhibitor = makeMockExhibitor(config, "foo");
+        final AtomicReference<InstanceStateTypes> state = new AtomicReference<InstanceStateTypes>(InstanceStateTypes.SERVING);
+        MonitorRunningInstance monitor = new MonitorRunningInstance(mockExhibitor)
+        {
+            @Override
+            protected StateAndLeader getStateAndLeader() throws Exception
+            {
+                return new StateAndLeader(state.get(), false);
+            }
+
+            @Override
+            protected void restartZooKeeper(InstanceState currentInstanceState) throws Exception
+            {
+            }
+        };
+        Assert.assertEquals(monitor.getNextProbeMs(), 1000);    // latent
+
+        monitor.doWork();
+        Assert.assertEquals(monitor.getNextProbeMs(), 250);
+        Assert.assertEquals(monitor.getNextProbeMs(), 500);
+        Assert.assertEquals(monitor.getNextProbeMs(), 1000);
+        Assert.assertEquals(monitor.getNextProbeMs(), 1000);
+
+        final List<InstanceStateTypes> changes = Lists.newArrayList();
+        monitor.addInstanceStateListener
+        (
+            new InstanceStateListener()
+            {
+                @Override
+                public void stateChanged(InstanceStateSnapshot previous, InstanceStateSnapshot current)
+                {
+                    changes.add(current.getState());
+                }
+            }
+        );
+        state.set(InstanceStateTypes.DOWN);
+        monitor.doWork();
+        Assert.assertEquals(changes, Arrays.asList(InstanceStateTypes.DOWN));
+        Assert.assertEquals(monitor.getNextProbeMs(), 250);
+
+        state.set(InstanceStateTypes.SERVING);
+        monitor.doWork();
+        Assert.assertEquals(changes, Arrays.asList(InstanceStateTypes.DOWN, InstanceStateTypes.SERVING));
+        Assert.assertEquals(monitor.getNextProbeMs(), 250);     // just restarted
+    }
+
+    @Test
+    public void testRollingConfigCheckedAtCheckMs() throws Exception
+    {
+        InstanceConfig config = new InstanceConfig()
+        {
+            @Override
+            public String getString(StringConfigs config)
+            {
+                switch ( config )
+                {
+                case SERVERS_SPEC:
+                {
+                    return "1:foo,2:bar";
+                }
+
+                case ZOOKEEPER_DATA_DIRECTORY:
+                case ZOOKEEPER_INSTALL_DIRECTORY:
+                {
+                    return "/";
+                }
+                }
+                return null;
+            }
+
+            @Override
+            public int getInt(IntConfigs config)
+            {
+                return (config == IntConfigs.CHECK_MS) ? 10000 : 0;
+            }
+        };
+
+        Exhibitor mockExhibitor = makeMockExhibitor(config, "foo");
+        ActivityQueue activityQueue = Mockito.mock(ActivityQueue.class);
+        Mockito.when(mockExhibitor.getActivityQueue()).thenReturn(activityQueue);
+        MonitorRunningInstance monitor = new MonitorRunningInstance(mockExhibitor)
+        {
+            @Override
+            protected StateAndLeader getStateAndLeader() throws Exception
+            {
+                return new StateAndLeader(InstanceStateTypes.NOT_SERVING, false);
+            }
+
+            @Override
+            protected void restartZooKeeper(InstanceState currentInstanceState) throws Exception
+            {
+            }
+        };
+
+        for ( int i = 0; i < 10; ++i )
+        {
+            monitor.doWork();   // not-serving instances are probed fast - each probe must not count as a rolling config attempt
+        }
+        ArgumentCaptor<Activity> activityCaptor = ArgumentCaptor.forClass(Activity.class);
+        Mockito.verify(activityQueue, Mockito.times(1)).add(Mockito.eq(QueueGroups.MAIN), activityCaptor.capture());
+        Mockito.verify(mockExhibitor.getConfigManager(), Mockito.never()).checkRollingConfig(Mockito.any(InstanceState.class));
+
+        activityCaptor.getValue().call();
+        Mockito.verify(mockExhibitor.getConfigManager(), Mockito.times(1)).checkRollingConfig(Mockito.any(InstanceState.class));
+
+        monitor.doWork();   // still within CHECK_MS of the previous check
+        Mockito.verify(activityQueue, Mockito.times(1)).add(Mockito.eq(QueueGroups.MAIN), Mockito.any(Activity.class));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception
+    {
+        InstanceConfig config = new InstanceConfig()
+        {
+            @Override
+            public String getString(StringConfigs config)
+            {
+                switch ( config )
+                {
+                case SERVERS_SPEC:
+                {
+                    return "1:foo,2:bar";
+                }
+
+                case ZOOKEEPER_DATA_DIRECTORY:
+                case ZOOKEEPER_INSTALL_DIRECTORY:
+                {
+                    return "/";
+                }
+                }
+                return null;
+            }
+
+            @Override
+            public int getInt(IntConfigs config)
+            {
+                return (config == IntConfigs.CHECK_MS) ? 10000 : 0;
+            }
+        };
+
+        Exhibitor mockExhibitor = makeMockExhibitor(config, "foo");
+        final AtomicReference<InstanceStateSnapshot> nextSnapshot = new AtomicReference<InstanceStateSnapshot>();
+        final AtomicInteger checkCount = new AtomicInteger(0);
+        MonitorRunningInstance monitor = new MonitorRunningInstance(mockExhibitor)
+        {
+            @Override
+            protected StateAndLeader getStateAndLeader() throws Exception
+            {
+                checkCount.incrementAndGet();
+                return nextSnapshot.get();
+            }
+
+            @Override
+            protected void restartZooKeeper(InstanceState currentInstanceState) throws Exception
+            {
+            }
+        };
+        Assert.assertSame(monitor.getSnapshot(false), InstanceStateSnapshot.LATENT);
+
+        InstanceStateSnapshot probed = newSnapshot(InstanceStateTypes.SERVING, 1000);
+        nextSnapshot.set(probed);
+        monitor.doWork();
+        Assert.assertSame(monitor.getSnapshot(false), probed);
+        Assert.assertEquals(checkCount.get(), 1);   // a memory read
+
+        InstanceStateSnapshot fresh = newSnapshot(InstanceStateTypes.SERVING, 3000);
+        nextSnapshot.set(fresh);
+        Assert.assertSame(monitor.getSnapshot(true), fresh);
+        Assert.assertEquals(checkCount.get(), 2);
+        Assert.assertSame(monitor.getSnapshot(false), fresh);
+
+        // a probe that started before the fresh check but finished after it must not replace the newer result
+        nextSnapshot.set(newSnapshot(InstanceStateTypes.NOT_SERVING, 2000));
+        monitor.doWork();
+        Assert.assertSame(monitor.getSnapshot(false), fresh);
+
+        InstanceStateSnapshot later = newSnapshot(InstanceStateTypes.NOT_SERVING, 4000);
+        nextSnapshot.set(later);
+        monitor.doWork();
+        Assert.assertSame(monitor.getSnapshot(false), later);
+    }
+
+    @Test
+    public void testMetricsHistoryFedFromSnapshots() throws Exception
+    {
+        InstanceConfig config = new InstanceConfig()
+        {
+            @Override
+            public String getString(StringConfigs config)
+            {
+                return (config == StringConfigs.SERVERS_SPEC) ? "1:foo,2:bar" : "/";
+            }
+
+            @Override
+            public int getInt(IntConfigs config)
+            {
+                return (config == IntConfigs.CHECK_MS) ? 10000 : 0;
+            }
+        };
+
+        MetricsHistory history = new MetricsHistory(Arrays.asList("zk_znode_count"), 10, 10, 10);
+        Exhibitor mockExhibitor = makeMockExhibitor(config, "foo");
+        Mockito.when(mockExhibitor.getMetricsHistory()).thenReturn(history);
+        final AtomicReference<InstanceStateSnapshot> nextSnapshot = new AtomicReference<InstanceStateSnapshot>();
+        MonitorRunningInstance monitor = new MonitorRunningInstance(mockExhibitor)
+        {
+            @Override
+            protected StateAndLeader getStateAndLeader() throws Exception
+            {
+                return nextSnapshot.get();
+            }
+
+            @Override
+            protected void restartZooKeeper(InstanceState currentInstanceState) throws Exception
+            {
+            }
+        };
+
+        long baseMs = 60 * 60 * 1000;
+        FourLetterWord empty = new FourLetterWord("");
+        FourLetterWord mntr = new FourLetterWord("zk_znode_count\t5\n");
+        nextSnapshot.set(new InstanceStateSnapshot(InstanceStateTypes.SERVING, false, empty, empty, mntr, baseMs, baseMs));
+        monitor.doWork();
+
+        // mntr carried over from the previous check - not a new sample
+        nextSnapshot.set(new InstanceStateSnapshot(InstanceStateTypes.SERVING, false, empty, empty, mntr, baseMs + 1000, baseMs));
+        monitor.doWork();
+
+        nextSnapshot.set(new InstanceStateSnapshot(InstanceStateTypes.SERVING, false, empty, empty, new FourLetterWord("zk_znode_count\t7\n"), baseMs + 2000, baseMs + 2000));
+        monitor.doWork();
+
+        MetricsHistory.Series series = history.get("zk_znode_count", MetricsHistory.Resolution.SECONDS, baseMs, baseMs + 2999);
+        Assert.assertEquals(series.getValues(), new long[]{5, MetricsHistory.NO_VALUE, 7});
+        Assert.assertEquals(history.get("zk_znode_count", MetricsHistory.Resolution.MINUTES, baseMs, baseMs).getValues(), new long[]{6});
+    }
+
+    private InstanceStateSnapshot newSnapshot(InstanceStateTypes state, long timestampMs)
+    {
+        FourLetterWord empty = new FourLetterWord("");
+        return new InstanceStateSnapshot(state, false, empty, empty, empty, timestampMs);
+    }
+
     private Exhibitor makeMockExhibitor(InstanceConfig config, String us)
     {
         Preferences preferences = Mockito.mock(Preferences.class);